@@ -27,6 +27,7 @@ import java.util.List;
 
 import org.rhq.core.domain.cloud.composite.FailoverListComposite;
 import org.rhq.core.domain.plugin.Plugin;
+import org.rhq.core.util.file.ZipDelta;
 
 /**
  * The interface to a JON server's core administrative functions used by remote agents.
@@ -76,6 +77,21 @@ public interface CoreServerService {
      */
     InputStream getPluginArchive(String pluginName);
 
+    /**
+     * Returns a delta that turns the caller's current version of a plugin jar into the latest one. Use this rather
+     * than {@link #getPluginArchive(String)} when you already have a version of the plugin, since only the parts of
+     * the plugin jar that changed need to be transferred. The delta is to be applied with
+     * {@link ZipDelta#applyDelta(java.io.File, InputStream, java.io.OutputStream)}.
+     *
+     * @param  pluginName       The name of the plugin
+     * @param  currentSignature the signature of the caller's current version of the plugin jar
+     *
+     * @return the delta, or <code>null</code> if no delta is available (e.g. because it would not be much smaller than
+     *         the plugin jar itself), in which case the plugin jar is to be retrieved by
+     *         {@link #getPluginArchive(String)}
+     */
+    byte[] getPluginArchiveDelta(String pluginName, ZipDelta.Signature currentSignature);
+
     /**
      * Returns a stream that contains the given file contents. The file is located relative to a server-side defined
      * location. If the characters ".." exist anywhere in the given file name, a runtime exception is thrown - you must
@@ -19,6 +19,7 @@
 package org.rhq.core.db.setup;
 
 import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
@@ -33,9 +34,17 @@ import org.xml.sax.SAXException;
 
 import org.rhq.core.db.DatabaseType;
 import org.rhq.core.db.DatabaseTypeFactory;
+import org.rhq.core.db.PostgresqlDatabaseType;
 import org.rhq.core.db.SQLServerDatabaseType;
 
 class Table {
+    private static final String QUERY_FIND_INHERITING_TABLES = "" //
+        + "SELECT child.relname " //
+        + "  FROM pg_inherits inh " //
+        + "  JOIN pg_class child ON child.oid = inh.inhrelid " //
+        + "  JOIN pg_class parent ON parent.oid = inh.inhparent " //
+        + " WHERE parent.relname = ?";
+
     private DBSetup m_parent;
     private String m_strName;
     private boolean m_indexOrganized = false; // Index Organized Table
@@ -160,6 +169,7 @@ class Table {
 
     protected void drop() throws SQLException {
         List collCmds = new ArrayList<String>();
+        this.getInheritingTableDropCommands(collCmds);
         this.getDropCommands(collCmds);
 
         // *** NOTE *** we must execute all the DROPs no matter what, because although a
@@ -333,6 +343,31 @@ class Table {
         }
     }
 
+    /**
+     * Postgres refuses to drop a table that other tables inherit from, such as the time partitions of RHQ_EVENT that
+     * the server creates at runtime and that no schema file declares, so those get dropped first.
+     */
+    private void getInheritingTableDropCommands(List cmds) throws SQLException {
+        DatabaseType dbtype = m_parent.getDatabaseType();
+        if (!(dbtype instanceof PostgresqlDatabaseType)) {
+            return;
+        }
+
+        PreparedStatement ps = null;
+        ResultSet rs = null;
+        try {
+            ps = m_parent.getConnection().prepareStatement(QUERY_FIND_INHERITING_TABLES);
+            // unquoted identifiers are folded to lower case by postgres
+            ps.setString(1, this.getName().toLowerCase());
+            rs = ps.executeQuery();
+            while (rs.next()) {
+                cmds.add("DROP TABLE " + rs.getString(1));
+            }
+        } finally {
+            dbtype.closeJDBCObjects(null, ps, rs);
+        }
+    }
+
     protected Collection<Constraint> getConstraints() {
         return this.m_collConstraints;
     }
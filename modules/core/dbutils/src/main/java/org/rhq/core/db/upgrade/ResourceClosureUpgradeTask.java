@@ -0,0 +1,67 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2008 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package org.rhq.core.db.upgrade;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+
+import org.rhq.core.db.DatabaseType;
+
+/**
+ * The introduction of the RHQ_RESOURCE_CLOSURE table requires that the ancestor/descendant pairs of existing
+ * inventory be pre-computed.
+ *
+ * This task first inserts the depth-0 (self) row for every resource not already marked for uninventory, and then
+ * walks the hierarchy one level at a time, joining the rows of the previous depth against the parent pointers, until
+ * a level yields no new rows.  The number of statements executed is therefore proportional to the height of the
+ * inventory, not to its size.
+ */
+public class ResourceClosureUpgradeTask implements DatabaseUpgradeTask {
+
+    // guards against looping forever should the parent pointers ever contain a cycle; the level statement also
+    // never links a resource to itself, so a cycle ends the walk instead of violating the primary key
+    private static final int MAX_DEPTH = 1000;
+
+    public void execute(DatabaseType databaseType, Connection connection) throws SQLException {
+        String selfSql = "" //
+            + "insert into RHQ_RESOURCE_CLOSURE ( ANCESTOR_ID, DESCENDANT_ID, DEPTH ) " //
+            + "     select res.ID, res.ID, 0 from RHQ_RESOURCE res " //
+            + "      where res.INVENTORY_STATUS <> 'UNINVENTORIED'";
+        databaseType.executeSql(connection, selfSql);
+
+        for (int depth = 1; depth < MAX_DEPTH; depth++) {
+            String levelSql = "" //
+                + "insert into RHQ_RESOURCE_CLOSURE ( ANCESTOR_ID, DESCENDANT_ID, DEPTH ) " //
+                + "     select closure.ANCESTOR_ID, res.ID, " + depth //
+                + "       from RHQ_RESOURCE res, RHQ_RESOURCE_CLOSURE closure " //
+                + "      where res.PARENT_RESOURCE_ID = closure.DESCENDANT_ID " //
+                + "        and res.INVENTORY_STATUS <> 'UNINVENTORIED' " //
+                + "        and closure.ANCESTOR_ID <> res.ID " //
+                + "        and closure.DEPTH = " + (depth - 1);
+            databaseType.executeSql(connection, levelSql);
+
+            String countSql = "select count(*) from RHQ_RESOURCE_CLOSURE where DEPTH = " + depth;
+            List<Object[]> rs = databaseType.executeSelectSql(connection, countSql);
+            if (rs.isEmpty() || ((Number) rs.get(0)[0]).intValue() == 0) {
+                break;
+            }
+        }
+    }
+}
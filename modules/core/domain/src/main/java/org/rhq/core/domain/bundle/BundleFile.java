@@ -24,7 +24,6 @@ package org.rhq.core.domain.bundle;
 
 import java.io.Serializable;
 
-import javax.persistence.CascadeType;
 import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.FetchType;
@@ -50,7 +49,16 @@ import org.rhq.core.domain.content.PackageVersion;
 @Entity
 @NamedQueries( {
     @NamedQuery(name = BundleFile.QUERY_FIND_ALL, query = "SELECT bf FROM BundleFile bf"), //
-    @NamedQuery(name = BundleFile.QUERY_FIND_BY_BUNDLE_VERSION_ID, query = "SELECT bf FROM BundleFile bf WHERE bf.bundleVersion.id = :id") //
+    @NamedQuery(name = BundleFile.QUERY_FIND_BY_BUNDLE_VERSION_ID, query = "SELECT bf FROM BundleFile bf WHERE bf.bundleVersion.id = :id"), //
+    @NamedQuery(name = BundleFile.QUERY_FIND_PACKAGE_VERSIONS_BY_BUNDLE_AND_SHA256, query = "" //
+        + "SELECT pv " //
+        + "  FROM BundleFile bf JOIN bf.packageVersion pv " //
+        + " WHERE bf.bundleVersion.bundle.id = :bundleId " //
+        + "   AND pv.fileName = :fileName " //
+        + "   AND pv.sha256 = :sha256 " //
+        + "   AND pv.packageBits IS NOT NULL "), //
+    @NamedQuery(name = BundleFile.QUERY_COUNT_BY_PACKAGE_VERSION_ID, query = "" //
+        + "SELECT COUNT(bf) FROM BundleFile bf WHERE bf.packageVersion.id = :packageVersionId") //
 })
 @SequenceGenerator(name = "SEQ", sequenceName = "RHQ_BUNDLE_FILE_ID_SEQ")
 @Table(name = "RHQ_BUNDLE_FILE")
@@ -60,6 +68,8 @@ public class BundleFile implements Serializable {
 
     public static final String QUERY_FIND_ALL = "BundleFile.findAll";
     public static final String QUERY_FIND_BY_BUNDLE_VERSION_ID = "BundleFile.findByBundleVersionId";
+    public static final String QUERY_FIND_PACKAGE_VERSIONS_BY_BUNDLE_AND_SHA256 = "BundleFile.findPackageVersionsByBundleAndSha256";
+    public static final String QUERY_COUNT_BY_PACKAGE_VERSION_ID = "BundleFile.countByPackageVersionId";
 
     @Column(name = "ID", nullable = false)
     @GeneratedValue(strategy = GenerationType.AUTO, generator = "SEQ")
@@ -70,12 +80,11 @@ public class BundleFile implements Serializable {
     @ManyToOne(fetch = FetchType.LAZY, optional = false)
     private BundleVersion bundleVersion;
 
-    // Note, currently we cascade remove the PackageVersion because BundleVersions do not share
-    // PackageVersions. They create a PV versioned the same as the BV.  If this approach changes in
-    // the future (e.e reuse of PVs if the sha256 is not different) then this will will have to change
-    // to reflect the fact that multiple BundleFiles could reference the same PackageVersion.
+    // Note, the PackageVersion is not cascade removed because the versions of a bundle share a PackageVersion
+    // when their bundle files have the same name and sha256. The BundleManager removes a PackageVersion when
+    // the last BundleFile referencing it goes away.
     @JoinColumn(name = "PACKAGE_VERSION_ID", referencedColumnName = "ID", nullable = false)
-    @ManyToOne(fetch = FetchType.LAZY, optional = false, cascade = CascadeType.REMOVE)
+    @ManyToOne(fetch = FetchType.LAZY, optional = false)
     private PackageVersion packageVersion;
 
     public BundleFile() {
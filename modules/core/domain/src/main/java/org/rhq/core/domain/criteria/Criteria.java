@@ -80,6 +80,8 @@ public abstract class Criteria implements Serializable, BaseCriteria {
 
     private Integer pageNumber;
     private Integer pageSize;
+    private boolean keysetPaging;
+    private Integer pageAfterId;
 
     private boolean filtersOptional;
     private boolean caseSensitive;
@@ -142,6 +144,37 @@ public abstract class Criteria implements Serializable, BaseCriteria {
     public void setPaging(int pageNumber, int pageSize) {
         this.pageNumber = pageNumber;
         this.pageSize = pageSize;
+        this.keysetPaging = false;
+        this.pageAfterId = null;
+    }
+
+    /**
+     * Requests keyset (a.k.a. seek) paging instead of offset paging: the results are those that follow, in the sort
+     * order, the entity with the given id.  The entity id is appended to the sort fields to make the order total, and
+     * the sort values of the given entity are looked up and compared against, so the database never has to produce
+     * and then skip the rows of all the preceding pages.  To pull a large result set in chunks, pass null for the
+     * first page and then, for each following page, the id of the last entity of the previous one; combine with
+     * {@link Restriction#COLLECTION_ONLY} to also avoid counting the result set on every page.
+     * <p/>
+     * Keyset paging requires the sort fields to be non-null for the entities paged after, and is not available for
+     * criteria with {@link #hasCustomizedSorting() customized sorting}.
+     *
+     * @param pageAfterId the id of the last entity of the previous page, or null for the first page
+     * @param pageSize the maximum number of results to return
+     */
+    public void setPagingAfter(Integer pageAfterId, int pageSize) {
+        this.pageNumber = 0;
+        this.pageSize = pageSize;
+        this.keysetPaging = true;
+        this.pageAfterId = pageAfterId;
+    }
+
+    public boolean isKeysetPaging() {
+        return keysetPaging;
+    }
+
+    public Integer getPageAfterId() {
+        return pageAfterId;
     }
 
     /**
@@ -170,6 +203,8 @@ public abstract class Criteria implements Serializable, BaseCriteria {
         this.pageNumber = unlimited.getPageNumber();
         this.pageSize = unlimited.getPageSize();
         this.pageControlOverrides = null;
+        this.keysetPaging = false;
+        this.pageAfterId = null;
     }
 
     /**
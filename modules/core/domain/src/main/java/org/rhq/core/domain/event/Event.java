@@ -133,6 +133,18 @@ public class Event implements Serializable {
     @Transient
     private transient String sourceLocation;
 
+    /**
+     * The number of identical events this event stands for, if the Plugin Container folded repeats of it into a
+     * single event (0 or 1 means it stands for itself only). Unlike type and sourceLocation, this is sent to the
+     * Server along with the event.
+     */
+    @Transient
+    private int occurrences;
+
+    /** The date/time the last of the folded repeats occurred; only meaningful if occurrences is greater than 1. */
+    @Transient
+    private long lastTimestamp;
+
     /* no-arg constructor required by EJB spec */
     protected Event() {
     }
@@ -219,6 +231,44 @@ public class Event implements Serializable {
         return this.detail;
     }
 
+    /**
+     * Returns the number of identical events this event stands for, which is greater than 1 only if repeats of this
+     * event have been folded into it.
+     *
+     * @return the number of occurrences of this event (always at least 1)
+     */
+    public int getOccurrences() {
+        return (this.occurrences > 1) ? this.occurrences : 1;
+    }
+
+    /**
+     * Returns the date/time the last occurrence of this event happened, which is the same as {@link #getTimestamp()}
+     * unless repeats of this event have been folded into it.
+     *
+     * @return the date/time of the last occurrence of this event
+     */
+    public long getLastTimestamp() {
+        return (this.occurrences > 1) ? this.lastTimestamp : this.timestamp;
+    }
+
+    /**
+     * Folds a repeat of this event, which occurred at the given date/time, into this event.
+     *
+     * NOTE: This method is not intended to be called by plugins.
+     *
+     * @param timestamp the date/time the repeat occurred
+     */
+    public void addOccurrence(long timestamp) {
+        if (this.occurrences <= 1) {
+            this.occurrences = 1;
+            this.lastTimestamp = this.timestamp;
+        }
+        this.occurrences++;
+        if (timestamp > this.lastTimestamp) {
+            this.lastTimestamp = timestamp;
+        }
+    }
+
     @Override
     public boolean equals(Object obj) {
         if (this == obj)
@@ -48,6 +48,12 @@ import org.rhq.core.domain.event.EventSource;
  * maximum limits. If you want this report to get additional warning events added to them to indicate
  * if these maximum limits were exceeded, call {@link #addLimitWarningEvents()}.
  *
+ * Repeats of an event already in the report - i.e. events from the same event source with the same severity and
+ * the same detail once numbers such as timestamps and ids are disregarded - are folded into that event, which keeps
+ * its own detail (see {@link Event#getOccurrences()}), rather than added separately, so they neither take up room in
+ * the report nor count against its limits. A log that keeps repeating the same stack trace therefore costs a single
+ * event per report, and cannot crowd out the other events of the report.
+ *
  * @author Ian Springer
  * @author John Mazzitelli
  */
@@ -67,6 +73,10 @@ public class EventReport implements Serializable {
     private transient Map<EventSource, Integer> eventsDropped;
     private transient int totalEventsInReport = 0;
     private transient boolean addedLimitWarningEvents = false;
+    // foldableEvents=the events in this report, keyed by what identifies their repeats
+    // foldedEventCount=the number of events that were folded into an event already in the report
+    private transient Map<FoldKey, Event> foldableEvents;
+    private transient int foldedEventCount = 0;
 
     public EventReport(int maxEventsPerSource, int maxEventsPerReport) {
         this.maxEventsPerSource = maxEventsPerSource;
@@ -74,18 +84,32 @@ public class EventReport implements Serializable {
     }
 
     /**
-     * Adds the given <code>event</code> to this report. If this report is too full,
+     * Adds the given <code>event</code> to this report. If the report already holds an event from the same source
+     * with the same severity and the same detail but for its numbers, the given event is folded into that one instead. If this report is too full,
      * the event will be silently rejected (i.e. an exception will not be thrown, but the
      * event will not be sent to the server).
      *
      * @param event the {@link Event} to be added
      * @param eventSource the source of the Event to be added
      */
-    public void addEvent(@NotNull Event event, @NotNull EventSource eventSource) {
+    public synchronized void addEvent(@NotNull Event event, @NotNull EventSource eventSource) {
+        if (this.foldableEvents == null) {
+            this.foldableEvents = new HashMap<FoldKey, Event>();
+        }
+
+        FoldKey foldKey = new FoldKey(eventSource, event);
+        Event foldedInto = this.foldableEvents.get(foldKey);
+        if (foldedInto != null) {
+            foldedInto.addOccurrence(event.getTimestamp());
+            this.foldedEventCount++;
+            return;
+        }
+
         if (this.totalEventsInReport < this.maxEventsPerReport) {
             Set<Event> eventSet = getEventsForEventSource(eventSource);
             if (eventSet.size() < this.maxEventsPerSource) {
                 eventSet.add(event);
+                this.foldableEvents.put(foldKey, event);
                 this.totalEventsInReport++;
             } else {
                 // this event source has maxed out its allowed number of events for this report
@@ -183,6 +207,16 @@ public class EventReport implements Serializable {
         return this.eventsDropped.size() > 0;
     }
 
+    /**
+     * Returns the number of events that were folded into an event already in this report, rather than being added
+     * to it separately.
+     *
+     * @return the number of folded events
+     */
+    public int getFoldedEventCount() {
+        return this.foldedEventCount;
+    }
+
     public Map<EventSource, Integer> getDroppedEvents() {
         return Collections.unmodifiableMap(eventsDropped);
     }
@@ -200,4 +234,87 @@ public class EventReport implements Serializable {
         return this.getClass().getName().substring(this.getClass().getName().lastIndexOf(".") + 1) + "[" + this.events
             + "]";
     }
+
+    /**
+     * Identifies an event and all of its repeats within a report.
+     */
+    private static class FoldKey {
+        private final EventSource eventSource;
+        private final EventSeverity severity;
+        private final String detail;
+
+        FoldKey(EventSource eventSource, Event event) {
+            this.eventSource = eventSource;
+            this.severity = event.getSeverity();
+            this.detail = getFingerprint(event.getDetail());
+        }
+
+        /**
+         * Returns the given detail with every number (decimal or hexadecimal, e.g. timestamps, ids, thread numbers,
+         * addresses or UUIDs) replaced by a '#', so that repeats of a log message that only differ in those are folded
+         * too. This is a plain scan rather than a regular expression, since this class is also used client-side.
+         */
+        private static String getFingerprint(String detail) {
+            StringBuilder fingerprint = null;
+            int length = detail.length();
+            int start = 0;
+            while (start < length) {
+                char c = detail.charAt(start);
+                if (!Character.isLetterOrDigit(c)) {
+                    if (fingerprint != null) {
+                        fingerprint.append(c);
+                    }
+                    start++;
+                    continue;
+                }
+
+                // a word, i.e. a maximal run of letters and digits
+                int end = start;
+                boolean hasDigit = false;
+                boolean allHex = true;
+                while (end < length && Character.isLetterOrDigit(detail.charAt(end))) {
+                    char w = detail.charAt(end);
+                    hasDigit |= (w >= '0' && w <= '9');
+                    allHex &= (w >= '0' && w <= '9') || (w >= 'a' && w <= 'f') || (w >= 'A' && w <= 'F')
+                        || (end == start + 1 && (w == 'x' || w == 'X') && detail.charAt(start) == '0');
+                    end++;
+                }
+
+                if (hasDigit && allHex) {
+                    if (fingerprint == null) {
+                        fingerprint = new StringBuilder(length);
+                        fingerprint.append(detail.substring(0, start));
+                    }
+                    fingerprint.append('#');
+                } else if (fingerprint != null) {
+                    fingerprint.append(detail.substring(start, end));
+                }
+                start = end;
+            }
+
+            return (fingerprint != null) ? fingerprint.toString() : detail;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj)
+                return true;
+            if (!(obj instanceof FoldKey))
+                return false;
+
+            FoldKey that = (FoldKey) obj;
+
+            // compare the cheap fields first, the detail is compared last since it may be a long stack trace
+            return this.severity == that.severity && this.eventSource.equals(that.eventSource)
+                && this.detail.equals(that.detail);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = this.eventSource.hashCode();
+            result = 31 * result + this.severity.hashCode();
+            result = 31 * result + this.detail.hashCode();
+            return result;
+        }
+    }
 }
@@ -59,6 +59,14 @@ public class MeasurementDataNumeric extends MeasurementData implements Serializa
         this.rawNumericType = request.getRawNumericType();
     }
 
+    // Used by MeasurementDataNumericBuffer to turn the values it holds into objects
+    MeasurementDataNumeric(long collectionTime, int scheduleId, String name, Double value, NumericType rawNumericType) {
+        super(new MeasurementDataPK(collectionTime, scheduleId));
+        setName(name);
+        this.value = value;
+        this.rawNumericType = rawNumericType;
+    }
+
     @Deprecated
     // Have to make this protected so that people only use the constructor taking a request (so the name can be set for live values)
     public MeasurementDataNumeric(MeasurementDataPK md, Double value) {
@@ -0,0 +1,238 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2011 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License, version 2, as
+ * published by the Free Software Foundation, and/or the GNU Lesser
+ * General Public License, version 2.1, also as published by the Free
+ * Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License and the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * and the GNU Lesser General Public License along with this program;
+ * if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.rhq.core.domain.measurement;
+
+import java.util.Set;
+
+/**
+ * The numeric data of a {@link MeasurementReport} kept in parallel arrays of primitives rather than as
+ * {@link MeasurementDataNumeric} objects, so that adding a value does not allocate anything once the arrays are big
+ * enough. The objects are only created when they are asked for through {@link MeasurementReport#getNumericData()},
+ * which is also what happens when the report is serialized.
+ * <p/>
+ * The data is indexed from 0 to {@link #size()} - 1, in the order it was added. This class is not thread safe; a
+ * buffer is only meant to be used by the holder of its report.
+ *
+ * @see MeasurementReport#addData(MeasurementScheduleRequest, double)
+ * @see MeasurementReport#getNumericDataBuffer()
+ */
+public class MeasurementDataNumericBuffer {
+    private static final int DEFAULT_CAPACITY = 64;
+
+    private int size;
+    private int[] scheduleIds;
+    private long[] timestamps;
+    private double[] values;
+    private String[] names;
+    private NumericType[] rawNumericTypes;
+
+    public MeasurementDataNumericBuffer() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity the number of values the buffer can hold before it needs to grow, a default one if not positive
+     */
+    public MeasurementDataNumericBuffer(int capacity) {
+        if (capacity <= 0) {
+            capacity = DEFAULT_CAPACITY;
+        }
+        this.scheduleIds = new int[capacity];
+        this.timestamps = new long[capacity];
+        this.values = new double[capacity];
+        this.names = new String[capacity];
+        this.rawNumericTypes = new NumericType[capacity];
+    }
+
+    /**
+     * Adds a value to the end of the buffer.
+     *
+     * @param timestamp the time the value was collected
+     * @param request   the schedule the value was collected for
+     * @param value     the value
+     */
+    public void add(long timestamp, MeasurementScheduleRequest request, double value) {
+        add(timestamp, request.getScheduleId(), request.getName(), value, request.getRawNumericType());
+    }
+
+    /**
+     * Adds the value of a numeric data object to the end of the buffer. A <code>null</code> value is added as
+     * {@link Double#NaN}.
+     *
+     * @param data the numeric data
+     */
+    void add(MeasurementDataNumeric data) {
+        Double value = data.getValue();
+        add(data.getTimestamp(), data.getScheduleId(), data.getName(), (value != null) ? value.doubleValue()
+            : Double.NaN, data.getRawNumericType());
+    }
+
+    private void add(long timestamp, int scheduleId, String name, double value, NumericType rawNumericType) {
+        if (this.size == this.scheduleIds.length) {
+            grow();
+        }
+
+        this.scheduleIds[this.size] = scheduleId;
+        this.timestamps[this.size] = timestamp;
+        this.values[this.size] = value;
+        this.names[this.size] = name;
+        this.rawNumericTypes[this.size] = rawNumericType;
+        this.size++;
+    }
+
+    /**
+     * @return the number of values in the buffer
+     */
+    public int size() {
+        return this.size;
+    }
+
+    public int getScheduleId(int index) {
+        checkIndex(index);
+        return this.scheduleIds[index];
+    }
+
+    public long getTimestamp(int index) {
+        checkIndex(index);
+        return this.timestamps[index];
+    }
+
+    public double getValue(int index) {
+        checkIndex(index);
+        return this.values[index];
+    }
+
+    public void setValue(int index, double value) {
+        checkIndex(index);
+        this.values[index] = value;
+    }
+
+    public String getName(int index) {
+        checkIndex(index);
+        return this.names[index];
+    }
+
+    /**
+     * @param  index the index of a value
+     *
+     * @return the type of the raw metric if the value is the raw value of a per-minute metric, <code>null</code>
+     *         otherwise
+     */
+    public NumericType getRawNumericType(int index) {
+        checkIndex(index);
+        return this.rawNumericTypes[index];
+    }
+
+    /**
+     * Overwrites the value at index <code>to</code> with the value at index <code>from</code>. Together with
+     * {@link #truncate(int)}, this allows removing values while iterating over the buffer:
+     *
+     * <pre>
+     * int kept = 0;
+     * for (int i = 0; i &lt; buffer.size(); i++) {
+     *     if (keep(i)) {
+     *         buffer.copy(i, kept++);
+     *     }
+     * }
+     * buffer.truncate(kept);
+     * </pre>
+     *
+     * @param from the index of the value to copy
+     * @param to   the index of the value to overwrite
+     */
+    public void copy(int from, int to) {
+        checkIndex(from);
+        checkIndex(to);
+        if (from != to) {
+            this.scheduleIds[to] = this.scheduleIds[from];
+            this.timestamps[to] = this.timestamps[from];
+            this.values[to] = this.values[from];
+            this.names[to] = this.names[from];
+            this.rawNumericTypes[to] = this.rawNumericTypes[from];
+        }
+    }
+
+    /**
+     * Removes the values from index <code>size</code> on.
+     *
+     * @param size the number of values to keep
+     */
+    public void truncate(int size) {
+        if (size < 0 || size > this.size) {
+            throw new IndexOutOfBoundsException("Size: " + size + ", current size: " + this.size);
+        }
+
+        for (int i = size; i < this.size; i++) {
+            this.names[i] = null;
+            this.rawNumericTypes[i] = null;
+        }
+        this.size = size;
+    }
+
+    public void clear() {
+        truncate(0);
+    }
+
+    /**
+     * Turns the values of the buffer into numeric data objects added to the given set, and empties the buffer.
+     *
+     * @param data the set to add the numeric data objects to
+     */
+    void moveTo(Set<MeasurementDataNumeric> data) {
+        for (int i = 0; i < this.size; i++) {
+            data.add(new MeasurementDataNumeric(this.timestamps[i], this.scheduleIds[i], this.names[i],
+                this.values[i], this.rawNumericTypes[i]));
+        }
+        clear();
+    }
+
+    private void grow() {
+        int capacity = this.scheduleIds.length * 2;
+
+        int[] newScheduleIds = new int[capacity];
+        System.arraycopy(this.scheduleIds, 0, newScheduleIds, 0, this.size);
+        this.scheduleIds = newScheduleIds;
+
+        long[] newTimestamps = new long[capacity];
+        System.arraycopy(this.timestamps, 0, newTimestamps, 0, this.size);
+        this.timestamps = newTimestamps;
+
+        double[] newValues = new double[capacity];
+        System.arraycopy(this.values, 0, newValues, 0, this.size);
+        this.values = newValues;
+
+        String[] newNames = new String[capacity];
+        System.arraycopy(this.names, 0, newNames, 0, this.size);
+        this.names = newNames;
+
+        NumericType[] newRawNumericTypes = new NumericType[capacity];
+        System.arraycopy(this.rawNumericTypes, 0, newRawNumericTypes, 0, this.size);
+        this.rawNumericTypes = newRawNumericTypes;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= this.size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", size: " + this.size);
+        }
+    }
+}
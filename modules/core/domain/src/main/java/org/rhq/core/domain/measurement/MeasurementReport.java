@@ -35,6 +35,10 @@ import org.rhq.core.domain.measurement.calltime.CallTimeData;
  * resource, it will store that measurement data in an instance of this type.
  * <p/>
  * <p>This report has an optimized serialization strategy.</p>
+ * <p/>
+ * <p>Numeric data can be added either as {@link MeasurementDataNumeric} objects or, to avoid creating objects for each
+ * collected value, as primitive values {@link #addData(MeasurementScheduleRequest, double) for a schedule}. The latter
+ * are held in a {@link MeasurementDataNumericBuffer} until the objects are asked for.</p>
  *
  * @author Greg Hinkle
  * @author Ian Springer
@@ -50,8 +54,23 @@ public class MeasurementReport implements Serializable {
     private Set<MeasurementDataTrait> measurementTraitData = new LinkedHashSet<MeasurementDataTrait>();
     private Set<CallTimeData> callTimeData = new LinkedHashSet<CallTimeData>();
 
+    // the numeric data not turned into objects yet, moved into measurementNumericData before serialization
+    private transient MeasurementDataNumericBuffer numericDataBuffer;
+    private transient int numericDataCapacity;
+
     private long collectionTime;
 
+    public MeasurementReport() {
+    }
+
+    /**
+     * @param numericDataCapacity the number of primitive numeric values expected to be added to this report, e.g. the
+     *                            number added to the previous report
+     */
+    public MeasurementReport(int numericDataCapacity) {
+        this.numericDataCapacity = numericDataCapacity;
+    }
+
     /**
      * Adds the given piece of numeric data to this report. Items are added to this report's list of numeric data in order.
      * That is, the order in which you add multiple pieces of numeric data is the same order in which you get them
@@ -63,6 +82,36 @@ public class MeasurementReport implements Serializable {
         measurementNumericData.add(value); // note, duplicates will be silently ignored
     }
 
+    /**
+     * Adds a numeric value collected now for the given schedule to this report, without creating a
+     * {@link MeasurementDataNumeric} object for it. This is equivalent to
+     * <code>addData(new MeasurementDataNumeric(request, value))</code>, except that duplicates are only ignored when
+     * the numeric data is turned into objects.
+     *
+     * @param request the schedule the value was collected for
+     * @param value   the value
+     */
+    public void addData(MeasurementScheduleRequest request, double value) {
+        addData(System.currentTimeMillis(), request, value);
+    }
+
+    /**
+     * Adds a numeric value collected at the given time for the given schedule to this report, without creating a
+     * {@link MeasurementDataNumeric} object for it.
+     *
+     * @param collectionTime the time the value was collected
+     * @param request        the schedule the value was collected for
+     * @param value          the value
+     *
+     * @see #addData(MeasurementScheduleRequest, double)
+     */
+    public synchronized void addData(long collectionTime, MeasurementScheduleRequest request, double value) {
+        if (this.numericDataBuffer == null) {
+            this.numericDataBuffer = new MeasurementDataNumericBuffer(this.numericDataCapacity);
+        }
+        this.numericDataBuffer.add(collectionTime, request, value);
+    }
+
     /**
      * Adds the given piece of trait data to this report. Items are added to this report's list of trait data in order.
      * That is, the order in which you add multiple pieces of trait data is the same order in which you get them
@@ -92,9 +141,37 @@ public class MeasurementReport implements Serializable {
      * @return the list of all the numeric data items in this report
      */
     public synchronized Set<MeasurementDataNumeric> getNumericData() {
+        if (this.numericDataBuffer != null && this.numericDataBuffer.size() > 0) {
+            this.numericDataBuffer.moveTo(this.measurementNumericData);
+        }
         return measurementNumericData;
     }
 
+    /**
+     * Returns all the numeric data of this report as primitive values, including the data added as
+     * {@link MeasurementDataNumeric} objects, which is moved to the end of the buffer. This is meant for the processing
+     * of the numeric data of a report no more data is added to, without creating objects for it, before it is sent;
+     * the objects are created again when the data is asked for through {@link #getNumericData()}.
+     *
+     * @return the numeric data of this report
+     */
+    @NotNull
+    public synchronized MeasurementDataNumericBuffer getNumericDataBuffer() {
+        if (this.numericDataBuffer == null) {
+            this.numericDataBuffer = new MeasurementDataNumericBuffer(Math.max(this.numericDataCapacity,
+                this.measurementNumericData.size()));
+        }
+
+        if (!this.measurementNumericData.isEmpty()) {
+            for (MeasurementDataNumeric data : this.measurementNumericData) {
+                this.numericDataBuffer.add(data);
+            }
+            this.measurementNumericData.clear();
+        }
+
+        return this.numericDataBuffer;
+    }
+
     /**
      * Returns the set of all trait data items in this report. The data items are ordered in the set in the same order
      * in which they were {@link #addData(MeasurementDataTrait) added}.
@@ -122,18 +199,26 @@ public class MeasurementReport implements Serializable {
      * @return the total number of data items (numeric metrics, traits, or call-time datums) in this report
      */
     public synchronized long getDataCount() {
-        return this.measurementNumericData.size() + this.measurementTraitData.size() + this.callTimeData.size();
+        int bufferedCount = (this.numericDataBuffer != null) ? this.numericDataBuffer.size() : 0;
+        return this.measurementNumericData.size() + bufferedCount + this.measurementTraitData.size()
+            + this.callTimeData.size();
     }
 
-    public long getCollectionTime() {
+    public synchronized long getCollectionTime() {
         return collectionTime;
     }
 
-    public void setCollectionTime(long collectionTime) {
+    public synchronized void setCollectionTime(long collectionTime) {
         this.collectionTime = collectionTime;
     }
 
-    public void incrementCollectionTime(long collectionTime) {
+    public synchronized void incrementCollectionTime(long collectionTime) {
         this.collectionTime += collectionTime;
     }
+
+    // the buffered numeric data is transient, so it is serialized as objects
+    private Object writeReplace() {
+        getNumericData();
+        return this;
+    }
 }
\ No newline at end of file
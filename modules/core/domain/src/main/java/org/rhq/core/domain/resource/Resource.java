@@ -885,6 +885,77 @@ public class Resource implements Comparable<Resource>, Serializable {
     public static final String QUERY_RESOURCE_REPORT = "Resource.findResourceReport";
     public static final String QUERY_RESOURCE_VERSION_REPORT = "Resource.findResourceVersionReport";
 
+    /*
+     * RHQ_RESOURCE_CLOSURE holds one row per (ancestor, descendant) pair of the resource hierarchy, including the
+     * depth-0 row of every resource to itself, so that subtree and lineage lookups are a single indexed probe
+     * regardless of how deep the hierarchy is.
+     */
+    public static final String QUERY_NATIVE_INSERT_CLOSURE_SELF = "" //
+        + "insert into RHQ_RESOURCE_CLOSURE ( ANCESTOR_ID, DESCENDANT_ID, DEPTH ) " //
+        + "     select res.ID, res.ID, 0 " //
+        + "       from RHQ_RESOURCE res " //
+        + "      where res.ID = ? "; // resourceId
+    public static final String QUERY_NATIVE_INSERT_CLOSURE_ANCESTORS = "" //
+        + "insert into RHQ_RESOURCE_CLOSURE ( ANCESTOR_ID, DESCENDANT_ID, DEPTH ) " //
+        + "     select closure.ANCESTOR_ID, ?, closure.DEPTH + 1 " // resourceId
+        + "       from RHQ_RESOURCE_CLOSURE closure " //
+        + "      where closure.DESCENDANT_ID = ? "; // parentResourceId
+    public static final String QUERY_NATIVE_DETACH_CLOSURE_SUBTREE = "" //
+        + "delete from RHQ_RESOURCE_CLOSURE " // unlink the subtree from all of its current ancestors
+        + "      where DESCENDANT_ID in ( select sub.DESCENDANT_ID from RHQ_RESOURCE_CLOSURE sub where sub.ANCESTOR_ID = ? ) " // resourceId
+        + "        and ANCESTOR_ID not in ( select sub.DESCENDANT_ID from RHQ_RESOURCE_CLOSURE sub where sub.ANCESTOR_ID = ? ) "; // resourceId
+    public static final String QUERY_NATIVE_COUNT_CLOSURE_LINK = "" //
+        + "     select count(*) " //
+        + "       from RHQ_RESOURCE_CLOSURE closure " //
+        + "      where closure.ANCESTOR_ID = ? " // ancestorId
+        + "        and closure.DESCENDANT_ID = ? "; // descendantId
+    public static final String QUERY_NATIVE_ATTACH_CLOSURE_SUBTREE = "" //
+        + "insert into RHQ_RESOURCE_CLOSURE ( ANCESTOR_ID, DESCENDANT_ID, DEPTH ) " // link the subtree to its new ancestors
+        + "     select sup.ANCESTOR_ID, sub.DESCENDANT_ID, sup.DEPTH + sub.DEPTH + 1 " //
+        + "       from RHQ_RESOURCE_CLOSURE sup, RHQ_RESOURCE_CLOSURE sub " //
+        + "      where sup.DESCENDANT_ID = ? " // parentResourceId
+        + "        and sub.ANCESTOR_ID = ? "; // resourceId
+    public static final String QUERY_DELETE_CLOSURE_BY_RESOURCE_IDS = "" //
+        + "DELETE FROM RHQ_RESOURCE_CLOSURE WHERE DESCENDANT_ID IN ( :resourceIds )";
+    public static final String QUERY_NATIVE_FIND_CLOSURE_ANCESTOR_IDS = "" //
+        + "     select closure.ANCESTOR_ID " //
+        + "       from RHQ_RESOURCE_CLOSURE closure " //
+        + "      where closure.DESCENDANT_ID = ? " // resourceId
+        + "        and closure.DEPTH > 0 " //
+        + "   order by closure.DEPTH ";
+    public static final String QUERY_NATIVE_COUNT_CLOSURE_MISSING_LINKS = "" //
+        + "     select count(*) " // committed resources without a self row or without a row to their parent
+        + "       from RHQ_RESOURCE res " //
+        + "      where res.INVENTORY_STATUS <> 'UNINVENTORIED' " //
+        + "        and ( not exists ( select 1 from RHQ_RESOURCE_CLOSURE self " //
+        + "                            where self.ANCESTOR_ID = res.ID and self.DESCENDANT_ID = res.ID ) " //
+        + "              or ( res.PARENT_RESOURCE_ID is not null " //
+        + "                   and not exists ( select 1 from RHQ_RESOURCE_CLOSURE link " //
+        + "                                     where link.ANCESTOR_ID = res.PARENT_RESOURCE_ID " //
+        + "                                       and link.DESCENDANT_ID = res.ID " //
+        + "                                       and link.DEPTH = 1 ) ) ) ";
+    public static final String QUERY_NATIVE_COUNT_CLOSURE_STALE_LINKS = "" //
+        + "     select count(*) " // depth-1 rows that no longer match a parent pointer
+        + "       from RHQ_RESOURCE_CLOSURE link " //
+        + "      where link.DEPTH = 1 " //
+        + "        and not exists ( select 1 from RHQ_RESOURCE res " //
+        + "                          where res.ID = link.DESCENDANT_ID " //
+        + "                            and res.PARENT_RESOURCE_ID = link.ANCESTOR_ID ) ";
+    public static final String QUERY_NATIVE_DELETE_CLOSURE = "delete from RHQ_RESOURCE_CLOSURE";
+    public static final String QUERY_NATIVE_INSERT_CLOSURE_ALL_SELF = "" //
+        + "insert into RHQ_RESOURCE_CLOSURE ( ANCESTOR_ID, DESCENDANT_ID, DEPTH ) " //
+        + "     select res.ID, res.ID, 0 " //
+        + "       from RHQ_RESOURCE res " //
+        + "      where res.INVENTORY_STATUS <> 'UNINVENTORIED' ";
+    public static final String QUERY_NATIVE_INSERT_CLOSURE_LEVEL = "" //
+        + "insert into RHQ_RESOURCE_CLOSURE ( ANCESTOR_ID, DESCENDANT_ID, DEPTH ) " //
+        + "     select closure.ANCESTOR_ID, res.ID, closure.DEPTH + 1 " //
+        + "       from RHQ_RESOURCE res, RHQ_RESOURCE_CLOSURE closure " //
+        + "      where res.PARENT_RESOURCE_ID = closure.DESCENDANT_ID " //
+        + "        and res.INVENTORY_STATUS <> 'UNINVENTORIED' " //
+        + "        and closure.ANCESTOR_ID <> res.ID " // stops at a cycle in the parent pointers rather than looping
+        + "        and closure.DEPTH = ? "; // previous depth
+
     private static final int UUID_LENGTH = 36;
 
     private static final long serialVersionUID = 1L;
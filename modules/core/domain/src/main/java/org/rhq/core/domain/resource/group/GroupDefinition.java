@@ -23,6 +23,7 @@
 package org.rhq.core.domain.resource.group;
 
 import java.io.Serializable;
+import java.util.EnumSet;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -83,6 +84,10 @@ import org.rhq.core.domain.util.StringUtils;
     @NamedQuery(name = GroupDefinition.QUERY_FIND_ALL_RECALCULATING, query = "" //
         + "SELECT gd " //
         + "  FROM GroupDefinition AS gd " //
+        + " WHERE gd.recalculationInterval != 0 "), //
+    @NamedQuery(name = GroupDefinition.QUERY_FIND_OLDEST_CALCULATION_TIME, query = "" //
+        + "SELECT MIN(gd.lastCalculationTime) " //
+        + "  FROM GroupDefinition AS gd " //
         + " WHERE gd.recalculationInterval != 0 ") })
 @SequenceGenerator(name = "id", sequenceName = "RHQ_GROUP_DEF_ID_SEQ")
 @Table(name = "RHQ_GROUP_DEF")
@@ -97,6 +102,7 @@ public class GroupDefinition implements Serializable {
     public static final String QUERY_FIND_MANAGED_RESOURCE_GROUP_SIZE_ADMIN = "GroupDefinition.findManagedResourceGroupSize_admin";
     public static final String QUERY_FIND_IDS_FOR_RECALCULATION = "GroupDefinition.findIdsForRecalculation_admin";
     public static final String QUERY_FIND_ALL_RECALCULATING = "GroupDefinition.findAllRecalculating_admin";
+    public static final String QUERY_FIND_OLDEST_CALCULATION_TIME = "GroupDefinition.findOldestCalculationTime_admin";
 
     @Column(name = "ID", nullable = false)
     @GeneratedValue(strategy = GenerationType.AUTO, generator = "id")
@@ -127,6 +133,13 @@ public class GroupDefinition implements Serializable {
     @Column(name = "EXPRESSION")
     private String expression;
 
+    /*
+     * comma-separated list of GroupDefinitionChangeType names the expression depends on; null means the
+     * dependencies are not known yet, in which case the next recalculation must be a full one
+     */
+    @Column(name = "DEPENDENCIES")
+    private String dependencies;
+
     @OneToMany(mappedBy = "groupDefinition", cascade = { CascadeType.PERSIST })
     private Set<ResourceGroup> managedResourceGroups;
 
@@ -248,6 +261,38 @@ public class GroupDefinition implements Serializable {
         this.expression = expression;
     }
 
+    /**
+     * @return the kinds of data this definition's expression depends on, or null if they have not been determined
+     *         since the expression was last changed
+     */
+    public Set<GroupDefinitionChangeType> getDependencies() {
+        if (dependencies == null) {
+            return null;
+        }
+
+        Set<GroupDefinitionChangeType> results = EnumSet.noneOf(GroupDefinitionChangeType.class);
+        for (String dependency : StringUtils.getStringAsList(dependencies, ",", true)) {
+            results.add(GroupDefinitionChangeType.valueOf(dependency));
+        }
+        return results;
+    }
+
+    public void setDependencies(Set<GroupDefinitionChangeType> dependencies) {
+        if (dependencies == null) {
+            this.dependencies = null;
+            return;
+        }
+
+        StringBuilder builder = new StringBuilder();
+        for (GroupDefinitionChangeType dependency : dependencies) {
+            if (builder.length() > 0) {
+                builder.append(',');
+            }
+            builder.append(dependency.name());
+        }
+        this.dependencies = builder.toString();
+    }
+
     public Set<ResourceGroup> getManagedResourceGroups() {
         return managedResourceGroups;
     }
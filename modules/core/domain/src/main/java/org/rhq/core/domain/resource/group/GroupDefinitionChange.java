@@ -0,0 +1,103 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2008 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License, version 2, as
+ * published by the Free Software Foundation, and/or the GNU Lesser
+ * General Public License, version 2.1, also as published by the Free
+ * Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License and the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * and the GNU Lesser General Public License along with this program;
+ * if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.rhq.core.domain.resource.group;
+
+import java.io.Serializable;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.NamedQueries;
+import javax.persistence.NamedQuery;
+import javax.persistence.PrePersist;
+import javax.persistence.SequenceGenerator;
+import javax.persistence.Table;
+
+/**
+ * An entry in the change log consulted by the DynaGroup recalculation thread. Rows are only ever appended (one per
+ * changing transaction, not one per changed resource) so that recording a change never contends on a shared row;
+ * entries older than the oldest calculation time of any recalculating {@link GroupDefinition} are purged.
+ */
+@Entity
+@NamedQueries( {
+    @NamedQuery(name = GroupDefinitionChange.QUERY_FIND_CHANGE_TYPES_SINCE, query = "" //
+        + "SELECT DISTINCT gdc.changeType " //
+        + "  FROM GroupDefinitionChange gdc " //
+        + " WHERE gdc.ctime > :since "), //
+    @NamedQuery(name = GroupDefinitionChange.QUERY_DELETE_OLDER_THAN, query = "" //
+        + "DELETE FROM GroupDefinitionChange gdc " //
+        + " WHERE gdc.ctime < :oldest ") })
+@SequenceGenerator(name = "id", sequenceName = "RHQ_GROUP_DEF_CHANGE_ID_SEQ")
+@Table(name = "RHQ_GROUP_DEF_CHANGE")
+public class GroupDefinitionChange implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    public static final String QUERY_FIND_CHANGE_TYPES_SINCE = "GroupDefinitionChange.findChangeTypesSince";
+    public static final String QUERY_DELETE_OLDER_THAN = "GroupDefinitionChange.deleteOlderThan";
+
+    @Column(name = "ID", nullable = false)
+    @GeneratedValue(strategy = GenerationType.AUTO, generator = "id")
+    @Id
+    private int id;
+
+    @Column(name = "CHANGE_TYPE", nullable = false)
+    @Enumerated(EnumType.STRING)
+    private GroupDefinitionChangeType changeType;
+
+    @Column(name = "CTIME", nullable = false)
+    private long ctime;
+
+    /* no-arg constructor required by EJB spec */
+    protected GroupDefinitionChange() {
+    }
+
+    public GroupDefinitionChange(GroupDefinitionChangeType changeType) {
+        this.changeType = changeType;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public GroupDefinitionChangeType getChangeType() {
+        return changeType;
+    }
+
+    public long getCtime() {
+        return ctime;
+    }
+
+    @PrePersist
+    void onPersist() {
+        this.ctime = System.currentTimeMillis();
+    }
+
+    @Override
+    public String toString() {
+        return "GroupDefinitionChange[id=" + id + ", changeType=" + changeType + ", ctime=" + ctime + "]";
+    }
+}
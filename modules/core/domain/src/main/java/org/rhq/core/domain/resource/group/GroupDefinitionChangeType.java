@@ -0,0 +1,64 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2008 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License, version 2, as
+ * published by the Free Software Foundation, and/or the GNU Lesser
+ * General Public License, version 2.1, also as published by the Free
+ * Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License and the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * and the GNU Lesser General Public License along with this program;
+ * if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.rhq.core.domain.resource.group;
+
+/**
+ * The kinds of inventory data a {@link GroupDefinition}'s expressions can depend on. Each change to data of one of
+ * these kinds is recorded as a {@link GroupDefinitionChange}, which lets the recalculation thread skip definitions
+ * whose dependencies have not changed since they were last calculated.
+ */
+public enum GroupDefinitionChangeType {
+    /**
+     * resources added, removed, renamed, re-versioned or having their inventory status changed
+     */
+    INVENTORY,
+
+    /**
+     * availability changes are not recorded in the change log because of their volume; definitions depending on
+     * availability are therefore always fully recalculated
+     */
+    AVAILABILITY,
+
+    /**
+     * new trait values stored for some resource
+     */
+    TRAIT,
+
+    /**
+     * plugin configuration updates
+     */
+    PLUGIN_CONFIGURATION,
+
+    /**
+     * resource configuration updates
+     */
+    RESOURCE_CONFIGURATION;
+
+    /**
+     * @return true if changes of this type are recorded in the change log, false if definitions depending on this
+     *         type must always be recalculated
+     */
+    public boolean isTracked() {
+        return this != AVAILABILITY;
+    }
+}
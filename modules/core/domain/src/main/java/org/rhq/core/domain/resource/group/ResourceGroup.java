@@ -326,24 +326,17 @@ public class ResourceGroup extends Group {
         + "    insert into RHQ_RESOURCE_GROUP_RES_IMP_MAP ( RESOURCE_ID, RESOURCE_GROUP_ID ) " //
         + "         select res.ID, ? " // groupId
         + "           from RHQ_RESOURCE res " //
-        + "left outer join RHQ_RESOURCE g1parent on res.PARENT_RESOURCE_ID = g1parent.ID " //
-        + "left outer join RHQ_RESOURCE g2parent on g1parent.PARENT_RESOURCE_ID = g2parent.ID " //
-        + "left outer join RHQ_RESOURCE g3parent on g2parent.PARENT_RESOURCE_ID = g3parent.ID " //
-        + "left outer join RHQ_RESOURCE g4parent on g3parent.PARENT_RESOURCE_ID = g4parent.ID " //
-        + "left outer join RHQ_RESOURCE g5parent on g4parent.PARENT_RESOURCE_ID = g5parent.ID " //
-        + "left outer join RHQ_RESOURCE g6parent on g5parent.PARENT_RESOURCE_ID = g6parent.ID " //
-        + "          where ( res.ID = ? or " // resourceId
-        + "                  g1parent.ID = ? or " // resourceId
-        + "                  g2parent.ID = ? or " // resourceId
-        + "                  g3parent.ID = ? or " // resourceId
-        + "                  g4parent.ID = ? or " // resourceId
-        + "                  g5parent.ID = ? or " // resourceId
-        + "                  g6parent.ID = ? ) " // resourceId
-        + "            and ( res.ID not in ( select impRes.ID " //
-        + "                                    from RHQ_RESOURCE_GROUP rg " //
-        + "                              inner join RHQ_RESOURCE_GROUP_RES_IMP_MAP implicitMap on rg.ID = implicitMap.RESOURCE_GROUP_ID " //
-        + "                              inner join RHQ_RESOURCE impRes on implicitMap.RESOURCE_ID = impRes.ID " //
-        + "                                   where rg.ID = ? ) ) "; // groupId
+        + "          where res.ID in ( select closure.DESCENDANT_ID " // any descendant of the resources, including themselves
+        + "                              from RHQ_RESOURCE_CLOSURE closure " //
+        + "                             where closure.ANCESTOR_ID in ( @@RESOURCE_IDS@@ ) ) " //
+        + "            and res.ID not in ( select implicitMap.RESOURCE_ID " //
+        + "                                  from RHQ_RESOURCE_GROUP_RES_IMP_MAP implicitMap " //
+        + "                                 where implicitMap.RESOURCE_GROUP_ID = ? ) "; // groupId
+    public static final String QUERY_NATIVE_ADD_RESOURCE_SUBTREE_TO_GROUP_IMPLICIT = "" //
+        + "    insert into RHQ_RESOURCE_GROUP_RES_IMP_MAP ( RESOURCE_ID, RESOURCE_GROUP_ID ) " //
+        + "         select closure.DESCENDANT_ID, ? " // groupId
+        + "           from RHQ_RESOURCE_CLOSURE closure " //
+        + "          where closure.ANCESTOR_ID = ? "; // resourceId
     public static final String QUERY_NATIVE_REMOVE_RESOURCES_FROM_GROUP_EXPLICIT = "" //
         + "    delete from RHQ_RESOURCE_GROUP_RES_EXP_MAP " //
         + "          where RESOURCE_GROUP_ID = ? " // groupId
@@ -356,39 +349,15 @@ public class ResourceGroup extends Group {
         + "   delete from RHQ_RESOURCE_GROUP_RES_IMP_MAP " // delete mappings
         + "         where RESOURCE_GROUP_ID = ? " // groupId
         + "           and RESOURCE_ID in " // from any descendant of resourceId, including itself
-        + "               ( select res.id " //
-        + "                   from RHQ_RESOURCE res " //
-        + "        left outer join RHQ_RESOURCE g1parent on res.PARENT_RESOURCE_ID = g1parent.ID " //
-        + "        left outer join RHQ_RESOURCE g2parent on g1parent.PARENT_RESOURCE_ID = g2parent.ID " //
-        + "        left outer join RHQ_RESOURCE g3parent on g2parent.PARENT_RESOURCE_ID = g3parent.ID " //
-        + "        left outer join RHQ_RESOURCE g4parent on g3parent.PARENT_RESOURCE_ID = g4parent.ID " //
-        + "        left outer join RHQ_RESOURCE g5parent on g4parent.PARENT_RESOURCE_ID = g5parent.ID " //
-        + "        left outer join RHQ_RESOURCE g6parent on g5parent.PARENT_RESOURCE_ID = g6parent.ID " //
-        + "                  where ( res.ID = ? or " // resourceId
-        + "                          g1parent.ID = ? or " // resourceId
-        + "                          g2parent.ID = ? or " // resourceId
-        + "                          g3parent.ID = ? or " // resourceId
-        + "                          g4parent.ID = ? or " // resourceId
-        + "                          g5parent.ID = ? or " // resourceId
-        + "                          g6parent.ID = ? ) ) " // resourceId
+        + "               ( select closure.DESCENDANT_ID " //
+        + "                   from RHQ_RESOURCE_CLOSURE closure " //
+        + "                  where closure.ANCESTOR_ID = ? ) " // resourceId
         + "           and RESOURCE_ID not in " // which aren't already descendants of members in the explicit set
-        + "               ( select res.id " //
-        + "                   from RHQ_RESOURCE_GROUP_RES_EXP_MAP alreadyMember, RHQ_RESOURCE res " //
-        + "        left outer join RHQ_RESOURCE g1parent on res.PARENT_RESOURCE_ID = g1parent.ID " //
-        + "        left outer join RHQ_RESOURCE g2parent on g1parent.PARENT_RESOURCE_ID = g2parent.ID " //
-        + "        left outer join RHQ_RESOURCE g3parent on g2parent.PARENT_RESOURCE_ID = g3parent.ID " //
-        + "        left outer join RHQ_RESOURCE g4parent on g3parent.PARENT_RESOURCE_ID = g4parent.ID " //
-        + "        left outer join RHQ_RESOURCE g5parent on g4parent.PARENT_RESOURCE_ID = g5parent.ID " //
-        + "        left outer join RHQ_RESOURCE g6parent on g5parent.PARENT_RESOURCE_ID = g6parent.ID " //
+        + "               ( select closure.DESCENDANT_ID " //
+        + "                   from RHQ_RESOURCE_GROUP_RES_EXP_MAP alreadyMember, RHQ_RESOURCE_CLOSURE closure " //
         + "                  where alreadyMember.RESOURCE_GROUP_ID = ? " // groupId
         + "                    and alreadyMember.RESOURCE_ID <> ? " // resourceId
-        + "                    and ( res.ID = alreadyMember.RESOURCE_ID or " //
-        + "                          g1parent.ID = alreadyMember.RESOURCE_ID or " //
-        + "                          g2parent.ID = alreadyMember.RESOURCE_ID or " //
-        + "                          g3parent.ID = alreadyMember.RESOURCE_ID or " //
-        + "                          g4parent.ID = alreadyMember.RESOURCE_ID or " //
-        + "                          g5parent.ID = alreadyMember.RESOURCE_ID or " //
-        + "                          g6parent.ID = alreadyMember.RESOURCE_ID ) ) ";
+        + "                    and closure.ANCESTOR_ID = alreadyMember.RESOURCE_ID ) ";
 
     @Column(name = "ID", nullable = false)
     @GeneratedValue(strategy = GenerationType.AUTO, generator = "id")
@@ -206,6 +206,80 @@ public class EventReportTest {
         assert allEvents.get(eventSource2).iterator().next().getDetail().contains("Event Report Limit Reached:");
     }
 
+    public void testEventReportFoldsRepeats() {
+        ResourceType resourceType = new ResourceType("foo", "foo", ResourceCategory.PLATFORM, null);
+        Resource resource = new Resource(1);
+        EventDefinition eventDefinition = new EventDefinition(resourceType, "foo");
+        EventSource eventSource = new EventSource("foo", eventDefinition, resource);
+        EventSource eventSource2 = new EventSource("bar", eventDefinition, resource);
+        EventReport report = new EventReport(2, 10);
+
+        // the same detail over and over again, which must neither take up room nor count against the limits
+        for (int i = 0; i < 100; i++) {
+            report.addEvent(new Event("foo", "foo", 1000 + i, EventSeverity.ERROR, "foo-repeated", eventSource),
+                eventSource);
+        }
+        // the same detail, but with another severity or from another source, is not a repeat
+        report.addEvent(new Event("foo", "foo", 2000, EventSeverity.WARN, "foo-repeated", eventSource), eventSource);
+        report.addEvent(new Event("bar", "bar", 2000, EventSeverity.ERROR, "foo-repeated", eventSource2),
+            eventSource2);
+
+        assert !report.addLimitWarningEvents() : "nothing should have been dropped";
+        assert report.getFoldedEventCount() == 99 : report.getFoldedEventCount();
+
+        Map<EventSource, Set<Event>> allEvents = report.getEvents();
+        assert allEvents.size() == 2;
+        assert allEvents.get(eventSource).size() == 2;
+        assert allEvents.get(eventSource2).size() == 1;
+
+        for (Event e : allEvents.get(eventSource)) {
+            if (e.getSeverity() == EventSeverity.ERROR) {
+                assert e.getOccurrences() == 100 : e.getOccurrences();
+                assert e.getTimestamp() == 1000 : e.getTimestamp();
+                assert e.getLastTimestamp() == 1099 : e.getLastTimestamp();
+            } else {
+                assert e.getOccurrences() == 1 : e.getOccurrences();
+                assert e.getLastTimestamp() == e.getTimestamp();
+            }
+        }
+        assert allEvents.get(eventSource2).iterator().next().getOccurrences() == 1;
+    }
+
+    public void testEventReportFoldsRepeatsDifferingInNumbers() {
+        ResourceType resourceType = new ResourceType("foo", "foo", ResourceCategory.PLATFORM, null);
+        Resource resource = new Resource(1);
+        EventDefinition eventDefinition = new EventDefinition(resourceType, "foo");
+        EventSource eventSource = new EventSource("foo", eventDefinition, resource);
+        EventReport report = new EventReport(10, 10);
+
+        // the same message logged with another timestamp, thread, request id and address each time
+        for (int i = 0; i < 20; i++) {
+            String detail = "2011-10-19 12:00:" + (10 + i) + ",5" + i + " [http-80" + i + "] Request 0x7f3a" + i
+                + " (id 4f1c" + i + "e2-0d6b) failed: Connection refused";
+            report.addEvent(new Event("foo", "foo", 1000 + i, EventSeverity.ERROR, detail, eventSource), eventSource);
+        }
+        // a different message that merely contains numbers is not a repeat
+        report.addEvent(new Event("foo", "foo", 2000, EventSeverity.ERROR,
+            "2011-10-19 12:00:30,000 [http-800] Request 0x7f3a0 (id 4f1c0e2-0d6b) failed: Connection reset",
+            eventSource), eventSource);
+        // neither are words that happen to contain digits
+        report.addEvent(new Event("foo", "foo", 2000, EventSeverity.ERROR, "Disk sda1 full", eventSource), eventSource);
+        report.addEvent(new Event("foo", "foo", 2000, EventSeverity.ERROR, "Disk sdb1 full", eventSource), eventSource);
+
+        assert report.getFoldedEventCount() == 19 : report.getFoldedEventCount();
+        Set<Event> events = report.getEvents().get(eventSource);
+        assert events.size() == 4 : events;
+        for (Event e : events) {
+            if (e.getTimestamp() == 1000) {
+                assert e.getOccurrences() == 20 : e.getOccurrences();
+                assert e.getLastTimestamp() == 1019 : e.getLastTimestamp();
+                assert e.getDetail().startsWith("2011-10-19 12:00:10,50 ") : "The first detail should be kept";
+            } else {
+                assert e.getOccurrences() == 1 : e;
+            }
+        }
+    }
+
     private void addEvent(EventReport report, String testId, String testDetail, EventSource eventSource) {
         report.addEvent(new Event(testId, testId, System.currentTimeMillis(), EventSeverity.DEBUG, testId + "-"
             + testDetail, eventSource), eventSource);
@@ -0,0 +1,127 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2011 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package org.rhq.core.domain.measurement.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+import org.testng.annotations.Test;
+
+import org.rhq.core.domain.measurement.DataType;
+import org.rhq.core.domain.measurement.MeasurementDataNumeric;
+import org.rhq.core.domain.measurement.MeasurementDataNumericBuffer;
+import org.rhq.core.domain.measurement.MeasurementReport;
+import org.rhq.core.domain.measurement.MeasurementScheduleRequest;
+import org.rhq.core.domain.measurement.NumericType;
+
+@Test
+public class MeasurementReportTest {
+
+    private final MeasurementScheduleRequest dynamic = new MeasurementScheduleRequest(1, "dynamic", 30000L, true,
+        DataType.MEASUREMENT);
+    private final MeasurementScheduleRequest trendsUp = new MeasurementScheduleRequest(2, "trendsUp", 30000L, true,
+        DataType.MEASUREMENT, NumericType.TRENDSUP);
+
+    public void testBufferedNumericData() {
+        MeasurementReport report = new MeasurementReport();
+        report.addData(1000L, dynamic, 1.0);
+        report.addData(1000L, trendsUp, 2.0);
+        report.addData(2000L, dynamic, 3.0);
+        report.addData(1000L, dynamic, 1.0); // a duplicate
+        assert report.getDataCount() == 4;
+
+        // the objects are created when asked for, with the duplicate ignored
+        assert report.getNumericData().size() == 3;
+        assert report.getDataCount() == 3;
+        MeasurementDataNumeric first = report.getNumericData().iterator().next();
+        assert first.getScheduleId() == 1;
+        assert first.getName().equals("dynamic");
+        assert first.getTimestamp() == 1000L;
+        assert first.getValue() == 1.0;
+        assert !first.isPerMinuteCollection();
+    }
+
+    public void testNumericDataBuffer() {
+        MeasurementReport report = new MeasurementReport(1);
+        report.addData(new MeasurementDataNumeric(1000L, dynamic, 1.0));
+        report.addData(new MeasurementDataNumeric(1000L, trendsUp, (Double) null));
+        report.addData(2000L, dynamic, 3.0);
+        report.addData(2000L, trendsUp, 4.0);
+
+        // the objects are moved into the buffer, after the values already in it
+        MeasurementDataNumericBuffer buffer = report.getNumericDataBuffer();
+        assert buffer.size() == 4;
+        assert buffer.getScheduleId(0) == 1;
+        assert buffer.getRawNumericType(1) == NumericType.TRENDSUP;
+        assert buffer.getTimestamp(2) == 1000L;
+        assert Double.isNaN(buffer.getValue(3)) : "A null value should be buffered as NaN";
+
+        // remove the values of the first schedule
+        int kept = 0;
+        for (int i = 0; i < buffer.size(); i++) {
+            if (buffer.getScheduleId(i) != 1) {
+                buffer.copy(i, kept++);
+            }
+        }
+        buffer.truncate(kept);
+        assert buffer.size() == 2;
+        assert buffer.getValue(0) == 4.0;
+        assert buffer.getTimestamp(1) == 1000L;
+        assert report.getDataCount() == 2;
+        assert report.getNumericData().size() == 2;
+    }
+
+    public void testSerialization() throws Exception {
+        MeasurementReport report = new MeasurementReport();
+        report.addData(1000L, dynamic, 1.0);
+        report.addData(new MeasurementDataNumeric(1000L, trendsUp, 2.0));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ObjectOutputStream oos = new ObjectOutputStream(out);
+        oos.writeObject(report);
+        oos.close();
+        ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(out.toByteArray()));
+        MeasurementReport copy = (MeasurementReport) ois.readObject();
+
+        assert copy.getNumericData().size() == 2 : "The buffered values should have been serialized as objects";
+        assert copy.getDataCount() == 2;
+    }
+
+    public void testConcurrentCollectionTime() throws Exception {
+        final MeasurementReport report = new MeasurementReport();
+        Thread[] collectors = new Thread[4];
+        for (int i = 0; i < collectors.length; i++) {
+            collectors[i] = new Thread() {
+                public void run() {
+                    for (int j = 0; j < 100000; j++) {
+                        report.incrementCollectionTime(1L);
+                    }
+                }
+            };
+            collectors[i].start();
+        }
+        for (Thread collector : collectors) {
+            collector.join();
+        }
+
+        assert report.getCollectionTime() == 400000L : "Collection time was lost: " + report.getCollectionTime();
+    }
+}
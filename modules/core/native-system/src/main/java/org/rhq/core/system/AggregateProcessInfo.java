@@ -111,22 +111,22 @@ public class AggregateProcessInfo extends ProcessInfo {
             // Do not bomb if we can't get one or more of these - we'll just handle nulls appropriately.
 
             try {
-                procTimes.add(super.procTime);
+                procTimes.add(getTime());
             } catch (Exception e) {
             }
 
             try {
-                procMems.add(super.procMem);
+                procMems.add(getMemory());
             } catch (Exception e) {
             }
 
             try {
-                procCpus.add(super.procCpu);
+                procCpus.add(getCpu());
             } catch (Exception e) {
             }
 
             try {
-                procFds.add(super.procFd);
+                procFds.add(getFileDescriptor());
             } catch (Exception e) {
             }
 
@@ -204,6 +204,11 @@ public class NativeSystemInfo implements SystemInfo {
     }
 
     public List<ProcessInfo> getAllProcesses() {
+        List<ProcessInfo> snapshot = ProcessTableSnapshot.get();
+        if (snapshot != null) {
+            return snapshot;
+        }
+
         ArrayList<ProcessInfo> processes = new ArrayList<ProcessInfo>();
         long[] pids = null;
         final int timeout = 2 * 60 * 1000; // 2 minutes
@@ -227,13 +232,18 @@ public class NativeSystemInfo implements SystemInfo {
                 ProcessInfo info = new ProcessInfo(pid, sigar);
                 processes.add(info);
             }
+            ProcessTableSnapshot.set(processes);
         }
 
         return processes;
     }
 
     public List<ProcessInfo> getProcesses(String piq) {
-        ProcessInfoQuery piql = new ProcessInfoQuery(getAllProcesses());
+        List<ProcessInfo> processes = getAllProcesses();
+        ProcessInfoQuery piql = ProcessTableSnapshot.getQuery();
+        if (piql == null) {
+            piql = new ProcessInfoQuery(processes);
+        }
         return piql.query(piq);
     }
 
@@ -46,6 +46,11 @@ import org.jetbrains.annotations.Nullable;
 
 /**
  * Encapsulates information about a known process.
+ * <p/>
+ * The information is loaded lazily: each kind of data is only fetched from SIGAR the first time it is asked for, e.g.
+ * a process scan looking at the base names of the processes does not get their environments, memory usage etc. The
+ * name, base name, command line and environment of the process are fetched once; the rest is fetched again the first
+ * time it is asked for after a {@link #refresh()}.
  *
  * @author John Mazzitelli
  * @author Ian Springer
@@ -53,7 +58,21 @@ import org.jetbrains.annotations.Nullable;
 public class ProcessInfo {
     private final Log log = LogFactory.getLog(ProcessInfo.class.getName());
 
-    protected boolean initialized;
+    // what has been loaded - the static data stays loaded, the refreshed data is reloaded after each refresh
+    private static final int NAMES = 1;
+    private static final int COMMAND_LINE = 1 << 1;
+    private static final int ENVIRONMENT = 1 << 2;
+    private static final int STATE = 1 << 3;
+    private static final int EXE = 1 << 4;
+    private static final int TIME = 1 << 5;
+    private static final int MEMORY = 1 << 6;
+    private static final int CPU = 1 << 7;
+    private static final int FILE_DESCRIPTOR = 1 << 8;
+    private static final int CREDENTIALS = 1 << 9;
+    private static final int CREDENTIALS_NAME = 1 << 10;
+    private static final int STATIC_DATA = NAMES | COMMAND_LINE | ENVIRONMENT;
+
+    private int loaded;
 
     // these are static - values remain for the life of this object
     protected long pid;
@@ -88,103 +107,65 @@ public class ProcessInfo {
     public ProcessInfo(long pid, SigarProxy sigar) throws SystemInfoException {
         this.pid = pid;
         this.sigar = sigar;
-        update(pid);
     }
 
+    /**
+     * Makes the data that may change during the life of the process (state, times, memory etc.) be fetched again the
+     * next time it is asked for.
+     *
+     * @throws SystemInfoException
+     */
     public void refresh() throws SystemInfoException {
-        update(this.pid);
+        synchronized (this) {
+            this.loaded &= STATIC_DATA;
+        }
     }
 
-    private void update(long pid) throws SystemInfoException {
-        long startTime = System.currentTimeMillis();
-        try {
-            ProcState procState = null;
-            try {
-                procState = sigar.getProcState(pid);
-            } catch (Exception e) {
-                handleSigarCallException(e, "getProcState");
-            }
-
-            ProcExe procExe = null;
-            try {
-                procExe = sigar.getProcExe(pid);
-            } catch (Exception e) {
-                handleSigarCallException(e, "getProcExe");
-            }
-
-            // If this is the first time we are refreshing this object, initialize the static data.
-            // We only have to do this once, since this data never changes during the life of the process.
-            if (!this.initialized) {
-                String[] procArgs = null;
-                try {
-                    procArgs = sigar.getProcArgs(pid);
-                } catch (Exception e) {
-                    handleSigarCallException(e, "getProcArgs");
-                }
-
-                this.name = (procExe != null) ? procExe.getName() : UNKNOWN;
-                this.baseName = determineBaseName(procExe, procState);
-                this.commandLine = (procArgs != null) ? procArgs : new String[0];
-
-                this.procEnv = null;
-                try {
-                    this.procEnv = sigar.getProcEnv(pid);
-                    if (this.procEnv == null) {
-                        log.debug("SIGAR returned a null environment for [" + this.baseName + "] process with pid ["
-                            + this.pid + "].");
-                    }
-                } catch (Exception e) {
-                    handleSigarCallException(e, "getProcEnv");
-                }
-
-                this.initialized = true;
-            }
-
-            // now refresh the process data
-            this.procState = procState;
-            this.procExe = procExe;
-
-            try {
-                this.procTime = sigar.getProcTime(pid);
-            } catch (Exception e) {
-                handleSigarCallException(e, "getProcTime");
-            }
-
-            try {
-                this.procMem = sigar.getProcMem(pid);
-            } catch (Exception e) {
-                handleSigarCallException(e, "getProcMem");
-            }
-
-            try {
-                this.procCpu = sigar.getProcCpu(pid);
-            } catch (Exception e) {
-                handleSigarCallException(e, "getProcCpu");
-            }
+    /**
+     * Returns <code>true</code> if the given data needs to be loaded, in which case the caller loads it and it is
+     * considered loaded from then on. Data is never loaded for mock objects, which have no SIGAR.
+     */
+    private boolean mustLoad(int data) {
+        if ((this.loaded & data) != 0 || this.sigar == null) {
+            return false;
+        }
+        this.loaded |= data;
+        return true;
+    }
 
-            try {
-                this.procFd = sigar.getProcFd(pid);
-            } catch (Exception e) {
-                handleSigarCallException(e, "getProcFd");
-            }
+    private synchronized void loadNames() {
+        if (mustLoad(NAMES)) {
+            ProcExe exe = getExecutable();
+            this.name = (exe != null) ? exe.getName() : UNKNOWN;
+            this.baseName = determineBaseName(exe, (exe == null || exe.getName() == null) ? getState() : null);
+        }
+    }
 
+    private synchronized void loadCommandLine() {
+        if (mustLoad(COMMAND_LINE)) {
+            String[] procArgs = null;
             try {
-                this.procCred = sigar.getProcCred(pid);
+                procArgs = sigar.getProcArgs(pid);
             } catch (Exception e) {
-                handleSigarCallException(e, "getProcCred");
+                handleSigarCallException(e, "getProcArgs");
             }
+            this.commandLine = (procArgs != null) ? procArgs : new String[0];
+        }
+    }
 
+    @SuppressWarnings("unchecked")
+    private synchronized void loadEnvironment() {
+        if (mustLoad(ENVIRONMENT)) {
+            this.procEnv = null;
             try {
-                this.procCredName = sigar.getProcCredName(pid);
+                this.procEnv = sigar.getProcEnv(pid);
+                if (this.procEnv == null) {
+                    log.debug("SIGAR returned a null environment for [" + getBaseName() + "] process with pid ["
+                        + this.pid + "].");
+                }
             } catch (Exception e) {
-                handleSigarCallException(e, "getProcCredName");
+                handleSigarCallException(e, "getProcEnv");
             }
-        } catch (Exception e) {
-            throw new SystemInfoException(e);
-        }
-        if (log.isDebugEnabled()) {
-            long elapsedTime = System.currentTimeMillis() - startTime;
-            log.debug("Retrieval of process info for pid " + pid + " took " + elapsedTime + " ms.");
         }
     }
 
@@ -271,6 +252,7 @@ public class ProcessInfo {
      * @see    #getCommandLine()
      */
     public String getName() {
+        loadNames();
         return name;
     }
 
@@ -286,14 +268,17 @@ public class ProcessInfo {
      * @see    #getCommandLine()
      */
     public String getBaseName() {
+        loadNames();
         return baseName;
     }
 
     public String[] getCommandLine() {
+        loadCommandLine();
         return commandLine;
     }
 
     public Map<String, String> getEnvironmentVariables() {
+        loadEnvironment();
         if (this.procEnv == null) {
             return Collections.emptyMap();
         }
@@ -323,6 +308,7 @@ public class ProcessInfo {
      */
     @Nullable
     public String getEnvironmentVariable(@NotNull String name) {
+        loadEnvironment();
         if (this.procEnv == null) {
             return null;
         }
@@ -334,38 +320,97 @@ public class ProcessInfo {
     }
 
     public long getParentPid() throws SystemInfoException {
-        return (this.procState != null) ? this.procState.getPpid() : 0L;
+        ProcState state = getState();
+        return (state != null) ? state.getPpid() : 0L;
     }
 
-    public ProcState getState() throws SystemInfoException {
+    public synchronized ProcState getState() throws SystemInfoException {
+        if (mustLoad(STATE)) {
+            this.procState = null;
+            try {
+                this.procState = sigar.getProcState(pid);
+            } catch (Exception e) {
+                handleSigarCallException(e, "getProcState");
+            }
+        }
         return this.procState;
     }
 
-    public ProcExe getExecutable() throws SystemInfoException {
+    public synchronized ProcExe getExecutable() throws SystemInfoException {
+        if (mustLoad(EXE)) {
+            this.procExe = null;
+            try {
+                this.procExe = sigar.getProcExe(pid);
+            } catch (Exception e) {
+                handleSigarCallException(e, "getProcExe");
+            }
+        }
         return this.procExe;
     }
 
-    public ProcTime getTime() throws SystemInfoException {
+    public synchronized ProcTime getTime() throws SystemInfoException {
+        if (mustLoad(TIME)) {
+            try {
+                this.procTime = sigar.getProcTime(pid);
+            } catch (Exception e) {
+                handleSigarCallException(e, "getProcTime");
+            }
+        }
         return this.procTime;
     }
 
-    public ProcMem getMemory() throws SystemInfoException {
+    public synchronized ProcMem getMemory() throws SystemInfoException {
+        if (mustLoad(MEMORY)) {
+            try {
+                this.procMem = sigar.getProcMem(pid);
+            } catch (Exception e) {
+                handleSigarCallException(e, "getProcMem");
+            }
+        }
         return this.procMem;
     }
 
-    public ProcCpu getCpu() throws SystemInfoException {
+    public synchronized ProcCpu getCpu() throws SystemInfoException {
+        if (mustLoad(CPU)) {
+            try {
+                this.procCpu = sigar.getProcCpu(pid);
+            } catch (Exception e) {
+                handleSigarCallException(e, "getProcCpu");
+            }
+        }
         return this.procCpu;
     }
 
-    public ProcFd getFileDescriptor() throws SystemInfoException {
+    public synchronized ProcFd getFileDescriptor() throws SystemInfoException {
+        if (mustLoad(FILE_DESCRIPTOR)) {
+            try {
+                this.procFd = sigar.getProcFd(pid);
+            } catch (Exception e) {
+                handleSigarCallException(e, "getProcFd");
+            }
+        }
         return this.procFd;
     }
 
-    public ProcCred getCredentials() throws SystemInfoException {
+    public synchronized ProcCred getCredentials() throws SystemInfoException {
+        if (mustLoad(CREDENTIALS)) {
+            try {
+                this.procCred = sigar.getProcCred(pid);
+            } catch (Exception e) {
+                handleSigarCallException(e, "getProcCred");
+            }
+        }
         return this.procCred;
     }
 
-    public ProcCredName getCredentialsName() throws SystemInfoException {
+    public synchronized ProcCredName getCredentialsName() throws SystemInfoException {
+        if (mustLoad(CREDENTIALS_NAME)) {
+            try {
+                this.procCredName = sigar.getProcCredName(pid);
+            } catch (Exception e) {
+                handleSigarCallException(e, "getProcCredName");
+            }
+        }
         return this.procCredName;
     }
 
@@ -378,8 +423,9 @@ public class ProcessInfo {
         String result = null;
 
         try {
-            if (null != this.procExe) {
-                result = this.procExe.getCwd();
+            ProcExe exe = getExecutable();
+            if (null != exe) {
+                result = exe.getCwd();
             }
         } catch (Exception e) {
             handleSigarCallException(e, "procExe.getCwd()");
@@ -390,9 +436,10 @@ public class ProcessInfo {
 
     public boolean isRunning() throws SystemInfoException {
         boolean running = false;
+        ProcState state = getState();
 
-        if (this.procState != null) {
-            running = (this.procState.getState() == ProcState.RUN || this.procState.getState() == ProcState.SLEEP || this.procState
+        if (state != null) {
+            running = (state.getState() == ProcState.RUN || state.getState() == ProcState.SLEEP || state
                 .getState() == ProcState.IDLE);
 
         }
@@ -0,0 +1,108 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2011 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License, version 2, as
+ * published by the Free Software Foundation, and/or the GNU Lesser
+ * General Public License, version 2.1, also as published by the Free
+ * Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License and the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * and the GNU Lesser General Public License along with this program;
+ * if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.rhq.core.system;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.rhq.core.system.pquery.ProcessInfoQuery;
+
+/**
+ * Shares one snapshot of the process table between everything that asks for it while a scan (such as a server
+ * discovery scan) is in progress, so the process table is read, and the information of each process loaded, only once
+ * per scan.
+ * <p/>
+ * Whoever runs a scan calls {@link #begin()} and then {@link #end()} in a finally block. Outside of scans, each call to
+ * {@link SystemInfo#getAllProcesses()} reads the process table again.
+ * <p/>
+ * The {@link ProcessInfoQuery} over the snapshot is shared too, so the indexes it builds serve all the queries made
+ * during the scan.
+ */
+public class ProcessTableSnapshot {
+    private static final Object LOCK = new Object();
+
+    private static int scans;
+    private static List<ProcessInfo> processes;
+    private static ProcessInfoQuery query;
+
+    private ProcessTableSnapshot() {
+    }
+
+    /**
+     * Starts sharing the process table snapshot, until the matching call to {@link #end()}.
+     */
+    public static void begin() {
+        synchronized (LOCK) {
+            scans++;
+        }
+    }
+
+    /**
+     * Stops sharing the process table snapshot; it is dropped once all the scans in progress have ended.
+     */
+    public static void end() {
+        synchronized (LOCK) {
+            if (scans > 0 && --scans == 0) {
+                processes = null;
+                query = null;
+            }
+        }
+    }
+
+    /**
+     * @return the query over the shared snapshot, or <code>null</code> if there is none
+     */
+    public static ProcessInfoQuery getQuery() {
+        synchronized (LOCK) {
+            if (processes == null) {
+                return null;
+            }
+            if (query == null) {
+                query = new ProcessInfoQuery(processes);
+            }
+            return query;
+        }
+    }
+
+    /**
+     * @return a copy of the shared snapshot, or <code>null</code> if there is none and the process table has to be read
+     */
+    static List<ProcessInfo> get() {
+        synchronized (LOCK) {
+            return (processes != null) ? new ArrayList<ProcessInfo>(processes) : null;
+        }
+    }
+
+    /**
+     * Shares the given process table, if a scan is in progress.
+     *
+     * @param processTable the processes that were just read
+     */
+    static void set(List<ProcessInfo> processTable) {
+        synchronized (LOCK) {
+            if (scans > 0 && processes == null) {
+                processes = new ArrayList<ProcessInfo>(processTable);
+            }
+        }
+    }
+}
@@ -22,9 +22,20 @@
   */
 package org.rhq.core.system.pquery;
 
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Pattern;
+
 import org.rhq.core.system.pquery.Conditional.Operator;
 
 class Operation {
+    /**
+     * The regular expressions compiled so far - the same few show up in the queries of every discovery scan. In case
+     * something like the contents of pid files makes this grow, it is simply cleared once it gets too big.
+     */
+    private static final ConcurrentMap<String, Pattern> PATTERNS = new ConcurrentHashMap<String, Pattern>();
+    private static final int MAX_PATTERNS = 1000;
+
     private final Operator operator;
 
     Operation(Operator operator) {
@@ -41,12 +52,24 @@ class Operation {
         }
 
         if (operator.equals(Operator.match)) {
-            return value1.matches(value2);
+            return getPattern(value2).matcher(value1).matches();
         } else if (operator.equals(Operator.nomatch)) {
-            return !value1.matches(value2);
+            return !getPattern(value2).matcher(value1).matches();
         } else {
             // should never happen unless we add more operators but forgot to create a new else clause for it
             throw new IllegalArgumentException("Invalid operator: " + operator);
         }
     }
-}
\ No newline at end of file
+
+    private static Pattern getPattern(String regex) {
+        Pattern pattern = PATTERNS.get(regex);
+        if (pattern == null) {
+            pattern = Pattern.compile(regex);
+            if (PATTERNS.size() >= MAX_PATTERNS) {
+                PATTERNS.clear();
+            }
+            PATTERNS.put(regex, pattern);
+        }
+        return pattern;
+    }
+}
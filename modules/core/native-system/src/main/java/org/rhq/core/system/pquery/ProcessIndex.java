@@ -0,0 +1,420 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2011 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License, version 2, as
+ * published by the Free Software Foundation, and/or the GNU Lesser
+ * General Public License, version 2.1, also as published by the Free
+ * Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License and the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * and the GNU Lesser General Public License along with this program;
+ * if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.rhq.core.system.pquery;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.rhq.core.system.ProcessInfo;
+import org.rhq.core.system.pquery.Attribute.ProcessCategoryAttributes;
+import org.rhq.core.system.pquery.Conditional.Category;
+import org.rhq.core.system.pquery.Conditional.Qualifier;
+
+/**
+ * Indexes a table of processes so that a {@link Criteria} can be matched against all of them at once, evaluating its
+ * regular expression once per distinct value (e.g. once for all the "httpd" processes) rather than once per process.
+ * The indexes are built the first time a criteria needs them and are then reused by all the queries made against the
+ * same process table:
+ *
+ * <ul>
+ *   <li>process names and basenames, each to the pids of the processes having it</li>
+ *   <li>command line arguments, sorted so that the arguments starting with a given argument name are found with a
+ *     prefix lookup</li>
+ *   <li>the children of each process, and the processes whose parent is not in the table</li>
+ * </ul>
+ *
+ * @see ProcessInfoQuery
+ */
+class ProcessIndex {
+    private final Map<Long, ProcessInfo> processes;
+
+    private Map<String, Set<Long>> names;
+    private Map<String, Set<Long>> baseNames;
+    private Map<Long, String[]> commandLines;
+    private NavigableMap<String, List<ArgumentPosition>> arguments;
+    private Map<Long, Set<Long>> children;
+    private Set<Long> orphans;
+
+    ProcessIndex(Map<Long, ProcessInfo> processes) {
+        this.processes = processes;
+    }
+
+    /**
+     * Returns <code>true</code> if the given criteria can be matched using the indexes. Criteria on the pid are cheap
+     * enough to match one process at a time, unless they are about the parent process. Criteria on any argument have to
+     * look at every distinct argument, so building the argument index for them costs more than looking at the
+     * arguments of each process; they only use it if it was built for other criteria.
+     */
+    synchronized boolean isIndexed(Criteria criteria) {
+        if (isParentCriteria(criteria)) {
+            return true;
+        }
+        if (criteria.getConditional().getCategory().equals(Category.arg)
+            && criteria.getConditional().getAttribute().getAttributeValue().equals("*")) {
+            return this.arguments != null;
+        }
+        return !isPidCriteria(criteria);
+    }
+
+    /**
+     * Returns <code>true</code> if the indexes the given criteria needs have already been built, i.e. matching it
+     * against the whole table costs no more than matching it against a few processes.
+     */
+    synchronized boolean isBuilt(Criteria criteria) {
+        if (isParentCriteria(criteria) && this.children == null) {
+            return false;
+        }
+
+        if (criteria.getConditional().getCategory().equals(Category.arg)) {
+            return usesArgumentIndex(criteria) ? this.arguments != null : this.commandLines != null;
+        }
+
+        String attribute = criteria.getConditional().getAttribute().getAttributeValue();
+        if (attribute.equals(ProcessCategoryAttributes.name.toString())) {
+            return this.names != null;
+        } else if (attribute.equals(ProcessCategoryAttributes.basename.toString())) {
+            return this.baseNames != null;
+        } else {
+            return isParentCriteria(criteria); // the pid needs no index
+        }
+    }
+
+    /**
+     * Matches the given criteria against all the processes in the table.
+     *
+     * @param  criteria the criteria to match
+     *
+     * @return the pids of the processes that match
+     */
+    Set<Long> match(Criteria criteria) {
+        Set<Long> matches = matchProcess(criteria);
+
+        if (!isParentCriteria(criteria)) {
+            return matches;
+        }
+
+        // the processes that match are the ones whose parent matches
+        Set<Long> childMatches = new HashSet<Long>();
+        Map<Long, Set<Long>> childrenIndex = getChildren();
+        for (Long parent : matches) {
+            Set<Long> childPids = childrenIndex.get(parent);
+            if (childPids != null) {
+                childMatches.addAll(childPids);
+            }
+        }
+
+        if (matchesMissingProcess(criteria)) {
+            childMatches.addAll(getOrphans());
+        }
+
+        return childMatches;
+    }
+
+    /**
+     * Matches the given criteria, without its qualifier, against the processes themselves.
+     */
+    private Set<Long> matchProcess(Criteria criteria) {
+        Conditional conditional = criteria.getConditional();
+        Operation op = new Operation(conditional.getOperator());
+        String value = criteria.getValue();
+
+        if (conditional.getCategory().equals(Category.arg)) {
+            String attribute = conditional.getAttribute().getAttributeValue();
+            if (attribute.equals("*")) {
+                return matchAnyArgument(op, value);
+            }
+            Integer argumentIndex = conditional.getAttribute().getAttributeValueAsInteger();
+            if (argumentIndex != null) {
+                return matchArgument(op, value, argumentIndex.intValue());
+            }
+            return matchNamedArgument(op, value, attribute);
+        }
+
+        String attribute = conditional.getAttribute().getAttributeValue();
+        if (attribute.equals(ProcessCategoryAttributes.name.toString())) {
+            return matchKeys(getNames(), op, value);
+        } else if (attribute.equals(ProcessCategoryAttributes.basename.toString())) {
+            return matchKeys(getBaseNames(), op, value);
+        } else if (attribute.equals(ProcessCategoryAttributes.pid.toString())) {
+            return matchPids(op, value);
+        } else if (attribute.equals(ProcessCategoryAttributes.pidfile.toString())) {
+            return matchPids(op, ProcessInfoQuery.getPidfileContents(value));
+        } else {
+            throw new IllegalArgumentException(
+                "Criteria with 'process' category must have an attribute of either 'name' or 'basename': " + criteria);
+        }
+    }
+
+    /**
+     * Returns whether the given criteria matches a process that is not there, which is what a process whose parent is
+     * not in the table is matched against when the criteria has the parent qualifier.
+     */
+    private boolean matchesMissingProcess(Criteria criteria) {
+        if (criteria.getConditional().getCategory().equals(Category.arg)) {
+            return false; // there are no arguments to match
+        }
+
+        String attribute = criteria.getConditional().getAttribute().getAttributeValue();
+        if (attribute.equals(ProcessCategoryAttributes.pidfile.toString())) {
+            return false; // there is no pid to match
+        }
+
+        return new Operation(criteria.getConditional().getOperator()).doOperation("", criteria.getValue());
+    }
+
+    private Set<Long> matchKeys(Map<String, Set<Long>> index, Operation op, String value) {
+        Set<Long> matches = new HashSet<Long>();
+        for (Map.Entry<String, Set<Long>> entry : index.entrySet()) {
+            if (op.doOperation(entry.getKey(), value)) {
+                matches.addAll(entry.getValue());
+            }
+        }
+        return matches;
+    }
+
+    private Set<Long> matchPids(Operation op, String value) {
+        Set<Long> matches = new HashSet<Long>();
+        for (Long pid : this.processes.keySet()) {
+            if (op.doOperation(pid.toString(), value)) {
+                matches.add(pid);
+            }
+        }
+        return matches;
+    }
+
+    private Set<Long> matchAnyArgument(Operation op, String value) {
+        Set<Long> matches = new HashSet<Long>();
+        for (Map.Entry<String, List<ArgumentPosition>> entry : getArguments().entrySet()) {
+            if (op.doOperation(entry.getKey(), value)) {
+                for (ArgumentPosition position : entry.getValue()) {
+                    matches.add(position.pid);
+                }
+            }
+        }
+        return matches;
+    }
+
+    private Set<Long> matchArgument(Operation op, String value, int argumentIndex) {
+        Set<Long> matches = new HashSet<Long>();
+        Map<String, Boolean> results = new HashMap<String, Boolean>();
+        for (Map.Entry<Long, String[]> entry : getCommandLines().entrySet()) {
+            String[] cmdline = entry.getValue();
+
+            // an arg of -1 means the query wants to obtain the last argument in the command line
+            int index = (argumentIndex < 0) ? (cmdline.length - 1) : argumentIndex;
+            if ((cmdline.length - 1) < index) {
+                continue; // process doesn't have enough args - there is no command line argument with that index
+            }
+
+            if (doOperation(op, cmdline[index], value, results)) {
+                matches.add(entry.getKey());
+            }
+        }
+        return matches;
+    }
+
+    private Set<Long> matchNamedArgument(Operation op, String value, String argumentName) {
+        Set<Long> matches = new HashSet<Long>();
+        Map<String, Boolean> results = new HashMap<String, Boolean>();
+        Map<Long, String[]> cmdlines = getCommandLines();
+
+        // the arguments are sorted, so all the ones starting with the name follow the name itself
+        for (Map.Entry<String, List<ArgumentPosition>> entry : getArguments().tailMap(argumentName, true).entrySet()) {
+            String arg = entry.getKey();
+            if (!arg.startsWith(argumentName)) {
+                break;
+            }
+
+            int equals = arg.indexOf('=');
+            for (ArgumentPosition position : entry.getValue()) {
+                String operand;
+                if (arg.equals(argumentName)) {
+                    // "exec.exe -arg value" or "exec.exe -arg" so the value is the next argument
+                    String[] cmdline = cmdlines.get(position.pid);
+                    operand = ((position.index + 1) < cmdline.length) ? cmdline[position.index + 1] : "";
+                } else if (equals != -1) {
+                    // "exec.exe -arg=value" so the value is after the equals sign within the arg
+                    operand = (arg.length() > (equals + 1)) ? arg.substring(equals + 1) : "";
+                } else {
+                    continue; // the argument looked like what we were trying to find, but it really wasn't
+                }
+
+                if (doOperation(op, operand, value, results)) {
+                    matches.add(position.pid);
+                }
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Performs the operation, remembering the result for the operand in case other processes have the same one.
+     */
+    private boolean doOperation(Operation op, String operand, String value, Map<String, Boolean> results) {
+        Boolean result = results.get(operand);
+        if (result == null) {
+            result = Boolean.valueOf(op.doOperation(operand, value));
+            results.put(operand, result);
+        }
+        return result.booleanValue();
+    }
+
+    private synchronized Map<String, Set<Long>> getNames() {
+        if (this.names == null) {
+            Map<String, Set<Long>> index = new HashMap<String, Set<Long>>();
+            for (ProcessInfo process : this.processes.values()) {
+                addToIndex(index, process.getName(), process.getPid());
+            }
+            this.names = index;
+        }
+        return this.names;
+    }
+
+    private synchronized Map<String, Set<Long>> getBaseNames() {
+        if (this.baseNames == null) {
+            Map<String, Set<Long>> index = new HashMap<String, Set<Long>>();
+            for (ProcessInfo process : this.processes.values()) {
+                addToIndex(index, process.getBaseName(), process.getPid());
+            }
+            this.baseNames = index;
+        }
+        return this.baseNames;
+    }
+
+    private static void addToIndex(Map<String, Set<Long>> index, String key, long pid) {
+        if (key == null) {
+            return; // a null value never matches anything
+        }
+
+        Set<Long> pids = index.get(key);
+        if (pids == null) {
+            pids = new HashSet<Long>(2);
+            index.put(key, pids);
+        }
+        pids.add(pid);
+    }
+
+    /**
+     * @return the non-empty command lines, keyed on the pids
+     */
+    private synchronized Map<Long, String[]> getCommandLines() {
+        if (this.commandLines == null) {
+            Map<Long, String[]> index = new HashMap<Long, String[]>(this.processes.size());
+            for (ProcessInfo process : this.processes.values()) {
+                String[] cmdline = process.getCommandLine();
+                if ((cmdline != null) && (cmdline.length > 0)) {
+                    index.put(process.getPid(), cmdline);
+                }
+            }
+            this.commandLines = index;
+        }
+        return this.commandLines;
+    }
+
+    private synchronized NavigableMap<String, List<ArgumentPosition>> getArguments() {
+        if (this.arguments == null) {
+            NavigableMap<String, List<ArgumentPosition>> index = new TreeMap<String, List<ArgumentPosition>>();
+            for (Map.Entry<Long, String[]> entry : getCommandLines().entrySet()) {
+                String[] cmdline = entry.getValue();
+                for (int i = 0; i < cmdline.length; i++) {
+                    if (cmdline[i] == null) {
+                        continue;
+                    }
+                    List<ArgumentPosition> positions = index.get(cmdline[i]);
+                    if (positions == null) {
+                        positions = new ArrayList<ArgumentPosition>(1);
+                        index.put(cmdline[i], positions);
+                    }
+                    positions.add(new ArgumentPosition(entry.getKey(), i));
+                }
+            }
+            this.arguments = index;
+        }
+        return this.arguments;
+    }
+
+    private synchronized Map<Long, Set<Long>> getChildren() {
+        if (this.children == null) {
+            Map<Long, Set<Long>> index = new HashMap<Long, Set<Long>>();
+            Set<Long> withoutParent = new HashSet<Long>();
+            for (ProcessInfo process : this.processes.values()) {
+                Long parent = process.getParentPid();
+                if (this.processes.containsKey(parent)) {
+                    Set<Long> childPids = index.get(parent);
+                    if (childPids == null) {
+                        childPids = new HashSet<Long>(2);
+                        index.put(parent, childPids);
+                    }
+                    childPids.add(process.getPid());
+                } else {
+                    withoutParent.add(process.getPid());
+                }
+            }
+            this.children = index;
+            this.orphans = Collections.unmodifiableSet(withoutParent);
+        }
+        return this.children;
+    }
+
+    private synchronized Set<Long> getOrphans() {
+        getChildren();
+        return this.orphans;
+    }
+
+    private static boolean isParentCriteria(Criteria criteria) {
+        return criteria.getConditional().getQualifier().equals(Qualifier.parent);
+    }
+
+    private static boolean isPidCriteria(Criteria criteria) {
+        if (!criteria.getConditional().getCategory().equals(Category.process)) {
+            return false;
+        }
+        String attribute = criteria.getConditional().getAttribute().getAttributeValue();
+        return attribute.equals(ProcessCategoryAttributes.pid.toString())
+            || attribute.equals(ProcessCategoryAttributes.pidfile.toString());
+    }
+
+    private static boolean usesArgumentIndex(Criteria criteria) {
+        return criteria.getConditional().getAttribute().getAttributeValueAsInteger() == null;
+    }
+
+    /**
+     * Where an argument appears: the pid of the process and the index in its command line.
+     */
+    private static class ArgumentPosition {
+        private final long pid;
+        private final int index;
+
+        private ArgumentPosition(long pid, int index) {
+            this.pid = pid;
+            this.index = index;
+        }
+    }
+}
@@ -24,11 +24,18 @@ package org.rhq.core.system.pquery;
 
 import java.io.FileInputStream;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
 import org.rhq.core.system.NativeSystemInfo;
 import org.rhq.core.system.ProcessInfo;
 import org.rhq.core.system.pquery.Conditional.Qualifier;
@@ -179,14 +186,33 @@ import org.rhq.core.system.pquery.Conditional.Qualifier;
  *   </tr>
  * </table>
  *
+ * <p>The same queries are made over and over again, so they are only parsed once. The criteria of a query are matched
+ * against the whole process table using indexes that are built on first use and kept for as long as this object is
+ * used; reusing one object for all the queries made against the same processes therefore makes each query cheaper.
+ * Criteria whose indexes have not been built yet are only matched against the processes the previous criteria of the
+ * query matched.</p>
+ *
  * @author John Mazzitelli
  */
 public class ProcessInfoQuery {
+    /**
+     * The parsed queries, keyed on the query strings. Queries come from plugin descriptors so there are only so many
+     * of them, but the map is cleared should it ever get too big.
+     */
+    private static final ConcurrentMap<String, List<Criteria>> COMPILED_QUERIES =
+        new ConcurrentHashMap<String, List<Criteria>>();
+    private static final int MAX_COMPILED_QUERIES = 500;
+
     /**
      * The map of all processes keyed on their pids.
      */
     private Map<Long, ProcessInfo> allProcesses;
 
+    /**
+     * The indexes over {@link #allProcesses}.
+     */
+    private final ProcessIndex index;
+
     /**
      * Constructor for {@link ProcessInfoQuery} given an collection of process information that represents the processes
      * currently running. Think of the <code>processes</code> data as coming from part of the output you see in the
@@ -197,10 +223,11 @@ public class ProcessInfoQuery {
      * @see   NativeSystemInfo#getAllProcesses()
      */
     public ProcessInfoQuery(List<ProcessInfo> processes) {
-        this.allProcesses = new HashMap<Long, ProcessInfo>(processes.size());
+        this.allProcesses = new LinkedHashMap<Long, ProcessInfo>(processes.size());
         for (ProcessInfo process : processes) {
             this.allProcesses.put(process.getPid(), process);
         }
+        this.index = new ProcessIndex(this.allProcesses);
     }
 
     /**
@@ -230,51 +257,143 @@ public class ProcessInfoQuery {
             return new ArrayList<ProcessInfo>();
         }
 
-        // keyed on pid so we automatically avoid dups (in case more than one criteria matches)
-        Map<Long, ProcessInfo> queryResults = new HashMap<Long, ProcessInfo>(this.allProcesses);
-        Map<Long, ProcessInfo> criteriaResults;
+        // Criteria are ANDed together, so the processes that match are the intersection of what each criteria matches.
+        // The criteria are sorted on how much process information they need: the first one is matched against all the
+        // processes, building the index it needs if there is one. The others are matched against all the processes too
+        // if their index has already been built, otherwise only against the few processes that are still candidates,
+        // so that the information they need (e.g. the command line) is only loaded for those.
+        Set<Long> candidates = null; // null means all processes
 
         for (Criteria criteria : criteriaList) {
-            if (criteria.getConditional().getCategory().equals(Conditional.Category.process)) {
-                criteriaResults = doProcessCriteriaQuery(criteria);
-            } else if (criteria.getConditional().getCategory().equals(Conditional.Category.arg)) {
-                criteriaResults = doArgCriteriaQuery(criteria);
+            Set<Long> criteriaResults;
+            if (this.index.isIndexed(criteria) && ((candidates == null) || this.index.isBuilt(criteria))) {
+                criteriaResults = this.index.match(criteria);
+                if (candidates != null) {
+                    criteriaResults = intersect(candidates, criteriaResults);
+                }
             } else {
-                throw new IllegalArgumentException("Unknown category: " + criteria); // should never happen
+                Collection<ProcessInfo> processes = (candidates == null) ? this.allProcesses.values()
+                    : getProcesses(candidates);
+                criteriaResults = doCriteriaQuery(criteria, processes).keySet();
             }
 
-            // multiple criteria results are ANDed together
-            // only retain those previously matched processes that were also matched in the latest criteria
-            Set<Long> pids = new HashSet<Long>(queryResults.keySet()); // new set to avoid concurrent mod exceptions
-
-            for (Long pid : pids) {
-                if (!criteriaResults.containsKey(pid)) { // a previously matched process was not matched in the latest criteria, so removed it
-                    queryResults.remove(pid);
-                }
-            }
+            candidates = criteriaResults;
 
-            if (queryResults.size() == 0) {
+            if (candidates.size() == 0) {
                 // we've eliminated every possible process - don't bother running any more criteria
                 break;
             }
         }
 
-        List<ProcessInfo> results = new ArrayList<ProcessInfo>(queryResults.size());
-        results.addAll(queryResults.values());
+        // return the matches in the order the processes were given to us
+        List<ProcessInfo> results = new ArrayList<ProcessInfo>(candidates.size());
+        for (ProcessInfo process : this.allProcesses.values()) {
+            if (candidates.contains(process.getPid())) {
+                results.add(process);
+            }
+        }
 
         return results;
     }
 
+    /**
+     * Performs a query like {@link #query(String)} does, but without using any index: each criteria is matched against
+     * the processes the previous criteria matched, by looking at each of them. This is how queries used to be made, so
+     * the results are the same as those of {@link #query(String)}, although maybe not in the same order.
+     *
+     * @param  query the query string containing the criteria to match
+     *
+     * @return the matches processes
+     */
+    List<ProcessInfo> scan(String query) {
+        List<Criteria> criteriaList = getCriteriaList(query);
+        if (criteriaList.size() == 0) {
+            return new ArrayList<ProcessInfo>();
+        }
+
+        Collection<ProcessInfo> candidates = this.allProcesses.values();
+        for (Criteria criteria : criteriaList) {
+            candidates = doCriteriaQuery(criteria, candidates).values();
+            if (candidates.size() == 0) {
+                break;
+            }
+        }
+
+        return new ArrayList<ProcessInfo>(candidates);
+    }
+
+    private Map<Long, ProcessInfo> doCriteriaQuery(Criteria criteria, Collection<ProcessInfo> processes) {
+        if (criteria.getConditional().getCategory().equals(Conditional.Category.process)) {
+            return doProcessCriteriaQuery(criteria, processes);
+        } else if (criteria.getConditional().getCategory().equals(Conditional.Category.arg)) {
+            return doArgCriteriaQuery(criteria, processes);
+        } else {
+            throw new IllegalArgumentException("Unknown category: " + criteria); // should never happen
+        }
+    }
+
+    private List<ProcessInfo> getProcesses(Set<Long> pids) {
+        List<ProcessInfo> processes = new ArrayList<ProcessInfo>(pids.size());
+        for (Long pid : pids) {
+            processes.add(this.allProcesses.get(pid));
+        }
+        return processes;
+    }
+
+    private static Set<Long> intersect(Set<Long> set1, Set<Long> set2) {
+        Set<Long> smaller = (set1.size() <= set2.size()) ? set1 : set2;
+        Set<Long> larger = (smaller == set1) ? set2 : set1;
+        Set<Long> intersection = new HashSet<Long>(smaller.size());
+        for (Long pid : smaller) {
+            if (larger.contains(pid)) {
+                intersection.add(pid);
+            }
+        }
+        return intersection;
+    }
+
+    /**
+     * Returns how much process information the given criteria needs, relative to the other criteria.
+     */
+    private static int getCost(Criteria criteria) {
+        Conditional conditional = criteria.getConditional();
+        int cost;
+        if (conditional.getCategory().equals(Conditional.Category.arg)) {
+            cost = 2; // the command line
+        } else {
+            String attribute = conditional.getAttribute().getAttributeValue();
+            if (attribute.equals(Attribute.ProcessCategoryAttributes.pid.toString())
+                || attribute.equals(Attribute.ProcessCategoryAttributes.pidfile.toString())) {
+                cost = 0; // nothing but the pid
+            } else {
+                cost = 1; // the executable
+            }
+        }
+
+        if (conditional.getQualifier().equals(Qualifier.parent)) {
+            cost += 3; // the state of the process to find its parent, and then the parent's information
+        }
+
+        return cost;
+    }
+
+    private static final Comparator<Criteria> CRITERIA_COST_COMPARATOR = new Comparator<Criteria>() {
+        public int compare(Criteria c1, Criteria c2) {
+            return getCost(c1) - getCost(c2);
+        }
+    };
+
     /**
      * Runs the given criteria with the arg conditional and returns the processes that match.
      *
      * @param  criteria the criteria with the arg conditional
+     * @param  processes the processes to match
      *
      * @return the matched processes keyed on the pids
      *
      * @throws IllegalArgumentException
      */
-    private Map<Long, ProcessInfo> doArgCriteriaQuery(Criteria criteria) {
+    private Map<Long, ProcessInfo> doArgCriteriaQuery(Criteria criteria, Collection<ProcessInfo> processes) {
         Map<Long, ProcessInfo> matches = new HashMap<Long, ProcessInfo>();
 
         Attribute attribute = criteria.getConditional().getAttribute();
@@ -284,7 +403,7 @@ public class ProcessInfoQuery {
         String operand1 = null;
         String operand2 = criteria.getValue();
 
-        for (ProcessInfo process : getProcesses()) {
+        for (ProcessInfo process : processes) {
             ProcessInfo processToMatch; // will be the same as process unless the parent qualifier was provided
 
             if (qualifier.equals(Qualifier.parent)) {
@@ -365,12 +484,13 @@ public class ProcessInfoQuery {
      * Runs the given criteria with the process conditional and returns the processes that match.
      *
      * @param  criteria the criteria with the process conditional
+     * @param  processes the processes to match
      *
      * @return the matched processes keyed on the pids
      *
      * @throws IllegalArgumentException
      */
-    private Map<Long, ProcessInfo> doProcessCriteriaQuery(Criteria criteria) {
+    private Map<Long, ProcessInfo> doProcessCriteriaQuery(Criteria criteria, Collection<ProcessInfo> processes) {
         Map<Long, ProcessInfo> matches = new HashMap<Long, ProcessInfo>();
 
         Attribute attribute = criteria.getConditional().getAttribute();
@@ -382,7 +502,7 @@ public class ProcessInfoQuery {
 
         String pidfileContentsCache = null; // so we avoid reading the file over and over again
 
-        for (ProcessInfo process : getProcesses()) {
+        for (ProcessInfo process : processes) {
             ProcessInfo processToMatch; // will be the same as process unless the parent qualifier was provided
 
             if (qualifier.equals(Qualifier.parent)) {
@@ -439,22 +559,39 @@ public class ProcessInfoQuery {
         return parent;
     }
 
+    /**
+     * Returns the criteria of the given query, sorted so that the ones needing the least process information come
+     * first.
+     */
     private List<Criteria> getCriteriaList(String query) {
-        List<Criteria> criteria = new ArrayList<Criteria>();
+        if (query == null) {
+            return Collections.emptyList();
+        }
+
+        List<Criteria> criteria = COMPILED_QUERIES.get(query);
+        if (criteria == null) {
+            criteria = new ArrayList<Criteria>();
 
-        if (query != null) {
             String[] tokens = query.split(",");
 
             for (String criteriaString : tokens) {
                 Criteria c = new Criteria(criteriaString);
                 criteria.add(c);
             }
+
+            Collections.sort(criteria, CRITERIA_COST_COMPARATOR);
+            criteria = Collections.unmodifiableList(criteria);
+
+            if (COMPILED_QUERIES.size() >= MAX_COMPILED_QUERIES) {
+                COMPILED_QUERIES.clear();
+            }
+            COMPILED_QUERIES.put(query, criteria);
         }
 
         return criteria;
     }
 
-    private String getPidfileContents(String pidfileName) {
+    static String getPidfileContents(String pidfileName) {
         String contents;
 
         try {
@@ -0,0 +1,89 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2011 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License, version 2, as
+ * published by the Free Software Foundation, and/or the GNU Lesser
+ * General Public License, version 2.1, also as published by the Free
+ * Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License and the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * and the GNU Lesser General Public License along with this program;
+ * if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.rhq.core.system;
+
+import java.util.Arrays;
+
+import org.hyperic.sigar.SigarProxy;
+import org.jmock.Expectations;
+import org.testng.annotations.Test;
+
+import org.rhq.test.JMockTest;
+
+/**
+ * Tests that {@link ProcessInfo} only asks SIGAR for what it is asked for.
+ */
+@Test
+public class ProcessInfoTest extends JMockTest {
+
+    public void testLazyLoading() throws Exception {
+        final SigarProxy sigar = context.mock(SigarProxy.class);
+
+        // nothing is loaded before it is asked for
+        ProcessInfo process = new ProcessInfo(42L, sigar);
+        context.assertIsSatisfied();
+
+        context.checking(new Expectations() {
+            {
+                oneOf(sigar).getProcArgs(42L);
+                will(returnValue(new String[] { "/bin/sh", "-c" }));
+            }
+        });
+        assert Arrays.equals(process.getCommandLine(), new String[] { "/bin/sh", "-c" });
+        assert process.getCommandLine().length == 2;
+        context.assertIsSatisfied();
+
+        context.checking(new Expectations() {
+            {
+                oneOf(sigar).getProcState(42L);
+                will(returnValue(null));
+                oneOf(sigar).getProcMem(42L);
+                will(returnValue(null));
+            }
+        });
+        assert process.getParentPid() == 0L;
+        assert process.getMemory() == null;
+        assert !process.isRunning();
+        context.assertIsSatisfied();
+
+        // refreshing reloads what may change, but not the command line
+        context.checking(new Expectations() {
+            {
+                oneOf(sigar).getProcState(42L);
+                will(returnValue(null));
+            }
+        });
+        process.refresh();
+        process.getCommandLine();
+        process.getState();
+        process.getState();
+    }
+
+    public void testMockHasNoSigar() {
+        ProcessInfo process = new ProcessInfo() {
+        };
+        assert process.getCommandLine() == null;
+        assert process.getState() == null;
+        assert process.getEnvironmentVariables().isEmpty();
+    }
+}
@@ -0,0 +1,227 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2011 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License, version 2, as
+ * published by the Free Software Foundation, and/or the GNU Lesser
+ * General Public License, version 2.1, also as published by the Free
+ * Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License and the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * and the GNU Lesser General Public License along with this program;
+ * if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.rhq.core.system.pquery;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import org.rhq.core.system.ProcessInfo;
+
+/**
+ * Compares running the process scans of a discovery scan against a synthetic process table the way it used to be done
+ * (a new {@link ProcessInfoQuery} for each server type, matching each criteria by looking at every candidate process)
+ * with using the indexes, both with a query per server type and with all the scans run against the same query. The
+ * table has 5000 processes by default; pass -Drhq.benchmark.process-count=N to change that. Timings are printed to
+ * stdout.
+ */
+@Test
+public class ProcessInfoQueryBenchmarkTest {
+
+    private static final int PROCESS_COUNT = Integer.getInteger("rhq.benchmark.process-count", 5000);
+    private static final int HTTPD_CHILDREN = 100;
+    private static final int JBOSS_SERVERS = 20;
+    private static final int TOMCAT_SERVERS = 10;
+
+    /**
+     * Process scans like the ones the plugins define, one list per server type.
+     */
+    private static final String[][] SCANS = {
+        { "process|basename|match=^java.*,arg|org.jboss.Main|match=.*",
+            "process|basename|match=^java.*,arg|-Dprogram.name|match=run.*" },
+        { "process|basename|match=^java.*,arg|-Dcatalina.home|match=.*",
+            "process|basename|match=^java.*,arg|*|match=org\\.apache\\.catalina\\.startup\\.Bootstrap" },
+        { "process|basename|match=^(https?d.*|[Aa]pache)$,process|basename|nomatch|parent=^(https?d.*|[Aa]pache)$" },
+        { "process|basename|match=(?i)postgres(\\.exe)?,process|basename|nomatch|parent=(?i)postgres(\\.exe)?" },
+        { "process|basename|match=^mysqld.*,arg|--port|match=.*" },
+        { "process|basename|match=^named$", "process|basename|match=^sshd$,arg|-D|match=.*" },
+        { "arg|*|match=.*rhq-agent.*", "process|name|match=.*/cron$" },
+        { "process|basename|match=^java.*,arg|-1|match=start" } };
+
+    private static final String[] OTHER_BASENAMES = { "bash", "sshd", "cron", "kworker", "python", "perl",
+        "postgres", "dbus-daemon", "gnome-shell", "chrome", "ruby", "node" };
+
+    private List<ProcessInfo> processes;
+
+    @BeforeClass
+    public void createProcessTable() {
+        Random random = new Random(12345L);
+        processes = new ArrayList<ProcessInfo>(PROCESS_COUNT);
+        long pid = 1;
+
+        processes.add(new MockProcessInfo(pid++, 0, "/sbin/init"));
+
+        long httpd = pid;
+        processes.add(new MockProcessInfo(pid++, 1, "/usr/sbin/httpd", "-k", "start"));
+        for (int i = 0; i < HTTPD_CHILDREN; i++) {
+            processes.add(new MockProcessInfo(pid++, httpd, "/usr/sbin/httpd", "-k", "start"));
+        }
+
+        for (int i = 0; i < JBOSS_SERVERS; i++) {
+            processes.add(new MockProcessInfo(pid++, 1, "/usr/bin/java", "-server", "-Xmx512m",
+                "-Dprogram.name=run.sh", "-Djava.endorsed.dirs=/opt/jboss" + i + "/lib/endorsed", "-classpath",
+                "/opt/jboss" + i + "/bin/run.jar", "org.jboss.Main", "-b", "0.0.0.0", "-c", "default"));
+        }
+
+        for (int i = 0; i < TOMCAT_SERVERS; i++) {
+            processes.add(new MockProcessInfo(pid++, 1, "/usr/bin/java", "-Dcatalina.home=/opt/tomcat" + i,
+                "-Dcatalina.base=/opt/tomcat" + i, "org.apache.catalina.startup.Bootstrap", "start"));
+        }
+
+        while (processes.size() < PROCESS_COUNT) {
+            String baseName = OTHER_BASENAMES[random.nextInt(OTHER_BASENAMES.length)];
+            int argCount = random.nextInt(30);
+            String[] cmdline = new String[argCount + 1];
+            cmdline[0] = "/usr/bin/" + baseName;
+            for (int i = 1; i <= argCount; i++) {
+                cmdline[i] = "--option" + random.nextInt(50) + "=" + random.nextInt(1000);
+            }
+            long ppid = 1 + random.nextInt((int) pid - 1);
+            processes.add(new MockProcessInfo(pid++, ppid, cmdline));
+        }
+    }
+
+    public void testDiscoveryScanCost() {
+        // warm up the JIT so the first measurement is not penalized
+        runScansWithoutIndexes();
+        runScansWithNewQueries();
+        runScansWithSharedQuery();
+
+        long start = System.currentTimeMillis();
+        List<List<Long>> scanned = runScansWithoutIndexes();
+        long scannedTime = System.currentTimeMillis() - start;
+
+        start = System.currentTimeMillis();
+        List<List<Long>> separate = runScansWithNewQueries();
+        long separateTime = System.currentTimeMillis() - start;
+
+        start = System.currentTimeMillis();
+        List<List<Long>> shared = runScansWithSharedQuery();
+        long sharedTime = System.currentTimeMillis() - start;
+
+        System.out.println("Process scans over " + PROCESS_COUNT + " processes: without indexes=" + scannedTime
+            + "ms, query per server type=" + separateTime + "ms, shared query=" + sharedTime + "ms");
+
+        assert separate.equals(scanned) : "the indexes found different processes";
+        assert shared.equals(scanned) : "the shared query found different processes";
+
+        assert shared.get(0).size() == JBOSS_SERVERS : shared.get(0);
+        assert shared.get(1).size() == JBOSS_SERVERS : shared.get(1);
+        assert shared.get(2).size() == TOMCAT_SERVERS : shared.get(2);
+        assert shared.get(3).size() == TOMCAT_SERVERS : shared.get(3);
+        assert shared.get(4).size() == 1 : "only the main httpd should be found: " + shared.get(4);
+        assert shared.get(11).size() == TOMCAT_SERVERS : shared.get(11);
+    }
+
+    private List<List<Long>> runScansWithoutIndexes() {
+        List<List<Long>> results = new ArrayList<List<Long>>();
+        for (String[] serverTypeScans : SCANS) {
+            ProcessInfoQuery query = new ProcessInfoQuery(processes);
+            for (String scan : serverTypeScans) {
+                results.add(getPids(query.scan(scan)));
+            }
+        }
+        return results;
+    }
+
+    private List<List<Long>> runScansWithNewQueries() {
+        List<List<Long>> results = new ArrayList<List<Long>>();
+        for (String[] serverTypeScans : SCANS) {
+            ProcessInfoQuery query = new ProcessInfoQuery(processes);
+            for (String scan : serverTypeScans) {
+                results.add(getPids(query.query(scan)));
+            }
+        }
+        return results;
+    }
+
+    private List<List<Long>> runScansWithSharedQuery() {
+        List<List<Long>> results = new ArrayList<List<Long>>();
+        ProcessInfoQuery query = new ProcessInfoQuery(processes);
+        for (String[] serverTypeScans : SCANS) {
+            for (String scan : serverTypeScans) {
+                results.add(getPids(query.query(scan)));
+            }
+        }
+        return results;
+    }
+
+    // the mock processes all equal each other since equals() only looks at the pid field of the superclass, and the
+    // processes found by scanning come in no particular order
+    private static List<Long> getPids(List<ProcessInfo> results) {
+        List<Long> pids = new ArrayList<Long>(results.size());
+        for (ProcessInfo process : results) {
+            pids.add(process.getPid());
+        }
+        Collections.sort(pids);
+        return pids;
+    }
+
+    private static class MockProcessInfo extends ProcessInfo {
+        private final long mockPid;
+        private final long mockPpid;
+        private final String[] mockCommandLine;
+        private final String mockBaseName;
+
+        MockProcessInfo(long pid, long ppid, String... commandLine) {
+            this.mockPid = pid;
+            this.mockPpid = ppid;
+            this.mockCommandLine = commandLine;
+            this.mockBaseName = commandLine[0].substring(commandLine[0].lastIndexOf('/') + 1);
+        }
+
+        @Override
+        public long getPid() {
+            return this.mockPid;
+        }
+
+        @Override
+        public long getParentPid() {
+            return this.mockPpid;
+        }
+
+        @Override
+        public String getName() {
+            return this.mockCommandLine[0];
+        }
+
+        @Override
+        public String getBaseName() {
+            return this.mockBaseName;
+        }
+
+        @Override
+        public String[] getCommandLine() {
+            return this.mockCommandLine;
+        }
+
+        @Override
+        public String toString() {
+            return this.mockPid + ":" + this.mockCommandLine[0];
+        }
+    }
+}
@@ -41,6 +41,7 @@ import org.rhq.core.pluginapi.content.ContentContext;
 import org.rhq.core.pluginapi.event.EventContext;
 import org.rhq.core.pluginapi.operation.OperationContext;
 import org.rhq.core.system.ProcessInfo;
+import org.rhq.core.system.ProcessTableSnapshot;
 import org.rhq.core.system.SystemInfo;
 import org.rhq.core.system.SystemInfoFactory;
 import org.rhq.core.system.pquery.ProcessInfoQuery;
@@ -262,7 +263,11 @@ public class ResourceContext<T extends ResourceComponent<?>> {
         try {
             Set<ProcessScan> processScans = this.resourceType.getProcessScans();
             if (processScans != null && !processScans.isEmpty()) {
-                ProcessInfoQuery piq = new ProcessInfoQuery(systemInfo.getAllProcesses());
+                List<ProcessInfo> processes = systemInfo.getAllProcesses();
+                ProcessInfoQuery piq = ProcessTableSnapshot.getQuery();
+                if (piq == null) {
+                    piq = new ProcessInfoQuery(processes);
+                }
                 for (ProcessScan processScan : processScans) {
                     List<ProcessInfo> queryResults = piq.query(processScan.getQuery());
                     if ((queryResults != null) && (queryResults.size() > 0)) {
@@ -0,0 +1,212 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2008 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License, version 2, as
+ * published by the Free Software Foundation, and/or the GNU Lesser
+ * General Public License, version 2.1, also as published by the Free
+ * Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License and the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * and the GNU Lesser General Public License along with this program;
+ * if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.rhq.core.pluginapi.util;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.StringTokenizer;
+
+import org.rhq.core.domain.measurement.calltime.CallTimeData;
+
+/**
+ * A response-time parser that, in addition to the per-request log, reads the summary file written by the servlet RT
+ * filter when it runs in aggregating mode. The summary file lives next to the log file, with its "_rt.log" suffix
+ * replaced by "_rt.summary", and has one line per URL and aggregation interval:
+ *
+ * <p/><code>URL begin_time end_time minimum maximum total count</code>
+ *
+ * <p/>Since each line already holds the aggregate of many requests, reading the summary is proportional to the number
+ * of distinct URLs rather than to the number of requests. Excludes and transforms are applied to the URLs the same way
+ * as for the log; lines that end up with the same destination are merged before being added to the call-time data.
+ */
+public class ResponseTimeSummaryParser extends ResponseTimeLogParser {
+    private static final String LOG_FILE_SUFFIX = "_rt.log";
+    private static final String SUMMARY_FILE_SUFFIX = "_rt.summary";
+
+    private File summaryFile;
+
+    public ResponseTimeSummaryParser(File logFile) {
+        super(logFile);
+        this.summaryFile = getSummaryFile(logFile);
+    }
+
+    /**
+     * Returns the summary file that the RT filter writes alongside the given response-time log file.
+     *
+     * @param logFile the response-time log file
+     *
+     * @return the corresponding summary file
+     */
+    public static File getSummaryFile(File logFile) {
+        String name = logFile.getName();
+        if (name.endsWith(LOG_FILE_SUFFIX)) {
+            name = name.substring(0, name.length() - LOG_FILE_SUFFIX.length());
+        }
+        return new File(logFile.getParentFile(), name + SUMMARY_FILE_SUFFIX);
+    }
+
+    /**
+     * Parses the summary file, if there is one, and then the log file, if there is one. The summary file is truncated
+     * after parsing, like the log file.
+     *
+     * @param callTimeData the parsed response-time data will be added to this object
+     * @throws IOException if an error occurs reading either file
+     */
+    @Override
+    public synchronized void parseLog(CallTimeData callTimeData) throws IOException {
+        boolean summaryExists = this.summaryFile.exists();
+        if (summaryExists) {
+            parseSummary(callTimeData);
+        }
+
+        // Only complain about a missing log if there is no summary either.
+        if (!summaryExists || this.logFile.exists()) {
+            super.parseLog(callTimeData);
+        }
+    }
+
+    private void parseSummary(CallTimeData callTimeData) throws IOException {
+        log.debug("Parsing response-time summary file " + this.summaryFile + "...");
+        Map<String, SummaryEntry> entries = new HashMap<String, SummaryEntry>();
+        BufferedReader in = null;
+
+        try {
+            in = new BufferedReader(new FileReader(this.summaryFile));
+
+            String currentLine;
+            while ((currentLine = in.readLine()) != null) {
+                SummaryEntry entry;
+                try {
+                    entry = parseSummaryLine(currentLine);
+                } catch (RuntimeException e) {
+                    log.debug("Problem parsing summary line [" + currentLine + "] - cause: " + e);
+                    continue;
+                }
+
+                if (entry.url.charAt(0) != '/' || isExcluded(entry.url)) {
+                    continue;
+                }
+
+                String transformedUrl = applyTransforms(entry.url);
+                SummaryEntry merged = entries.get(transformedUrl);
+                if (merged == null) {
+                    entries.put(transformedUrl, entry);
+                } else {
+                    merged.merge(entry);
+                }
+            }
+        } catch (FileNotFoundException e) {
+            log.debug("Response-time summary file '" + this.summaryFile + "' has disappeared.");
+            return;
+        } finally {
+            if (null != in) {
+                try {
+                    in.close();
+                } catch (Exception e) {
+                    log.error("Unable to close response-time summary file.", e);
+                }
+            }
+        }
+
+        truncateSummary();
+
+        for (Map.Entry<String, SummaryEntry> mapEntry : entries.entrySet()) {
+            SummaryEntry entry = mapEntry.getValue();
+            try {
+                callTimeData.addAggregatedCallData(mapEntry.getKey(), new Date(entry.beginTime),
+                    new Date(entry.endTime), entry.minimum, entry.maximum, entry.total, entry.count);
+            } catch (IllegalArgumentException iae) {
+                // if any issue with the data, log them and continue processing the rest of the report
+                log.error(iae);
+            }
+        }
+    }
+
+    private SummaryEntry parseSummaryLine(String line) {
+        StringTokenizer tokenizer = new StringTokenizer(line);
+        SummaryEntry entry = new SummaryEntry();
+        entry.url = tokenizer.nextToken();
+        entry.beginTime = Long.parseLong(tokenizer.nextToken());
+        entry.endTime = Long.parseLong(tokenizer.nextToken());
+        entry.minimum = Double.parseDouble(tokenizer.nextToken()) * getTimeMultiplier();
+        entry.maximum = Double.parseDouble(tokenizer.nextToken()) * getTimeMultiplier();
+        entry.total = Double.parseDouble(tokenizer.nextToken()) * getTimeMultiplier();
+        entry.count = Long.parseLong(tokenizer.nextToken());
+        return entry;
+    }
+
+    private void truncateSummary() {
+        RandomAccessFile randomAccessFile = null;
+        try {
+            randomAccessFile = new RandomAccessFile(this.summaryFile, "rws");
+            randomAccessFile.setLength(0);
+        } catch (Exception e) {
+            // e.g. no permission to change the length - the filter will truncate it once it grows too large
+            log.debug("Unable to truncate response-time summary file.", e);
+        } finally {
+            if (null != randomAccessFile) {
+                try {
+                    randomAccessFile.close();
+                } catch (Exception e) {
+                    log.error("Unable to close response-time summary file.", e);
+                }
+            }
+        }
+    }
+
+    public File getSummaryFile() {
+        return summaryFile;
+    }
+
+    @Override
+    public void setLogFile(File logFile) {
+        super.setLogFile(logFile);
+        this.summaryFile = getSummaryFile(logFile);
+    }
+
+    private static class SummaryEntry {
+        private String url;
+        private long beginTime;
+        private long endTime;
+        private double minimum;
+        private double maximum;
+        private double total;
+        private long count;
+
+        private void merge(SummaryEntry other) {
+            this.beginTime = Math.min(this.beginTime, other.beginTime);
+            this.endTime = Math.max(this.endTime, other.endTime);
+            this.minimum = Math.min(this.minimum, other.minimum);
+            this.maximum = Math.max(this.maximum, other.maximum);
+            this.total += other.total;
+            this.count += other.count;
+        }
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2008 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License, version 2, as
+ * published by the Free Software Foundation, and/or the GNU Lesser
+ * General Public License, version 2.1, also as published by the Free
+ * Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License and the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * and the GNU Lesser General Public License along with this program;
+ * if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.rhq.core.pluginapi.util;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.util.Collections;
+import java.util.regex.Pattern;
+
+import org.testng.annotations.Test;
+
+import org.rhq.core.domain.measurement.DataType;
+import org.rhq.core.domain.measurement.MeasurementScheduleRequest;
+import org.rhq.core.domain.measurement.calltime.CallTimeData;
+import org.rhq.core.domain.measurement.calltime.CallTimeDataValue;
+
+/**
+ * Test {@link ResponseTimeSummaryParser}.
+ */
+@Test
+public class ResponseTimeSummaryParserTest {
+
+    public void testGetSummaryFile() {
+        File summaryFile = ResponseTimeSummaryParser.getSummaryFile(new File("/tmp/rt", "vhost_foo_rt.log"));
+        assert summaryFile.getName().equals("vhost_foo_rt.summary") : summaryFile;
+    }
+
+    public void testParseSummary() throws Exception {
+        File logFile = File.createTempFile("summary", "_rt.log");
+        logFile.delete();
+        File summaryFile = ResponseTimeSummaryParser.getSummaryFile(logFile);
+        try {
+            FileWriter writer = new FileWriter(summaryFile);
+            writer.write("/foo/1 1000 2000 5 9 14 2\n");
+            writer.write("/foo/2 2000 3000 1 20 30 3\n");
+            writer.write("/bar 1000 2000 7 7 7 1\n");
+            writer.write("/excluded 1000 2000 7 7 7 1\n");
+            writer.write("garbage\n");
+            writer.close();
+
+            ResponseTimeSummaryParser parser = new ResponseTimeSummaryParser(logFile);
+            parser.setExcludes(Collections.singletonList(Pattern.compile("^/excluded")));
+            parser.setTransforms(Collections.singletonList(new RegexSubstitution(Pattern.compile("^/foo/.*"),
+                "/foo")));
+
+            CallTimeData callTimeData = new CallTimeData(new MeasurementScheduleRequest(1, "ResponseTime", 60000,
+                true, DataType.CALLTIME));
+            parser.parseLog(callTimeData);
+
+            assert callTimeData.getValues().size() == 2 : callTimeData.getValues();
+
+            CallTimeDataValue foo = callTimeData.getValues().get("/foo");
+            assert foo.getBeginTime() == 1000 : foo;
+            assert foo.getEndTime() == 3000 : foo;
+            assert foo.getMinimum() == 1 : foo;
+            assert foo.getMaximum() == 20 : foo;
+            assert foo.getTotal() == 44 : foo;
+            assert foo.getCount() == 5 : foo;
+
+            CallTimeDataValue bar = callTimeData.getValues().get("/bar");
+            assert bar.getCount() == 1 : bar;
+
+            assert summaryFile.length() == 0 : "summary file should have been truncated";
+        } finally {
+            summaryFile.delete();
+        }
+    }
+}
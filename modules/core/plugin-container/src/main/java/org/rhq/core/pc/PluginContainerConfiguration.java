@@ -128,6 +128,11 @@ public class PluginContainerConfiguration {
     private static final String EVENT_REPORT_MAX_TOTAL_PROP = PROP_PREFIX + "event-report-max-total";
     public static final int EVENT_REPORT_MAX_TOTAL_DEFAULT = 400;
 
+    // Bundle -------
+
+    private static final String BUNDLE_CACHE_MAX_SIZE_PROP = PROP_PREFIX + "bundle-cache-max-size";
+    public static final long BUNDLE_CACHE_MAX_SIZE_DEFAULT = 1024L * 1024L * 1024L; // in bytes
+
     /**
      * Contains all remote POJO services that the server exposes to the plugin container.
      */
@@ -672,6 +677,21 @@ public class PluginContainerConfiguration {
         configuration.put(EVENT_REPORT_MAX_TOTAL_PROP, value);
     }
 
+    /**
+     * Returns the maximum size, in bytes, of the cache of bundle file content kept in the data directory. Once the
+     * cache grows beyond this, the least recently used files are evicted. A size of 0 disables the cache.
+     *
+     * @return maximum size of the bundle file cache, in bytes
+     */
+    public long getBundleCacheMaxSize() {
+        Long size = (Long) configuration.get(BUNDLE_CACHE_MAX_SIZE_PROP);
+        return (size == null) ? BUNDLE_CACHE_MAX_SIZE_DEFAULT : size.longValue();
+    }
+
+    public void setBundleCacheMaxSize(long size) {
+        configuration.put(BUNDLE_CACHE_MAX_SIZE_PROP, size);
+    }
+
     /**
      * Defines the base number of threads that can concurrently execute resource factory tasks.
      *
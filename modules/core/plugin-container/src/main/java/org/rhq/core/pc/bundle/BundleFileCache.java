@@ -0,0 +1,194 @@
+/*
+ * RHQ Management
+ * Copyright (C) 2005-2010 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License, version 2, as
+ * published by the Free Software Foundation, and/or the GNU Lesser
+ * General Public License, version 2.1, also as published by the Free
+ * Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License and the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * and the GNU Lesser General Public License along with this program;
+ * if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.rhq.core.pc.bundle;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.rhq.core.domain.content.PackageVersion;
+import org.rhq.core.util.file.FileUtil;
+
+/**
+ * A cache of bundle file content on the agent, addressed by the content's hash (SHA-256 if the package version has
+ * one, MD5 otherwise). Since bundle versions usually share most of their files, and every bundle version is deployed
+ * into its own directory, this lets a deployment copy the files it has seen before rather than download them again.
+ *
+ * <p>The total size of the cached files is capped; when a new file would exceed the cap, the least recently used
+ * files are evicted. The last-modified time of the cached files tracks their use, so the LRU order survives agent
+ * restarts.</p>
+ */
+public class BundleFileCache {
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private final Log log = LogFactory.getLog(BundleFileCache.class);
+
+    private final File cacheDirectory;
+    private final long maxSize;
+
+    // ordered from least recently to most recently used
+    private final LinkedHashMap<String, File> entries = new LinkedHashMap<String, File>(16, 0.75f, true);
+    private long size;
+
+    public BundleFileCache(File cacheDirectory, long maxSize) {
+        this.cacheDirectory = cacheDirectory;
+        this.maxSize = maxSize;
+        load();
+    }
+
+    /**
+     * Returns the key under which the content of the given package version is cached, or <code>null</code> if the
+     * package version has no hash and therefore can't be cached.
+     *
+     * @param packageVersion the package version of a bundle file
+     * @return the cache key, or <code>null</code>
+     */
+    public static String getKey(PackageVersion packageVersion) {
+        if (packageVersion.getSHA256() != null) {
+            return "sha256-" + packageVersion.getSHA256().trim().toLowerCase();
+        } else if (packageVersion.getMD5() != null) {
+            return "md5-" + packageVersion.getMD5().trim().toLowerCase();
+        }
+        return null;
+    }
+
+    /**
+     * Copies the cached content for the given key to the given file.
+     *
+     * @param key the cache key of the content
+     * @param destination the file to copy the content to
+     * @return <code>true</code> if the content was in the cache and has been copied, <code>false</code> otherwise
+     * @throws IOException if the content could not be copied
+     */
+    public synchronized boolean copyTo(String key, File destination) throws IOException {
+        File cached = (key != null) ? this.entries.get(key) : null;
+        if (cached == null) {
+            return false;
+        }
+
+        if (!cached.exists()) {
+            // someone cleaned up the data directory behind our back
+            this.entries.remove(key);
+            recalculateSize();
+            return false;
+        }
+
+        destination.getParentFile().mkdirs();
+        FileUtil.copyFile(cached, destination);
+        cached.setLastModified(System.currentTimeMillis());
+        return true;
+    }
+
+    /**
+     * Adds a copy of the given file to the cache under the given key, evicting the least recently used content if
+     * the cache would otherwise exceed its maximum size. The caller must have verified that the file's content matches
+     * the key.
+     *
+     * @param key the cache key of the content
+     * @param source the file holding the content
+     */
+    public synchronized void put(String key, File source) {
+        if (key == null || this.entries.containsKey(key) || source.length() > this.maxSize) {
+            return;
+        }
+
+        File cached = new File(this.cacheDirectory, key);
+        File temp = new File(this.cacheDirectory, key + TEMP_SUFFIX);
+        try {
+            this.cacheDirectory.mkdirs();
+            FileUtil.copyFile(source, temp);
+            cached.delete();
+            if (!temp.renameTo(cached)) {
+                throw new IOException("Cannot rename [" + temp + "] to [" + cached + "]");
+            }
+        } catch (IOException e) {
+            log.warn("Failed to cache bundle file [" + source + "] - cause: " + e);
+            temp.delete();
+            return;
+        }
+
+        this.entries.put(key, cached);
+        this.size += cached.length();
+        evict();
+    }
+
+    public synchronized long getSize() {
+        return this.size;
+    }
+
+    public synchronized int getCount() {
+        return this.entries.size();
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<String, File>> iterator = this.entries.entrySet().iterator();
+        while (this.size > this.maxSize && iterator.hasNext()) {
+            File doomed = iterator.next().getValue();
+            iterator.remove();
+            this.size -= doomed.length();
+            if (!doomed.delete()) {
+                log.debug("Failed to delete evicted bundle file [" + doomed + "]");
+            }
+        }
+    }
+
+    private void recalculateSize() {
+        this.size = 0L;
+        for (File cached : this.entries.values()) {
+            this.size += cached.length();
+        }
+    }
+
+    private void load() {
+        File[] files = this.cacheDirectory.listFiles();
+        if (files == null) {
+            return;
+        }
+
+        Arrays.sort(files, new Comparator<File>() {
+            public int compare(File f1, File f2) {
+                long diff = f1.lastModified() - f2.lastModified();
+                return (diff < 0L) ? -1 : ((diff > 0L) ? 1 : 0);
+            }
+        });
+
+        for (File file : files) {
+            if (file.getName().endsWith(TEMP_SUFFIX)) {
+                // left behind by an agent that died while caching it
+                file.delete();
+            } else if (file.isFile()) {
+                this.entries.put(file.getName(), file);
+                this.size += file.length();
+            }
+        }
+
+        evict();
+    }
+}
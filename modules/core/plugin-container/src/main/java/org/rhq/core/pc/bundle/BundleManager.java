@@ -94,6 +94,7 @@ public class BundleManager extends AgentService implements BundleAgentService, B
 
     private PluginContainerConfiguration configuration;
     private ExecutorService deployerThreadPool;
+    private BundleFileCache fileCache;
 
     public BundleManager() {
         super(BundleAgentService.class);
@@ -105,6 +106,12 @@ public class BundleManager extends AgentService implements BundleAgentService, B
 
     public void initialize() {
         createDeployerThreadPool();
+
+        File dataDirectory = this.configuration.getDataDirectory();
+        long cacheMaxSize = this.configuration.getBundleCacheMaxSize();
+        if (dataDirectory != null && cacheMaxSize > 0L) {
+            this.fileCache = new BundleFileCache(new File(dataDirectory, "bundle-cache"), cacheMaxSize);
+        }
     }
 
     public void shutdown() {
@@ -333,36 +340,20 @@ public class BundleManager extends AgentService implements BundleAgentService, B
                 verifyHash(packageVersion, packageFile);
             } catch (Exception e) {
 
-                // file either doesn't exist or it hash doesn't match, download a new copy
-                packageFile.getParentFile().mkdirs();
-                FileOutputStream fos = new FileOutputStream(packageFile);
-                try {
-                    auditDeployment(resourceDeployment, AUDIT_FILE_DOWNLOAD_STARTED, packageVersion.getDisplayName(),
-                        "Downloading [" + packageVersion + "]");
-
-                    long size = getFileContent(packageVersion, fos);
-
-                    if (packageVersion.getFileSize() != null && size != packageVersion.getFileSize().longValue()) {
-                        String message = "Downloaded bundle file [" + packageVersion + "] but its size was [" + size
-                            + "] when it was expected to be [" + packageVersion.getFileSize() + "].";
-                        log.warn(message);
-                        auditDeployment(resourceDeployment, AUDIT_FILE_DOWNLOAD_ENDED, packageVersion.getDisplayName(),
-                            null, BundleResourceDeploymentHistory.Status.WARN, message, null);
-                    } else {
-                        auditDeployment(resourceDeployment, AUDIT_FILE_DOWNLOAD_ENDED, packageVersion.getDisplayName(),
-                            "Download complete for [" + packageVersion + "]");
+                // file either doesn't exist or it hash doesn't match; get a copy from the cache if we have the same
+                // content there (e.g. because the file didn't change since the last bundle version), otherwise
+                // download a new copy
+                String cacheKey = (this.fileCache != null) ? BundleFileCache.getKey(packageVersion) : null;
+                if (!copyFromCache(cacheKey, packageVersion, packageFile)) {
+                    downloadBundleFile(resourceDeployment, packageVersion, packageFile);
+
+                    // now try to verify it again, if this throws an exception, that is very bad and we need to abort
+                    verifyHash(packageVersion, packageFile);
+
+                    if (cacheKey != null) {
+                        this.fileCache.put(cacheKey, packageFile);
                     }
-                } catch (Exception e2) {
-                    String message = "Failed to downloaded bundle file [" + packageVersion + "] " + e2;
-                    log.warn(message);
-                    auditDeployment(resourceDeployment, AUDIT_FILE_DOWNLOAD_ENDED, packageVersion.getDisplayName(),
-                        null, BundleResourceDeploymentHistory.Status.FAILURE, message, null);
-                } finally {
-                    fos.close();
                 }
-
-                // now try to verify it again, if this throws an exception, that is very bad and we need to abort
-                verifyHash(packageVersion, packageFile);
             }
 
             packageVersionFiles.put(packageVersion, packageFile);
@@ -371,6 +362,55 @@ public class BundleManager extends AgentService implements BundleAgentService, B
         return packageVersionFiles;
     }
 
+    private boolean copyFromCache(String cacheKey, PackageVersion packageVersion, File packageFile) {
+        if (cacheKey == null) {
+            return false;
+        }
+
+        try {
+            if (this.fileCache.copyTo(cacheKey, packageFile)) {
+                verifyHash(packageVersion, packageFile);
+                log.debug("Bundle file [" + packageVersion + "] copied from the bundle file cache");
+                return true;
+            }
+        } catch (Exception e) {
+            log.warn("Failed to copy bundle file [" + packageVersion + "] from the bundle file cache, downloading it: "
+                + e);
+        }
+        return false;
+    }
+
+    private void downloadBundleFile(BundleResourceDeployment resourceDeployment, PackageVersion packageVersion,
+        File packageFile) throws Exception {
+
+        packageFile.getParentFile().mkdirs();
+        FileOutputStream fos = new FileOutputStream(packageFile);
+        try {
+            auditDeployment(resourceDeployment, AUDIT_FILE_DOWNLOAD_STARTED, packageVersion.getDisplayName(),
+                "Downloading [" + packageVersion + "]");
+
+            long size = getFileContent(packageVersion, fos);
+
+            if (packageVersion.getFileSize() != null && size != packageVersion.getFileSize().longValue()) {
+                String message = "Downloaded bundle file [" + packageVersion + "] but its size was [" + size
+                    + "] when it was expected to be [" + packageVersion.getFileSize() + "].";
+                log.warn(message);
+                auditDeployment(resourceDeployment, AUDIT_FILE_DOWNLOAD_ENDED, packageVersion.getDisplayName(), null,
+                    BundleResourceDeploymentHistory.Status.WARN, message, null);
+            } else {
+                auditDeployment(resourceDeployment, AUDIT_FILE_DOWNLOAD_ENDED, packageVersion.getDisplayName(),
+                    "Download complete for [" + packageVersion + "]");
+            }
+        } catch (Exception e2) {
+            String message = "Failed to downloaded bundle file [" + packageVersion + "] " + e2;
+            log.warn(message);
+            auditDeployment(resourceDeployment, AUDIT_FILE_DOWNLOAD_ENDED, packageVersion.getDisplayName(), null,
+                BundleResourceDeploymentHistory.Status.FAILURE, message, null);
+        } finally {
+            fos.close();
+        }
+    }
+
     private void completeDeployment(BundleResourceDeployment resourceDeployment, BundleDeploymentStatus status,
         String message) {
         getBundleServerService().setBundleDeploymentStatus(resourceDeployment.getId(), status);
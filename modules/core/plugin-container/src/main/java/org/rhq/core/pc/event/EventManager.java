@@ -135,6 +135,9 @@ public class EventManager implements ContainerService {
             }
             log.warn("Finish dropped events report");
         }
+        if (report.getFoldedEventCount() > 0 && log.isDebugEnabled()) {
+            log.debug("Folded [" + report.getFoldedEventCount() + "] repeated events into events already in the report");
+        }
         if (!report.getEvents().isEmpty() && this.pcConfig.getServerServices() != null) {
             try {
                 this.pcConfig.getServerServices().getEventServerService().mergeEventReport(report);
@@ -52,6 +52,7 @@ import org.rhq.core.pluginapi.inventory.ProcessScanResult;
 import org.rhq.core.pluginapi.inventory.ResourceComponent;
 import org.rhq.core.pluginapi.inventory.ResourceDiscoveryComponent;
 import org.rhq.core.system.ProcessInfo;
+import org.rhq.core.system.ProcessTableSnapshot;
 import org.rhq.core.system.SystemInfo;
 import org.rhq.core.system.SystemInfoFactory;
 import org.rhq.core.system.pquery.ProcessInfoQuery;
@@ -96,6 +97,8 @@ public class AutoDiscoveryExecutor implements Runnable, Callable<InventoryReport
         log.info("Executing server discovery scan...");
         InventoryReport report = new InventoryReport(inventoryManager.getAgent());
 
+        // the discovery components asking for the process table during this scan get the one the scan started with
+        ProcessTableSnapshot.begin();
         try {
             report.setStartTime(System.currentTimeMillis());
             if ((autoDiscoveryRequest == null)
@@ -122,6 +125,8 @@ public class AutoDiscoveryExecutor implements Runnable, Callable<InventoryReport
         } catch (Exception e) {
             log.warn("Exception caught while running server discovery", e);
             report.addError(new ExceptionPackage(Severity.Warning, e));
+        } finally {
+            ProcessTableSnapshot.end();
         }
 
         log.info("Found " + report.getAddedRoots().size() + " servers.");
@@ -222,7 +227,11 @@ public class AutoDiscoveryExecutor implements Runnable, Callable<InventoryReport
         Set<ProcessScan> processScans = serverType.getProcessScans();
         if (processScans != null && !processScans.isEmpty()) {
             log.debug("Executing process scans for server type " + serverType + "...");
-            ProcessInfoQuery piq = new ProcessInfoQuery(processInfos);
+            // the query over the snapshot of this scan keeps its indexes from one server type to the next
+            ProcessInfoQuery piq = ProcessTableSnapshot.getQuery();
+            if (piq == null) {
+                piq = new ProcessInfoQuery(processInfos);
+            }
             for (ProcessScan processScan : processScans) {
                 List<ProcessInfo> queryResults = piq.query(processScan.getQuery());
                 if ((queryResults != null) && (queryResults.size() > 0)) {
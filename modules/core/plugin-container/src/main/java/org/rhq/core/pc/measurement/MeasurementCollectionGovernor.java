@@ -0,0 +1,306 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2011 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License, version 2, as
+ * published by the Free Software Foundation, and/or the GNU Lesser
+ * General Public License, version 2.1, also as published by the Free
+ * Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License and the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * and the GNU Lesser General Public License along with this program;
+ * if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.rhq.core.pc.measurement;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Keeps a plugin whose resources are slow to collect (e.g. a JMX server stuck in GC or an unreachable remote database)
+ * from taking the measurement collection over, at the expense of the resources of the other plugins:
+ *
+ * <ul>
+ * <li>a plugin may only collect the measurements of so many of its resources at the same time, and a resource only has
+ * one batch of measurements collected at a time; the other collections wait for their turn without holding a collector
+ * thread (see {@link #startCollection(String, Set)} and {@link #finishCollection(String, int)})</li>
+ * <li>a plugin may only spend so much collector time per minute while the collector threads are all busy, the
+ * collections due once it has used it up are skipped until there are threads to spare again (see
+ * {@link #isOverBudget(String)})</li>
+ * <li>the collection interval of a resource whose collections keep timing out is doubled after each time out, up to a
+ * maximum, and goes back to normal after a collection that does not time out (see {@link #getBackoffFactor(int)})</li>
+ * </ul>
+ *
+ * The limits can be changed with the following system properties:
+ *
+ * <ul>
+ * <li><code>rhq.agent.plugins.measurement-collection.max-concurrent-per-plugin</code> - the number of resources of a
+ * plugin collected at the same time, half the collector threads by default</li>
+ * <li><code>rhq.agent.plugins.measurement-collection.plugin-time-budget-percent</code> - the percentage of the time of
+ * all the collector threads a plugin may spend per minute when collections are waiting for a thread, 25 by default;
+ * 100 or more lets a plugin use all of it</li>
+ * <li><code>rhq.agent.plugins.measurement-collection.max-backoff</code> - the maximum factor the collection intervals
+ * of a resource get multiplied by, 16 by default</li>
+ * </ul>
+ */
+public class MeasurementCollectionGovernor {
+    private static final Log LOG = LogFactory.getLog(MeasurementCollectionGovernor.class);
+
+    private static final String MAX_CONCURRENT_PER_PLUGIN_PROP = "rhq.agent.plugins.measurement-collection.max-concurrent-per-plugin";
+    private static final String PLUGIN_TIME_BUDGET_PERCENT_PROP = "rhq.agent.plugins.measurement-collection.plugin-time-budget-percent";
+    private static final String MAX_BACKOFF_PROP = "rhq.agent.plugins.measurement-collection.max-backoff";
+
+    static final long BUDGET_WINDOW = 60 * 1000L; // 1 minute
+
+    private final int threadPoolSize;
+    private final int maxConcurrentPerPlugin;
+    private final long pluginTimeBudget;
+    private final long budgetWindow;
+    private final int maxBackoff;
+
+    private final Map<String, PluginStatistics> plugins = new HashMap<String, PluginStatistics>();
+    private final Map<Integer, Integer> backoffs = new HashMap<Integer, Integer>();
+    private final Set<Integer> collectingResources = new HashSet<Integer>();
+    private int runningCollections;
+
+    private final AtomicLong timedOutCollections = new AtomicLong(0);
+    private final AtomicLong throttledCollections = new AtomicLong(0);
+
+    /**
+     * @param threadPoolSize the number of threads collecting the measurements
+     */
+    public MeasurementCollectionGovernor(int threadPoolSize) {
+        this(threadPoolSize, getIntegerProperty(MAX_CONCURRENT_PER_PLUGIN_PROP, threadPoolSize / 2),
+            getPluginTimeBudget(threadPoolSize), BUDGET_WINDOW, getIntegerProperty(MAX_BACKOFF_PROP, 16));
+    }
+
+    /**
+     * @param threadPoolSize         the number of threads collecting the measurements
+     * @param maxConcurrentPerPlugin the number of resources of a plugin collected at the same time
+     * @param pluginTimeBudget       the time, in milliseconds, a plugin may spend collecting per budget window
+     * @param budgetWindow           the time, in milliseconds, after which the time spent by the plugins is forgotten
+     * @param maxBackoff             the maximum factor the collection intervals of a resource get multiplied by
+     */
+    MeasurementCollectionGovernor(int threadPoolSize, int maxConcurrentPerPlugin, long pluginTimeBudget,
+        long budgetWindow, int maxBackoff) {
+        this.threadPoolSize = threadPoolSize;
+        this.maxConcurrentPerPlugin = Math.max(1, maxConcurrentPerPlugin);
+        this.pluginTimeBudget = pluginTimeBudget;
+        this.budgetWindow = budgetWindow;
+        this.maxBackoff = Math.max(1, maxBackoff);
+    }
+
+    /**
+     * Takes one of the collection slots of the plugin for the given measurements, or queues them until one of the
+     * collections of the plugin {@link #finishCollection(String, int) finishes} if the plugin has none left or the
+     * measurements of their resource are already being collected.
+     *
+     * @param  plugin   the name of the plugin of the resource the measurements belong to
+     * @param  requests the measurements of a single resource due to be collected
+     *
+     * @return <code>true</code> if the measurements can be collected now, <code>false</code> if they were queued
+     */
+    public synchronized boolean startCollection(String plugin, Set<ScheduledMeasurementInfo> requests) {
+        PluginStatistics stats = getPluginStatistics(plugin);
+        int resourceId = requests.iterator().next().getResourceId();
+        if (stats.running < this.maxConcurrentPerPlugin && this.collectingResources.add(resourceId)) {
+            stats.running++;
+            this.runningCollections++;
+            return true;
+        }
+
+        stats.pending.add(requests);
+        return false;
+    }
+
+    /**
+     * Gives the collection slot taken by a finished collection of the plugin to the oldest of its queued collections
+     * whose resource is not being collected, if any.
+     *
+     * @param  plugin     the name of the plugin whose collection finished
+     * @param  resourceId the resource whose measurements were collected
+     *
+     * @return the measurements to collect next in the freed slot, or <code>null</code> if none can be
+     */
+    public synchronized Set<ScheduledMeasurementInfo> finishCollection(String plugin, int resourceId) {
+        PluginStatistics stats = getPluginStatistics(plugin);
+        this.collectingResources.remove(resourceId);
+        for (Iterator<Set<ScheduledMeasurementInfo>> it = stats.pending.iterator(); it.hasNext();) {
+            Set<ScheduledMeasurementInfo> next = it.next();
+            if (this.collectingResources.add(next.iterator().next().getResourceId())) {
+                it.remove();
+                return next;
+            }
+        }
+
+        stats.running--;
+        this.runningCollections--;
+        return null;
+    }
+
+    /**
+     * A plugin is only held to its budget while more collections have been started than there are collector threads,
+     * i.e. while other collections wait for the threads the plugin is using. Otherwise there is no one to make room
+     * for, and skipping its collections would only lose data.
+     *
+     * @param  plugin the name of the plugin about to collect measurements
+     *
+     * @return <code>true</code> if the plugin has used up its collection time for the current minute while the
+     *         collector threads are all busy
+     */
+    public synchronized boolean isOverBudget(String plugin) {
+        if (this.runningCollections <= this.threadPoolSize) {
+            return false;
+        }
+
+        PluginStatistics stats = getPluginStatistics(plugin);
+        stats.rollWindow(System.currentTimeMillis(), this.budgetWindow);
+        return stats.windowTime >= this.pluginTimeBudget;
+    }
+
+    /**
+     * Records how long a collection took and whether it timed out, and adapts the back-off of the resource.
+     *
+     * @param plugin     the name of the plugin of the resource
+     * @param resourceId the resource whose measurements were collected
+     * @param duration   the time the collection took, in milliseconds
+     * @param timedOut   whether the collection timed out
+     */
+    public synchronized void collected(String plugin, int resourceId, long duration, boolean timedOut) {
+        PluginStatistics stats = getPluginStatistics(plugin);
+        stats.rollWindow(System.currentTimeMillis(), this.budgetWindow);
+        stats.windowTime += duration;
+        stats.collections++;
+        stats.totalTime += duration;
+
+        if (timedOut) {
+            this.timedOutCollections.incrementAndGet();
+            Integer backoff = this.backoffs.get(resourceId);
+            int newBackoff = Math.min(this.maxBackoff, (backoff == null) ? 2 : backoff.intValue() * 2);
+            this.backoffs.put(resourceId, newBackoff);
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Collection for resource [" + resourceId + "] of plugin [" + plugin
+                    + "] timed out - its collection intervals are multiplied by [" + newBackoff + "]");
+            }
+        } else {
+            this.backoffs.remove(resourceId);
+        }
+    }
+
+    /**
+     * Records collections skipped because their plugin was {@link #isOverBudget(String) over budget}.
+     *
+     * @param count the number of measurements not collected
+     */
+    public void throttled(int count) {
+        this.throttledCollections.addAndGet(count);
+    }
+
+    /**
+     * @param  resourceId a resource
+     *
+     * @return the factor the collection intervals of the resource are multiplied by, 1 unless its collections timed out
+     */
+    public synchronized int getBackoffFactor(int resourceId) {
+        Integer backoff = this.backoffs.get(resourceId);
+        return (backoff == null) ? 1 : backoff.intValue();
+    }
+
+    /**
+     * Forgets the back-offs of resources whose measurements are no longer collected.
+     *
+     * @param resourceIds the resources
+     */
+    public synchronized void forgetResources(Collection<Integer> resourceIds) {
+        this.backoffs.keySet().removeAll(resourceIds);
+    }
+
+    public long getTimedOutCollections() {
+        return this.timedOutCollections.get();
+    }
+
+    public long getThrottledCollections() {
+        return this.throttledCollections.get();
+    }
+
+    /**
+     * @return the factors the collection intervals of the resources that are backed off are multiplied by, keyed by
+     *         resource id
+     */
+    public synchronized Map<Integer, Integer> getBackoffFactors() {
+        return new HashMap<Integer, Integer>(this.backoffs);
+    }
+
+    /**
+     * @return the average time, in milliseconds, a collection took, keyed by plugin name
+     */
+    public synchronized Map<String, Long> getAverageCollectionTimes() {
+        Map<String, Long> averages = new HashMap<String, Long>();
+        for (Map.Entry<String, PluginStatistics> entry : this.plugins.entrySet()) {
+            PluginStatistics stats = entry.getValue();
+            if (stats.collections > 0) {
+                averages.put(entry.getKey(), stats.totalTime / stats.collections);
+            }
+        }
+
+        return averages;
+    }
+
+    private PluginStatistics getPluginStatistics(String plugin) {
+        PluginStatistics stats = this.plugins.get(plugin);
+        if (stats == null) {
+            stats = new PluginStatistics();
+            this.plugins.put(plugin, stats);
+        }
+
+        return stats;
+    }
+
+    private static long getPluginTimeBudget(int threadPoolSize) {
+        return BUDGET_WINDOW * threadPoolSize * getIntegerProperty(PLUGIN_TIME_BUDGET_PERCENT_PROP, 25) / 100;
+    }
+
+    private static int getIntegerProperty(String name, int defaultValue) {
+        try {
+            return Integer.parseInt(System.getProperty(name, String.valueOf(defaultValue)));
+        } catch (Throwable t) {
+            return defaultValue;
+        }
+    }
+
+    private static class PluginStatistics {
+        int running;
+        final LinkedList<Set<ScheduledMeasurementInfo>> pending = new LinkedList<Set<ScheduledMeasurementInfo>>();
+
+        long windowStart;
+        long windowTime;
+
+        long collections;
+        long totalTime;
+
+        void rollWindow(long now, long budgetWindow) {
+            if ((now - this.windowStart) >= budgetWindow) {
+                this.windowStart = now;
+                this.windowTime = 0;
+            }
+        }
+    }
+}
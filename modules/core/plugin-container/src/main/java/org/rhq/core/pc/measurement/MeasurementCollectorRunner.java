@@ -33,6 +33,7 @@ import org.rhq.core.domain.resource.Resource;
 import org.rhq.core.pc.PluginContainer;
 import org.rhq.core.pc.inventory.InventoryManager;
 import org.rhq.core.pc.inventory.ResourceContainer;
+import org.rhq.core.pc.inventory.TimeoutException;
 import org.rhq.core.pc.util.ComponentUtil;
 import org.rhq.core.pc.util.FacetLockType;
 import org.rhq.core.pluginapi.measurement.MeasurementFacet;
@@ -40,7 +41,9 @@ import org.rhq.core.util.exception.ThrowableUtil;
 
  /**
  * Executes the collection of measurements. Every call results in one new batch of measurements collected. Each batch is
- * limited to a single resource and the measurements that are due to be collected at that time.
+ * limited to a single resource and the measurements that are due to be collected at that time. How long the batches
+ * take is reported to the {@link MeasurementCollectionGovernor}, which decides whether the batches of a plugin are
+ * collected at all and how soon the measurements of a resource are collected again.
  *
  * @author Greg Hinkle
  */
@@ -54,6 +57,23 @@ public class MeasurementCollectorRunner implements Callable<MeasurementReport>,
     }
 
     public MeasurementReport call() {
+        Set<ScheduledMeasurementInfo> requests = this.measurementManager.getNextScheduledSet();
+        if (requests == null) {
+            return this.measurementManager.getActiveReport();
+        }
+
+        return collect(this.measurementManager.getPluginName(requests.iterator().next().getResourceId()), requests);
+    }
+
+    /**
+     * Collects the given batch of measurements into the active report and schedules their next collection.
+     *
+     * @param  plugin   the name of the plugin of the resource the measurements belong to
+     * @param  requests the measurements of a single resource that are due to be collected
+     *
+     * @return the report the measurements were collected into
+     */
+    MeasurementReport collect(String plugin, Set<ScheduledMeasurementInfo> requests) {
         MeasurementReport report = null;
         try {
             this.measurementManager.getLock().readLock().lock();
@@ -62,8 +82,7 @@ public class MeasurementCollectorRunner implements Callable<MeasurementReport>,
             long start = System.currentTimeMillis();
 
             InventoryManager im = PluginContainer.getInstance().getInventoryManager();
-
-            Set<ScheduledMeasurementInfo> requests = this.measurementManager.getNextScheduledSet();
+            MeasurementCollectionGovernor governor = this.measurementManager.getCollectionGovernor();
 
             if (requests != null) {
                 if ((System.currentTimeMillis() - 30000L) > requests.iterator().next().getNextCollection()) {
@@ -77,6 +96,14 @@ public class MeasurementCollectorRunner implements Callable<MeasurementReport>,
 
                 Integer resourceId = requests.iterator().next().getResourceId();
                 ResourceContainer container = im.getResourceContainer(resourceId);
+                if (container == null) {
+                    // the resource has been removed from inventory while its measurements were waiting to be collected
+                    if (log.isDebugEnabled()) {
+                        log.debug("Measurements not collected for resource no longer in inventory: " + resourceId);
+                    }
+                    return report;
+                }
+
                 if (container.getResourceComponentState() != ResourceContainer.ResourceComponentState.STARTED
                     || container.getAvailability() == null
                     || container.getAvailability().getAvailabilityType() == AvailabilityType.DOWN) {
@@ -84,14 +111,21 @@ public class MeasurementCollectorRunner implements Callable<MeasurementReport>,
                     if (log.isDebugEnabled()) {
                         log.debug("Measurements not collected for inactive resource component: " + container.getResource());
                     }
+                } else if (governor.isOverBudget(plugin)) {
+                    // Don't let the resources of one plugin use up the time of the collector threads
+                    governor.throttled(requests.size());
+                    if (log.isDebugEnabled()) {
+                        log.debug("Measurements not collected for " + container.getResource() + " - plugin [" + plugin
+                            + "] has used up its collection time budget");
+                    }
                 } else {
                     MeasurementFacet measurementComponent = ComponentUtil.getComponent(resourceId, MeasurementFacet.class,
                         FacetLockType.READ, MeasurementManager.FACET_METHOD_TIMEOUT, true, true);
 
-                    getValues(measurementComponent, report, requests, container.getResource());
+                    getValues(measurementComponent, report, requests, container.getResource(), plugin);
                 }
 
-                this.measurementManager.reschedule(requests);
+                this.measurementManager.reschedule(requests, governor.getBackoffFactor(resourceId));
 
                 report.incrementCollectionTime(System.currentTimeMillis() - start);
             }
@@ -105,9 +139,10 @@ public class MeasurementCollectorRunner implements Callable<MeasurementReport>,
     }
 
     private void getValues(MeasurementFacet measurementComponent, MeasurementReport report,
-                           Set<? extends MeasurementScheduleRequest> requests, Resource resource) {
+                           Set<? extends MeasurementScheduleRequest> requests, Resource resource, String plugin) {
+        long start = System.currentTimeMillis();
+        boolean timedOut = false;
         try {
-            long start = System.currentTimeMillis();
             measurementComponent.getValues(report, (Set<MeasurementScheduleRequest>) requests);
             long duration = (System.currentTimeMillis() - start);
             if (duration > 2000) {
@@ -115,6 +150,7 @@ public class MeasurementCollectorRunner implements Callable<MeasurementReport>,
                     + "]) took [" + duration + "]ms");
             }
         } catch (Throwable t) {
+            timedOut = (t instanceof TimeoutException);
             this.measurementManager.incrementFailedCollections(requests.size());
             if (log.isDebugEnabled()) {
                 log.warn("Failure to collect measurement data for " + resource + ", requests=" + requests
@@ -123,6 +159,9 @@ public class MeasurementCollectorRunner implements Callable<MeasurementReport>,
                 log.warn("Failure to collect measurement data for " + resource + " - cause: "
                         + ThrowableUtil.getAllMessages(t));
             }
+        } finally {
+            this.measurementManager.getCollectionGovernor().collected(plugin, resource.getId(),
+                System.currentTimeMillis() - start, timedOut);
         }
     }
 
@@ -32,6 +32,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.PriorityQueue;
 import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
@@ -47,7 +48,7 @@ import org.apache.commons.logging.LogFactory;
 import org.rhq.core.clientapi.agent.measurement.MeasurementAgentService;
 import org.rhq.core.domain.measurement.DataType;
 import org.rhq.core.domain.measurement.MeasurementData;
-import org.rhq.core.domain.measurement.MeasurementDataNumeric;
+import org.rhq.core.domain.measurement.MeasurementDataNumericBuffer;
 import org.rhq.core.domain.measurement.MeasurementDataRequest;
 import org.rhq.core.domain.measurement.MeasurementReport;
 import org.rhq.core.domain.measurement.MeasurementSchedule;
@@ -93,6 +94,8 @@ public class MeasurementManager extends AgentService implements MeasurementAgent
     private MeasurementSenderRunner measurementSenderRunner;
     MeasurementCollectorRunner measurementCollectorRunner;
 
+    private MeasurementCollectionGovernor collectionGovernor;
+
     private PluginContainerConfiguration configuration;
 
     private PriorityQueue<ScheduledMeasurementInfo> scheduledRequests = new PriorityQueue<ScheduledMeasurementInfo>(
@@ -134,15 +137,17 @@ public class MeasurementManager extends AgentService implements MeasurementAgent
         int threadPoolSize = configuration.getMeasurementCollectionThreadPoolSize();
         long collectionInitialDelaySecs = configuration.getMeasurementCollectionInitialDelay();
 
+        this.collectionGovernor = new MeasurementCollectionGovernor(threadPoolSize);
+
         if (configuration.isInsideAgent()) {
-            this.collectorThreadPool = new ScheduledThreadPoolExecutor(threadPoolSize, new LoggingThreadFactory(
-                COLLECTOR_THREAD_POOL_NAME, true));
+            // one more thread for the requester, which hands the collections to the others
+            initializeCollection(this.collectionGovernor, new ScheduledThreadPoolExecutor(threadPoolSize + 1,
+                new LoggingThreadFactory(COLLECTOR_THREAD_POOL_NAME, true)));
 
             this.senderThreadPool = new ScheduledThreadPoolExecutor(2, new LoggingThreadFactory(
                 SENDER_THREAD_POOL_NAME, true));
 
             this.measurementSenderRunner = new MeasurementSenderRunner(this);
-            this.measurementCollectorRunner = new MeasurementCollectorRunner(this);
 
             // Schedule the measurement sender to send measurement reports periodically.
             this.senderThreadPool.scheduleAtFixedRate(measurementSenderRunner, collectionInitialDelaySecs, 30,
@@ -168,8 +173,10 @@ public class MeasurementManager extends AgentService implements MeasurementAgent
                     } else {
                         long delay = next - System.currentTimeMillis();
                         if (delay <= 0) {
-                            //                  collectorThreadPool.execute(measurementCollectorRunner);
-                            measurementCollectorRunner.call();
+                            Set<ScheduledMeasurementInfo> requests = getNextScheduledSet();
+                            if (requests != null) {
+                                submitCollection(requests);
+                            }
                         } else {
                             Thread.sleep(delay);
                         }
@@ -185,6 +192,78 @@ public class MeasurementManager extends AgentService implements MeasurementAgent
         }
     }
 
+    /**
+     * Has the measurements collected in the given threads, as the given governor allows.
+     */
+    void initializeCollection(MeasurementCollectionGovernor collectionGovernor,
+        ScheduledThreadPoolExecutor collectorThreadPool) {
+        this.collectionGovernor = collectionGovernor;
+        this.collectorThreadPool = collectorThreadPool;
+        this.measurementCollectorRunner = new MeasurementCollectorRunner(this);
+    }
+
+    /**
+     * Collects the measurements in one of the collector threads, once their plugin is allowed to collect more of its
+     * resources at the same time and no other measurements of their resource are being collected.
+     */
+    void submitCollection(Set<ScheduledMeasurementInfo> requests) {
+        String plugin = getPluginName(requests.iterator().next().getResourceId());
+        if (this.collectionGovernor.startCollection(plugin, requests)) {
+            executeCollection(plugin, requests);
+        }
+    }
+
+    private void executeCollection(String plugin, Set<ScheduledMeasurementInfo> requests) {
+        try {
+            this.collectorThreadPool.execute(new MeasurementCollectionTask(plugin, requests));
+        } catch (RejectedExecutionException e) {
+            // the plugin container is shutting down
+            LOG.debug("Measurement collection not executed: " + e);
+        }
+    }
+
+    class MeasurementCollectionTask implements Runnable {
+        private final String plugin;
+        private final Set<ScheduledMeasurementInfo> requests;
+
+        MeasurementCollectionTask(String plugin, Set<ScheduledMeasurementInfo> requests) {
+            this.plugin = plugin;
+            this.requests = requests;
+        }
+
+        public void run() {
+            try {
+                measurementCollectorRunner.collect(this.plugin, this.requests);
+            } finally {
+                // hand the plugin's slot over to the next of its collections waiting for one
+                Set<ScheduledMeasurementInfo> next = collectionGovernor.finishCollection(this.plugin, this.requests
+                    .iterator().next().getResourceId());
+                if (next != null) {
+                    executeCollection(this.plugin, next);
+                }
+            }
+        }
+    }
+
+    /**
+     * @param  resourceId a resource
+     *
+     * @return the name of the plugin defining the type of the resource, or an empty string if the resource is not in
+     *         inventory
+     */
+    String getPluginName(int resourceId) {
+        ResourceContainer container = this.inventoryManager.getResourceContainer(resourceId);
+        if (container == null || container.getResource().getResourceType() == null) {
+            return "";
+        }
+
+        return container.getResource().getResourceType().getPlugin();
+    }
+
+    MeasurementCollectionGovernor getCollectionGovernor() {
+        return this.collectionGovernor;
+    }
+
     private void reschedule(Resource resource) {
         int resourceId = resource.getId();
 
@@ -256,21 +335,25 @@ public class MeasurementManager extends AgentService implements MeasurementAgent
     }
 
     public void perMinuteItizeData(MeasurementReport report) {
-        Iterator<MeasurementDataNumeric> iter = report.getNumericData().iterator();
-        while (iter.hasNext()) {
-            MeasurementData d = iter.next();
-            MeasurementDataNumeric numeric = (MeasurementDataNumeric) d;
-            if (numeric.isPerMinuteCollection()) {
-                Double perMinuteValue = updatePerMinuteMetric(numeric);
-                if (perMinuteValue == null) {
+        // work on the primitive values, so that no objects are created for the numeric data before it is sent
+        MeasurementDataNumericBuffer numericData = report.getNumericDataBuffer();
+        int kept = 0;
+        for (int i = 0; i < numericData.size(); i++) {
+            NumericType rawNumericType = numericData.getRawNumericType(i);
+            if (rawNumericType != null) {
+                double perMinuteValue = updatePerMinuteMetric(numericData.getScheduleId(i), numericData
+                    .getTimestamp(i), numericData.getValue(i), rawNumericType);
+                if (Double.isNaN(perMinuteValue)) {
                     // This is the first collection, don't return the value yet
-                    iter.remove();
-                } else {
-                    // set the value to the transformed rate value
-                    numeric.setValue(perMinuteValue);
+                    continue;
                 }
+
+                // set the value to the transformed rate value
+                numericData.setValue(i, perMinuteValue);
             }
+            numericData.copy(i, kept++);
         }
+        numericData.truncate(kept);
     }
 
     public void shutdown() {
@@ -395,6 +478,10 @@ public class MeasurementManager extends AgentService implements MeasurementAgent
                 itr.remove();
             }
         }
+
+        if (this.collectionGovernor != null) {
+            this.collectionGovernor.forgetResources(resourceIds);
+        }
     }
 
     private void clearDuplicateSchedules() {
@@ -493,10 +580,21 @@ public class MeasurementManager extends AgentService implements MeasurementAgent
     }
 
     public synchronized void reschedule(Set<ScheduledMeasurementInfo> scheduledMeasurementInfos) {
+        reschedule(scheduledMeasurementInfos, 1);
+    }
+
+    /**
+     * Schedules the next collection of the given measurements after their interval multiplied by the given factor,
+     * used to collect the measurements of resources whose collections keep timing out less often.
+     *
+     * @param scheduledMeasurementInfos the measurements just collected
+     * @param backoffFactor             the factor to multiply the intervals by
+     */
+    public synchronized void reschedule(Set<ScheduledMeasurementInfo> scheduledMeasurementInfos, int backoffFactor) {
         for (ScheduledMeasurementInfo scheduledMeasurement : scheduledMeasurementInfos) {
             // Iterate to next collection time
             scheduledMeasurement.setNextCollection(scheduledMeasurement.getNextCollection()
-                + scheduledMeasurement.getInterval());
+                + (scheduledMeasurement.getInterval() * backoffFactor));
             this.scheduledRequests.offer(scheduledMeasurement);
         }
     }
@@ -520,19 +618,24 @@ public class MeasurementManager extends AgentService implements MeasurementAgent
         }
     }
 
-    private Double updatePerMinuteMetric(MeasurementDataNumeric numeric) {
-        CachedValue previousValue = this.perMinuteCache.get(numeric.getScheduleId());
-        this.perMinuteCache.put(numeric.getScheduleId(), new CachedValue(numeric.getTimestamp(), numeric.getValue()));
-        Double perMinuteValue = null;
+    private double updatePerMinuteMetric(int scheduleId, long timestamp, double value, NumericType rawNumericType) {
+        CachedValue previousValue = this.perMinuteCache.get(scheduleId);
+        double perMinuteValue = Double.NaN;
         if (previousValue != null) {
-            long timeDifference = numeric.getTimestamp() - previousValue.timestamp;
-            perMinuteValue = (60000D / timeDifference) * (numeric.getValue() - previousValue.value);
-            if (numeric.getRawNumericType() == NumericType.TRENDSDOWN)
+            long timeDifference = timestamp - previousValue.timestamp;
+            perMinuteValue = (60000D / timeDifference) * (value - previousValue.value);
+            if (rawNumericType == NumericType.TRENDSDOWN)
                 perMinuteValue *= -1D; // Multiply by -1, so per-minute value is positive.
             if (perMinuteValue < 0)
                 // A negative value means the raw metric must have been reset, which means we can't accurately
-                // calculate a per-minute value this time around; return null to indicate this.
-                perMinuteValue = null;
+                // calculate a per-minute value this time around; return NaN to indicate this.
+                perMinuteValue = Double.NaN;
+
+            // reuse the cached value, it is updated on every collection
+            previousValue.timestamp = timestamp;
+            previousValue.value = value;
+        } else {
+            this.perMinuteCache.put(scheduleId, new CachedValue(timestamp, value));
         }
         return perMinuteValue;
     }
@@ -642,7 +745,9 @@ public class MeasurementManager extends AgentService implements MeasurementAgent
             this.measurementLock.writeLock().lock();
             MeasurementReport previousReport = this.activeReport;
 
-            this.activeReport = new MeasurementReport();
+            // expect as many numeric values as last time, so that the new report does not have to grow to hold them
+            int numericDataCapacity = (previousReport != null) ? previousReport.getNumericDataBuffer().size() : 0;
+            this.activeReport = new MeasurementReport(numericDataCapacity);
 
             return previousReport;
         } finally {
@@ -662,6 +767,34 @@ public class MeasurementManager extends AgentService implements MeasurementAgent
         return failedCollection.get();
     }
 
+    public long getTimedOutCollections() {
+        return (this.collectionGovernor != null) ? this.collectionGovernor.getTimedOutCollections() : 0;
+    }
+
+    public long getThrottledCollections() {
+        return (this.collectionGovernor != null) ? this.collectionGovernor.getThrottledCollections() : 0;
+    }
+
+    public long getBackedOffResources() {
+        return getCollectionBackoffs().size();
+    }
+
+    public Map<Integer, Integer> getCollectionBackoffs() {
+        if (this.collectionGovernor == null) {
+            return Collections.emptyMap();
+        }
+
+        return this.collectionGovernor.getBackoffFactors();
+    }
+
+    public Map<String, Long> getAverageCollectionTimePerPlugin() {
+        if (this.collectionGovernor == null) {
+            return Collections.emptyMap();
+        }
+
+        return this.collectionGovernor.getAverageCollectionTimes();
+    }
+
     private static class CachedValue {
         CachedValue(long timestamp, double value) {
             this.timestamp = timestamp;
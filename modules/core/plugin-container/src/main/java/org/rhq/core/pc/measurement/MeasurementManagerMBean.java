@@ -22,6 +22,8 @@
   */
 package org.rhq.core.pc.measurement;
 
+import java.util.Map;
+
 /**
  * @author Greg Hinkle
  */
@@ -39,4 +41,25 @@ public interface MeasurementManagerMBean {
     long getLateCollections();
 
     long getFailedCollections();
+
+    long getTimedOutCollections();
+
+    /**
+     * @return the number of measurements not collected because their plugin used up its collection time budget
+     */
+    long getThrottledCollections();
+
+    long getBackedOffResources();
+
+    /**
+     * @return the factors the collection intervals of the resources whose collections timed out are currently
+     *         multiplied by, keyed by resource id
+     */
+    Map<Integer, Integer> getCollectionBackoffs();
+
+    /**
+     * @return the average time, in milliseconds, the collection of the measurements of a resource took, keyed by
+     *         plugin name
+     */
+    Map<String, Long> getAverageCollectionTimePerPlugin();
 }
\ No newline at end of file
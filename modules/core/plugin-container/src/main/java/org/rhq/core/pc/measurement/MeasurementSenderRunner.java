@@ -23,14 +23,13 @@
 package org.rhq.core.pc.measurement;
 
 import java.util.ArrayList;
-import java.util.Iterator;
 import java.util.List;
 import java.util.concurrent.Callable;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
-import org.rhq.core.domain.measurement.MeasurementDataNumeric;
+import org.rhq.core.domain.measurement.MeasurementDataNumericBuffer;
 import org.rhq.core.domain.measurement.MeasurementDataTrait;
 import org.rhq.core.domain.measurement.MeasurementReport;
 
@@ -87,16 +86,19 @@ public class MeasurementSenderRunner implements Callable<MeasurementReport>, Run
     }
 
     private void cleanseInvalidNumericValues(MeasurementReport report) {
-        Iterator<MeasurementDataNumeric> iter = report.getNumericData().iterator();
-        while (iter.hasNext()) {
-            MeasurementDataNumeric numeric = iter.next();
-            Double v = numeric.getValue();
-            if (v == null || v.isInfinite() || v.isNaN()) {
-                LOG.warn("Numeric " + numeric.getName() + " with id " + numeric.getScheduleId()
+        // null values are buffered as NaN
+        MeasurementDataNumericBuffer numericData = report.getNumericDataBuffer();
+        int kept = 0;
+        for (int i = 0; i < numericData.size(); i++) {
+            double v = numericData.getValue(i);
+            if (Double.isInfinite(v) || Double.isNaN(v)) {
+                LOG.warn("Numeric " + numericData.getName(i) + " with id " + numericData.getScheduleId(i)
                     + " is invalid, value was '" + v + "'");
-                iter.remove();
+                continue;
             }
+            numericData.copy(i, kept++);
         }
+        numericData.truncate(kept);
     }
 
     public void run() {
@@ -56,6 +56,16 @@ public class ClassLoaderManager {
      */
     private final File tmpDir;
 
+    /**
+     * Directory where the jars embedded in plugin jars are cached across restarts, if not <code>null</code>.
+     */
+    private final File libCacheDir;
+
+    /**
+     * The cache entries used by the classloaders created so far; the rest of the cache is purged on {@link #destroy()}.
+     */
+    private final Set<File> libCacheEntries = new HashSet<File>();
+
     /**
      * Indicates what plugins are deployed and their hierarchies.
      */
@@ -120,6 +130,23 @@ public class ClassLoaderManager {
      */
     public ClassLoaderManager(Map<String, URL> pluginNamesUrls, PluginDependencyGraph graph,
         ClassLoader rootClassLoader, File tmpDir, boolean createResourceClassLoaders) {
+        this(pluginNamesUrls, graph, rootClassLoader, tmpDir, null, createResourceClassLoaders);
+    }
+
+    /**
+     * Same as {@link #ClassLoaderManager(Map, PluginDependencyGraph, ClassLoader, File, boolean)} except the jars
+     * embedded in the plugin jars are unpacked into the given cache directory, where they can be reused by all
+     * classloaders, and by later plugin container instances, instead of being unpacked for every classloader.
+     *
+     * @param pluginNamesUrls maps a plugin name with the URL to that plugin's jar file
+     * @param graph the graph that provides plugin dependency information for all plugins that are deployed
+     * @param rootClassLoader the classloader at the top of the classloader hierarchy
+     * @param tmpDir where the classloaders can write out the embedded jars that cannot be cached
+     * @param libCacheDir where the embedded jars are cached (if <code>null</code>, they are not)
+     * @param createResourceClassLoaders whether or not to create per-resource classloaders
+     */
+    public ClassLoaderManager(Map<String, URL> pluginNamesUrls, PluginDependencyGraph graph,
+        ClassLoader rootClassLoader, File tmpDir, File libCacheDir, boolean createResourceClassLoaders) {
 
         this.rootClassLoader = rootClassLoader;
         this.pluginClassLoaders = new HashMap<String, ClassLoader>();
@@ -129,6 +156,7 @@ public class ClassLoaderManager {
         this.pluginNamesUrls = pluginNamesUrls;
         this.pluginDependencyGraph = graph;
         this.tmpDir = tmpDir;
+        this.libCacheDir = libCacheDir;
         this.createResourceClassLoaders = createResourceClassLoaders;
     }
 
@@ -160,6 +188,12 @@ public class ClassLoaderManager {
         }
         this.pluginClassLoaders.clear();
 
+        // whatever none of our classloaders used came from plugins (or plugin versions) that are gone
+        if (this.libCacheDir != null) {
+            PluginClassLoader.purgeUnusedCacheEntries(this.libCacheDir, this.libCacheEntries);
+            this.libCacheEntries.clear();
+        }
+
         return;
     }
 
@@ -506,15 +540,19 @@ public class ClassLoaderManager {
             // we just use File to parse the name from the path.
             String pluginJarName = new File(mainJarUrl.getPath()).getName();
 
+            PluginClassLoader pluginClassLoader;
             if (additionalJars == null || additionalJars.size() == 0) {
-                classLoader = PluginClassLoader.create(pluginJarName, mainJarUrl, true, parentClassLoader, this.tmpDir);
+                pluginClassLoader = PluginClassLoader.create(pluginJarName, new URL[] { mainJarUrl }, true,
+                    parentClassLoader, this.tmpDir, this.libCacheDir);
             } else {
                 List<URL> allJars = new ArrayList<URL>(additionalJars.size() + 1);
                 allJars.add(mainJarUrl);
                 allJars.addAll(additionalJars);
-                classLoader = PluginClassLoader.create(pluginJarName, allJars.toArray(new URL[allJars.size()]), true,
-                    parentClassLoader, this.tmpDir);
+                pluginClassLoader = PluginClassLoader.create(pluginJarName, allJars.toArray(new URL[allJars.size()]),
+                    true, parentClassLoader, this.tmpDir, this.libCacheDir);
             }
+            this.libCacheEntries.addAll(pluginClassLoader.getCacheEntries());
+            classLoader = pluginClassLoader;
 
             if (log.isDebugEnabled()) {
                 log.debug("Created classloader for plugin jar [" + mainJarUrl + "] with additional jars ["
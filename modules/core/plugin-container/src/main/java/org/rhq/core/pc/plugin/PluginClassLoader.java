@@ -29,11 +29,17 @@ import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.URISyntaxException;
 import java.net.URL;
 import java.net.URLClassLoader;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
 import java.util.List;
+import java.util.zip.CRC32;
 import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 import java.util.zip.ZipInputStream;
 
 import org.apache.commons.logging.Log;
@@ -44,11 +50,21 @@ import org.rhq.core.pluginapi.util.FileUtils;
 
 /**
  * Classloader for the plugin jar itself and any embedded lib/* jars.
+ * <p/>
+ * When given a cache directory, the embedded lib/* files are unpacked into it only once and then reused by every
+ * classloader created for the plugin, across plugin container restarts. Embedded jars are keyed on the checksum and
+ * size that the plugin jar's central directory records for them, so a jar that several plugins embed is only found
+ * once on disk. Only the files are shared; every classloader still defines its own classes, so plugins remain
+ * isolated from each other.
  */
 public class PluginClassLoader extends URLClassLoader {
     private final Log log = LogFactory.getLog(this.getClass());
 
+    private static final String CACHE_JARS_DIRECTORY = "jars";
+    private static final String CACHE_RESOURCES_DIRECTORY = "resources";
+
     private File embeddedJarsDirectory;
+    private List<File> cacheEntries = Collections.emptyList();
     private String stringValue;
 
     protected PluginClassLoader(URL[] urls, ClassLoader parent) {
@@ -74,10 +90,13 @@ public class PluginClassLoader extends URLClassLoader {
     }
 
     public void destroy() {
-        try {
-            FileUtils.purge(embeddedJarsDirectory, true);
-        } catch (IOException e) {
-            log.warn("Failed to purge embedded jars directory. Cause: " + e);
+        if (embeddedJarsDirectory != null) {
+            // only the files unpacked for this classloader alone are purged - cache entries are meant to outlive us
+            try {
+                FileUtils.purge(embeddedJarsDirectory, true);
+            } catch (IOException e) {
+                log.warn("Failed to purge embedded jars directory. Cause: " + e);
+            }
         }
 
         // help GC
@@ -122,7 +141,32 @@ public class PluginClassLoader extends URLClassLoader {
      */
     public static PluginClassLoader create(String pluginJarName, URL[] pluginUrls, boolean unpackNestedJars,
         ClassLoader parent, File tmpDirectory) throws PluginContainerException {
+        return create(pluginJarName, pluginUrls, unpackNestedJars, parent, tmpDirectory, null);
+    }
+
+    /**
+     * Same as {@link #create(String, URL[], boolean, ClassLoader, File)} except the embedded lib/* files are
+     * unpacked into the given persistent cache directory, where they are reused by later calls rather than unpacked
+     * all over again. The cache is only used if the plugin jar is a local file; otherwise this behaves just as if
+     * no cache directory was given.
+     *
+     * @param pluginJarName the logical name of the plugin
+     * @param pluginUrls the first element is the location where the plugin jar can be found, the remaining
+     *                   are additional URLs to jars that will be added to the new classloader
+     * @param unpackNestedJars if <code>true</code>, any lib/*.jar files found in the plugin jar
+     *                         are unpacked and put in the classloader. The additional jars are NEVER unpacked.
+     * @param parent the parent classloader for the new classloader being created
+     * @param tmpDirectory the directory where the unpacked nested jars are placed if they are not cached
+     * @param cacheDirectory the directory where unpacked nested jars are cached (may be <code>null</code>)
+     *
+     * @return the new plugin classloader
+     *
+     * @throws PluginContainerException
+     */
+    public static PluginClassLoader create(String pluginJarName, URL[] pluginUrls, boolean unpackNestedJars,
+        ClassLoader parent, File tmpDirectory, File cacheDirectory) throws PluginContainerException {
         List<URL> classpathUrlList = new ArrayList<URL>();
+        List<File> cacheEntries = new ArrayList<File>();
         File unpackedDirectory = null;
         boolean processedPluginJar = false; // after the first URL is processed (which is the plugin jar) this will be true
 
@@ -132,7 +176,14 @@ public class PluginClassLoader extends URLClassLoader {
             // note that we only ever unpacked the plugin jar itself
             if (!processedPluginJar && unpackNestedJars) {
                 try {
-                    unpackedDirectory = unpackEmbeddedJars(pluginJarName, pluginUrl, classpathUrlList, tmpDirectory);
+                    File pluginFile = toFile(pluginUrl);
+                    if (cacheDirectory != null && pluginFile != null) {
+                        unpackEmbeddedJarsToCache(pluginJarName, pluginFile, classpathUrlList, cacheDirectory,
+                            cacheEntries);
+                    } else {
+                        unpackedDirectory = unpackEmbeddedJars(pluginJarName, pluginUrl, classpathUrlList,
+                            tmpDirectory);
+                    }
                 } catch (Exception e) {
                     throw new PluginContainerException("Failed to unpack embedded JARs within: " + pluginUrl, e);
                 }
@@ -144,10 +195,47 @@ public class PluginClassLoader extends URLClassLoader {
         URL[] classpath = classpathUrlList.toArray(new URL[classpathUrlList.size()]);
         PluginClassLoader newLoader = new PluginClassLoader(classpath, parent);
         newLoader.embeddedJarsDirectory = unpackedDirectory;
+        newLoader.cacheEntries = cacheEntries;
 
         return newLoader;
     }
 
+    /**
+     * Returns the cache directory entries (the directories holding unpacked files) that this classloader uses.
+     *
+     * @return the cache entries in use, empty if this classloader does not use the cache
+     */
+    public List<File> getCacheEntries() {
+        return this.cacheEntries;
+    }
+
+    /**
+     * Deletes everything in the given cache directory that is not one of the given entries. This is how files that
+     * were unpacked from old versions of plugins (or from plugins no longer deployed) get cleaned up.
+     *
+     * @param cacheDirectory the cache directory whose unused entries are to be deleted
+     * @param entriesInUse the entries that are in use and must be kept (see {@link #getCacheEntries()})
+     */
+    public static void purgeUnusedCacheEntries(File cacheDirectory, Collection<File> entriesInUse) {
+        Log log = LogFactory.getLog(PluginClassLoader.class);
+        for (String name : new String[] { CACHE_JARS_DIRECTORY, CACHE_RESOURCES_DIRECTORY }) {
+            File[] entries = new File(cacheDirectory, name).listFiles();
+            if (entries == null) {
+                continue;
+            }
+            for (File entry : entries) {
+                if (!entriesInUse.contains(entry)) {
+                    try {
+                        FileUtils.purge(entry, true);
+                        log.debug("Purged unused plugin lib cache entry [" + entry + "]");
+                    } catch (IOException e) {
+                        log.warn("Failed to purge unused plugin lib cache entry [" + entry + "]. Cause: " + e);
+                    }
+                }
+            }
+        }
+    }
+
     /**
      * Unpacks all lib/* resources into a temporary directory, adds URLs to those newly extracted resources and returns
      * the directory where the jars were extracted. This will actually create a unique subdirectory under the given
@@ -254,6 +342,144 @@ public class PluginClassLoader extends URLClassLoader {
         return extractionDirectory;
     }
 
+    /**
+     * Unpacks all lib/* resources into the given cache directory, unless they already are there, and adds URLs to
+     * them. Jars go into a directory named after the checksum and size of the jar, other resources go into a
+     * directory named after the plugin and the checksums of all of its (non-jar) resources. The directories used
+     * are added to the given cache entries.
+     *
+     * @param  pluginJarName  name of the main plugin jar, used as part of the name of the resources directory
+     * @param  pluginFile     the main plugin jar we are unpacking
+     * @param  urls           the URLs to the cached resources
+     * @param  cacheDirectory the directory that holds the cache
+     * @param  cacheEntries   the cache entries that were used
+     *
+     * @throws IOException If any IO goes wrong
+     */
+    private static void unpackEmbeddedJarsToCache(String pluginJarName, File pluginFile, List<URL> urls,
+        File cacheDirectory, List<File> cacheEntries) throws IOException {
+        // unlike a ZipInputStream, a ZipFile gives us the checksum of each entry without reading it
+        ZipFile zipFile = new ZipFile(pluginFile);
+        try {
+            List<ZipEntry> resources = new ArrayList<ZipEntry>();
+            CRC32 resourcesChecksum = new CRC32();
+            int resourcesUrlIndex = -1;
+
+            for (Enumeration<? extends ZipEntry> entries = zipFile.entries(); entries.hasMoreElements();) {
+                ZipEntry entry = entries.nextElement();
+                String entryName = entry.getName();
+
+                // Only care about entries in the lib directory
+                if (!entryName.startsWith("lib") || (entryName.length() <= 4) || entry.isDirectory()) {
+                    continue;
+                }
+
+                String s = getFileName(entryName);
+                if (s.endsWith(".jar")) {
+                    File entryDirectory = new File(new File(cacheDirectory, CACHE_JARS_DIRECTORY), Long
+                        .toHexString(entry.getCrc())
+                        + "-" + entry.getSize());
+                    File file = extractToCache(zipFile, entry, entryDirectory, s);
+                    urls.add(file.toURI().toURL());
+                    if (!cacheEntries.contains(entryDirectory)) {
+                        cacheEntries.add(entryDirectory);
+                    }
+                } else {
+                    resources.add(entry);
+                    resourcesChecksum.update(s.getBytes("UTF-8"));
+                    resourcesChecksum.update(Long.toHexString(entry.getCrc()).getBytes("UTF-8"));
+                    if (resourcesUrlIndex < 0) {
+                        resourcesUrlIndex = urls.size();
+                    }
+                }
+            }
+
+            if (!resources.isEmpty()) {
+                // All non-jar files are extracted as-is with the same filename, so they need a directory of their own
+                File resourcesDirectory = new File(new File(cacheDirectory, CACHE_RESOURCES_DIRECTORY), pluginJarName
+                    + "-" + Long.toHexString(resourcesChecksum.getValue()));
+                for (ZipEntry entry : resources) {
+                    extractToCache(zipFile, entry, resourcesDirectory, getFileName(entry.getName()));
+                }
+                urls.add(resourcesUrlIndex, resourcesDirectory.toURI().toURL());
+                cacheEntries.add(resourcesDirectory);
+            }
+        } finally {
+            try {
+                zipFile.close();
+            } catch (Exception ignored) {
+            }
+        }
+    }
+
+    /**
+     * Extracts the given zip entry to the named file in the given cache entry directory, unless a previous call
+     * already did. The entry is first written to a temporary file that is then renamed, so a file of the expected
+     * name is always complete, even if the plugin container died while unpacking it.
+     */
+    private static File extractToCache(ZipFile zipFile, ZipEntry entry, File entryDirectory, String fileName)
+        throws IOException {
+        File file = new File(entryDirectory, fileName);
+        if (file.isFile() && file.length() == entry.getSize()) {
+            return file;
+        }
+
+        entryDirectory.mkdirs();
+        File tmpFile = File.createTempFile(fileName, ".tmp", entryDirectory);
+        try {
+            InputStream inputStream = new BufferedInputStream(zipFile.getInputStream(entry));
+            try {
+                BufferedOutputStream outputStream = new BufferedOutputStream(new FileOutputStream(tmpFile));
+                try {
+                    int count;
+                    byte[] b = new byte[8192];
+                    while ((count = inputStream.read(b)) > -1) {
+                        outputStream.write(b, 0, count);
+                    }
+                } finally {
+                    outputStream.close();
+                }
+            } finally {
+                inputStream.close();
+            }
+
+            if (!tmpFile.renameTo(file)) {
+                // someone else may have just beaten us to it; otherwise, try to replace what is there
+                if (!(file.isFile() && file.length() == entry.getSize())) {
+                    file.delete();
+                    if (!tmpFile.renameTo(file)) {
+                        throw new IOException("Failed to move [" + tmpFile + "] to [" + file + "]");
+                    }
+                }
+            }
+        } finally {
+            tmpFile.delete();
+        }
+
+        return file;
+    }
+
+    private static String getFileName(String entryName) {
+        int i = entryName.lastIndexOf('/');
+        if (i < 0) {
+            i = entryName.lastIndexOf('\\');
+        }
+        return entryName.substring(i + 1);
+    }
+
+    private static File toFile(URL url) {
+        if (!"file".equals(url.getProtocol())) {
+            return null;
+        }
+        try {
+            return new File(url.toURI());
+        } catch (URISyntaxException e) {
+            return new File(url.getPath());
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
     private static File createTempDirectory(File tmpDirectory, String pluginName) throws IOException {
         // Let's reuse the algorithm the JDK uses to determine a unique name:
         // 1) create a temp file to get a unique name using JDK createTempFile
@@ -107,6 +107,11 @@ public class PluginManager implements ContainerService {
 
         PluginFinder finder = configuration.getPluginFinder();
         File tmpDir = configuration.getTemporaryDirectory();
+        File libCacheDir = null;
+        if (configuration.getDataDirectory() != null) {
+            // not under the tmp directory, which is purged every time the plugin container starts
+            libCacheDir = new File(configuration.getDataDirectory(), "plugin-lib-cache");
+        }
         List<String> disabledPlugins = configuration.getDisabledPlugins();
 
         // The root classloader for all plugins will have all classes hidden except for those configured in the regex.
@@ -122,7 +127,8 @@ public class PluginManager implements ContainerService {
         Map<URL, PluginDescriptor> descriptors = new HashMap<URL, PluginDescriptor>();
         PluginDependencyGraph graph = new PluginDependencyGraph();
         boolean createResourceCL = configuration.isCreateResourceClassloaders();
-        this.classLoaderManager = new ClassLoaderManager(pluginNamesUrls, graph, rootCL, tmpDir, createResourceCL);
+        this.classLoaderManager = new ClassLoaderManager(pluginNamesUrls, graph, rootCL, tmpDir, libCacheDir,
+            createResourceCL);
 
         try {
             if (finder != null) {
@@ -0,0 +1,107 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2008 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License, version 2, as
+ * published by the Free Software Foundation, and/or the GNU Lesser
+ * General Public License, version 2.1, also as published by the Free
+ * Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License and the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * and the GNU Lesser General Public License along with this program;
+ * if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.rhq.core.pc.bundle;
+
+import java.io.File;
+import java.io.FileWriter;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import org.rhq.core.util.file.FileUtil;
+
+@Test
+public class BundleFileCacheTest {
+    private File tmpDir;
+    private File cacheDir;
+
+    @BeforeMethod
+    public void beforeMethod() throws Exception {
+        tmpDir = File.createTempFile("bundle-file-cache-test", null);
+        tmpDir.delete();
+        tmpDir.mkdirs();
+        cacheDir = new File(tmpDir, "cache");
+    }
+
+    @AfterMethod
+    public void afterMethod() {
+        FileUtil.purge(tmpDir, true);
+    }
+
+    public void testCopyTo() throws Exception {
+        BundleFileCache cache = new BundleFileCache(cacheDir, 1000L);
+        File source = writeFile("source", 100);
+        cache.put("sha256-a", source);
+
+        File destination = new File(tmpDir, "dest/file");
+        assert cache.copyTo("sha256-a", destination);
+        assert destination.length() == 100L;
+        assert !cache.copyTo("sha256-b", new File(tmpDir, "dest/other"));
+        assert !cache.copyTo(null, new File(tmpDir, "dest/other"));
+    }
+
+    public void testLeastRecentlyUsedIsEvicted() throws Exception {
+        BundleFileCache cache = new BundleFileCache(cacheDir, 250L);
+        cache.put("a", writeFile("a", 100));
+        cache.put("b", writeFile("b", 100));
+
+        // touch "a" so "b" becomes the least recently used
+        assert cache.copyTo("a", new File(tmpDir, "a-copy"));
+
+        cache.put("c", writeFile("c", 100));
+        assert cache.getCount() == 2 : cache.getCount();
+        assert cache.getSize() == 200L : cache.getSize();
+        assert cache.copyTo("a", new File(tmpDir, "a-copy2"));
+        assert !cache.copyTo("b", new File(tmpDir, "b-copy"));
+        assert cache.copyTo("c", new File(tmpDir, "c-copy"));
+
+        // files larger than the cache are never cached
+        cache.put("d", writeFile("d", 300));
+        assert !cache.copyTo("d", new File(tmpDir, "d-copy"));
+    }
+
+    public void testReload() throws Exception {
+        BundleFileCache cache = new BundleFileCache(cacheDir, 1000L);
+        cache.put("a", writeFile("a", 100));
+        cache.put("b", writeFile("b", 50));
+
+        BundleFileCache reloaded = new BundleFileCache(cacheDir, 1000L);
+        assert reloaded.getCount() == 2 : reloaded.getCount();
+        assert reloaded.getSize() == 150L : reloaded.getSize();
+        assert reloaded.copyTo("b", new File(tmpDir, "b-copy"));
+    }
+
+    private File writeFile(String name, int length) throws Exception {
+        File file = new File(tmpDir, name);
+        FileWriter writer = new FileWriter(file);
+        try {
+            for (int i = 0; i < length; i++) {
+                writer.write('x');
+            }
+        } finally {
+            writer.close();
+        }
+        return file;
+    }
+}
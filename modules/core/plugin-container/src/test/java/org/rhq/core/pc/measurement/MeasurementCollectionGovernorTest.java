@@ -0,0 +1,137 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2011 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License, version 2, as
+ * published by the Free Software Foundation, and/or the GNU Lesser
+ * General Public License, version 2.1, also as published by the Free
+ * Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License and the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * and the GNU Lesser General Public License along with this program;
+ * if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.rhq.core.pc.measurement;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.testng.annotations.Test;
+
+import org.rhq.core.domain.measurement.DataType;
+import org.rhq.core.domain.measurement.MeasurementScheduleRequest;
+
+/**
+ * Unit test for {@link MeasurementCollectionGovernor}.
+ */
+@Test
+public class MeasurementCollectionGovernorTest {
+
+    public void testConcurrentCollectionsPerPlugin() {
+        MeasurementCollectionGovernor governor = new MeasurementCollectionGovernor(4, 2, 1000L, 60000L, 16);
+        Set<ScheduledMeasurementInfo> third = batch(3);
+
+        assert governor.startCollection("slow", batch(1));
+        assert governor.startCollection("slow", batch(2));
+        assert !governor.startCollection("slow", third) : "The plugin should have no slot left";
+        assert governor.startCollection("other", batch(4)) : "Other plugins should not be limited";
+
+        // the queued collection takes over the slot of the first one to finish
+        assert governor.finishCollection("slow", 1) == third;
+        assert governor.finishCollection("slow", 2) == null;
+        assert governor.finishCollection("slow", 3) == null;
+        assert governor.startCollection("slow", batch(1));
+        assert governor.startCollection("slow", batch(2));
+    }
+
+    public void testOneCollectionPerResource() {
+        MeasurementCollectionGovernor governor = new MeasurementCollectionGovernor(4, 3, 1000L, 60000L, 16);
+        Set<ScheduledMeasurementInfo> second = batch(1);
+        Set<ScheduledMeasurementInfo> third = batch(1);
+
+        assert governor.startCollection("slow", batch(1));
+        assert !governor.startCollection("slow", second) : "The resource is already being collected";
+        assert !governor.startCollection("slow", third);
+        assert governor.startCollection("slow", batch(2)) : "Other resources of the plugin should not wait";
+
+        // the batches of the resource follow each other, in the order they were queued
+        assert governor.finishCollection("slow", 2) == null : "The queued batches should wait for their resource";
+        assert governor.finishCollection("slow", 1) == second;
+        assert governor.finishCollection("slow", 1) == third;
+        assert governor.finishCollection("slow", 1) == null;
+
+        // with a single slot, the queued batches take it over in the order they were queued
+        governor = new MeasurementCollectionGovernor(4, 1, 1000L, 60000L, 16);
+        Set<ScheduledMeasurementInfo> blocked = batch(1);
+        Set<ScheduledMeasurementInfo> waiting = batch(2);
+        assert governor.startCollection("slow", batch(1));
+        assert !governor.startCollection("slow", blocked);
+        assert !governor.startCollection("slow", waiting);
+        assert governor.finishCollection("slow", 1) == blocked;
+        assert governor.finishCollection("slow", 1) == waiting;
+        assert governor.finishCollection("slow", 2) == null;
+    }
+
+    public void testTimeBudget() {
+        MeasurementCollectionGovernor governor = new MeasurementCollectionGovernor(2, 2, 1000L, 60000L, 16);
+        assert governor.startCollection("slow", batch(1));
+        assert governor.startCollection("slow", batch(2));
+        assert governor.startCollection("other", batch(3)) : "The collector threads should be oversubscribed";
+
+        governor.collected("slow", 1, 600L, false);
+        assert !governor.isOverBudget("slow");
+        governor.collected("slow", 2, 600L, false);
+        assert governor.isOverBudget("slow");
+        assert !governor.isOverBudget("other");
+
+        // once no collection waits for a thread, the plugin may use as much time as it needs
+        assert governor.finishCollection("other", 3) == null;
+        assert !governor.isOverBudget("slow") : "The budget should only apply while the collector threads are busy";
+
+        // the time spent is forgotten once the budget window is over
+        governor = new MeasurementCollectionGovernor(1, 2, 1000L, 0L, 16);
+        assert governor.startCollection("slow", batch(1));
+        assert governor.startCollection("other", batch(2));
+        governor.collected("slow", 1, 2000L, false);
+        assert !governor.isOverBudget("slow");
+    }
+
+    public void testBackoff() {
+        MeasurementCollectionGovernor governor = new MeasurementCollectionGovernor(4, 2, 1000000L, 60000L, 4);
+
+        assert governor.getBackoffFactor(1) == 1;
+        governor.collected("slow", 1, 30000L, true);
+        assert governor.getBackoffFactor(1) == 2;
+        governor.collected("slow", 1, 30000L, true);
+        assert governor.getBackoffFactor(1) == 4;
+        governor.collected("slow", 1, 30000L, true);
+        assert governor.getBackoffFactor(1) == 4 : "The back-off should not exceed its maximum";
+        assert governor.getBackoffFactor(2) == 1;
+        assert governor.getBackoffFactors().size() == 1;
+        assert governor.getTimedOutCollections() == 3;
+
+        governor.collected("slow", 1, 100L, false);
+        assert governor.getBackoffFactor(1) == 1 : "A successful collection should end the back-off";
+
+        governor.collected("slow", 1, 30000L, true);
+        governor.forgetResources(Collections.singleton(1));
+        assert governor.getBackoffFactors().isEmpty();
+    }
+
+    static Set<ScheduledMeasurementInfo> batch(int resourceId) {
+        Set<ScheduledMeasurementInfo> batch = new HashSet<ScheduledMeasurementInfo>();
+        batch.add(new ScheduledMeasurementInfo(new MeasurementScheduleRequest(resourceId, "metric", 30000L, true,
+            DataType.MEASUREMENT), resourceId));
+        return batch;
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2011 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License, version 2, as
+ * published by the Free Software Foundation, and/or the GNU Lesser
+ * General Public License, version 2.1, also as published by the Free
+ * Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License and the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * and the GNU Lesser General Public License along with this program;
+ * if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.rhq.core.pc.measurement;
+
+import java.util.Set;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.Test;
+
+import org.rhq.core.domain.measurement.MeasurementReport;
+
+/**
+ * Runs the collections submitted to a {@link MeasurementManager} through its collector threads, with a collector runner
+ * that records how many batches it is given at the same time.
+ */
+@Test
+public class MeasurementManagerTest {
+
+    private static final int RESOURCES = 3;
+    private static final int ROUNDS = 5;
+    private static final int INCREMENTS = 1000;
+
+    public void testCollections() throws Exception {
+        MeasurementManager manager = new MeasurementManager() {
+            @Override
+            String getPluginName(int resourceId) {
+                return "plugin";
+            }
+        };
+        ScheduledThreadPoolExecutor collectorThreadPool = new ScheduledThreadPoolExecutor(8);
+        try {
+            manager.initializeCollection(new MeasurementCollectionGovernor(8, 2, Long.MAX_VALUE, 60000L, 16),
+                collectorThreadPool);
+            RecordingCollectorRunner runner = new RecordingCollectorRunner(manager);
+            manager.measurementCollectorRunner = runner;
+
+            // all the batches of a resource are due before those of the next one
+            for (int resourceId = 1; resourceId <= RESOURCES; resourceId++) {
+                for (int round = 0; round < ROUNDS; round++) {
+                    manager.submitCollection(MeasurementCollectionGovernorTest.batch(resourceId));
+                }
+            }
+
+            synchronized (runner) {
+                long deadline = System.currentTimeMillis() + 30000L;
+                while (runner.collected < RESOURCES * ROUNDS && System.currentTimeMillis() < deadline) {
+                    runner.wait(1000L);
+                }
+                assert runner.collected == RESOURCES * ROUNDS : "Only " + runner.collected + " batches collected";
+                assert runner.maxPerPlugin == 2 : "The plugin should have used both its slots, not "
+                    + runner.maxPerPlugin;
+                for (int resourceId = 1; resourceId <= RESOURCES; resourceId++) {
+                    assert runner.maxPerResource[resourceId] == 1 : "Resource " + resourceId + " had "
+                        + runner.maxPerResource[resourceId] + " batches collected at the same time";
+                }
+            }
+
+            assert manager.getActiveReport().getCollectionTime() == RESOURCES * ROUNDS * INCREMENTS : "Collection "
+                + "time was lost: " + manager.getActiveReport().getCollectionTime();
+        } finally {
+            collectorThreadPool.shutdownNow();
+            collectorThreadPool.awaitTermination(10, TimeUnit.SECONDS);
+        }
+    }
+
+    private static class RecordingCollectorRunner extends MeasurementCollectorRunner {
+        private final MeasurementManager measurementManager;
+        private final int[] inFlight = new int[RESOURCES + 1];
+        private final int[] maxPerResource = new int[RESOURCES + 1];
+        private int inFlightForPlugin;
+        private int maxPerPlugin;
+        private int collected;
+
+        RecordingCollectorRunner(MeasurementManager measurementManager) {
+            super(measurementManager);
+            this.measurementManager = measurementManager;
+        }
+
+        @Override
+        MeasurementReport collect(String plugin, Set<ScheduledMeasurementInfo> requests) {
+            int resourceId = requests.iterator().next().getResourceId();
+            synchronized (this) {
+                this.inFlight[resourceId]++;
+                this.maxPerResource[resourceId] = Math.max(this.maxPerResource[resourceId], this.inFlight[resourceId]);
+                this.inFlightForPlugin++;
+                this.maxPerPlugin = Math.max(this.maxPerPlugin, this.inFlightForPlugin);
+            }
+
+            // the collector threads all add their time to the same report
+            MeasurementReport report = this.measurementManager.getActiveReport();
+            for (int i = 0; i < INCREMENTS; i++) {
+                report.incrementCollectionTime(1L);
+            }
+            try {
+                Thread.sleep(20L);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+
+            synchronized (this) {
+                this.inFlight[resourceId]--;
+                this.inFlightForPlugin--;
+                this.collected++;
+                notifyAll();
+            }
+            return report;
+        }
+    }
+}
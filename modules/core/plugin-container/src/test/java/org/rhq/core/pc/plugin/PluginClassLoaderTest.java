@@ -0,0 +1,215 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2011 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License, version 2, as
+ * published by the Free Software Foundation, and/or the GNU Lesser
+ * General Public License, version 2.1, also as published by the Free
+ * Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License and the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * and the GNU Lesser General Public License along with this program;
+ * if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.rhq.core.pc.plugin;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import org.rhq.core.pluginapi.util.FileUtils;
+
+@Test
+public class PluginClassLoaderTest {
+    private File testDir;
+    private File tmpDir;
+    private File cacheDir;
+
+    @BeforeMethod
+    public void createDirectories() throws Exception {
+        testDir = File.createTempFile("pluginClassLoaderTest", ".dir");
+        testDir.delete();
+        tmpDir = new File(testDir, "tmp");
+        cacheDir = new File(testDir, "cache");
+        tmpDir.mkdirs();
+    }
+
+    @AfterMethod(alwaysRun = true)
+    public void deleteDirectories() throws Exception {
+        FileUtils.purge(testDir, true);
+    }
+
+    public void testUnpackToCache() throws Exception {
+        byte[] libJar = createJar("org/example/lib/data.txt", "lib data");
+        URL pluginUrl = createPlugin("plugin-a.jar", libJar, "plugin.properties", "plugin resource");
+
+        PluginClassLoader cl = PluginClassLoader.create("plugin-a.jar", new URL[] { pluginUrl }, true,
+            getClass().getClassLoader(), tmpDir, cacheDir);
+        assert "lib data".equals(read(cl.findResource("org/example/lib/data.txt")));
+        assert "plugin resource".equals(read(cl.findResource("plugin.properties")));
+        assert tmpDir.list().length == 0 : "nothing should have been unpacked to the tmp dir";
+
+        List<File> entries = cl.getCacheEntries();
+        assert entries.size() == 2 : entries; // the jar's entry and the plugin's resources entry
+        File cachedJar = new File(cl.getURLs()[1].toURI());
+        assert cachedJar.getParentFile().equals(entries.get(0)) : entries;
+        long lastModified = cachedJar.lastModified();
+
+        // a second classloader for the same plugin uses what the first one unpacked, destroying one keeps the cache
+        cl.destroy();
+        PluginClassLoader cl2 = PluginClassLoader.create("plugin-a.jar", new URL[] { pluginUrl }, true,
+            getClass().getClassLoader(), tmpDir, cacheDir);
+        assert cl2.getCacheEntries().equals(entries) : cl2.getCacheEntries();
+        assert cachedJar.isFile();
+        assert cachedJar.lastModified() == lastModified : "the cached jar should not have been unpacked again";
+        assert "lib data".equals(read(cl2.findResource("org/example/lib/data.txt")));
+
+        // a corrupt (here, truncated) cached jar gets unpacked again
+        new FileOutputStream(cachedJar).close();
+        PluginClassLoader cl3 = PluginClassLoader.create("plugin-a.jar", new URL[] { pluginUrl }, true,
+            getClass().getClassLoader(), tmpDir, cacheDir);
+        assert cachedJar.length() == libJar.length;
+        assert "lib data".equals(read(cl3.findResource("org/example/lib/data.txt")));
+    }
+
+    public void testIdenticalJarsAreShared() throws Exception {
+        byte[] libJar = createJar("org/example/lib/data.txt", "lib data");
+        URL pluginA = createPlugin("plugin-a.jar", libJar, null, null);
+        URL pluginB = createPlugin("plugin-b.jar", libJar, null, null);
+
+        PluginClassLoader clA = PluginClassLoader.create("plugin-a.jar", new URL[] { pluginA }, true,
+            getClass().getClassLoader(), tmpDir, cacheDir);
+        PluginClassLoader clB = PluginClassLoader.create("plugin-b.jar", new URL[] { pluginB }, true,
+            getClass().getClassLoader(), tmpDir, cacheDir);
+        assert clA.getURLs()[1].equals(clB.getURLs()[1]) : "the same embedded jar should be unpacked only once";
+
+        // but the classloaders themselves stay apart
+        assert clA.findResource("org/example/lib/data.txt") != null;
+        assert clB.findResource("org/example/lib/data.txt") != null;
+        assert clA.getParent() == clB.getParent();
+    }
+
+    public void testFindResources() throws Exception {
+        URL pluginUrl = createPlugin("plugin-a.jar", createJar("org/example/lib/data.txt", "lib data"), null, null);
+        PluginClassLoader cl = PluginClassLoader.create("plugin-a.jar", new URL[] { pluginUrl }, true,
+            getClass().getClassLoader(), tmpDir, cacheDir);
+
+        assert cl.findResource("org/example/lib/data.txt") != null;
+        assert cl.findResource("org/example/lib/missing.txt") == null;
+        assert cl.findResource("org/example/other/data.txt") == null;
+        assert !cl.findResources("org/example/other/data.txt").hasMoreElements();
+        assert cl.findResources("org/example/lib/data.txt").hasMoreElements();
+        try {
+            cl.loadClass("org.example.other.Missing");
+            assert false : "should not have found a class none of the jars have";
+        } catch (ClassNotFoundException expected) {
+        }
+        // parent classes must still be found
+        assert cl.loadClass(getClass().getName()) == getClass();
+    }
+
+    public void testPurgeUnusedCacheEntries() throws Exception {
+        URL pluginA = createPlugin("plugin-a.jar", createJar("a/data.txt", "a"), null, null);
+        URL pluginB = createPlugin("plugin-b.jar", createJar("b/data.txt", "b"), "plugin.properties", "b");
+
+        PluginClassLoader clA = PluginClassLoader.create("plugin-a.jar", new URL[] { pluginA }, true,
+            getClass().getClassLoader(), tmpDir, cacheDir);
+        PluginClassLoader clB = PluginClassLoader.create("plugin-b.jar", new URL[] { pluginB }, true,
+            getClass().getClassLoader(), tmpDir, cacheDir);
+
+        PluginClassLoader.purgeUnusedCacheEntries(cacheDir, clA.getCacheEntries());
+        for (File entry : clA.getCacheEntries()) {
+            assert entry.isDirectory() : entry;
+        }
+        for (File entry : clB.getCacheEntries()) {
+            assert !entry.exists() : entry;
+        }
+
+        PluginClassLoader.purgeUnusedCacheEntries(cacheDir, Collections.<File> emptyList());
+        assert new File(cacheDir, "jars").list().length == 0;
+    }
+
+    public void testNoCache() throws Exception {
+        URL pluginUrl = createPlugin("plugin-a.jar", createJar("org/example/lib/data.txt", "lib data"), null, null);
+        PluginClassLoader cl = PluginClassLoader.create("plugin-a.jar", new URL[] { pluginUrl }, true,
+            getClass().getClassLoader(), tmpDir, null);
+        assert cl.getCacheEntries().isEmpty();
+        assert tmpDir.list().length == 1 : "should have unpacked to the tmp dir";
+        assert "lib data".equals(read(cl.findResource("org/example/lib/data.txt")));
+        cl.destroy();
+        assert tmpDir.list().length == 0 : "should have purged what was unpacked to the tmp dir";
+    }
+
+    private URL createPlugin(String name, byte[] libJar, String resourceName, String resourceContent)
+        throws IOException {
+        File plugin = new File(testDir, name);
+        ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(plugin));
+        try {
+            zip.putNextEntry(new ZipEntry("META-INF/rhq-plugin.xml"));
+            zip.write("<plugin/>".getBytes());
+            zip.putNextEntry(new ZipEntry("lib/"));
+            zip.putNextEntry(new ZipEntry("lib/dependency.jar"));
+            zip.write(libJar);
+            if (resourceName != null) {
+                zip.putNextEntry(new ZipEntry("lib/" + resourceName));
+                zip.write(resourceContent.getBytes());
+            }
+        } finally {
+            zip.close();
+        }
+        return plugin.toURI().toURL();
+    }
+
+    private byte[] createJar(String entryName, String content) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ZipOutputStream zip = new ZipOutputStream(bytes);
+        zip.putNextEntry(new ZipEntry(entryName.substring(0, entryName.lastIndexOf('/') + 1)));
+        zip.putNextEntry(new ZipEntry(entryName));
+        zip.write(content.getBytes());
+        zip.close();
+        return bytes.toByteArray();
+    }
+
+    private String read(URL url) throws IOException {
+        assert url != null : "resource not found";
+        URLConnection connection = url.openConnection();
+        connection.setUseCaches(false); // jar URLs are cached, but we change jars under the same URL
+        InputStream in = connection.getInputStream();
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            copy(in, out);
+            return out.toString();
+        } finally {
+            in.close();
+        }
+    }
+
+    private void copy(InputStream in, OutputStream out) throws IOException {
+        byte[] buffer = new byte[1024];
+        for (int count = in.read(buffer); count > -1; count = in.read(buffer)) {
+            out.write(buffer, 0, count);
+        }
+    }
+}
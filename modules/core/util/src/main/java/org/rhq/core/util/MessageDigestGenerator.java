@@ -29,6 +29,8 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 
@@ -47,6 +49,10 @@ public class MessageDigestGenerator {
     /** you can pass this to the constructor to indicate you want to generate SHA 256 message digests */
     public static final String SHA_256 = "SHA-256";
 
+    // files larger than this are read through their channel, in chunks of the given size
+    private static final long LARGE_FILE_SIZE = 1024L * 1024L;
+    private static final int LARGE_FILE_BUFFER_SIZE = 1024 * 256;
+
     private final MessageDigest messageDigest;
 
     /**
@@ -253,7 +259,20 @@ public class MessageDigestGenerator {
 
         try {
             is = new FileInputStream(file);
-            return calcDigest(new BufferedInputStream(is, 1024 * 32));
+            if (file.length() <= LARGE_FILE_SIZE) {
+                return calcDigest(new BufferedInputStream(is, 1024 * 32));
+            }
+
+            // read large files through their channel in big chunks, to keep the number of reads low; the file is
+            // deliberately not memory mapped, because on Windows that keeps it locked until the mapping is collected
+            FileChannel channel = is.getChannel();
+            ByteBuffer buffer = ByteBuffer.allocate(LARGE_FILE_BUFFER_SIZE);
+            while (channel.read(buffer) != -1) {
+                buffer.flip();
+                messageDigest.update(buffer);
+                buffer.clear();
+            }
+            return getDigest();
         } finally {
             if (is != null) {
                 is.close();
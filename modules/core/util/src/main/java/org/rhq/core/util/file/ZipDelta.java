@@ -0,0 +1,337 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2011 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License, version 2, as
+ * published by the Free Software Foundation, and/or the GNU Lesser
+ * General Public License, version 2.1, also as published by the Free
+ * Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License and the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * and the GNU Lesser General Public License along with this program;
+ * if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.rhq.core.util.file;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.rhq.core.util.MessageDigestGenerator;
+
+/**
+ * Computes and applies binary deltas between two versions of a zip file (e.g. a jar).
+ * <p/>
+ * Rebuilding a jar usually changes the timestamps in all its entry headers, but not the compressed data of the
+ * entries whose content did not change. A delta is therefore made of the bytes of the new zip file, except that the
+ * compressed data of each entry that can also be found in the old zip file is replaced by a reference to where it is
+ * in the old zip file. Whoever has the old zip file rebuilds the new one, byte for byte, from the delta.
+ * <p/>
+ * The side computing the delta does not need the old zip file, only its {@link Signature}: the location and digest
+ * of the compressed data of each of its entries.
+ */
+public class ZipDelta {
+
+    private static final int MAGIC = 0x52485144; // "RHQD"
+    private static final int VERSION = 1;
+
+    private static final int OP_END = 0;
+    private static final int OP_COPY = 1;
+    private static final int OP_DATA = 2;
+
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    private static final int END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06054b50;
+
+    /**
+     * Describes the compressed data of the entries of a zip file.
+     */
+    public static class Signature implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final String md5;
+        private final long[] offsets;
+        private final long[] lengths;
+        private final String[] digests;
+
+        private Signature(String md5, long[] offsets, long[] lengths, String[] digests) {
+            this.md5 = md5;
+            this.offsets = offsets;
+            this.lengths = lengths;
+            this.digests = digests;
+        }
+
+        /**
+         * @return the MD5 of the whole zip file
+         */
+        public String getMd5() {
+            return md5;
+        }
+
+        /**
+         * @return the number of entries with data
+         */
+        public int getEntryCount() {
+            return digests.length;
+        }
+    }
+
+    private static class Range {
+        private final long offset;
+        private final long length;
+
+        private Range(long offset, long length) {
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    /**
+     * Computes the signature of the given zip file.
+     *
+     * @param zipFile the zip file
+     *
+     * @return the signature of the zip file
+     *
+     * @throws IOException if the file could not be read or is not a zip file this class can handle (such as a zip64
+     *                     file)
+     */
+    public static Signature createSignature(File zipFile) throws IOException {
+        byte[] zip = readFully(zipFile);
+        List<Range> ranges = getEntryDataRanges(zip);
+        long[] offsets = new long[ranges.size()];
+        long[] lengths = new long[ranges.size()];
+        String[] digests = new String[ranges.size()];
+
+        MessageDigestGenerator generator = new MessageDigestGenerator();
+        for (int i = 0; i < digests.length; ++i) {
+            Range range = ranges.get(i);
+            offsets[i] = range.offset;
+            lengths[i] = range.length;
+            generator.add(zip, (int) range.offset, (int) range.length);
+            digests[i] = generator.getDigestString();
+        }
+
+        generator.add(zip);
+        return new Signature(generator.getDigestString(), offsets, lengths, digests);
+    }
+
+    /**
+     * Computes the delta that turns the zip file with the given signature into the given new zip file.
+     *
+     * @param oldSignature the signature of the old zip file
+     * @param newZipFile the new zip file
+     * @param newMd5 the MD5 that the new zip file is expected to have
+     *
+     * @return the delta
+     *
+     * @throws IOException if the new zip file could not be read, is not a zip file this class can handle, or does not
+     *                     have the expected MD5
+     */
+    public static byte[] createDelta(Signature oldSignature, File newZipFile, String newMd5) throws IOException {
+        byte[] zip = readFully(newZipFile);
+        MessageDigestGenerator generator = new MessageDigestGenerator();
+        generator.add(zip);
+        String md5 = generator.getDigestString();
+        if (!md5.equals(newMd5)) {
+            throw new IOException("[" + newZipFile + "] has MD5 [" + md5 + "], expected [" + newMd5 + "]");
+        }
+
+        Map<String, Integer> oldEntries = new HashMap<String, Integer>(oldSignature.digests.length);
+        for (int i = 0; i < oldSignature.digests.length; ++i) {
+            oldEntries.put(oldSignature.digests[i], i);
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream delta = new DataOutputStream(bytes);
+        delta.writeInt(MAGIC);
+        delta.writeByte(VERSION);
+        delta.writeUTF(oldSignature.md5);
+        delta.writeUTF(newMd5);
+
+        int position = 0;
+        for (Range range : getEntryDataRanges(zip)) {
+            generator.add(zip, (int) range.offset, (int) range.length);
+            Integer oldEntry = oldEntries.get(generator.getDigestString());
+            if (oldEntry != null && oldSignature.lengths[oldEntry] == range.length && range.offset >= position) {
+                writeData(delta, zip, position, (int) range.offset - position);
+                delta.writeByte(OP_COPY);
+                delta.writeLong(oldSignature.offsets[oldEntry]);
+                delta.writeLong(range.length);
+                position = (int) (range.offset + range.length);
+            }
+        }
+        writeData(delta, zip, position, zip.length - position);
+        delta.writeByte(OP_END);
+        delta.close();
+
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Rebuilds a new zip file from the old zip file and a delta.
+     *
+     * @param oldZipFile the old zip file, the one whose signature the delta was created with
+     * @param delta the delta
+     * @param newZip where the new zip file is written to
+     *
+     * @return the MD5 of the new zip file, which has already been verified to be the expected one
+     *
+     * @throws IOException if the delta was not created for the old zip file, is corrupt, or did not result in the
+     *                     expected zip file
+     */
+    public static String applyDelta(File oldZipFile, InputStream delta, OutputStream newZip) throws IOException {
+        DataInputStream in = new DataInputStream(delta);
+        if (in.readInt() != MAGIC || in.readByte() != VERSION) {
+            throw new IOException("Not a zip delta");
+        }
+        String oldMd5 = in.readUTF();
+        String newMd5 = in.readUTF();
+
+        RandomAccessFile oldZip = new RandomAccessFile(oldZipFile, "r");
+        try {
+            MessageDigestGenerator generator = new MessageDigestGenerator();
+            byte[] buffer = new byte[32 * 1024];
+            int op;
+            while ((op = in.readByte()) != OP_END) {
+                long length;
+                if (op == OP_COPY) {
+                    oldZip.seek(in.readLong());
+                    length = in.readLong();
+                } else if (op == OP_DATA) {
+                    length = in.readInt();
+                } else {
+                    throw new IOException("Corrupt zip delta, unknown operation [" + op + "]");
+                }
+
+                while (length > 0) {
+                    int count = (int) Math.min(length, buffer.length);
+                    if (op == OP_COPY) {
+                        oldZip.readFully(buffer, 0, count);
+                    } else {
+                        in.readFully(buffer, 0, count);
+                    }
+                    newZip.write(buffer, 0, count);
+                    generator.add(buffer, 0, count);
+                    length -= count;
+                }
+            }
+
+            String md5 = generator.getDigestString();
+            if (!md5.equals(newMd5)) {
+                throw new IOException("Applying the delta to [" + oldZipFile + "] resulted in MD5 [" + md5
+                    + "] rather than [" + newMd5 + "] - the delta was made for a file with MD5 [" + oldMd5 + "]");
+            }
+            return md5;
+        } finally {
+            oldZip.close();
+        }
+    }
+
+    private static void writeData(DataOutputStream delta, byte[] zip, int offset, int length) throws IOException {
+        if (length > 0) {
+            delta.writeByte(OP_DATA);
+            delta.writeInt(length);
+            delta.write(zip, offset, length);
+        }
+    }
+
+    /**
+     * Returns where the compressed data of the entries is, in the order found in the zip file. This is read from the
+     * central directory, which, unlike the local headers, always knows the compressed size of the entries.
+     */
+    private static List<Range> getEntryDataRanges(byte[] zip) throws IOException {
+        int end = -1;
+        for (int i = zip.length - 22; i >= Math.max(0, zip.length - 22 - 0xffff); --i) {
+            if (readInt(zip, i) == END_OF_CENTRAL_DIRECTORY_SIGNATURE) {
+                end = i;
+                break;
+            }
+        }
+        if (end < 0) {
+            throw new IOException("Not a zip file");
+        }
+
+        int entryCount = readShort(zip, end + 10);
+        long centralDirectoryOffset = readInt(zip, end + 16) & 0xffffffffL;
+        if (entryCount == 0xffff || centralDirectoryOffset == 0xffffffffL) {
+            throw new IOException("Zip64 files are not supported");
+        }
+
+        List<Range> ranges = new ArrayList<Range>(entryCount);
+        int position = (int) centralDirectoryOffset;
+        for (int i = 0; i < entryCount; ++i) {
+            if (position + 46 > zip.length || readInt(zip, position) != CENTRAL_HEADER_SIGNATURE) {
+                throw new IOException("Corrupt zip file central directory");
+            }
+            long compressedSize = readInt(zip, position + 20) & 0xffffffffL;
+            int localHeaderOffset = readInt(zip, position + 42);
+            position += 46 + readShort(zip, position + 28) + readShort(zip, position + 30)
+                + readShort(zip, position + 32);
+
+            if (localHeaderOffset < 0 || localHeaderOffset + 30 > zip.length
+                || readInt(zip, localHeaderOffset) != LOCAL_HEADER_SIGNATURE) {
+                throw new IOException("Corrupt zip file local header");
+            }
+            long dataOffset = localHeaderOffset + 30L + readShort(zip, localHeaderOffset + 26)
+                + readShort(zip, localHeaderOffset + 28);
+            if (dataOffset + compressedSize > zip.length) {
+                throw new IOException("Corrupt zip file entry");
+            }
+            if (compressedSize > 0) {
+                ranges.add(new Range(dataOffset, compressedSize));
+            }
+        }
+
+        Collections.sort(ranges, new Comparator<Range>() {
+            public int compare(Range r1, Range r2) {
+                return (r1.offset < r2.offset) ? -1 : ((r1.offset == r2.offset) ? 0 : 1);
+            }
+        });
+        return ranges;
+    }
+
+    private static int readShort(byte[] b, int offset) {
+        return (b[offset] & 0xff) | ((b[offset + 1] & 0xff) << 8);
+    }
+
+    private static int readInt(byte[] b, int offset) {
+        return (b[offset] & 0xff) | ((b[offset + 1] & 0xff) << 8) | ((b[offset + 2] & 0xff) << 16)
+            | ((b[offset + 3] & 0xff) << 24);
+    }
+
+    private static byte[] readFully(File file) throws IOException {
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        try {
+            if (in.length() > Integer.MAX_VALUE) {
+                throw new IOException("[" + file + "] is too large");
+            }
+            byte[] bytes = new byte[(int) in.length()];
+            in.readFully(bytes);
+            return bytes;
+        } finally {
+            in.close();
+        }
+    }
+}
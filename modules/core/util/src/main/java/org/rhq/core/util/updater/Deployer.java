@@ -631,11 +631,12 @@ public class Deployer {
                         FileUtil.copyFile(zipFile, compressedFile);
                     }
                     compressedFileHashcode = hashcodeGenerator.calcDigestString(compressedFile);
+                    newFileHashCodeMap.put(zipRelativePath, compressedFileHashcode, compressedFile);
                 } else {
                     // use source zip for hash - should be the same as the would-be compressed file since we aren't realizing files in it
                     compressedFileHashcode = hashcodeGenerator.calcDigestString(zipFile);
+                    newFileHashCodeMap.put(zipRelativePath, compressedFileHashcode);
                 }
-                newFileHashCodeMap.put(zipRelativePath, compressedFileHashcode);
             }
         }
 
@@ -717,11 +718,14 @@ public class Deployer {
                 }
             }
 
-            // remember where the file is now and what its hashcode is
-            if (rawFile.getValue().isAbsolute()) {
-                newFileHashCodeMap.put(newLocationFile.getAbsolutePath(), hashcode);
+            // remember where the file is now and what its hashcode is; it was hashed as it was written, so a
+            // rescan can trust the hashcode as long as the file is untouched
+            String newLocationKey = rawFile.getValue().isAbsolute() ? newLocationFile.getAbsolutePath()
+                : newLocationPath;
+            if (!dryRun) {
+                newFileHashCodeMap.put(newLocationKey, hashcode, newLocationFile);
             } else {
-                newFileHashCodeMap.put(newLocationPath, hashcode);
+                newFileHashCodeMap.put(newLocationKey, hashcode);
             }
         }
 
@@ -162,7 +162,11 @@ public class ExtractorZipFileVisitor implements ZipUtil.ZipEntryVisitor {
             }
         }
 
-        this.fileHashcodeMap.put(pathname, hashcode);
+        if (!dryRun) {
+            this.fileHashcodeMap.put(pathname, hashcode, entryFile); // hashed as it was written
+        } else {
+            this.fileHashcodeMap.put(pathname, hashcode);
+        }
         return true;
     }
 }
@@ -26,11 +26,19 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
 import java.io.PrintWriter;
+import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.regex.Pattern;
 
 import org.rhq.core.util.MessageDigestGenerator;
@@ -43,6 +51,14 @@ import org.rhq.core.util.MessageDigestGenerator;
  * entity will need to know how to resolve those relative paths (i.e. some outside
  * entity would need to know the top level root directory for all relative paths).
  * 
+ * Along with its hashcode, the map can remember the last modified time and size a file had when its
+ * hashcode was generated, and when they were recorded. A {@link #rescan} trusts the remembered hashcode of a
+ * file whose last modified time and size are unchanged and does not read it again, unless the file had been
+ * modified within the file system's timestamp granularity of the time they were recorded, in which case a
+ * later modification might not have changed its last modified time. Files whose hashcodes
+ * do need to be generated are hashed concurrently, by up to <code>rhq.hashcode-map.threads</code> threads
+ * (the number of processors by default).
+ * 
  * @author John Mazzitelli
  */
 public class FileHashcodeMap extends TreeMap<String, String> {
@@ -53,6 +69,16 @@ public class FileHashcodeMap extends TreeMap<String, String> {
     private static final long serialVersionUID = 1L;
     private static final String COLUMN_SEPARATOR = "\t";
 
+    private static final int HASH_THREADS = Integer.getInteger("rhq.hashcode-map.threads", Runtime.getRuntime()
+        .availableProcessors());
+    private static final int MIN_FILES_PER_HASH_THREAD = 16;
+
+    // coarsest last modified time granularity we expect from a file system (FAT has 2 seconds)
+    private static final long TIMESTAMP_GRANULARITY = 2000L;
+
+    // the last modified times/sizes of the files whose hashcodes can be trusted without reading them again
+    private final Map<String, FileStat> fileStats = new HashMap<String, FileStat>();
+
     /**
      * Given a directory, this will recursively traverse that directory's files/subdirectories and
      * generate the hashcode map for all files it encounters and add that data to the given map.
@@ -77,7 +103,9 @@ public class FileHashcodeMap extends TreeMap<String, String> {
         }
 
         FileHashcodeMap map = new FileHashcodeMap();
-        generateFileHashcodeMapRecursive(map, rootDir.getAbsolutePath(), 0, rootDir, ignoreRegex, ignored);
+        Map<String, File> files = new LinkedHashMap<String, File>();
+        generateFileHashcodeMapRecursive(map, files, rootDir.getAbsolutePath(), 0, rootDir, ignoreRegex, ignored);
+        map.putHashcodes(files);
         return map;
     }
 
@@ -87,6 +115,7 @@ public class FileHashcodeMap extends TreeMap<String, String> {
      * If given a regular file, a single entry is added to the given map.
      * 
      * @param map         the map where the hashcode data is stored
+     * @param files       where the files whose hashcodes need to be generated are collected, keyed on their paths
      * @param rootPath    the top root directory that is being scanned - all files in the returned map will be relative to this
      * @param level       the level deep in the file hierarchy currently being processed (0==at top root dir)
      * @param fileOrDir   existing directory to scan and generate hashcodes for all its files, or existing
@@ -97,8 +126,8 @@ public class FileHashcodeMap extends TreeMap<String, String> {
      *
      * @throws Exception if failed to generate hashcode for the file/directory
      */
-    private static void generateFileHashcodeMapRecursive(FileHashcodeMap map, String rootPath, int level,
-        File fileOrDir, Pattern ignoreRegex, Set<String> ignored) throws Exception {
+    private static void generateFileHashcodeMapRecursive(FileHashcodeMap map, Map<String, File> files,
+        String rootPath, int level, File fileOrDir, Pattern ignoreRegex, Set<String> ignored) throws Exception {
 
         if (fileOrDir == null || !fileOrDir.exists()) {
             throw new Exception("Non-existent file/directory provided: " + fileOrDir);
@@ -127,19 +156,13 @@ public class FileHashcodeMap extends TreeMap<String, String> {
             File[] children = fileOrDir.listFiles();
             if (children != null) {
                 for (File child : children) {
-                    generateFileHashcodeMapRecursive(map, rootPath, level + 1, child, ignoreRegex, ignored);
+                    generateFileHashcodeMapRecursive(map, files, rootPath, level + 1, child, ignoreRegex, ignored);
                 }
             } else {
                 map.put(path, UNKNOWN_DIR_HASHCODE);
             }
         } else {
-            String hashcode;
-            try {
-                hashcode = MessageDigestGenerator.getDigestString(fileOrDir);
-            } catch (Exception e) {
-                hashcode = UNKNOWN_FILE_HASHCODE;
-            }
-            map.put(path, hashcode);
+            files.put(path, fileOrDir);
         }
 
         return;
@@ -160,12 +183,25 @@ public class FileHashcodeMap extends TreeMap<String, String> {
             String line = reader.readLine();
             while (line != null) {
                 String[] columns = line.split(COLUMN_SEPARATOR);
-                if (columns.length != 2) {
+                if (columns.length != 2 && columns.length != 4 && columns.length != 5) {
                     throw new Exception("Format error in [" + file.getAbsolutePath() + "] at line #[" + lineNumber
                         + "]: " + line);
                 }
 
                 map.put(columns[0], columns[1]);
+                if (columns.length >= 4) {
+                    try {
+                        long lastModified = Long.parseLong(columns[2]);
+                        // stats stored without the time they were recorded at were only stored if they were trusted
+                        long recordedAt = (columns.length == 5) ? Long.parseLong(columns[4]) : lastModified
+                            + TIMESTAMP_GRANULARITY;
+                        map.fileStats.put(map.convertPath(columns[0]), new FileStat(lastModified, Long
+                            .parseLong(columns[3]), recordedAt));
+                    } catch (NumberFormatException e) {
+                        throw new Exception("Format error in [" + file.getAbsolutePath() + "] at line #["
+                            + lineNumber + "]: " + line);
+                    }
+                }
 
                 lineNumber++;
                 line = reader.readLine();
@@ -178,7 +214,8 @@ public class FileHashcodeMap extends TreeMap<String, String> {
 
     /**
      * Takes all map entries in this object and writes them to the given file such that it can later
-     * be loaded in via {@link #loadFromFile(File)}.
+     * be loaded in via {@link #loadFromFile(File)}. Entries for which a last modified time and size are
+     * remembered get them, and the time they were recorded at, written as three additional columns.
      * 
      * @param file the file to store the entries to
      * @throws Exception if failed to store the entries to the given file
@@ -187,7 +224,13 @@ public class FileHashcodeMap extends TreeMap<String, String> {
         PrintWriter writer = new PrintWriter(file);
         try {
             for (Map.Entry<String, String> entry : entrySet()) {
-                writer.println(entry.getKey() + COLUMN_SEPARATOR + entry.getValue());
+                FileStat stat = fileStats.get(entry.getKey());
+                if (stat == null) {
+                    writer.println(entry.getKey() + COLUMN_SEPARATOR + entry.getValue());
+                } else {
+                    writer.println(entry.getKey() + COLUMN_SEPARATOR + entry.getValue() + COLUMN_SEPARATOR
+                        + stat.lastModified + COLUMN_SEPARATOR + stat.length + COLUMN_SEPARATOR + stat.recordedAt);
+                }
             }
         } finally {
             writer.close();
@@ -208,6 +251,10 @@ public class FileHashcodeMap extends TreeMap<String, String> {
      * are found in the top root directory and they are not related to the deployment fileset,
      * they will not be added to the returned map.
      *
+     * Files whose last modified time and size are remembered in this map and are unchanged are assumed
+     * to still have their original hashcodes, unless they were modified too shortly before the time and size
+     * were recorded for the time to be trusted; all others are read again.
+     *
      * @param rootDir directory where the relative paths are expected to be
      * @param ignoreRegex if relative paths of files under rootDir match this, they will be ignored.
      *                    This will eliminate files/directories from being considered "new" because
@@ -222,7 +269,8 @@ public class FileHashcodeMap extends TreeMap<String, String> {
         throws Exception {
         ChangesFileHashcodeMap current = new ChangesFileHashcodeMap(this);
 
-        // go through our original files and recalculate their hashcodes
+        // go through our original files and find out which of them need their hashcodes recalculated
+        Map<String, File> filesToHash = new LinkedHashMap<String, File>();
         for (Map.Entry<String, String> entry : entrySet()) {
             String originalFileString = entry.getKey();
 
@@ -238,14 +286,12 @@ public class FileHashcodeMap extends TreeMap<String, String> {
                 originalFile = new File(rootDir, originalFileString);
             }
 
-            if (originalFile.exists()) {
-                String currentHashcode = MessageDigestGenerator.getDigestString(originalFile);
-                current.put(originalFileString, currentHashcode);
-
-                // if file has been changed, mark it as such in our return map
-                String originalHashcode = entry.getValue();
-                if (!currentHashcode.equals(originalHashcode)) {
-                    current.getChanges().put(originalFileString, currentHashcode);
+            // a last modified time of 0 usually means the file does not exist, which saves a call to exists()
+            long lastModified = originalFile.lastModified();
+            if (lastModified != 0L || originalFile.exists()) {
+                FileStat stat = fileStats.get(originalFileString);
+                if (stat == null || !stat.matches(lastModified, originalFile)) {
+                    filesToHash.put(originalFileString, originalFile);
                 }
             } else {
                 // file has been deleted! still put an entry in our returned map but mark it as deleted
@@ -254,12 +300,23 @@ public class FileHashcodeMap extends TreeMap<String, String> {
             }
         }
 
+        // recalculate the hashcodes; if a file has been changed, mark it as such in our return map
+        current.putHashcodes(filesToHash);
+        for (String originalFileString : filesToHash.keySet()) {
+            String currentHashcode = current.get(originalFileString);
+            if (!currentHashcode.equals(get(originalFileString))) {
+                current.getChanges().put(originalFileString, currentHashcode);
+            }
+        }
+
         // now recursively traverse the root directory and look for new files that aren't in our original map
         // files that have been added need to be put into our returned map and also marked as added
-        FileHashcodeMap newFiles = new FileHashcodeMap();
+        Map<String, File> newFilesToHash = new LinkedHashMap<String, File>();
         Set<String> skippedFiles = new HashSet<String>();
-        lookForNewFilesRecursive(newFiles, skippedFiles, rootDir.getAbsolutePath(), 0, rootDir, ignoreRegex, current
-            .getIgnored(), reportNewRootFilesAsNew);
+        lookForNewFilesRecursive(newFilesToHash, skippedFiles, rootDir.getAbsolutePath(), 0, rootDir, ignoreRegex,
+            current.getIgnored(), reportNewRootFilesAsNew);
+        FileHashcodeMap newFiles = new FileHashcodeMap();
+        newFiles.putHashcodes(newFilesToHash);
         current.putAll(newFiles);
         current.getAdditions().putAll(newFiles);
         current.getSkipped().addAll(skippedFiles);
@@ -270,7 +327,7 @@ public class FileHashcodeMap extends TreeMap<String, String> {
     /**
      * This looks for new files under the given fileOrDir and adds them to <code>newFiles</code>.
      * 
-     * @param newFiles    the map where the new, current file/hashcode data will be stored
+     * @param newFiles    the map where the new files are collected, keyed on their paths
      * @param skippedFiles a set where names of unrelated files/directories are stored. The names
      *                     found here after this method returns are those files/dirs that were found
      *                     in the top level root dir, but were skipped over and not processed. This will not
@@ -286,7 +343,7 @@ public class FileHashcodeMap extends TreeMap<String, String> {
      *
      * @throws Exception 
      */
-    private void lookForNewFilesRecursive(FileHashcodeMap newFiles, Set<String> skippedFiles, String rootPath,
+    private void lookForNewFilesRecursive(Map<String, File> newFiles, Set<String> skippedFiles, String rootPath,
         int level, File fileOrDir, Pattern ignoreRegex, Set<String> ignored, boolean reportNewRootFilesAsNew)
         throws Exception {
 
@@ -356,19 +413,79 @@ public class FileHashcodeMap extends TreeMap<String, String> {
         } else {
             // if the file is not yet known to us, add it to the map of new files
             if (!containsKey(path)) {
-                String hashcode;
-                try {
-                    hashcode = MessageDigestGenerator.getDigestString(fileOrDir);
-                } catch (Exception e) {
-                    hashcode = UNKNOWN_FILE_HASHCODE;
-                }
-                newFiles.put(path, hashcode);
+                newFiles.put(path, fileOrDir);
             }
         }
 
         return;
     }
 
+    /**
+     * Puts the hashcode of a file that was just written in this map, along with the file's current last modified
+     * time and size, so that a later {@link #rescan} can trust the hashcode without reading the file again. Only
+     * call this with the hashcode of the content just written, for example as calculated while copying it.
+     * If the file was written within the timestamp granularity of now, which is usually the case, the first
+     * rescan reads it again anyway, and only later ones trust it.
+     *
+     * @param key the path of the file, relative or absolute as with {@link #put(String, String)}
+     * @param value the hashcode of the content just written to the file
+     * @param writtenFile the file, resolved against the root directory if the path is relative
+     * @return the hashcode previously mapped to the path
+     */
+    public String put(String key, String value, File writtenFile) {
+        String previous = put(key, value);
+        FileStat stat = FileStat.stat(writtenFile, System.currentTimeMillis());
+        if (stat != null) {
+            fileStats.put(convertPath(key), stat);
+        }
+        return previous;
+    }
+
+    /**
+     * Generates the hashcodes of the given files, concurrently if there are enough of them, and puts them in
+     * this map along with the last modified times and sizes of the files. A file whose hashcode cannot be
+     * generated gets {@link #UNKNOWN_FILE_HASHCODE}.
+     *
+     * @param files the files to hash, keyed on the paths to put them under
+     * @throws Exception if the hashing was interrupted
+     */
+    void putHashcodes(Map<String, File> files) throws Exception {
+        long now = System.currentTimeMillis();
+        List<HashTask> tasks = new ArrayList<HashTask>(files.size());
+        for (Map.Entry<String, File> entry : files.entrySet()) {
+            tasks.add(new HashTask(entry.getValue(), now));
+        }
+        runHashTasks(tasks);
+
+        int i = 0;
+        for (String path : files.keySet()) {
+            HashTask task = tasks.get(i++);
+            put(path, task.hashcode);
+            if (task.stat != null) {
+                fileStats.put(convertPath(path), task.stat);
+            }
+        }
+    }
+
+    // runs the tasks concurrently if there are enough of them
+    private static void runHashTasks(List<HashTask> tasks) throws Exception {
+        int threads = Math.min(HASH_THREADS, tasks.size() / MIN_FILES_PER_HASH_THREAD);
+        if (threads > 1) {
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            try {
+                for (Future<Object> future : executor.invokeAll(tasks)) {
+                    future.get();
+                }
+            } finally {
+                executor.shutdownNow();
+            }
+        } else {
+            for (HashTask task : tasks) {
+                task.call();
+            }
+        }
+    }
+
     /**
      * If a file was not readable or its hashcode could not be generated for some reason, its path
      * will be returned as a key to the returned map. The value will be {@link #UNKNOWN_FILE_HASHCODE}.
@@ -395,7 +512,25 @@ public class FileHashcodeMap extends TreeMap<String, String> {
 
     @Override
     public String put(String key, String value) {
-        return super.put(convertPath(key), value);
+        key = convertPath(key);
+        fileStats.remove(key); // whoever puts a hashcode in knows nothing about the file's last modified time
+        return super.put(key, value);
+    }
+
+    @Override
+    public void putAll(Map<? extends String, ? extends String> map) {
+        super.putAll(map);
+        if (map instanceof FileHashcodeMap) {
+            for (Map.Entry<String, FileStat> entry : ((FileHashcodeMap) map).fileStats.entrySet()) {
+                if (map.containsKey(entry.getKey())) {
+                    fileStats.put(entry.getKey(), entry.getValue());
+                }
+            }
+        } else {
+            for (String key : map.keySet()) {
+                fileStats.remove(convertPath(key));
+            }
+        }
     }
 
     @Override
@@ -405,9 +540,16 @@ public class FileHashcodeMap extends TreeMap<String, String> {
 
     @Override
     public String remove(Object key) {
+        fileStats.remove(convertPath((String) key));
         return super.remove(convertPath((String) key));
     }
 
+    @Override
+    public void clear() {
+        fileStats.clear();
+        super.clear();
+    }
+
     @Override
     public boolean containsKey(Object key) {
         return super.containsKey(convertPath((String) key));
@@ -429,4 +571,65 @@ public class FileHashcodeMap extends TreeMap<String, String> {
 
         return path;
     }
+
+    /**
+     * The last modified time and size of a file at the time its hashcode was generated, and that time.
+     */
+    private static class FileStat implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final long lastModified;
+        private final long length;
+        private final long recordedAt;
+
+        private FileStat(long lastModified, long length, long recordedAt) {
+            this.lastModified = lastModified;
+            this.length = length;
+            this.recordedAt = recordedAt;
+        }
+
+        /**
+         * @return the file's stat, recorded at <code>now</code>, or <code>null</code> if the file does not exist
+         */
+        private static FileStat stat(File file, long now) {
+            long lastModified = file.lastModified();
+            if (lastModified <= 0L) {
+                return null;
+            }
+            return new FileStat(lastModified, file.length(), now);
+        }
+
+        /**
+         * A file modified within the timestamp granularity of the time its stat was recorded might have been
+         * modified again since without its last modified time changing, so its stat never matches.
+         */
+        private boolean matches(long currentLastModified, File file) {
+            return currentLastModified == lastModified && lastModified <= recordedAt - TIMESTAMP_GRANULARITY
+                && file.length() == length;
+        }
+    }
+
+    private static class HashTask implements Callable<Object> {
+        private final File file;
+        private final long now;
+        private FileStat stat;
+        private String hashcode;
+
+        private HashTask(File file, long now) {
+            this.file = file;
+            this.now = now;
+        }
+
+        public Object call() {
+            // stat before reading, so that a modification made while hashing shows in the next rescan
+            stat = FileStat.stat(file, now);
+            try {
+                hashcode = MessageDigestGenerator.getDigestString(file);
+            } catch (Exception e) {
+                hashcode = UNKNOWN_FILE_HASHCODE;
+                stat = null;
+            }
+            return null;
+        }
+    }
 }
@@ -0,0 +1,127 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2011 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License, version 2, as
+ * published by the Free Software Foundation, and/or the GNU Lesser
+ * General Public License, version 2.1, also as published by the Free
+ * Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License and the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * and the GNU Lesser General Public License along with this program;
+ * if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.rhq.core.util.file;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import org.rhq.core.util.MessageDigestGenerator;
+import org.rhq.core.util.stream.StreamUtil;
+
+@Test
+public class ZipDeltaTest {
+    private File testDir;
+
+    @BeforeMethod
+    public void createTestDir() throws Exception {
+        testDir = FileUtil.createTempDirectory("zipDeltaTest", ".dir", null);
+    }
+
+    @AfterMethod(alwaysRun = true)
+    public void deleteTestDir() {
+        FileUtil.purge(testDir, true);
+    }
+
+    public void testDelta() throws Exception {
+        byte[][] classes = new byte[20][];
+        Random random = new Random(1L);
+        for (int i = 0; i < classes.length; i++) {
+            classes[i] = new byte[8 * 1024];
+            random.nextBytes(classes[i]);
+        }
+
+        File oldZip = createZip("old.jar", 1000000000000L, classes, "<plugin version=\"1\"/>");
+
+        // a rebuild where one class and the descriptor changed - all the entry timestamps change too
+        classes[7] = new byte[9 * 1024];
+        random.nextBytes(classes[7]);
+        File newZip = createZip("new.jar", 1100000000000L, classes, "<plugin version=\"2\"/>");
+
+        ZipDelta.Signature signature = ZipDelta.createSignature(oldZip);
+        assert signature.getMd5().equals(MessageDigestGenerator.getDigestString(oldZip));
+        assert signature.getEntryCount() == 21 : signature.getEntryCount();
+
+        String newMd5 = MessageDigestGenerator.getDigestString(newZip);
+        byte[] delta = ZipDelta.createDelta(signature, newZip, newMd5);
+        assert delta.length < newZip.length() / 5 : "delta is too large: " + delta.length + "/" + newZip.length();
+
+        ByteArrayOutputStream rebuilt = new ByteArrayOutputStream();
+        String md5 = ZipDelta.applyDelta(oldZip, new ByteArrayInputStream(delta), rebuilt);
+        assert md5.equals(newMd5);
+        byte[] expected = StreamUtil.slurp(new FileInputStream(newZip));
+        assert Arrays.equals(rebuilt.toByteArray(), expected) : "rebuilt zip file differs";
+    }
+
+    public void testDeltaForOtherFile() throws Exception {
+        byte[][] classes = new byte[][] { "one".getBytes(), "two".getBytes() };
+        File oldZip = createZip("old.jar", 1000000000000L, classes, "old");
+        File otherZip = createZip("other.jar", 1000000000000L, new byte[][] { "three".getBytes() }, "other");
+        File newZip = createZip("new.jar", 1100000000000L, classes, "new");
+
+        byte[] delta = ZipDelta.createDelta(ZipDelta.createSignature(oldZip), newZip, MessageDigestGenerator
+            .getDigestString(newZip));
+        try {
+            ZipDelta.applyDelta(otherZip, new ByteArrayInputStream(delta), new ByteArrayOutputStream());
+            assert false : "should not have been able to apply the delta to another file";
+        } catch (IOException expected) {
+        }
+
+        try {
+            ZipDelta.createDelta(ZipDelta.createSignature(oldZip), newZip, "not-the-md5");
+            assert false : "should not have created a delta for a file with an unexpected MD5";
+        } catch (IOException expected) {
+        }
+    }
+
+    private File createZip(String name, long time, byte[][] classes, String descriptor) throws IOException {
+        File file = new File(testDir, name);
+        ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(file));
+        try {
+            ZipEntry entry = new ZipEntry("META-INF/rhq-plugin.xml");
+            entry.setTime(time);
+            zip.putNextEntry(entry);
+            zip.write(descriptor.getBytes());
+            for (int i = 0; i < classes.length; i++) {
+                entry = new ZipEntry("org/rhq/plugins/test/Class" + i + ".class");
+                entry.setTime(time);
+                zip.putNextEntry(entry);
+                zip.write(classes[i]);
+            }
+        } finally {
+            zip.close();
+        }
+        return file;
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2011 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License, version 2, as
+ * published by the Free Software Foundation, and/or the GNU Lesser
+ * General Public License, version 2.1, also as published by the Free
+ * Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License and the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * and the GNU Lesser General Public License along with this program;
+ * if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+
+package org.rhq.core.util.updater;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Random;
+
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import org.rhq.core.util.MessageDigestGenerator;
+import org.rhq.core.util.file.FileUtil;
+
+/**
+ * Compares the cost of rescanning a deployment the way it used to be done (every file read again, one after the
+ * other) with a full but concurrent rescan and with an incremental rescan that trusts unchanged files. The number of
+ * files is small by default so this can run with the unit tests; pass -Drhq.benchmark.file-count=40000 to measure
+ * something closer to a large bundle. Timings are printed to stdout.
+ */
+@Test
+public class FileHashcodeMapBenchmarkTest {
+
+    private static final int FILE_COUNT = Integer.getInteger("rhq.benchmark.file-count", 2000);
+    private static final int FILES_PER_DIR = 200;
+    private static final int FILE_SIZE = 1024 * 8;
+
+    private File rootDir;
+    private FileHashcodeMap original;
+
+    @BeforeClass
+    public void createDeployment() throws Exception {
+        rootDir = FileUtil.createTempDirectory("fileHashcodeMapBenchmark", ".dir", null);
+
+        // old enough for the file stats to be trusted
+        long lastModified = System.currentTimeMillis() - 60000L;
+        Random random = new Random(12345L);
+        byte[] content = new byte[FILE_SIZE];
+        for (int i = 0; i < FILE_COUNT; i++) {
+            File dir = new File(rootDir, "dir" + (i / FILES_PER_DIR));
+            dir.mkdirs();
+            File file = new File(dir, "file" + i + ".dat");
+            random.nextBytes(content);
+            FileOutputStream out = new FileOutputStream(file);
+            try {
+                out.write(content);
+            } finally {
+                out.close();
+            }
+            file.setLastModified(lastModified);
+        }
+
+        original = FileHashcodeMap.generateFileHashcodeMap(rootDir, null, null);
+        assert original.size() == FILE_COUNT : original.size();
+    }
+
+    @AfterClass(alwaysRun = true)
+    public void deleteDeployment() {
+        if (rootDir != null) {
+            FileUtil.purge(rootDir, true);
+        }
+    }
+
+    public void testRescanCost() throws Exception {
+        // warm up the file system cache and the JIT so the first measurement is not penalized
+        sequentialRescan(original);
+
+        long start = System.currentTimeMillis();
+        FileHashcodeMap sequential = sequentialRescan(original);
+        long sequentialTime = System.currentTimeMillis() - start;
+
+        FileHashcodeMap withoutStats = new FileHashcodeMap();
+        withoutStats.putAll(new HashMap<String, String>(original)); // a plain map carries no file stats
+        start = System.currentTimeMillis();
+        ChangesFileHashcodeMap concurrent = withoutStats.rescan(rootDir, null, true);
+        long concurrentTime = System.currentTimeMillis() - start;
+
+        start = System.currentTimeMillis();
+        ChangesFileHashcodeMap incremental = original.rescan(rootDir, null, true);
+        long incrementalTime = System.currentTimeMillis() - start;
+
+        System.out.println("Rescan of " + FILE_COUNT + " files: sequential=" + sequentialTime + "ms, concurrent="
+            + concurrentTime + "ms, incremental=" + incrementalTime + "ms");
+
+        // all three must agree, and nothing changed
+        assert sequential.equals(original) : "sequential rescan differs";
+        assert concurrent.equals(original) : "concurrent rescan differs";
+        assert incremental.equals(original) : "incremental rescan differs";
+        assert concurrent.getChanges().isEmpty() : concurrent.getChanges();
+        assert incremental.getChanges().isEmpty() : incremental.getChanges();
+        assert incremental.getAdditions().isEmpty() : incremental.getAdditions();
+    }
+
+    /**
+     * How rescans were done before they were concurrent and incremental: every file in the map is read again, one
+     * after the other, and the directory tree is walked to look for new files.
+     */
+    private FileHashcodeMap sequentialRescan(FileHashcodeMap map) throws Exception {
+        FileHashcodeMap current = new FileHashcodeMap();
+        for (String path : map.keySet()) {
+            InputStream in = new BufferedInputStream(new FileInputStream(new File(rootDir, path)), 1024 * 32);
+            try {
+                current.put(path, MessageDigestGenerator.getDigestString(in));
+            } finally {
+                in.close();
+            }
+        }
+        lookForNewFiles(map, rootDir, "");
+        return current;
+    }
+
+    private void lookForNewFiles(FileHashcodeMap map, File dir, String path) throws Exception {
+        for (File child : dir.listFiles()) {
+            String childPath = path + child.getName();
+            if (child.isDirectory()) {
+                lookForNewFiles(map, child, childPath + "/");
+            } else {
+                assert map.containsKey(childPath) : "unexpected new file " + childPath;
+            }
+        }
+    }
+}
@@ -504,6 +504,74 @@ public class FileHashcodeMapTest {
         assert ignored.size() > 0 : "should have ignored some files";
     }
 
+    public void testRescanTrustsUnchangedFileStats() throws Exception {
+        File tmpDir = FileUtil.createTempDirectory("fileHashcodeMapTest", ".dir", null);
+        File tmpFile = File.createTempFile("fileHashcodeMapTest", ".test");
+        try {
+            long longAgo = System.currentTimeMillis() - 60000L;
+            File testFile1 = new File(tmpDir, "test1.txt");
+            File testFile2 = new File(tmpDir, "test2.txt");
+            StreamUtil.copy(new ByteArrayInputStream("test1".getBytes()), new FileOutputStream(testFile1));
+            StreamUtil.copy(new ByteArrayInputStream("test2".getBytes()), new FileOutputStream(testFile2));
+            assert testFile1.setLastModified(longAgo);
+            assert testFile2.setLastModified(longAgo);
+
+            // the stats survive a store/load round trip
+            FileHashcodeMap.generateFileHashcodeMap(tmpDir, null, null).storeToFile(tmpFile);
+            FileHashcodeMap originalMap = FileHashcodeMap.loadFromFile(tmpFile);
+
+            // same size and last modified time - the change goes unnoticed, proving the file was not read again
+            StreamUtil.copy(new ByteArrayInputStream("TEST1".getBytes()), new FileOutputStream(testFile1));
+            assert testFile1.setLastModified(longAgo);
+            ChangesFileHashcodeMap currentMap = originalMap.rescan(tmpDir, null, true);
+            assert currentMap.getChanges().isEmpty() : currentMap;
+            assert currentMap.get("test1.txt").equals(originalMap.get("test1.txt")) : currentMap;
+
+            // a different last modified time makes the rescan read the file again
+            assert testFile1.setLastModified(longAgo + 10000L);
+            currentMap = originalMap.rescan(tmpDir, null, true);
+            assert currentMap.getChanges().size() == 1 : currentMap;
+            assert currentMap.getChanges().get("test1.txt").equals(MessageDigestGenerator.getDigestString(testFile1));
+
+            // a hashcode put in by hand is never trusted
+            originalMap.put("test2.txt", "abc");
+            currentMap = originalMap.rescan(tmpDir, null, true);
+            assert currentMap.getChanges().containsKey("test2.txt") : currentMap;
+        } finally {
+            FileUtil.purge(tmpDir, true);
+            tmpFile.delete();
+        }
+    }
+
+    public void testPutWrittenFile() throws Exception {
+        File tmpDir = FileUtil.createTempDirectory("fileHashcodeMapTest", ".dir", null);
+        try {
+            long longAgo = System.currentTimeMillis() - 60000L;
+            File testFile1 = new File(tmpDir, "test1.txt");
+            File testFile2 = new File(tmpDir, "test2.txt");
+            StreamUtil.copy(new ByteArrayInputStream("test1".getBytes()), new FileOutputStream(testFile1));
+            StreamUtil.copy(new ByteArrayInputStream("test2".getBytes()), new FileOutputStream(testFile2));
+            assert testFile2.setLastModified(longAgo);
+
+            // as by the deployer, which hashes the files as it writes them
+            FileHashcodeMap originalMap = new FileHashcodeMap();
+            originalMap.put("test1.txt", MessageDigestGenerator.getDigestString(testFile1), testFile1);
+            originalMap.put("test2.txt", MessageDigestGenerator.getDigestString(testFile2), testFile2);
+
+            // same sizes and last modified times, but only the file modified long before it was put is trusted
+            long lastModified = testFile1.lastModified();
+            StreamUtil.copy(new ByteArrayInputStream("TEST1".getBytes()), new FileOutputStream(testFile1));
+            StreamUtil.copy(new ByteArrayInputStream("TEST2".getBytes()), new FileOutputStream(testFile2));
+            assert testFile1.setLastModified(lastModified);
+            assert testFile2.setLastModified(longAgo);
+            ChangesFileHashcodeMap currentMap = originalMap.rescan(tmpDir, null, true);
+            assert currentMap.getChanges().containsKey("test1.txt") : "A file just written should be read again";
+            assert !currentMap.getChanges().containsKey("test2.txt") : "The file should not have been read again";
+        } finally {
+            FileUtil.purge(tmpDir, true);
+        }
+    }
+
     private void assertSameMap(FileHashcodeMap map1, FileHashcodeMap map2) {
         assert map2.equals(map1) : map1 + "!=" + map2;
         assert map2.size() == map1.size() : map1 + " is not same size as " + map2;
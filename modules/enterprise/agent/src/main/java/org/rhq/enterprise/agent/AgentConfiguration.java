@@ -1184,6 +1184,8 @@ public class AgentConfiguration {
             AgentConfigurationConstants.DEFAULT_PLUGINS_EVENT_REPORT_MAX_PER_SOURCE);
         int event_report_max_total = m_preferences.getInt(AgentConfigurationConstants.PLUGINS_EVENT_REPORT_MAX_TOTAL,
             AgentConfigurationConstants.DEFAULT_PLUGINS_EVENT_REPORT_MAX_TOTAL);
+        long bundle_cache_max_size = m_preferences.getLong(AgentConfigurationConstants.PLUGINS_BUNDLE_CACHE_MAX_SIZE,
+            AgentConfigurationConstants.DEFAULT_PLUGINS_BUNDLE_CACHE_MAX_SIZE);
 
         // determine the data and tmp directories to use
         File data_directory = getDataDirectory();
@@ -1237,6 +1239,7 @@ public class AgentConfiguration {
         config.setEventSenderPeriod(event_sender_period);
         config.setEventReportMaxPerSource(event_report_max_per_src);
         config.setEventReportMaxTotal(event_report_max_total);
+        config.setBundleCacheMaxSize(bundle_cache_max_size);
 
         if (name != null) {
             config.setContainerName(name);
@@ -731,4 +731,10 @@ public interface AgentConfigurationConstants {
      */
     String PLUGINS_EVENT_REPORT_MAX_TOTAL = PROPERTY_NAME_PREFIX + "plugins.event-report.max-total";
     int DEFAULT_PLUGINS_EVENT_REPORT_MAX_TOTAL = PluginContainerConfiguration.EVENT_REPORT_MAX_TOTAL_DEFAULT;
+
+    /**
+     * The maximum size, in bytes, of the agent's cache of bundle file content.
+     */
+    String PLUGINS_BUNDLE_CACHE_MAX_SIZE = PROPERTY_NAME_PREFIX + "plugins.bundle-cache.max-size";
+    long DEFAULT_PLUGINS_BUNDLE_CACHE_MAX_SIZE = PluginContainerConfiguration.BUNDLE_CACHE_MAX_SIZE_DEFAULT;
 }
\ No newline at end of file
@@ -18,14 +18,18 @@
  */
 package org.rhq.enterprise.agent;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Properties;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.locks.ReadWriteLock;
@@ -38,6 +42,7 @@ import org.rhq.core.domain.plugin.Plugin;
 import org.rhq.core.pc.PluginContainerConfiguration;
 import org.rhq.core.util.MessageDigestGenerator;
 import org.rhq.core.util.exception.ThrowableUtil;
+import org.rhq.core.util.file.ZipDelta;
 import org.rhq.core.util.stream.StreamUtil;
 import org.rhq.enterprise.agent.i18n.AgentI18NFactory;
 import org.rhq.enterprise.agent.i18n.AgentI18NResourceKeys;
@@ -49,6 +54,10 @@ import org.rhq.enterprise.communications.command.client.RemoteIOException;
  * jar. This object can also be used if you just want to get information on the current set of plugins - see
  * {@link #getCurrentPluginFiles()}.
  *
+ * <p>When a version of the plugin already exists locally, only a delta between it and the latest plugin jar is
+ * retrieved, if the server can provide one - see {@link ZipDelta}. The MD5s of the local plugin jars are kept in a
+ * file in the plugin directory, so they are only computed again when a plugin jar changes.</p>
+ *
  * @author John Mazzitelli
  * @author Ian Springer
  */
@@ -56,6 +65,7 @@ public class PluginUpdate {
     private static final Logger LOG = AgentI18NFactory.getLogger(PluginUpdate.class);
 
     private static final String MARKER_FILENAME = ".updatelock";
+    private static final String DIGESTS_FILENAME = ".plugin-digests";
 
     /**
      * Static lock that prohibits concurrent plugin updates.
@@ -224,7 +234,9 @@ public class PluginUpdate {
                     String name = updated_plugin.getName();
                     if (updated_plugin.isEnabled() && !disabled_plugin_names.contains(name)) {
                         try {
-                            downloadPluginWithRetries(updated_plugin); // tries our very best to get it
+                            if (!patchPlugin(updated_plugin, current_plugins.get(updated_plugin.getPath()))) {
+                                downloadPluginWithRetries(updated_plugin); // tries our very best to get it
+                            }
                         } catch (Exception e) {
                             last_error = e;
                         }
@@ -318,6 +330,72 @@ public class PluginUpdate {
         LOG.info(AgentI18NResourceKeys.DOWNLOADING_PLUGIN_COMPLETE, plugin.getName(), plugin.getPath());
     }
 
+    /**
+     * Tries to update the current version of a plugin to the latest one with a delta from the server. This never
+     * fails; if the plugin could not be patched, the old plugin is left alone and the full plugin is to be downloaded.
+     *
+     * @param  plugin_to_get  the plugin to update
+     * @param  current_plugin the current version of the plugin (may be <code>null</code>)
+     *
+     * @return <code>true</code> if the plugin was patched to the latest version
+     */
+    private boolean patchPlugin(Plugin plugin_to_get, Plugin current_plugin) {
+        if (current_plugin == null) {
+            return false;
+        }
+
+        File plugin_dir = config.getPluginDirectory();
+        File old_plugin = new File(plugin_dir, plugin_to_get.getPath());
+        File patched_plugin = new File(plugin_dir, plugin_to_get.getPath() + ".PATCHED");
+        File old_plugin_backup = new File(plugin_dir, plugin_to_get.getPath() + ".OLD");
+
+        try {
+            ZipDelta.Signature signature = ZipDelta.createSignature(old_plugin);
+            byte[] delta = coreServerService.getPluginArchiveDelta(plugin_to_get.getName(), signature);
+            if (delta == null) {
+                return false;
+            }
+
+            String md5;
+            OutputStream out = new FileOutputStream(patched_plugin);
+            try {
+                md5 = ZipDelta.applyDelta(old_plugin, new ByteArrayInputStream(delta), out);
+            } finally {
+                out.close();
+            }
+            if (!md5.equals(plugin_to_get.getMD5())) {
+                throw new IOException("Patched plugin has MD5 [" + md5 + "], expected [" + plugin_to_get.getMD5()
+                    + "]");
+            }
+
+            // swap the patched plugin in, keeping the old plugin until we know we can
+            old_plugin_backup.delete();
+            if (!old_plugin.renameTo(old_plugin_backup)) {
+                throw new IOException("Failed to rename [" + old_plugin + "] to [" + old_plugin_backup + "]");
+            }
+            if (!patched_plugin.renameTo(old_plugin)) {
+                if (!old_plugin_backup.renameTo(old_plugin)) {
+                    LOG.error(AgentI18NResourceKeys.PLUGIN_BACKUP_RESTORE_FAILURE, old_plugin_backup, old_plugin);
+                }
+                throw new IOException("Failed to rename [" + patched_plugin + "] to [" + old_plugin + "]");
+            }
+            old_plugin_backup.delete();
+
+            Properties digests = loadPluginDigests();
+            digests.setProperty(old_plugin.getName(), toDigestValue(old_plugin, md5));
+            storePluginDigests(digests);
+
+            LOG.info(AgentI18NResourceKeys.PLUGIN_PATCHED, plugin_to_get.getPath(), delta.length, old_plugin.length());
+            return true;
+        } catch (Throwable t) {
+            // older servers do not know how to compute deltas either, in which case we end up here
+            LOG.warn(AgentI18NResourceKeys.PLUGIN_PATCH_FAILURE, plugin_to_get.getPath(), ThrowableUtil
+                .getAllMessages(t));
+            patched_plugin.delete();
+            return false;
+        }
+    }
+
     /**
      * Retrieves a plugin archive and overwrites any older, existing plugin archive.
      *
@@ -386,6 +464,7 @@ public class PluginUpdate {
 
     /**
      * Returns the map of plugins that are currently installed locally, where the map is keyed on the plugin filename.
+     * The MD5 of a plugin file is only computed if the plugin file has changed since the last time it was.
      *
      * @return list of known plugins that are currently installed locally, keyed on plugin jar filename
      *
@@ -395,19 +474,80 @@ public class PluginUpdate {
         Map<String, Plugin> plugins = new HashMap<String, Plugin>();
         File plugin_dir = config.getPluginDirectory();
         File[] plugin_files = plugin_dir.listFiles();
+        Properties digests = loadPluginDigests();
+        Properties current_digests = new Properties();
 
         for (File plugin_file : plugin_files) {
             String plugin_filename = plugin_file.getName();
             if (plugin_filename.endsWith(".jar")) {
                 Plugin cur_plugin = new Plugin(plugin_filename, plugin_filename);
-                cur_plugin.setMD5(MessageDigestGenerator.getDigestString(plugin_file));
+                String md5 = getDigest(digests.getProperty(plugin_filename), plugin_file);
+                if (md5 == null) {
+                    md5 = MessageDigestGenerator.getDigestString(plugin_file);
+                }
+                cur_plugin.setMD5(md5);
                 plugins.put(plugin_filename, cur_plugin);
+                current_digests.setProperty(plugin_filename, toDigestValue(plugin_file, md5));
             }
         }
 
+        if (!current_digests.equals(digests)) {
+            storePluginDigests(current_digests);
+        }
+
         return plugins;
     }
 
+    /**
+     * Returns the MD5 found in the given digest value if the value was stored for the file as it is now.
+     */
+    private String getDigest(String digest_value, File plugin_file) {
+        if (digest_value != null) {
+            String[] parts = digest_value.split(",");
+            if (parts.length == 3 && parts[1].equals(String.valueOf(plugin_file.length()))
+                && parts[2].equals(String.valueOf(plugin_file.lastModified()))) {
+                return parts[0];
+            }
+        }
+        return null;
+    }
+
+    private String toDigestValue(File plugin_file, String md5) {
+        return md5 + "," + plugin_file.length() + "," + plugin_file.lastModified();
+    }
+
+    private Properties loadPluginDigests() {
+        Properties digests = new Properties();
+        File digests_file = new File(config.getPluginDirectory(), DIGESTS_FILENAME);
+        if (digests_file.exists()) {
+            try {
+                InputStream in = new FileInputStream(digests_file);
+                try {
+                    digests.load(in);
+                } finally {
+                    in.close();
+                }
+            } catch (Exception e) {
+                digests.clear(); // just compute them again
+            }
+        }
+        return digests;
+    }
+
+    private void storePluginDigests(Properties digests) {
+        File digests_file = new File(config.getPluginDirectory(), DIGESTS_FILENAME);
+        try {
+            OutputStream out = new FileOutputStream(digests_file);
+            try {
+                digests.store(out, "MD5,length,last-modified of the plugin jars");
+            } finally {
+                out.close();
+            }
+        } catch (Exception e) {
+            LOG.warn(AgentI18NResourceKeys.PLUGIN_DIGESTS_STORE_FAILURE, digests_file, ThrowableUtil.getAllMessages(e));
+        }
+    }
+
     private void createMarkerFile() {
         File marker = null;
         try {
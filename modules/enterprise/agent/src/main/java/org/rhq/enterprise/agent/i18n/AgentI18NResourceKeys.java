@@ -374,6 +374,15 @@ public interface AgentI18NResourceKeys {
     @I18NMessage("Downloading the plugin [{0}]...")
     String DOWNLOADING_PLUGIN = "PluginUpdate.downloading";
 
+    @I18NMessage("The plugin [{0}] has been patched to the latest version with a [{1}] byte delta rather than downloading the [{2}] byte plugin.")
+    String PLUGIN_PATCHED = "PluginUpdate.patched";
+
+    @I18NMessage("Could not patch the plugin [{0}] to the latest version, will download the full plugin. Cause: {1}")
+    String PLUGIN_PATCH_FAILURE = "PluginUpdate.patch-failure";
+
+    @I18NMessage("Failed to store the digests of the plugins in [{0}] - they will need to be computed again. Cause: {1}")
+    String PLUGIN_DIGESTS_STORE_FAILURE = "PluginUpdate.digests-store-failure";
+
     @I18NMessage("Failed to backup the old plugin [{0}] to [{1}] - if the plugin download fails, the plugin will not be able to be restored")
     String PLUGIN_BACKUP_FAILURE = "PluginUpdate.backup-failure";
 
@@ -0,0 +1,180 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2011 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package org.rhq.enterprise.agent;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.jmock.Expectations;
+import org.jmock.api.Invocation;
+import org.jmock.lib.action.CustomAction;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import org.rhq.core.clientapi.server.core.CoreServerService;
+import org.rhq.core.domain.plugin.Plugin;
+import org.rhq.core.pc.PluginContainerConfiguration;
+import org.rhq.core.util.MessageDigestGenerator;
+import org.rhq.core.util.file.FileUtil;
+import org.rhq.core.util.file.ZipDelta;
+import org.rhq.test.JMockTest;
+
+/**
+ * Tests how {@link PluginUpdate} remembers the MD5s of the plugin jars in the plugin directory, and how it patches
+ * plugin jars with the deltas it gets from the server.
+ */
+@Test
+public class PluginUpdateTest extends JMockTest {
+    private File testDir;
+    private File pluginDir;
+    private File serverDir;
+
+    @BeforeMethod
+    public void createTestDir() throws Exception {
+        testDir = FileUtil.createTempDirectory("pluginUpdateTest", ".dir", null);
+        pluginDir = new File(testDir, "plugins");
+        serverDir = new File(testDir, "server");
+        pluginDir.mkdirs();
+        serverDir.mkdirs();
+    }
+
+    @AfterMethod(alwaysRun = true)
+    public void deleteTestDir() {
+        FileUtil.purge(testDir, true);
+    }
+
+    public void testDigestsOnlyComputedForChangedPlugins() throws Exception {
+        File jar = createJar(new File(pluginDir, "test.jar"), "1");
+        new FileOutputStream(new File(pluginDir, "readme.txt")).close();
+        String md5 = MessageDigestGenerator.getDigestString(jar);
+
+        assert new PluginUpdate(createServer("server", md5), createConfiguration()).updatePlugins().isEmpty();
+        Properties digests = loadDigests();
+        assert digests.size() == 1 : "Only the plugin jars should have their digests stored: " + digests;
+        assert digests.getProperty("test.jar").equals(md5 + "," + jar.length() + "," + jar.lastModified()) : digests;
+
+        // as long as the jar does not change, the stored MD5 is trusted
+        digests.setProperty("test.jar", "abcdef," + jar.length() + "," + jar.lastModified());
+        storeDigests(digests);
+        assert new PluginUpdate(createServer("trustingServer", "abcdef"), createConfiguration()).updatePlugins().isEmpty();
+
+        // but once it has been touched, the jar is read again
+        assert jar.setLastModified(jar.lastModified() - 10000L);
+        assert new PluginUpdate(createServer("touchedServer", md5), createConfiguration()).updatePlugins().isEmpty();
+        assert loadDigests().getProperty("test.jar").equals(md5 + "," + jar.length() + "," + jar.lastModified());
+    }
+
+    public void testPluginPatched() throws Exception {
+        File jar = createJar(new File(pluginDir, "test.jar"), "1");
+        final File latestJar = createJar(new File(serverDir, "test.jar"), "2");
+        final String latestMd5 = MessageDigestGenerator.getDigestString(latestJar);
+        final CoreServerService server = createServer("server", latestMd5);
+
+        // the agent is sent a delta once, after which its jar is the latest one
+        context.checking(new Expectations() {
+            {
+                oneOf(server).getPluginArchiveDelta(with("test"), with(any(ZipDelta.Signature.class)));
+                will(new CustomAction("create the delta") {
+                    public Object invoke(Invocation invocation) throws Throwable {
+                        ZipDelta.Signature signature = (ZipDelta.Signature) invocation.getParameter(1);
+                        return ZipDelta.createDelta(signature, latestJar, latestMd5);
+                    }
+                });
+            }
+        });
+
+        List<Plugin> updated = new PluginUpdate(server, createConfiguration()).updatePlugins();
+        assert updated.size() == 1 && updated.get(0).getName().equals("test") : updated;
+        assert MessageDigestGenerator.getDigestString(jar).equals(latestMd5) : "The plugin jar was not patched";
+        assert !new File(pluginDir, "test.jar.PATCHED").exists();
+        assert !new File(pluginDir, "test.jar.OLD").exists();
+        assert loadDigests().getProperty("test.jar").equals(latestMd5 + "," + jar.length() + "," + jar.lastModified());
+
+        assert new PluginUpdate(server, createConfiguration()).updatePlugins().isEmpty();
+    }
+
+    /**
+     * Mocks a server whose latest version of the test plugin has the given MD5.
+     */
+    private CoreServerService createServer(String name, final String md5) {
+        final CoreServerService server = context.mock(CoreServerService.class, name);
+        context.checking(new Expectations() {
+            {
+                allowing(server).getLatestPlugins();
+                will(returnValue(Collections.singletonList(new Plugin("test", "test.jar", md5))));
+            }
+        });
+        return server;
+    }
+
+    private PluginContainerConfiguration createConfiguration() {
+        PluginContainerConfiguration config = new PluginContainerConfiguration();
+        config.setPluginDirectory(pluginDir);
+        return config;
+    }
+
+    private Properties loadDigests() throws IOException {
+        Properties digests = new Properties();
+        InputStream in = new FileInputStream(new File(pluginDir, ".plugin-digests"));
+        try {
+            digests.load(in);
+        } finally {
+            in.close();
+        }
+        return digests;
+    }
+
+    private void storeDigests(Properties digests) throws IOException {
+        OutputStream out = new FileOutputStream(new File(pluginDir, ".plugin-digests"));
+        try {
+            digests.store(out, null);
+        } finally {
+            out.close();
+        }
+    }
+
+    private File createJar(File file, String descriptor) throws IOException {
+        Random random = new Random(42L); // the classes are the same in every version of the plugin
+        ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(file));
+        try {
+            zip.putNextEntry(new ZipEntry("META-INF/rhq-plugin.xml"));
+            zip.write(descriptor.getBytes());
+            for (int i = 0; i < 10; i++) {
+                byte[] content = new byte[4096];
+                random.nextBytes(content);
+                zip.putNextEntry(new ZipEntry("org/rhq/plugins/test/Component" + i + ".class"));
+                zip.write(content);
+            }
+        } finally {
+            zip.close();
+        }
+        return file;
+    }
+}
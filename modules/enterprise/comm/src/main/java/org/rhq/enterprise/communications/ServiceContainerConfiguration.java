@@ -600,6 +600,44 @@ public class ServiceContainerConfiguration {
         return value;
     }
 
+    /**
+     * Returns the number of chunks a {@link RemoteInputStream} reads ahead of its reader, and the number of chunks a
+     * {@link RemoteOutputStream} leaves unacknowledged behind its writer, for the remote streams hosted in this
+     * container. 0 means the remote streams are not chunked and every stream method call is a synchronous remote call.
+     *
+     * @return the remote stream window size
+     */
+    public int getRemoteStreamWindowSize() {
+        int value = m_preferences.getInt(ServiceContainerConfigurationConstants.REMOTE_STREAM_WINDOW_SIZE,
+            ServiceContainerConfigurationConstants.DEFAULT_REMOTE_STREAM_WINDOW_SIZE);
+
+        return value;
+    }
+
+    /**
+     * Returns the number of bytes transferred in each chunk of the chunked remote streams hosted in this container.
+     *
+     * @return the remote stream chunk size
+     */
+    public int getRemoteStreamChunkSize() {
+        int value = m_preferences.getInt(ServiceContainerConfigurationConstants.REMOTE_STREAM_CHUNK_SIZE,
+            ServiceContainerConfigurationConstants.DEFAULT_REMOTE_STREAM_CHUNK_SIZE);
+
+        return value;
+    }
+
+    /**
+     * Returns the flag to indicate if the chunks of the remote streams hosted in this container are compressed.
+     *
+     * @return <code>true</code> if the remote stream chunks are compressed
+     */
+    public boolean isRemoteStreamCompressionEnabled() {
+        boolean value = m_preferences.getBoolean(ServiceContainerConfigurationConstants.REMOTE_STREAM_COMPRESSION,
+            ServiceContainerConfigurationConstants.DEFAULT_REMOTE_STREAM_COMPRESSION);
+
+        return value;
+    }
+
     /**
      * Returns the flag to indicate if the command service directory has been enabled to perform dynamic discovery of
      * new command services that are added to (or old services removed from) the system after the initial startup
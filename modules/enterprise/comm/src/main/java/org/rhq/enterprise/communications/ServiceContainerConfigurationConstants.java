@@ -319,6 +319,38 @@ public interface ServiceContainerConfigurationConstants {
      */
     long DEFAULT_REMOTE_STREAM_MAX_IDLE_TIME = 300000L;
 
+    /**
+     * The number of chunk requests a remote input stream client keeps outstanding while reading ahead (or chunk writes
+     * a remote output stream client leaves unacknowledged while writing behind). 0 disables chunked streaming, in
+     * which case every read and write of the stream is a synchronous remote call.
+     */
+    String REMOTE_STREAM_WINDOW_SIZE = PROPERTY_NAME_PREFIX + "remote-stream-window-size";
+
+    /**
+     * The default window size of the remote streams.
+     */
+    int DEFAULT_REMOTE_STREAM_WINDOW_SIZE = 4;
+
+    /**
+     * The number of bytes of stream data transferred in each chunk when the remote streams are chunked.
+     */
+    String REMOTE_STREAM_CHUNK_SIZE = PROPERTY_NAME_PREFIX + "remote-stream-chunk-size-bytes";
+
+    /**
+     * The default chunk size of the remote streams.
+     */
+    int DEFAULT_REMOTE_STREAM_CHUNK_SIZE = 65536;
+
+    /**
+     * If <code>true</code>, the chunks of the remote streams are compressed when transferred.
+     */
+    String REMOTE_STREAM_COMPRESSION = PROPERTY_NAME_PREFIX + "remote-stream-compression";
+
+    /**
+     * The default remote stream compression flag.
+     */
+    boolean DEFAULT_REMOTE_STREAM_COMPRESSION = false;
+
     /**
      * A fully qualified class name of the {@link CommandAuthenticator} implementation that will be used to authenticate
      * incoming commands.
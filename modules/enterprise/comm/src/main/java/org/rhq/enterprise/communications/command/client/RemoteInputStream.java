@@ -20,14 +20,24 @@ package org.rhq.enterprise.communications.command.client;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.Serializable;
 import java.lang.reflect.Method;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 import mazz.i18n.Logger;
 import org.jboss.remoting.invocation.NameBasedInvocation;
 import org.rhq.enterprise.communications.ServiceContainer;
+import org.rhq.enterprise.communications.ServiceContainerConfiguration;
 import org.rhq.enterprise.communications.command.Command;
 import org.rhq.enterprise.communications.command.impl.stream.RemoteInputStreamCommand;
 import org.rhq.enterprise.communications.command.impl.stream.RemoteInputStreamCommandResponse;
+import org.rhq.enterprise.communications.command.impl.stream.RemoteStreamChunks;
 import org.rhq.enterprise.communications.i18n.CommI18NFactory;
 import org.rhq.enterprise.communications.i18n.CommI18NResourceKeys;
 
@@ -54,6 +64,13 @@ import org.rhq.enterprise.communications.i18n.CommI18NResourceKeys;
  * Note that remote input streams should be {@link #close() closed} in order to clean up server-side resources in a
  * timely manner.</p>
  *
+ * <p>Rather than remoting each read, this object normally pulls the stream data down in chunks, keeping a window of
+ * chunk requests in flight so the stream is read ahead of the caller and the network round trips overlap. The window
+ * and chunk sizes (and whether chunks are compressed) come from the configuration of the service container that
+ * remotes the stream. If the remote server does not support chunks, or the window size is 0, or the caller
+ * {@link #mark(int) marks} the stream before reading it, each call is remoted individually. Note that in chunked mode
+ * the stream does not support {@link #markSupported() mark/reset}.</p>
+ *
  * @author John Mazzitelli
  */
 public class RemoteInputStream extends InputStream implements Serializable {
@@ -112,6 +129,53 @@ public class RemoteInputStream extends InputStream implements Serializable {
      */
     private final String m_serverEndpoint;
 
+    /**
+     * The number of chunk requests kept in flight when reading ahead; 0 if the stream is not to be read in chunks
+     * (which is also what streams serialized by older versions deserialize to).
+     */
+    private final int m_windowSize;
+
+    /**
+     * The number of bytes in each chunk.
+     */
+    private final int m_chunkSize;
+
+    /**
+     * Whether chunks are to be compressed on the wire.
+     */
+    private final boolean m_compress;
+
+    /**
+     * <code>null</code> until it is known whether the stream is read in chunks or with individual remote calls.
+     */
+    private transient Boolean m_chunked;
+
+    /**
+     * Runs the read-ahead chunk requests.
+     */
+    private transient ExecutorService m_readAheadExecutor;
+
+    /**
+     * The chunk requests in flight, in sequence order.
+     */
+    private transient LinkedList<Future<byte[]>> m_pendingChunks;
+
+    /**
+     * The chunk currently being read by the caller and the position of the next byte to be read in it.
+     */
+    private transient byte[] m_chunk;
+    private transient int m_chunkPosition;
+
+    /**
+     * The sequence number of the next chunk to request.
+     */
+    private transient long m_nextSequence;
+
+    /**
+     * Set once the last chunk of the stream has been received.
+     */
+    private transient boolean m_lastChunkReceived;
+
     /**
      * Creates a new {@link RemoteInputStream} object. This constructor is the same as
      * {@link RemoteInputStream#RemoteInputStream(Long, ServiceContainer)} but additionally adds the stream's
@@ -139,6 +203,11 @@ public class RemoteInputStream extends InputStream implements Serializable {
     public RemoteInputStream(Long id, ServiceContainer server) {
         m_streamId = id;
         m_serverEndpoint = server.getServerEndpoint();
+
+        ServiceContainerConfiguration config = server.getConfiguration();
+        m_windowSize = config.getRemoteStreamWindowSize();
+        m_chunkSize = config.getRemoteStreamChunkSize();
+        m_compress = config.isRemoteStreamCompressionEnabled();
     }
 
     /**
@@ -175,6 +244,10 @@ public class RemoteInputStream extends InputStream implements Serializable {
      */
     @Override
     public int available() throws IOException {
+        if (Boolean.TRUE.equals(m_chunked)) {
+            return (m_chunk != null) ? (m_chunk.length - m_chunkPosition) : 0;
+        }
+
         return ((Integer) sendRequest(AVAILABLE, null)).intValue();
     }
 
@@ -183,6 +256,7 @@ public class RemoteInputStream extends InputStream implements Serializable {
      */
     @Override
     public void close() throws IOException {
+        stopReadAhead();
         sendRequest(CLOSE, null);
     }
 
@@ -191,6 +265,15 @@ public class RemoteInputStream extends InputStream implements Serializable {
      */
     @Override
     public void mark(int readlimit) {
+        // marking a stream whose reading has not yet begun means it has to be read without chunks
+        if (m_chunked == null) {
+            m_chunked = Boolean.FALSE;
+        }
+
+        if (m_chunked.booleanValue()) {
+            return;
+        }
+
         try {
             sendRequest(MARK, new Object[] { new Integer(readlimit) });
         } catch (IOException e) {
@@ -203,6 +286,10 @@ public class RemoteInputStream extends InputStream implements Serializable {
      */
     @Override
     public boolean markSupported() {
+        if (Boolean.TRUE.equals(m_chunked)) {
+            return false;
+        }
+
         try {
             return ((Boolean) sendRequest(MARKSUPPORTED, null)).booleanValue();
         } catch (IOException e) {
@@ -215,7 +302,15 @@ public class RemoteInputStream extends InputStream implements Serializable {
      */
     @Override
     public int read() throws IOException {
-        return ((Integer) sendRequest(READ, null)).intValue();
+        if (!isChunked()) {
+            return ((Integer) sendRequest(READ, null)).intValue();
+        }
+
+        if (!fillChunk()) {
+            return -1;
+        }
+
+        return m_chunk[m_chunkPosition++] & 0xFF;
     }
 
     /**
@@ -223,7 +318,11 @@ public class RemoteInputStream extends InputStream implements Serializable {
      */
     @Override
     public int read(byte[] b) throws IOException {
-        return ((Integer) sendRequest(READBYTEARRAY, new Object[] { b })).intValue();
+        if (!isChunked()) {
+            return ((Integer) sendRequest(READBYTEARRAY, new Object[] { b })).intValue();
+        }
+
+        return read(b, 0, b.length);
     }
 
     /**
@@ -231,7 +330,27 @@ public class RemoteInputStream extends InputStream implements Serializable {
      */
     @Override
     public int read(byte[] b, int off, int len) throws IOException {
-        return ((Integer) sendRequest(READBYTEARRAY_LEN, new Object[] { b, off, len })).intValue();
+        if (!isChunked()) {
+            return ((Integer) sendRequest(READBYTEARRAY_LEN, new Object[] { b, off, len })).intValue();
+        }
+
+        if ((off < 0) || (len < 0) || (len > (b.length - off))) {
+            throw new IndexOutOfBoundsException();
+        }
+
+        if (len == 0) {
+            return 0;
+        }
+
+        if (!fillChunk()) {
+            return -1;
+        }
+
+        int count = Math.min(len, m_chunk.length - m_chunkPosition);
+        System.arraycopy(m_chunk, m_chunkPosition, b, off, count);
+        m_chunkPosition += count;
+
+        return count;
     }
 
     /**
@@ -239,6 +358,10 @@ public class RemoteInputStream extends InputStream implements Serializable {
      */
     @Override
     public void reset() throws IOException {
+        if (Boolean.TRUE.equals(m_chunked)) {
+            throw new IOException("mark/reset not supported");
+        }
+
         sendRequest(RESET, null);
     }
 
@@ -247,7 +370,19 @@ public class RemoteInputStream extends InputStream implements Serializable {
      */
     @Override
     public long skip(long n) throws IOException {
-        return ((Long) sendRequest(SKIP, new Object[] { n })).longValue();
+        if (!isChunked()) {
+            return ((Long) sendRequest(SKIP, new Object[] { n })).longValue();
+        }
+
+        long skipped = 0L;
+
+        while ((skipped < n) && fillChunk()) {
+            int count = (int) Math.min(n - skipped, m_chunk.length - m_chunkPosition);
+            m_chunkPosition += count;
+            skipped += count;
+        }
+
+        return skipped;
     }
 
     /**
@@ -262,6 +397,37 @@ public class RemoteInputStream extends InputStream implements Serializable {
      *                           encountered a problem
      */
     protected Object sendRequest(Method method, Object[] args) throws RemoteIOException {
+        RemoteInputStreamCommandResponse response = sendInvocation(new NameBasedInvocation(method, args));
+
+        // let's mimic pass by reference by copying the bytes read into the byte[] array parameter.
+        // note that the only way that read_bytes could be non-null was if our command had
+        // a byte[] as its first parameter.  Therefore, read_bytes!=null directly infers that args[0] is a byte[]
+        // and they will have identical sizes.
+        byte[] read_bytes = response.getBytesReadFromStream();
+        if (read_bytes != null) {
+            // two sanity checks here:
+            // first, args[0] should be a byte[], if not, it is a bug
+            // second, the arrays passed in the command and got back in the response should be the same length, its a bug otherwise
+            assert (args.length > 0) && (args[0] instanceof byte[]);
+            assert read_bytes.length == ((byte[]) args[0]).length;
+
+            System.arraycopy(read_bytes, 0, args[0], 0, read_bytes.length);
+        }
+
+        return response.getResults();
+    }
+
+    /**
+     * Builds the command to make the given invocation on the remote stream and submits the request.
+     *
+     * @param  invocation the invocation to make on the remote stream
+     *
+     * @return the successful response
+     *
+     * @throws RemoteIOException if either the sending of the request failed of the remote input stream actually
+     *                           encountered a problem
+     */
+    private RemoteInputStreamCommandResponse sendInvocation(NameBasedInvocation invocation) throws RemoteIOException {
         if (m_sender == null) {
             throw new RemoteIOException(LOG.getMsgString(CommI18NResourceKeys.REMOTE_INPUT_STREAM_HAS_NO_SENDER,
                 m_streamId, m_serverEndpoint));
@@ -270,7 +436,7 @@ public class RemoteInputStream extends InputStream implements Serializable {
         RemoteInputStreamCommandResponse response;
         RemoteInputStreamCommand cmd = new RemoteInputStreamCommand();
 
-        cmd.setNameBasedInvocation(new NameBasedInvocation(method, args));
+        cmd.setNameBasedInvocation(invocation);
         cmd.setStreamId(m_streamId);
 
         try {
@@ -283,21 +449,150 @@ public class RemoteInputStream extends InputStream implements Serializable {
             throw new RemoteIOException(response.getException());
         }
 
-        // let's mimic pass by reference by copying the bytes read into the byte[] array parameter.
-        // note that the only way that read_bytes could be non-null was if our command had
-        // a byte[] as its first parameter.  Therefore, read_bytes!=null directly infers that args[0] is a byte[]
-        // and they will have identical sizes.
-        byte[] read_bytes = response.getBytesReadFromStream();
-        if (read_bytes != null) {
-            // two sanity checks here:
-            // first, args[0] should be a byte[], if not, it is a bug
-            // second, the arrays passed in the command and got back in the response should be the same length, its a bug otherwise
-            assert (args.length > 0) && (args[0] instanceof byte[]);
-            assert read_bytes.length == ((byte[]) args[0]).length;
+        return response;
+    }
 
-            System.arraycopy(read_bytes, 0, args[0], 0, read_bytes.length);
+    /**
+     * Determines, on first use, whether the stream is read in chunks. The first chunk is requested synchronously; if
+     * the remote server does not understand the request, the stream falls back to individual remote calls.
+     *
+     * @return <code>true</code> if the stream is read in chunks
+     *
+     * @throws IOException if the first chunk could not be read for reasons other than the protocol being unsupported
+     */
+    private boolean isChunked() throws IOException {
+        if (m_chunked == null) {
+            if ((m_windowSize <= 0) || (m_chunkSize <= 0)) {
+                m_chunked = Boolean.FALSE;
+            } else {
+                try {
+                    byte[] first_chunk = requestChunk(0L, 0L);
+                    m_pendingChunks = new LinkedList<Future<byte[]>>();
+                    m_nextSequence = 1L;
+                    m_chunked = Boolean.TRUE;
+                    setChunk(first_chunk);
+                } catch (RemoteIOException e) {
+                    if (!RemoteStreamChunks.isProtocolUnsupported(e)) {
+                        throw e;
+                    }
+
+                    LOG.debug(CommI18NResourceKeys.REMOTE_INPUT_STREAM_CHUNKS_UNSUPPORTED, m_streamId,
+                        m_serverEndpoint);
+                    m_chunked = Boolean.FALSE;
+                }
+            }
         }
 
-        return response.getResults();
+        return m_chunked.booleanValue();
+    }
+
+    /**
+     * Makes sure there is at least one unread byte in the current chunk, moving on to the next chunk as needed.
+     *
+     * @return <code>false</code> if the end of the stream has been reached
+     *
+     * @throws IOException if a chunk could not be read
+     */
+    private boolean fillChunk() throws IOException {
+        while ((m_chunk == null) || (m_chunkPosition >= m_chunk.length)) {
+            if (m_lastChunkReceived) {
+                return false;
+            }
+
+            readAhead();
+
+            Future<byte[]> next_chunk = m_pendingChunks.removeFirst();
+
+            try {
+                setChunk(next_chunk.get());
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException();
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RemoteIOException) {
+                    throw (RemoteIOException) e.getCause();
+                }
+                throw new RemoteIOException(e.getCause());
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Tops up the window of chunk requests in flight.
+     */
+    private void readAhead() {
+        if (m_readAheadExecutor == null) {
+            final String thread_name = "RemoteInputStream-" + m_streamId + " Read-Ahead Thread";
+            m_readAheadExecutor = Executors.newFixedThreadPool(m_windowSize, new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, thread_name);
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+
+        while (m_pendingChunks.size() < m_windowSize) {
+            // all the chunks before those in flight have been received
+            final long acknowledged = m_nextSequence - m_pendingChunks.size();
+            final long sequence = m_nextSequence++;
+            m_pendingChunks.add(m_readAheadExecutor.submit(new Callable<byte[]>() {
+                public byte[] call() throws Exception {
+                    return requestChunk(sequence, acknowledged);
+                }
+            }));
+        }
+    }
+
+    /**
+     * Makes the given chunk the current one. A chunk shorter than the chunk size is the last one, so any chunk
+     * requests still in flight are abandoned.
+     *
+     * @param chunk the chunk to read next
+     */
+    private void setChunk(byte[] chunk) {
+        m_chunk = chunk;
+        m_chunkPosition = 0;
+
+        if (chunk.length < m_chunkSize) {
+            m_lastChunkReceived = true;
+            stopReadAhead();
+        }
+    }
+
+    /**
+     * Cancels any chunk requests in flight and releases the read-ahead threads.
+     */
+    private void stopReadAhead() {
+        if (m_pendingChunks != null) {
+            for (Future<byte[]> pending : m_pendingChunks) {
+                pending.cancel(false);
+            }
+            m_pendingChunks.clear();
+        }
+
+        if (m_readAheadExecutor != null) {
+            m_readAheadExecutor.shutdown();
+            m_readAheadExecutor = null;
+        }
+    }
+
+    /**
+     * Requests the chunk with the given sequence number from the remote stream.
+     *
+     * @param  sequence     the sequence number of the chunk
+     * @param  acknowledged the sequence number of the first chunk not received yet
+     *
+     * @return the (uncompressed) chunk
+     *
+     * @throws IOException if the chunk could not be read
+     */
+    private byte[] requestChunk(long sequence, long acknowledged) throws IOException {
+        NameBasedInvocation invocation = RemoteStreamChunks.createReadChunkInvocation(sequence, m_chunkSize,
+            m_compress, acknowledged);
+        byte[] chunk = (byte[]) sendInvocation(invocation).getResults();
+
+        return (m_compress && (chunk.length > 0)) ? RemoteStreamChunks.decompress(chunk) : chunk;
     }
-}
\ No newline at end of file
+}
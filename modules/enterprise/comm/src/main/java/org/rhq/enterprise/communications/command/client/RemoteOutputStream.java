@@ -19,15 +19,25 @@
 package org.rhq.enterprise.communications.command.client;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.io.Serializable;
 import java.lang.reflect.Method;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 import mazz.i18n.Logger;
 import org.jboss.remoting.invocation.NameBasedInvocation;
 import org.rhq.enterprise.communications.ServiceContainer;
+import org.rhq.enterprise.communications.ServiceContainerConfiguration;
 import org.rhq.enterprise.communications.command.Command;
 import org.rhq.enterprise.communications.command.impl.stream.RemoteOutputStreamCommand;
 import org.rhq.enterprise.communications.command.impl.stream.RemoteOutputStreamCommandResponse;
+import org.rhq.enterprise.communications.command.impl.stream.RemoteStreamChunks;
 import org.rhq.enterprise.communications.i18n.CommI18NFactory;
 import org.rhq.enterprise.communications.i18n.CommI18NResourceKeys;
 
@@ -54,6 +64,14 @@ import org.rhq.enterprise.communications.i18n.CommI18NResourceKeys;
  * Note that remote output streams should be {@link #close() closed} in order to clean up server-side resources in a
  * timely manner.</p>
  *
+ * <p>Rather than remoting each write, this object normally buffers the written data and sends it in chunks, keeping a
+ * window of chunk writes in flight so the network round trips overlap. The window and chunk sizes (and whether chunks
+ * are compressed) come from the configuration of the service container that remotes the stream. Because writes are
+ * sent behind the caller's back, a failed write may only be reported by a later write, {@link #flush()} or
+ * {@link #close()}, and data is only guaranteed to have reached the remote stream after one of the latter two
+ * returns. If the remote server does not support chunks, or the window size is 0, each call is remoted
+ * individually.</p>
+ *
  * @author John Mazzitelli
  */
 public class RemoteOutputStream extends OutputStream implements Serializable {
@@ -101,6 +119,48 @@ public class RemoteOutputStream extends OutputStream implements Serializable {
      */
     private final String m_serverEndpoint;
 
+    /**
+     * The number of chunk writes kept in flight; 0 if the stream is not to be written in chunks (which is also what
+     * streams serialized by older versions deserialize to).
+     */
+    private final int m_windowSize;
+
+    /**
+     * The number of bytes in each chunk.
+     */
+    private final int m_chunkSize;
+
+    /**
+     * Whether chunks are to be compressed on the wire.
+     */
+    private final boolean m_compress;
+
+    /**
+     * <code>null</code> until it is known whether the stream is written in chunks or with individual remote calls.
+     */
+    private transient Boolean m_chunked;
+
+    /**
+     * Holds the written data until a chunk is full.
+     */
+    private transient byte[] m_buffer;
+    private transient int m_bufferCount;
+
+    /**
+     * Runs the chunk writes.
+     */
+    private transient ExecutorService m_writeBehindExecutor;
+
+    /**
+     * The chunk writes in flight, in sequence order.
+     */
+    private transient LinkedList<Future<Object>> m_pendingWrites;
+
+    /**
+     * The sequence number of the next chunk to write.
+     */
+    private transient long m_nextSequence;
+
     /**
      * Creates a new {@link RemoteOutputStream} object. This constructor is the same as
      * {@link RemoteOutputStream#RemoteOutputStream(Long, ServiceContainer)} but additionally adds the stream's
@@ -128,6 +188,11 @@ public class RemoteOutputStream extends OutputStream implements Serializable {
     public RemoteOutputStream(Long id, ServiceContainer server) {
         m_streamId = id;
         m_serverEndpoint = server.getServerEndpoint();
+
+        ServiceContainerConfiguration config = server.getConfiguration();
+        m_windowSize = config.getRemoteStreamWindowSize();
+        m_chunkSize = config.getRemoteStreamChunkSize();
+        m_compress = config.isRemoteStreamCompressionEnabled();
     }
 
     /**
@@ -162,27 +227,66 @@ public class RemoteOutputStream extends OutputStream implements Serializable {
 
     @Override
     public void close() throws IOException {
-        sendRequest(CLOSE, null);
+        try {
+            writeBehind();
+        } finally {
+            stopWriteBehind();
+            sendRequest(CLOSE, null);
+        }
     }
 
     @Override
     public void flush() throws IOException {
+        writeBehind();
         sendRequest(FLUSH, null);
     }
 
     @Override
     public void write(int b) throws IOException {
-        sendRequest(WRITE_INT, new Object[] { new Integer(b) });
+        if (!isBuffered()) {
+            sendRequest(WRITE_INT, new Object[] { new Integer(b) });
+            return;
+        }
+
+        m_buffer[m_bufferCount++] = (byte) b;
+
+        if (m_bufferCount == m_chunkSize) {
+            sendChunk();
+        }
     }
 
     @Override
     public void write(byte[] b) throws IOException {
-        sendRequest(WRITE_BYTEARRAY, new Object[] { b });
+        if (!isBuffered()) {
+            sendRequest(WRITE_BYTEARRAY, new Object[] { b });
+            return;
+        }
+
+        write(b, 0, b.length);
     }
 
     @Override
     public void write(byte[] b, int off, int len) throws IOException {
-        sendRequest(WRITE_BYTEARRAY_INT_INT, new Object[] { b, off, len });
+        if (!isBuffered()) {
+            sendRequest(WRITE_BYTEARRAY_INT_INT, new Object[] { b, off, len });
+            return;
+        }
+
+        if ((off < 0) || (len < 0) || (len > (b.length - off))) {
+            throw new IndexOutOfBoundsException();
+        }
+
+        while (len > 0) {
+            int count = Math.min(len, m_chunkSize - m_bufferCount);
+            System.arraycopy(b, off, m_buffer, m_bufferCount, count);
+            m_bufferCount += count;
+            off += count;
+            len -= count;
+
+            if (m_bufferCount == m_chunkSize) {
+                sendChunk();
+            }
+        }
     }
 
     /**
@@ -197,6 +301,21 @@ public class RemoteOutputStream extends OutputStream implements Serializable {
      *                           encountered a problem
      */
     protected Object sendRequest(Method method, Object[] args) throws RemoteIOException {
+        return sendInvocation(new NameBasedInvocation(method, args)).getResults();
+    }
+
+    /**
+     * Builds the command to make the given invocation on the remote stream and submits the request.
+     *
+     * @param  invocation the invocation to make on the remote stream
+     *
+     * @return the successful response
+     *
+     * @throws RemoteIOException if either the sending of the request failed of the remote output stream actually
+     *                           encountered a problem
+     */
+    private RemoteOutputStreamCommandResponse sendInvocation(NameBasedInvocation invocation)
+        throws RemoteIOException {
         if (m_sender == null) {
             throw new RemoteIOException(LOG.getMsgString(CommI18NResourceKeys.REMOTE_OUTPUT_STREAM_HAS_NO_SENDER,
                 m_streamId, m_serverEndpoint));
@@ -205,7 +324,7 @@ public class RemoteOutputStream extends OutputStream implements Serializable {
         RemoteOutputStreamCommandResponse response;
         RemoteOutputStreamCommand cmd = new RemoteOutputStreamCommand();
 
-        cmd.setNameBasedInvocation(new NameBasedInvocation(method, args));
+        cmd.setNameBasedInvocation(invocation);
         cmd.setStreamId(m_streamId);
 
         try {
@@ -218,6 +337,152 @@ public class RemoteOutputStream extends OutputStream implements Serializable {
             throw new RemoteIOException(response.getException());
         }
 
-        return response.getResults();
+        return response;
+    }
+
+    /**
+     * Returns <code>true</code> if written data is to be buffered into chunks, which is the case unless chunks are
+     * disabled or the remote server turned out not to support them.
+     *
+     * @return <code>true</code> if written data is buffered
+     */
+    private boolean isBuffered() {
+        if (Boolean.FALSE.equals(m_chunked) || (m_windowSize <= 0) || (m_chunkSize <= 0)) {
+            return false;
+        }
+
+        if (m_buffer == null) {
+            m_buffer = new byte[m_chunkSize];
+            m_bufferCount = 0;
+        }
+
+        return true;
+    }
+
+    /**
+     * Sends whatever has been buffered and waits for all chunk writes in flight to complete.
+     *
+     * @throws IOException if any chunk could not be written
+     */
+    private void writeBehind() throws IOException {
+        if (m_bufferCount > 0) {
+            sendChunk();
+        }
+
+        if (m_pendingWrites != null) {
+            while (!m_pendingWrites.isEmpty()) {
+                awaitWrite(m_pendingWrites.removeFirst());
+            }
+        }
+    }
+
+    /**
+     * Sends the buffered data as the next chunk. The first chunk is written synchronously; if the remote server does
+     * not understand the request, it is written with an individual remote call and the stream stops buffering.
+     * Subsequent chunks are written asynchronously, blocking only if the window of writes in flight is full.
+     *
+     * @throws IOException if the chunk, or any earlier chunk, could not be written
+     */
+    private void sendChunk() throws IOException {
+        final byte[] chunk = new byte[m_bufferCount];
+        System.arraycopy(m_buffer, 0, chunk, 0, m_bufferCount);
+        m_bufferCount = 0;
+
+        if (m_chunked == null) {
+            try {
+                writeChunk(0L, chunk);
+                m_pendingWrites = new LinkedList<Future<Object>>();
+                m_nextSequence = 1L;
+                m_chunked = Boolean.TRUE;
+            } catch (RemoteIOException e) {
+                if (!RemoteStreamChunks.isProtocolUnsupported(e)) {
+                    throw e;
+                }
+
+                LOG.debug(CommI18NResourceKeys.REMOTE_OUTPUT_STREAM_CHUNKS_UNSUPPORTED, m_streamId, m_serverEndpoint);
+                m_chunked = Boolean.FALSE;
+                m_buffer = null;
+                sendRequest(WRITE_BYTEARRAY, new Object[] { chunk });
+            }
+
+            return;
+        }
+
+        // report failures as early as possible and keep the window within bounds
+        while (!m_pendingWrites.isEmpty()
+            && (m_pendingWrites.getFirst().isDone() || (m_pendingWrites.size() >= m_windowSize))) {
+            awaitWrite(m_pendingWrites.removeFirst());
+        }
+
+        if (m_writeBehindExecutor == null) {
+            final String thread_name = "RemoteOutputStream-" + m_streamId + " Write-Behind Thread";
+            m_writeBehindExecutor = Executors.newFixedThreadPool(m_windowSize, new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, thread_name);
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+
+        final long sequence = m_nextSequence++;
+        m_pendingWrites.add(m_writeBehindExecutor.submit(new Callable<Object>() {
+            public Object call() throws Exception {
+                writeChunk(sequence, chunk);
+                return null;
+            }
+        }));
+    }
+
+    /**
+     * Waits for the given chunk write to complete.
+     *
+     * @param  pending the chunk write
+     *
+     * @throws IOException if the chunk could not be written
+     */
+    private void awaitWrite(Future<Object> pending) throws IOException {
+        try {
+            pending.get();
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RemoteIOException) {
+                throw (RemoteIOException) e.getCause();
+            }
+            throw new RemoteIOException(e.getCause());
+        }
+    }
+
+    /**
+     * Cancels any chunk writes in flight and releases the write-behind threads.
+     */
+    private void stopWriteBehind() {
+        if (m_pendingWrites != null) {
+            for (Future<Object> pending : m_pendingWrites) {
+                pending.cancel(false);
+            }
+            m_pendingWrites.clear();
+        }
+
+        if (m_writeBehindExecutor != null) {
+            m_writeBehindExecutor.shutdown();
+            m_writeBehindExecutor = null;
+        }
+    }
+
+    /**
+     * Writes the chunk with the given sequence number to the remote stream.
+     *
+     * @param  sequence the sequence number of the chunk
+     * @param  chunk    the (uncompressed) chunk
+     *
+     * @throws RemoteIOException if the chunk could not be written
+     */
+    private void writeChunk(long sequence, byte[] chunk) throws RemoteIOException {
+        boolean compress = m_compress && (chunk.length > 0);
+        byte[] data = compress ? RemoteStreamChunks.compress(chunk) : chunk;
+
+        sendInvocation(RemoteStreamChunks.createWriteChunkInvocation(sequence, data, compress));
     }
-}
\ No newline at end of file
+}
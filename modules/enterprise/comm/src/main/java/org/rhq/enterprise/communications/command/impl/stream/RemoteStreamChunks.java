@@ -0,0 +1,140 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2008 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package org.rhq.enterprise.communications.command.impl.stream;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.jboss.remoting.invocation.NameBasedInvocation;
+
+/**
+ * Definitions shared by the clients and the services of the chunked remote stream protocol. Rather than remoting each
+ * read or write call of the stream, the client transfers the stream data in numbered chunks, several of which are in
+ * flight at once. The services put the chunks back in sequence, since concurrent requests may arrive out of order.
+ * <p/>
+ * The chunk requests are ordinary remote stream invocations of methods that <code>InputStream</code> and <code>
+ * OutputStream</code> do not have, so a service that predates the protocol fails them with a
+ * <code>NoSuchMethodException</code>; clients use that to fall back to remoting each stream call.
+ */
+public class RemoteStreamChunks {
+    /**
+     * Reads the chunk with the given sequence number (parameters: Long sequence, Integer chunk size, Boolean compress).
+     * The result is the chunk's bytes, compressed if asked to and not empty; a chunk shorter than the chunk size is the
+     * last one, and an empty chunk marks the end of the stream.
+     */
+    public static final String READ_CHUNK = "readChunk";
+
+    /**
+     * Writes the chunk with the given sequence number (parameters: Long sequence, byte[] data, Boolean compressed).
+     */
+    public static final String WRITE_CHUNK = "writeChunk";
+
+    /**
+     * The largest number of chunks a service will hold on to while waiting for the chunks preceding them. This is
+     * what bounds the memory a single stream can use, whatever window size its client uses.
+     */
+    public static final int MAX_OUT_OF_ORDER_CHUNKS = 64;
+
+    /**
+     * The largest chunk a service will accept to read or write.
+     */
+    public static final int MAX_CHUNK_SIZE = 4 * 1024 * 1024;
+
+    private RemoteStreamChunks() {
+    }
+
+    /**
+     * @param sequence     the sequence number of the chunk to read
+     * @param chunkSize    the size of the chunks the stream is read in
+     * @param compress     whether the chunk should be deflated on the wire
+     * @param acknowledged the sequence number of the first chunk the client has not received yet, the service can
+     *                     forget the chunks before it
+     */
+    public static NameBasedInvocation createReadChunkInvocation(long sequence, int chunkSize, boolean compress,
+        long acknowledged) {
+        return new NameBasedInvocation(READ_CHUNK, new Object[] { Long.valueOf(sequence), Integer.valueOf(chunkSize),
+            Boolean.valueOf(compress), Long.valueOf(acknowledged) }, new String[] { Long.class.getName(),
+            Integer.class.getName(), Boolean.class.getName(), Long.class.getName() });
+    }
+
+    public static NameBasedInvocation createWriteChunkInvocation(long sequence, byte[] data, boolean compressed) {
+        return new NameBasedInvocation(WRITE_CHUNK, new Object[] { Long.valueOf(sequence), data,
+            Boolean.valueOf(compressed) }, new String[] { Long.class.getName(), byte[].class.getName(),
+            Boolean.class.getName() });
+    }
+
+    /**
+     * Returns <code>true</code> if the given failure of a chunk request means that the remote service does not support
+     * the chunked protocol at all, as opposed to a failure of the stream itself.
+     */
+    public static boolean isProtocolUnsupported(Throwable t) {
+        for (Throwable cause = t; cause != null; cause = cause.getCause()) {
+            if (cause instanceof NoSuchMethodException) {
+                return true;
+            }
+            if (cause.getCause() == cause) {
+                break;
+            }
+        }
+        return false;
+    }
+
+    public static byte[] compress(byte[] data) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(data);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, data.length / 2));
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                int count = deflater.deflate(buffer);
+                out.write(buffer, 0, count);
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    public static byte[] decompress(byte[] data) throws IOException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(data.length * 2);
+            byte[] buffer = new byte[8192];
+            while (!inflater.finished()) {
+                int count = inflater.inflate(buffer);
+                if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IOException("Truncated compressed stream chunk");
+                }
+                out.write(buffer, 0, count);
+            }
+            return out.toByteArray();
+        } catch (DataFormatException e) {
+            IOException ioe = new IOException("Corrupt compressed stream chunk");
+            ioe.initCause(e);
+            throw ioe;
+        } finally {
+            inflater.end();
+        }
+    }
+}
@@ -18,11 +18,13 @@
  */
 package org.rhq.enterprise.communications.command.impl.stream.server;
 
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.lang.reflect.Method;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.TreeMap;
 import java.util.Timer;
 import java.util.TimerTask;
 import java.util.concurrent.atomic.AtomicLong;
@@ -34,6 +36,7 @@ import org.rhq.enterprise.communications.command.CommandResponse;
 import org.rhq.enterprise.communications.command.CommandType;
 import org.rhq.enterprise.communications.command.impl.stream.RemoteInputStreamCommand;
 import org.rhq.enterprise.communications.command.impl.stream.RemoteInputStreamCommandResponse;
+import org.rhq.enterprise.communications.command.impl.stream.RemoteStreamChunks;
 import org.rhq.enterprise.communications.command.server.CommandMBean;
 import org.rhq.enterprise.communications.command.server.CommandService;
 import org.rhq.enterprise.communications.command.server.CommandServiceMBean;
@@ -74,6 +77,12 @@ public class RemoteInputStreamCommandService extends CommandService {
      */
     private final Map<Long, AtomicLong> m_lastAccessTimes;
 
+    /**
+     * The readers serving the streams whose clients read them in chunks - the key values are the streams' index
+     * numbers.
+     */
+    private final Map<Long, ChunkReader> m_chunkReaders;
+
     /**
      * The maximum amount of milliseconds a stream is allowed to be idle before it will be removed and no longer
      * accessible to clients.
@@ -93,6 +102,7 @@ public class RemoteInputStreamCommandService extends CommandService {
         m_index = 0L;
         m_remotedInputStreams = new HashMap<Long, InputStream>();
         m_lastAccessTimes = new HashMap<Long, AtomicLong>();
+        m_chunkReaders = new HashMap<Long, ChunkReader>();
         m_maxIdleTime = 30000L;
         m_idleTimer = null;
     }
@@ -145,6 +155,7 @@ public class RemoteInputStreamCommandService extends CommandService {
         synchronized (m_lock) {
             doomed_stream = m_remotedInputStreams.remove(stream_id);
             doomed_lat = m_lastAccessTimes.remove(stream_id);
+            m_chunkReaders.remove(stream_id);
 
             if ((m_remotedInputStreams.size() == 0) && (m_idleTimer != null)) {
                 m_idleTimer.cancel();
@@ -206,7 +217,7 @@ public class RemoteInputStreamCommandService extends CommandService {
      * Takes the remote stream access request, which has the NameBasedInvocation parameter, and convert that to a method
      * call on the target stream (using reflection). Then return the Object returned from the method call on the target
      * stream in the response. Note that the invocation signature must match one of the methods on <code>
-     * InputStream</code>.
+     * InputStream</code>, unless it is a {@link RemoteStreamChunks#READ_CHUNK chunk read}.
      *
      * @see CommandExecutor#execute(Command, InputStream, OutputStream)
      */
@@ -238,6 +249,12 @@ public class RemoteInputStreamCommandService extends CommandService {
 
             LOG.debug(CommI18NResourceKeys.INVOKING_STREAM_FROM_REMOTE_CLIENT, stream_id, method_name);
 
+            // chunks are not echoed back with the command, the chunk itself is the result
+            if (RemoteStreamChunks.READ_CHUNK.equals(method_name)) {
+                byte[] chunk = readChunk(stream_id, the_stream, params);
+                return new RemoteInputStreamCommandResponse(null, chunk);
+            }
+
             // use reflection to make the call
             for (int x = 0; x < signature.length; x++) {
                 class_signature[x] = ClassUtil.getClassFromTypeName(signature[x]);
@@ -271,6 +288,44 @@ public class RemoteInputStreamCommandService extends CommandService {
         return new CommandType[] { RemoteInputStreamCommand.COMMAND_TYPE };
     }
 
+    /**
+     * Reads the chunk requested by a {@link RemoteStreamChunks#READ_CHUNK} invocation.
+     *
+     * @param  stream_id  identifies the stream being read
+     * @param  the_stream the stream being read
+     * @param  params     the invocation parameters: the chunk sequence number, the chunk size, the compression flag and
+     *                    the sequence number of the first chunk the client has not received yet
+     *
+     * @return the chunk, compressed if the client asked for it
+     *
+     * @throws IOException if the stream could not be read or the client asked for a chunk it cannot have
+     */
+    private byte[] readChunk(Long stream_id, InputStream the_stream, Object[] params) throws IOException {
+        long sequence = ((Long) params[0]).longValue();
+        int chunk_size = ((Integer) params[1]).intValue();
+        boolean compress = ((Boolean) params[2]).booleanValue();
+        long acknowledged = ((Long) params[3]).longValue();
+
+        if ((chunk_size <= 0) || (chunk_size > RemoteStreamChunks.MAX_CHUNK_SIZE)) {
+            throw new IOException("Invalid chunk size [" + chunk_size + "] requested from stream [" + stream_id + "]");
+        }
+
+        ChunkReader reader;
+
+        synchronized (m_lock) {
+            reader = m_chunkReaders.get(stream_id);
+
+            if (reader == null) {
+                reader = new ChunkReader(the_stream);
+                m_chunkReaders.put(stream_id, reader);
+            }
+        }
+
+        byte[] chunk = reader.read(sequence, chunk_size, acknowledged);
+
+        return (compress && (chunk.length > 0)) ? RemoteStreamChunks.compress(chunk) : chunk;
+    }
+
     /**
      * Sets the last access time to the given timestamp for the stream identified by the given ID.
      *
@@ -324,4 +379,87 @@ public class RemoteInputStreamCommandService extends CommandService {
 
         return;
     }
-}
\ No newline at end of file
+
+    /**
+     * Reads a stream in consecutive chunks on behalf of a client that requests several chunks at once. Requests may
+     * arrive out of order, so the chunks preceding a requested one are read off the stream and held until they are
+     * asked for. A chunk that was served is also held until the client acknowledges having received it, by requesting
+     * a chunk whose acknowledged sequence number is past it, so that a request resent after its response got lost is
+     * answered with the same data rather than failing the stream.
+     */
+    private static class ChunkReader {
+        private final InputStream m_stream;
+        private final Map<Long, byte[]> m_readAhead = new HashMap<Long, byte[]>();
+        private final TreeMap<Long, byte[]> m_served = new TreeMap<Long, byte[]>();
+        private long m_nextSequence = 0L;
+        private boolean m_eof = false;
+
+        ChunkReader(InputStream stream) {
+            m_stream = stream;
+        }
+
+        synchronized byte[] read(long sequence, int chunk_size, long acknowledged) throws IOException {
+            m_served.headMap(Long.valueOf(acknowledged)).clear();
+
+            byte[] chunk;
+
+            if (sequence < m_nextSequence) {
+                chunk = m_readAhead.remove(Long.valueOf(sequence));
+                if (chunk == null) {
+                    chunk = m_served.get(Long.valueOf(sequence));
+                    if (chunk == null) {
+                        throw new IOException("Chunk [" + sequence + "] has already been read");
+                    }
+                    return chunk;
+                }
+            } else {
+                if ((sequence - m_nextSequence) > RemoteStreamChunks.MAX_OUT_OF_ORDER_CHUNKS) {
+                    throw new IOException("Chunk [" + sequence + "] is too far ahead of chunk [" + m_nextSequence
+                        + "]");
+                }
+
+                while (m_nextSequence < sequence) {
+                    m_readAhead.put(Long.valueOf(m_nextSequence++), readNext(chunk_size));
+                }
+
+                m_nextSequence++;
+                chunk = readNext(chunk_size);
+            }
+
+            m_served.put(Long.valueOf(sequence), chunk);
+
+            // the client never has more chunks in flight than that, so older ones were received
+            if (m_served.size() > RemoteStreamChunks.MAX_OUT_OF_ORDER_CHUNKS) {
+                m_served.remove(m_served.firstKey());
+            }
+
+            return chunk;
+        }
+
+        private byte[] readNext(int chunk_size) throws IOException {
+            if (m_eof) {
+                return new byte[0];
+            }
+
+            byte[] buffer = new byte[chunk_size];
+            int total = 0;
+
+            while (total < chunk_size) {
+                int count = m_stream.read(buffer, total, chunk_size - total);
+                if (count < 0) {
+                    m_eof = true;
+                    break;
+                }
+                total += count;
+            }
+
+            if (total == chunk_size) {
+                return buffer;
+            }
+
+            byte[] last_chunk = new byte[total];
+            System.arraycopy(buffer, 0, last_chunk, 0, total);
+            return last_chunk;
+        }
+    }
+}
@@ -18,6 +18,7 @@
  */
 package org.rhq.enterprise.communications.command.impl.stream.server;
 
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.lang.reflect.Method;
@@ -34,6 +35,7 @@ import org.rhq.enterprise.communications.command.CommandResponse;
 import org.rhq.enterprise.communications.command.CommandType;
 import org.rhq.enterprise.communications.command.impl.stream.RemoteOutputStreamCommand;
 import org.rhq.enterprise.communications.command.impl.stream.RemoteOutputStreamCommandResponse;
+import org.rhq.enterprise.communications.command.impl.stream.RemoteStreamChunks;
 import org.rhq.enterprise.communications.command.server.CommandMBean;
 import org.rhq.enterprise.communications.command.server.CommandService;
 import org.rhq.enterprise.communications.command.server.CommandServiceMBean;
@@ -71,6 +73,12 @@ public class RemoteOutputStreamCommandService extends CommandService {
      */
     private final Map<Long, AtomicLong> m_lastAccessTimes;
 
+    /**
+     * The writers serving the streams whose clients write them in chunks - the key values are the streams' index
+     * numbers.
+     */
+    private final Map<Long, ChunkWriter> m_chunkWriters;
+
     /**
      * The maximum amount of milliseconds a stream is allowed to be idle before it will be removed and no longer
      * accessible to clients.
@@ -90,6 +98,7 @@ public class RemoteOutputStreamCommandService extends CommandService {
         m_index = 0L;
         m_remotedOutputStreams = new HashMap<Long, OutputStream>();
         m_lastAccessTimes = new HashMap<Long, AtomicLong>();
+        m_chunkWriters = new HashMap<Long, ChunkWriter>();
         m_maxIdleTime = 30000L;
         m_idleTimer = null;
     }
@@ -142,6 +151,7 @@ public class RemoteOutputStreamCommandService extends CommandService {
         synchronized (m_lock) {
             doomed_stream = m_remotedOutputStreams.remove(stream_id);
             doomed_lat = m_lastAccessTimes.remove(stream_id);
+            m_chunkWriters.remove(stream_id);
 
             if ((m_remotedOutputStreams.size() == 0) && (m_idleTimer != null)) {
                 m_idleTimer.cancel();
@@ -203,7 +213,7 @@ public class RemoteOutputStreamCommandService extends CommandService {
      * Takes the remote stream access request, which has the NameBasedInvocation parameter, and convert that to a method
      * call on the target stream (using reflection). Then return the Object returned from the method call on the target
      * stream in the response. Note that the invocation signature must match one of the methods on <code>
-     * OutputStream</code>.
+     * OutputStream</code>, unless it is a {@link RemoteStreamChunks#WRITE_CHUNK chunk write}.
      *
      * @see CommandExecutor#execute(Command, InputStream, OutputStream)
      */
@@ -235,6 +245,12 @@ public class RemoteOutputStreamCommandService extends CommandService {
 
             LOG.debug(CommI18NResourceKeys.INVOKING_OUTSTREAM_FROM_REMOTE_CLIENT, stream_id, method_name);
 
+            // do not echo the chunk back to the client with the command
+            if (RemoteStreamChunks.WRITE_CHUNK.equals(method_name)) {
+                writeChunk(stream_id, the_stream, params);
+                return new RemoteOutputStreamCommandResponse(null, (Object) null);
+            }
+
             // use reflection to make the call
             for (int x = 0; x < signature.length; x++) {
                 class_signature[x] = ClassUtil.getClassFromTypeName(signature[x]);
@@ -268,6 +284,44 @@ public class RemoteOutputStreamCommandService extends CommandService {
         return new CommandType[] { RemoteOutputStreamCommand.COMMAND_TYPE };
     }
 
+    /**
+     * Writes the chunk sent by a {@link RemoteStreamChunks#WRITE_CHUNK} invocation.
+     *
+     * @param  stream_id  identifies the stream being written
+     * @param  the_stream the stream being written
+     * @param  params     the invocation parameters: the chunk sequence number, the chunk and its compression flag
+     *
+     * @throws IOException if the stream could not be written or the chunk is out of sequence
+     */
+    private void writeChunk(Long stream_id, OutputStream the_stream, Object[] params) throws IOException {
+        long sequence = ((Long) params[0]).longValue();
+        byte[] chunk = (byte[]) params[1];
+        boolean compressed = ((Boolean) params[2]).booleanValue();
+
+        if (compressed) {
+            chunk = RemoteStreamChunks.decompress(chunk);
+        }
+
+        if (chunk.length > RemoteStreamChunks.MAX_CHUNK_SIZE) {
+            throw new IOException("Invalid chunk size [" + chunk.length + "] written to stream [" + stream_id + "]");
+        }
+
+        ChunkWriter writer;
+
+        synchronized (m_lock) {
+            writer = m_chunkWriters.get(stream_id);
+
+            if (writer == null) {
+                writer = new ChunkWriter(the_stream);
+                m_chunkWriters.put(stream_id, writer);
+            }
+        }
+
+        writer.write(sequence, chunk);
+
+        return;
+    }
+
     /**
      * Sets the last access time to the given timestamp for the stream identified by the given ID.
      *
@@ -321,4 +375,41 @@ public class RemoteOutputStreamCommandService extends CommandService {
 
         return;
     }
-}
\ No newline at end of file
+
+    /**
+     * Writes the chunks of a client that sends several chunks at once to a stream in sequence order. Chunks may arrive
+     * out of order, so those that arrive ahead of their turn are held until the chunks preceding them are written.
+     */
+    private static class ChunkWriter {
+        private final OutputStream m_stream;
+        private final Map<Long, byte[]> m_pending = new HashMap<Long, byte[]>();
+        private long m_nextSequence = 0L;
+
+        ChunkWriter(OutputStream stream) {
+            m_stream = stream;
+        }
+
+        synchronized void write(long sequence, byte[] chunk) throws IOException {
+            if ((sequence < m_nextSequence) || m_pending.containsKey(Long.valueOf(sequence))) {
+                throw new IOException("Chunk [" + sequence + "] has already been written");
+            }
+
+            if (sequence > m_nextSequence) {
+                if (m_pending.size() >= RemoteStreamChunks.MAX_OUT_OF_ORDER_CHUNKS) {
+                    throw new IOException("Chunk [" + sequence + "] is too far ahead of chunk [" + m_nextSequence
+                        + "]");
+                }
+                m_pending.put(Long.valueOf(sequence), chunk);
+                return;
+            }
+
+            byte[] next = chunk;
+
+            while (next != null) {
+                m_stream.write(next);
+                m_nextSequence++;
+                next = m_pending.remove(Long.valueOf(m_nextSequence));
+            }
+        }
+    }
+}
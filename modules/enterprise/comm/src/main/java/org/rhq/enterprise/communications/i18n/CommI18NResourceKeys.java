@@ -824,6 +824,12 @@ public interface CommI18NResourceKeys {
     @I18NMessages( { @I18NMessage("A remote output stream with an ID of [{0}] and server endpoint of [{1}] has not yet been assigned a sender object - cannot access the stream") })
     String REMOTE_OUTPUT_STREAM_HAS_NO_SENDER = "RemoteOutputStream.remote-output-stream-missing-sender";
 
+    @I18NMessages( { @I18NMessage("The server of remote input stream with ID [{0}] at [{1}] does not support chunked reads - each read will be remoted individually") })
+    String REMOTE_INPUT_STREAM_CHUNKS_UNSUPPORTED = "RemoteInputStream.chunks-unsupported";
+
+    @I18NMessages( { @I18NMessage("The server of remote output stream with ID [{0}] at [{1}] does not support chunked writes - each write will be remoted individually") })
+    String REMOTE_OUTPUT_STREAM_CHUNKS_UNSUPPORTED = "RemoteOutputStream.chunks-unsupported";
+
     @I18NMessages( { @I18NMessage("Failed to create a command sender for [{0}]") })
     String FAILED_TO_CREATE_SENDER = "ServiceContainer.failed-to-create-sender";
 
@@ -39,12 +39,16 @@ import org.testng.annotations.Test;
 import org.rhq.enterprise.communications.ServiceContainer;
 import org.rhq.enterprise.communications.ServiceContainerConfigurationConstants;
 import org.rhq.enterprise.communications.CommTestConstants;
+import org.rhq.enterprise.communications.command.Command;
+import org.rhq.enterprise.communications.command.CommandResponse;
 import org.rhq.enterprise.communications.command.client.ClientCommandSender;
 import org.rhq.enterprise.communications.command.client.ClientCommandSenderConfiguration;
 import org.rhq.enterprise.communications.command.client.JBossRemotingRemoteCommunicator;
 import org.rhq.enterprise.communications.command.client.RemoteCommunicator;
 import org.rhq.enterprise.communications.command.client.RemoteInputStream;
 import org.rhq.enterprise.communications.command.client.RemoteOutputStream;
+import org.rhq.enterprise.communications.command.impl.stream.RemoteInputStreamCommand;
+import org.rhq.enterprise.communications.command.server.CommandListener;
 
 /**
  * Tests remote streams. This will create two "servers" - #1 listening on one port and #2 listening on another. The
@@ -57,6 +61,7 @@ import org.rhq.enterprise.communications.command.client.RemoteOutputStream;
 @Test
 public class CommStreamTest {
     private static final boolean ENABLE_TESTS = true;
+    private static final long SIMULATED_LATENCY_MILLIS = 5L;
 
     private ClientCommandSender sender1;
     private ServiceContainer serviceContainer1;
@@ -200,6 +205,96 @@ public class CommStreamTest {
         assert pojo.slurpInputStream(in, streamString);
     }
 
+    @Test(enabled = ENABLE_TESTS)
+    public void testChunkedStreams() throws Exception {
+        assert pojo.ping();
+
+        // small odd-sized chunks so the streams span many chunks, with several in flight at once
+        Preferences prefs = getPrefs1();
+        prefs.putInt(ServiceContainerConfigurationConstants.REMOTE_STREAM_WINDOW_SIZE, 3);
+        prefs.putInt(ServiceContainerConfigurationConstants.REMOTE_STREAM_CHUNK_SIZE, 1000);
+
+        try {
+            String contents = createRandomString(10007);
+
+            InputStream in = prepareRemoteStreamInServer1(new ByteArrayInputStream(contents.getBytes()));
+            assert pojo.slurpInputStream(in, contents);
+
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            OutputStream out = prepareRemoteStreamInServer1(baos);
+            assert pojo.slurpOutputStream(out, contents);
+            assert baos.toString().equals(contents);
+
+            // a stream that is an exact multiple of the chunk size ends with an empty chunk
+            contents = createRandomString(3000);
+            prefs.putBoolean(ServiceContainerConfigurationConstants.REMOTE_STREAM_COMPRESSION, true);
+
+            in = prepareRemoteStreamInServer1(new ByteArrayInputStream(contents.getBytes()));
+            assert pojo.slurpInputStream(in, contents);
+
+            baos = new ByteArrayOutputStream();
+            out = prepareRemoteStreamInServer1(baos);
+            assert pojo.slurpOutputStream(out, contents);
+            assert baos.toString().equals(contents);
+        } finally {
+            prefs.remove(ServiceContainerConfigurationConstants.REMOTE_STREAM_WINDOW_SIZE);
+            prefs.remove(ServiceContainerConfigurationConstants.REMOTE_STREAM_CHUNK_SIZE);
+            prefs.remove(ServiceContainerConfigurationConstants.REMOTE_STREAM_COMPRESSION);
+        }
+    }
+
+    @Test(enabled = ENABLE_TESTS)
+    public void testInputStreamPerformance() throws Exception {
+        assert pojo.ping();
+
+        String contents = createRandomString(4 * 1024 * 1024);
+        Preferences prefs = getPrefs1();
+
+        // a loopback call has next to no latency, so simulate the round trip of a real network for each stream call
+        CommandListener latency = new CommandListener() {
+            public void receivedCommand(Command command) {
+                if (command instanceof RemoteInputStreamCommand) {
+                    try {
+                        Thread.sleep(SIMULATED_LATENCY_MILLIS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }
+
+            public void processedCommand(Command command, CommandResponse response) {
+            }
+        };
+        serviceContainer1.addCommandListener(latency);
+
+        try {
+            // first remote each read call individually, then read the stream in chunks with read-ahead
+            prefs.putInt(ServiceContainerConfigurationConstants.REMOTE_STREAM_WINDOW_SIZE, 0);
+
+            try {
+                InputStream in = prepareRemoteStreamInServer1(new ByteArrayInputStream(contents.getBytes()));
+                long start = System.currentTimeMillis();
+                assert pojo.slurpInputStream(in, contents);
+                long end = System.currentTimeMillis();
+
+                System.out.println("---> REMOTE INPUT STREAM (UNCHUNKED): read [" + contents.length() + "] bytes in ["
+                    + (end - start) + "]ms with [" + SIMULATED_LATENCY_MILLIS + "]ms latency per call");
+            } finally {
+                prefs.remove(ServiceContainerConfigurationConstants.REMOTE_STREAM_WINDOW_SIZE);
+            }
+
+            InputStream in = prepareRemoteStreamInServer1(new ByteArrayInputStream(contents.getBytes()));
+            long start = System.currentTimeMillis();
+            assert pojo.slurpInputStream(in, contents);
+            long end = System.currentTimeMillis();
+
+            System.out.println("---> REMOTE INPUT STREAM (CHUNKED): read [" + contents.length() + "] bytes in ["
+                + (end - start) + "]ms with [" + SIMULATED_LATENCY_MILLIS + "]ms latency per call");
+        } finally {
+            serviceContainer1.removeCommandListener(latency);
+        }
+    }
+
     @Test(enabled = ENABLE_TESTS)
     public void testOutputStreamReturn() throws Exception {
         assert pojo.ping();
@@ -467,6 +562,16 @@ public class CommStreamTest {
         }
     }
 
+    private String createRandomString(int length) {
+        Random rand = new Random();
+        StringBuilder builder = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            builder.append((char) ('a' + rand.nextInt(26)));
+        }
+
+        return builder.toString();
+    }
+
     private Preferences getPrefs1() {
         Preferences topNode = Preferences.userRoot().node("rhq-agent");
         Preferences preferencesNode = topNode.node("commstream1test");
@@ -75,6 +75,13 @@ import org.rhq.enterprise.server.util.LookupUtil;
  */
 class AgentConditionCache extends AbstractConditionCache {
 
+    /**
+     * The most occurrences of a single folded event that are checked against the alert conditions. Before the agent
+     * folded repeats, it never sent more events per event source and report than this (its default limit), so
+     * conditions never saw more either.
+     */
+    private static final int MAX_FOLDED_EVENT_OCCURRENCES = 200;
+
     private Map<Integer, List<NumericDoubleCacheElement>> measurementDataCache; // key: schedule ID
     private Map<Integer, List<MeasurementTraitCacheElement>> measurementTraitCache; // key: schedule ID
     private Map<Integer, List<CallTimeDataCacheElement>> callTimeCache; // key: schedule ID
@@ -498,7 +505,18 @@ class AgentConditionCache extends AbstractConditionCache {
             List<EventCacheElement> cacheElements = lookupEventCacheElements(resource.getId());
 
             for (Event event : events) {
-                processCacheElements(cacheElements, event.getSeverity(), event.getTimestamp(), stats, event.getDetail());
+                /*
+                 * the agent folds repeats of an event into a single one; process every occurrence so that conditions
+                 * dampened on a number of occurrences still count them, spreading the occurrences between the first
+                 * and the last timestamp since their own were not kept
+                 */
+                int occurrences = Math.min(event.getOccurrences(), MAX_FOLDED_EVENT_OCCURRENCES);
+                long first = event.getTimestamp();
+                long span = event.getLastTimestamp() - first;
+                for (int i = 0; i < occurrences; i++) {
+                    long timestamp = (occurrences > 1) ? first + (span * i / (occurrences - 1)) : first;
+                    processCacheElements(cacheElements, event.getSeverity(), timestamp, stats, event.getDetail());
+                }
             }
 
             AlertConditionCacheMonitor.getMBean().incrementEventCacheElementMatches(stats.matched);
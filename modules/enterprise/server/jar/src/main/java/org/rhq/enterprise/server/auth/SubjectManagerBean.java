@@ -677,6 +677,7 @@ public class SubjectManagerBean implements SubjectManagerLocal, SubjectManagerRe
         repoManager.removeOwnershipOfSubject(doomedSubject.getId());
 
         entityManager.remove(doomedSubject);
+        authorizationManager.invalidatePermissionCache(doomedSubject.getId());
 
         return;
     }
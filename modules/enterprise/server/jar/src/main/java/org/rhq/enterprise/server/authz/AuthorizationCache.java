@@ -0,0 +1,335 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2011 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package org.rhq.enterprise.server.authz;
+
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.rhq.core.domain.authz.Permission;
+
+/**
+ * A server-local cache of authorization decisions, keyed by subject.  For every cached subject it keeps the global
+ * permissions, and per resource and per group a single mask holding the granted permissions and whether the entity is
+ * viewable at all; a mask is filled in lazily, one query per kind of question, so that the dozens of checks issued
+ * while rendering a single page only hit the database once per resource or group.
+ * <p/>
+ * Both the number of subjects and the number of entries per subject are bounded (least recently used is evicted
+ * first), and a subject's entries are discarded once they reach a maximum age, which bounds the staleness of anything
+ * an invalidation might have missed.  Any change to roles, group membership or inventory must call one of the
+ * invalidate methods; a local invalidation is also flagged so that the {@link AuthorizationManagerLocal} can tell the
+ * other servers in the cloud about it.
+ * <p/>
+ * synchronization policy: all state is guarded by the intrinsic lock of the cache instance.  lookups are cheap map
+ * probes, so a single lock is cheaper than the query it saves by orders of magnitude.
+ */
+public class AuthorizationCache {
+
+    private static final int MAX_SUBJECTS = Integer.parseInt(System.getProperty(
+        "rhq.server.authz-cache.max-subjects", "1000"));
+    private static final int MAX_ENTRIES_PER_SUBJECT = Integer.parseInt(System.getProperty(
+        "rhq.server.authz-cache.max-entries-per-subject", "10000"));
+    private static final long MAX_AGE = Long.parseLong(System.getProperty("rhq.server.authz-cache.max-age",
+        "300000"));
+    private static final boolean ENABLED = Boolean.parseBoolean(System.getProperty("rhq.server.authz-cache.enabled",
+        "true"));
+
+    // permission bits occupy the low bits of a mask (one per Permission ordinal), the flags occupy the high bits
+    private static final long PERMISSIONS_KNOWN = 1L << 62;
+    private static final long VIEW_KNOWN = 1L << 61;
+    private static final long VIEWABLE = 1L << 60;
+
+    private static final AuthorizationCache INSTANCE = new AuthorizationCache();
+
+    private final Map<Integer, SubjectEntry> subjects = new LinkedHashMap<Integer, SubjectEntry>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, SubjectEntry> eldest) {
+            if (size() > MAX_SUBJECTS) {
+                evictionCount++;
+                return true;
+            }
+            return false;
+        }
+    };
+
+    private final Set<Object> invalidatedBatches = new HashSet<Object>();
+
+    private long generation;
+    private boolean cloudInvalidationPending;
+    private long cloudGeneration = -1;
+
+    private long hitCount;
+    private long missCount;
+    private long evictionCount;
+    private long invalidationCount;
+
+    private class SubjectEntry {
+        private final long created = System.currentTimeMillis();
+        private long globalMask;
+        private final Map<Integer, Long> resourceMasks = new BoundedMap();
+        private final Map<Integer, Long> groupMasks = new BoundedMap();
+    }
+
+    private class BoundedMap extends LinkedHashMap<Integer, Long> {
+        private static final long serialVersionUID = 1L;
+
+        public BoundedMap() {
+            super(16, 0.75f, true);
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, Long> eldest) {
+            if (size() > MAX_ENTRIES_PER_SUBJECT) {
+                evictionCount++;
+                return true;
+            }
+            return false;
+        }
+    }
+
+    public static AuthorizationCache getInstance() {
+        return INSTANCE;
+    }
+
+    public static boolean isEnabled() {
+        return ENABLED;
+    }
+
+    /**
+     * Returns the current generation of the cache, which must be read before loading a value from the database and
+     * passed back to the matching put method; values loaded across an invalidation are then silently dropped.
+     */
+    public synchronized long getGeneration() {
+        return generation;
+    }
+
+    public synchronized Boolean hasGlobalPermission(int subjectId, Permission permission) {
+        SubjectEntry entry = getEntry(subjectId, false);
+        return toResult((entry != null) ? entry.globalMask : 0L, PERMISSIONS_KNOWN, bit(permission));
+    }
+
+    public synchronized void putGlobalPermissions(int subjectId, Set<Permission> permissions, long loadedGeneration) {
+        if (loadedGeneration == generation) {
+            getEntry(subjectId, true).globalMask = PERMISSIONS_KNOWN | toBits(permissions);
+        }
+    }
+
+    public synchronized Boolean hasResourcePermission(int subjectId, int resourceId, Permission permission) {
+        return toResult(getMask(subjectId, resourceId, false), PERMISSIONS_KNOWN, bit(permission));
+    }
+
+    public synchronized void putResourcePermissions(int subjectId, int resourceId, Set<Permission> permissions,
+        long loadedGeneration) {
+        putMask(subjectId, resourceId, false, PERMISSIONS_KNOWN | toBits(permissions), loadedGeneration);
+    }
+
+    public synchronized Boolean canViewResource(int subjectId, int resourceId) {
+        return toResult(getMask(subjectId, resourceId, false), VIEW_KNOWN, VIEWABLE);
+    }
+
+    public synchronized void putResourceViewable(int subjectId, int resourceId, boolean viewable,
+        long loadedGeneration) {
+        putMask(subjectId, resourceId, false, VIEW_KNOWN | (viewable ? VIEWABLE : 0L), loadedGeneration);
+    }
+
+    public synchronized Boolean hasGroupPermission(int subjectId, int groupId, Permission permission) {
+        return toResult(getMask(subjectId, groupId, true), PERMISSIONS_KNOWN, bit(permission));
+    }
+
+    public synchronized void putGroupPermissions(int subjectId, int groupId, Set<Permission> permissions,
+        long loadedGeneration) {
+        putMask(subjectId, groupId, true, PERMISSIONS_KNOWN | toBits(permissions), loadedGeneration);
+    }
+
+    public synchronized Boolean canViewGroup(int subjectId, int groupId) {
+        return toResult(getMask(subjectId, groupId, true), VIEW_KNOWN, VIEWABLE);
+    }
+
+    public synchronized void putGroupViewable(int subjectId, int groupId, boolean viewable, long loadedGeneration) {
+        putMask(subjectId, groupId, true, VIEW_KNOWN | (viewable ? VIEWABLE : 0L), loadedGeneration);
+    }
+
+    /**
+     * Discards everything cached for every subject, and flags the invalidation for the rest of the cloud.
+     */
+    public synchronized void invalidateAll() {
+        clear();
+        cloudInvalidationPending = true;
+    }
+
+    /**
+     * Like {@link #invalidateAll()}, but only does anything on the first call for a given batch of changes (e.g. the
+     * transaction making them) until that batch is {@link #endBatch(Object) ended}, so that a batch touching many
+     * resources clears the cache once rather than once per resource.
+     *
+     * @param batch identifies the batch of changes, the caller must end it once the changes are complete
+     *
+     * @return true if the cache was invalidated, false if it already was for this batch
+     */
+    public synchronized boolean invalidateAll(Object batch) {
+        if (!invalidatedBatches.add(batch)) {
+            return false;
+        }
+        invalidateAll();
+        return true;
+    }
+
+    /**
+     * Ends a batch of changes started by {@link #invalidateAll(Object)}; the next invalidation for the same batch will
+     * invalidate the cache again.
+     */
+    public synchronized void endBatch(Object batch) {
+        invalidatedBatches.remove(batch);
+    }
+
+    /**
+     * Discards everything cached for the given subject, and flags the invalidation for the rest of the cloud.
+     */
+    public synchronized void invalidateSubject(int subjectId) {
+        subjects.remove(subjectId);
+        generation++;
+        invalidationCount++;
+        cloudInvalidationPending = true;
+    }
+
+    /**
+     * Returns true if some local invalidation has happened since the last call, i.e. if the other servers in the
+     * cloud need to be told to invalidate their caches too.
+     */
+    public synchronized boolean getAndClearCloudInvalidationPending() {
+        boolean pending = cloudInvalidationPending;
+        cloudInvalidationPending = false;
+        return pending;
+    }
+
+    /**
+     * Records the cloud-wide invalidation generation last read from the database, clearing the cache (without
+     * flagging it for the cloud) if it differs from the one previously seen.
+     *
+     * @return true if the cache was cleared
+     */
+    public synchronized boolean updateCloudGeneration(long newCloudGeneration) {
+        if (newCloudGeneration == cloudGeneration) {
+            return false;
+        }
+        boolean stale = (cloudGeneration != -1);
+        cloudGeneration = newCloudGeneration;
+        if (stale) {
+            clear();
+        }
+        return stale;
+    }
+
+    public synchronized void resetStatistics() {
+        hitCount = 0;
+        missCount = 0;
+        evictionCount = 0;
+        invalidationCount = 0;
+    }
+
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    public synchronized long getInvalidationCount() {
+        return invalidationCount;
+    }
+
+    public synchronized int getSubjectCount() {
+        return subjects.size();
+    }
+
+    public synchronized int getEntryCount() {
+        int count = 0;
+        for (SubjectEntry entry : subjects.values()) {
+            count += entry.resourceMasks.size() + entry.groupMasks.size();
+        }
+        return count;
+    }
+
+    private void clear() {
+        subjects.clear();
+        generation++;
+        invalidationCount++;
+    }
+
+    private SubjectEntry getEntry(int subjectId, boolean create) {
+        SubjectEntry entry = subjects.get(subjectId);
+        if (entry != null && (System.currentTimeMillis() - entry.created) > MAX_AGE) {
+            subjects.remove(subjectId);
+            entry = null;
+        }
+        if (entry == null && create) {
+            entry = new SubjectEntry();
+            subjects.put(subjectId, entry);
+        }
+        return entry;
+    }
+
+    private long getMask(int subjectId, int id, boolean group) {
+        SubjectEntry entry = getEntry(subjectId, false);
+        if (entry == null) {
+            return 0L;
+        }
+        Long mask = (group ? entry.groupMasks : entry.resourceMasks).get(id);
+        return (mask != null) ? mask : 0L;
+    }
+
+    private void putMask(int subjectId, int id, boolean group, long bits, long loadedGeneration) {
+        if (loadedGeneration != generation) {
+            return;
+        }
+        Map<Integer, Long> masks = group ? getEntry(subjectId, true).groupMasks
+            : getEntry(subjectId, true).resourceMasks;
+        Long mask = masks.get(id);
+        masks.put(id, (mask != null) ? (mask | bits) : bits);
+    }
+
+    private Boolean toResult(long mask, long knownFlag, long valueBit) {
+        if ((mask & knownFlag) == 0) {
+            missCount++;
+            return null;
+        }
+        hitCount++;
+        return ((mask & valueBit) != 0);
+    }
+
+    private static long bit(Permission permission) {
+        return 1L << permission.ordinal();
+    }
+
+    private static long toBits(Set<Permission> permissions) {
+        long bits = 0L;
+        for (Permission permission : permissions) {
+            bits |= bit(permission);
+        }
+        return bits;
+    }
+}
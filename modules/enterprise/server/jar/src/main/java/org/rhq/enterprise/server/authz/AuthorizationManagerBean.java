@@ -24,10 +24,18 @@ import java.util.List;
 import java.util.Set;
 
 import javax.ejb.Stateless;
+import javax.ejb.TransactionAttribute;
+import javax.ejb.TransactionAttributeType;
 import javax.interceptor.ExcludeDefaultInterceptors;
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
 import javax.persistence.Query;
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+import javax.transaction.Transaction;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 
 import org.rhq.core.domain.auth.Subject;
 import org.rhq.core.domain.authz.Permission;
@@ -35,6 +43,7 @@ import org.rhq.core.domain.authz.Permission.Target;
 import org.rhq.core.domain.content.Repo;
 import org.rhq.core.domain.resource.group.ResourceGroup;
 import org.rhq.enterprise.server.RHQConstants;
+import org.rhq.enterprise.server.util.LookupUtil;
 
 /**
  * @author Joseph Marques
@@ -48,6 +57,13 @@ public class AuthorizationManagerBean implements AuthorizationManagerLocal {
     private static final int SUBJECT_ID_OVERLORD = 1;
     private static final int SUBJECT_ID_RHQADMIN = 2;
 
+    private static final String QUERY_NATIVE_INCREMENT_GENERATION = "" //
+        + "UPDATE RHQ_AUTHZ_GENERATION SET GENERATION = GENERATION + 1 WHERE ID = 1";
+    private static final String QUERY_NATIVE_GET_GENERATION = "" //
+        + "SELECT GENERATION FROM RHQ_AUTHZ_GENERATION WHERE ID = 1";
+
+    private final Log log = LogFactory.getLog(AuthorizationManagerBean.class);
+
     @PersistenceContext(unitName = RHQConstants.PERSISTENCE_UNIT_NAME)
     private EntityManager entityManager;
 
@@ -130,6 +146,20 @@ public class AuthorizationManagerBean implements AuthorizationManagerLocal {
             return true;
         }
 
+        if (AuthorizationCache.isEnabled()) {
+            AuthorizationCache cache = AuthorizationCache.getInstance();
+            Boolean cached = cache.hasGlobalPermission(subject.getId(), permission);
+            if (cached != null) {
+                return cached;
+            }
+
+            // load all global permissions at once, the next check is bound to ask for a different one
+            long generation = cache.getGeneration();
+            Set<Permission> permissions = getExplicitGlobalPermissions(subject);
+            cache.putGlobalPermissions(subject.getId(), permissions, generation);
+            return permissions.contains(permission);
+        }
+
         Query query = entityManager.createNamedQuery(Subject.QUERY_HAS_GLOBAL_PERMISSION);
         query.setParameter("subject", subject);
         query.setParameter("permission", permission);
@@ -143,6 +173,20 @@ public class AuthorizationManagerBean implements AuthorizationManagerLocal {
             return true;
         }
 
+        if (AuthorizationCache.isEnabled()) {
+            AuthorizationCache cache = AuthorizationCache.getInstance();
+            Boolean cached = cache.hasGroupPermission(subject.getId(), groupId, permission);
+            if (cached != null) {
+                return cached;
+            }
+
+            // getExplicitGroupPermissions applies the same role-owned vs. private group rules as below
+            long generation = cache.getGeneration();
+            Set<Permission> permissions = getExplicitGroupPermissions(subject, groupId);
+            cache.putGroupPermissions(subject.getId(), groupId, permissions, generation);
+            return permissions.contains(permission);
+        }
+
         ResourceGroup group = entityManager.find(ResourceGroup.class, groupId);
         Subject owner = group.getSubject();
 
@@ -175,6 +219,19 @@ public class AuthorizationManagerBean implements AuthorizationManagerLocal {
             return true;
         }
 
+        if (AuthorizationCache.isEnabled()) {
+            AuthorizationCache cache = AuthorizationCache.getInstance();
+            Boolean cached = cache.hasResourcePermission(subject.getId(), resourceId, permission);
+            if (cached != null) {
+                return cached;
+            }
+
+            long generation = cache.getGeneration();
+            Set<Permission> permissions = getExplicitResourcePermissions(subject, resourceId);
+            cache.putResourcePermissions(subject.getId(), resourceId, permissions, generation);
+            return permissions.contains(permission);
+        }
+
         Query query = entityManager.createNamedQuery(Subject.QUERY_HAS_RESOURCE_PERMISSION);
         query.setParameter("subject", subject);
         query.setParameter("permission", permission);
@@ -212,11 +269,25 @@ public class AuthorizationManagerBean implements AuthorizationManagerLocal {
             return true;
         }
 
+        AuthorizationCache cache = AuthorizationCache.getInstance();
+        if (AuthorizationCache.isEnabled()) {
+            Boolean cached = cache.canViewResource(subject.getId(), resourceId);
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        long generation = cache.getGeneration();
         Query query = entityManager.createNamedQuery(Subject.QUERY_CAN_VIEW_RESOURCE);
         query.setParameter("subject", subject);
         query.setParameter("resourceId", resourceId);
         long count = (Long) query.getSingleResult();
-        return (count != 0);
+        boolean viewable = (count != 0);
+
+        if (AuthorizationCache.isEnabled()) {
+            cache.putResourceViewable(subject.getId(), resourceId, viewable, generation);
+        }
+        return viewable;
     }
 
     public boolean canViewResources(Subject subject, List<Integer> resourceIds) {
@@ -237,11 +308,25 @@ public class AuthorizationManagerBean implements AuthorizationManagerLocal {
             return true;
         }
 
+        AuthorizationCache cache = AuthorizationCache.getInstance();
+        if (AuthorizationCache.isEnabled()) {
+            Boolean cached = cache.canViewGroup(subject.getId(), groupId);
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        long generation = cache.getGeneration();
         Query query = entityManager.createNamedQuery(Subject.QUERY_CAN_VIEW_GROUP);
         query.setParameter("subject", subject);
         query.setParameter("groupId", groupId);
         long count = (Long) query.getSingleResult();
-        return (count != 0);
+        boolean viewable = (count != 0);
+
+        if (AuthorizationCache.isEnabled()) {
+            cache.putGroupViewable(subject.getId(), groupId, viewable, generation);
+        }
+        return viewable;
     }
 
     public boolean canViewAutoGroup(Subject subject, int parentResourceId, int resourceTypeId) {
@@ -301,6 +386,91 @@ public class AuthorizationManagerBean implements AuthorizationManagerLocal {
         return (subject.getId() == SUBJECT_ID_OVERLORD);
     }
 
+    public void invalidatePermissionCache() {
+        invalidatePermissionCache(null);
+    }
+
+    public void invalidatePermissionCache(int subjectId) {
+        invalidatePermissionCache(Integer.valueOf(subjectId));
+    }
+
+    private void invalidatePermissionCache(final Integer subjectId) {
+        Transaction tx = null;
+        try {
+            tx = LookupUtil.getTransactionManager().getTransaction();
+            if (tx != null && tx.getStatus() != Status.STATUS_ACTIVE) {
+                tx = null;
+            }
+        } catch (Exception e) {
+            // the immediate invalidation and the maximum age of cached entries still apply
+            log.debug("Could not look up the transaction of a permission cache invalidation: " + e);
+        }
+
+        if (subjectId == null && tx != null) {
+            /*
+             * a transaction such as an inventory merge may make the same kind of change for every resource it touches;
+             * the cache only needs clearing once for all of them, and once more after completion (see below)
+             */
+            if (!AuthorizationCache.getInstance().invalidateAll(tx)) {
+                return;
+            }
+        } else {
+            invalidate(subjectId);
+        }
+
+        if (tx == null) {
+            return;
+        }
+
+        /*
+         * the change that triggered the invalidation is not committed yet, so some other thread could reload the old
+         * state and cache it again in the meantime; invalidating once more after completion closes that window
+         */
+        final Transaction batch = tx;
+        try {
+            tx.registerSynchronization(new Synchronization() {
+                public void beforeCompletion() {
+                }
+
+                public void afterCompletion(int status) {
+                    if (subjectId == null) {
+                        AuthorizationCache.getInstance().endBatch(batch);
+                    }
+                    invalidate(subjectId);
+                }
+            });
+        } catch (Exception e) {
+            if (subjectId == null) {
+                AuthorizationCache.getInstance().endBatch(batch);
+            }
+            log.debug("Could not register post-commit permission cache invalidation: " + e);
+        }
+    }
+
+    private static void invalidate(Integer subjectId) {
+        if (subjectId == null) {
+            AuthorizationCache.getInstance().invalidateAll();
+        } else {
+            AuthorizationCache.getInstance().invalidateSubject(subjectId);
+        }
+    }
+
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public void synchronizePermissionCache() {
+        AuthorizationCache cache = AuthorizationCache.getInstance();
+
+        // tell the rest of the cloud about local invalidations, at most once per synchronization period
+        if (cache.getAndClearCloudInvalidationPending()) {
+            entityManager.createNativeQuery(QUERY_NATIVE_INCREMENT_GENERATION).executeUpdate();
+        }
+
+        Number generation = (Number) entityManager.createNativeQuery(QUERY_NATIVE_GET_GENERATION)
+            .getSingleResult();
+        if (cache.updateCloudGeneration(generation.longValue())) {
+            log.debug("Permission cache cleared following an invalidation elsewhere in the cloud");
+        }
+    }
+
     public boolean canUpdateRepo(Subject subject, int repoId) {
         if (hasGlobalPermission(subject, Permission.MANAGE_REPOSITORIES)) {
             return true;
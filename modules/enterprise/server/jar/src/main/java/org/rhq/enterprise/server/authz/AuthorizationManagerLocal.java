@@ -242,4 +242,23 @@ public interface AuthorizationManagerLocal {
      * @return true if subject is able to update the repo, false otherwise
      */
     boolean canUpdateRepo(Subject subject, int repoId);
-}
\ No newline at end of file
+
+    /**
+     * Discards all cached authorization decisions. Must be called whenever roles, role/group assignments, group
+     * membership or inventory change in a way that may change what some subject is permitted to do.
+     */
+    void invalidatePermissionCache();
+
+    /**
+     * Discards the cached authorization decisions of a single subject, e.g. when its role assignments change.
+     *
+     * @param subjectId the id of the subject whose cached decisions are stale
+     */
+    void invalidatePermissionCache(int subjectId);
+
+    /**
+     * Publishes local cache invalidations to the other servers in the cloud and applies theirs locally. This is
+     * called periodically by the {@link org.rhq.enterprise.server.cloud.instance.CacheConsistencyManagerLocal}.
+     */
+    void synchronizePermissionCache();
+}
@@ -139,6 +139,8 @@ public class RoleManagerBean implements RoleManagerLocal, RoleManagerRemote {
      */
     @RequiredPermission(Permission.MANAGE_SECURITY)
     public Role createRole(Subject whoami, Role newRole) {
+        authorizationManager.invalidatePermissionCache();
+
         // TODO (ips): Do we want to enforce uniqueness of the Role name?
 
         Boolean isSystemRole = newRole.getFsystem();
@@ -179,6 +181,8 @@ public class RoleManagerBean implements RoleManagerLocal, RoleManagerRemote {
      */
     @RequiredPermission(Permission.MANAGE_SECURITY)
     public void deleteRoles(Subject subject, int[] doomedRoleIds) {
+        authorizationManager.invalidatePermissionCache();
+
         if (doomedRoleIds != null) {
             for (int roleId : doomedRoleIds) {
                 Role doomedRole = entityManager.find(Role.class, roleId);
@@ -222,6 +226,8 @@ public class RoleManagerBean implements RoleManagerLocal, RoleManagerRemote {
      */
     @RequiredPermission(Permission.MANAGE_SECURITY)
     public void addRolesToSubject(Subject subject, int subjectId, int[] roleIds, boolean isLdap) {
+        authorizationManager.invalidatePermissionCache();
+
         if (roleIds != null) {
             Subject subjectToModify = subjectManager.getSubjectById(subjectId); // attach it
             if (subjectToModify == null) {
@@ -254,6 +260,8 @@ public class RoleManagerBean implements RoleManagerLocal, RoleManagerRemote {
      */
     @RequiredPermission(Permission.MANAGE_SECURITY)
     public void addSubjectsToRole(Subject subject, int roleId, int[] subjectIds) {
+        authorizationManager.invalidatePermissionCache();
+
         if (subjectIds != null) {
             Role role = getRoleById(roleId); // attach it
             if (role == null) {
@@ -285,6 +293,8 @@ public class RoleManagerBean implements RoleManagerLocal, RoleManagerRemote {
      */
     @RequiredPermission(Permission.MANAGE_SECURITY)
     public void removeRolesFromSubject(Subject subject, int subjectId, int[] roleIds) {
+        authorizationManager.invalidatePermissionCache();
+
         if (roleIds != null) {
             Subject subjectToModify = subjectManager.getSubjectById(subjectId); // attach it
 
@@ -349,6 +359,8 @@ public class RoleManagerBean implements RoleManagerLocal, RoleManagerRemote {
      */
     @RequiredPermission(Permission.MANAGE_SECURITY)
     public void setPermissions(Subject subject, Integer roleId, Set<Permission> permissions) {
+        authorizationManager.invalidatePermissionCache();
+
         Role role = entityManager.find(Role.class, roleId);
         Set<Permission> rolePermissions = role.getPermissions();
         rolePermissions.clear();
@@ -372,6 +384,8 @@ public class RoleManagerBean implements RoleManagerLocal, RoleManagerRemote {
      */
     @RequiredPermission(Permission.MANAGE_SECURITY)
     public Role updateRole(Subject whoami, Role role) {
+        authorizationManager.invalidatePermissionCache();
+
         Role attachedRole = entityManager.find(Role.class, role.getId());
         if (attachedRole == null) {
             throw new IllegalStateException("Cannot update " + role + ", since no role exists with that id.");
@@ -555,6 +569,8 @@ public class RoleManagerBean implements RoleManagerLocal, RoleManagerRemote {
      */
     @RequiredPermission(Permission.MANAGE_SECURITY)
     public void addResourceGroupsToRole(Subject subject, int roleId, int[] groupIds) {
+        authorizationManager.invalidatePermissionCache();
+
         if ((groupIds != null) && (groupIds.length > 0)) {
             Role role = entityManager.find(Role.class, roleId);
             if (role == null) {
@@ -580,6 +596,8 @@ public class RoleManagerBean implements RoleManagerLocal, RoleManagerRemote {
      */
     @RequiredPermission(Permission.MANAGE_SECURITY)
     public void removeResourceGroupsFromRole(Subject subject, int roleId, int[] groupIds) {
+        authorizationManager.invalidatePermissionCache();
+
         if ((groupIds != null) && (groupIds.length > 0)) {
             Role role = entityManager.find(Role.class, roleId);
             if (role == null) {
@@ -655,6 +673,8 @@ public class RoleManagerBean implements RoleManagerLocal, RoleManagerRemote {
 
     @RequiredPermission(Permission.MANAGE_SECURITY)
     public void removeSubjectsFromRole(Subject subject, int roleId, int[] subjectIds) {
+        authorizationManager.invalidatePermissionCache();
+
         if ((subjectIds != null) && (subjectIds.length > 0)) {
             Role role = entityManager.find(Role.class, roleId);
             if (role == null) {
@@ -711,6 +731,8 @@ public class RoleManagerBean implements RoleManagerLocal, RoleManagerRemote {
 
     @RequiredPermission(Permission.MANAGE_SECURITY)
     public void removeRolesFromResourceGroup(Subject subject, int groupId, int[] roleIds) {
+        authorizationManager.invalidatePermissionCache();
+
         if ((roleIds != null) && (roleIds.length > 0)) {
             ResourceGroup group = entityManager.find(ResourceGroup.class, groupId);
             if (group == null) {
@@ -737,6 +759,8 @@ public class RoleManagerBean implements RoleManagerLocal, RoleManagerRemote {
 
     @RequiredPermission(Permission.MANAGE_SECURITY)
     public void addRolesToResourceGroup(Subject subject, int groupId, int[] roleIds) {
+        authorizationManager.invalidatePermissionCache();
+
         if ((roleIds != null) && (roleIds.length > 0)) {
             ResourceGroup group = entityManager.find(ResourceGroup.class, groupId);
             if (group == null) {
@@ -0,0 +1,59 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2011 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package org.rhq.enterprise.server.authz.mbean;
+
+import org.rhq.enterprise.server.authz.AuthorizationCache;
+
+/**
+ * An MBean that exposes the effectiveness of the server-local {@link AuthorizationCache}.
+ */
+public class AuthorizationCacheMonitor implements AuthorizationCacheMonitorMBean {
+
+    public void clear() {
+        AuthorizationCache.getInstance().resetStatistics();
+    }
+
+    public void invalidate() {
+        AuthorizationCache.getInstance().invalidateAll();
+    }
+
+    public long getHitCount() {
+        return AuthorizationCache.getInstance().getHitCount();
+    }
+
+    public long getMissCount() {
+        return AuthorizationCache.getInstance().getMissCount();
+    }
+
+    public long getEvictionCount() {
+        return AuthorizationCache.getInstance().getEvictionCount();
+    }
+
+    public long getInvalidationCount() {
+        return AuthorizationCache.getInstance().getInvalidationCount();
+    }
+
+    public long getSubjectCount() {
+        return AuthorizationCache.getInstance().getSubjectCount();
+    }
+
+    public long getEntryCount() {
+        return AuthorizationCache.getInstance().getEntryCount();
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2011 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package org.rhq.enterprise.server.authz.mbean;
+
+import org.rhq.enterprise.server.authz.AuthorizationCache;
+
+/**
+ * An MBean that exposes the effectiveness of the server-local {@link AuthorizationCache}.
+ */
+public interface AuthorizationCacheMonitorMBean {
+
+    /**
+     * Clears the statistics, starting all counters back to 0 as if starting fresh.
+     */
+    void clear();
+
+    /**
+     * Discards every cached authorization decision on this server, and on the rest of the cloud shortly afterwards.
+     */
+    void invalidate();
+
+    /**
+     * Returns the number of permission checks answered from the cache
+     *
+     * @return the number of permission checks answered from the cache
+     */
+    long getHitCount();
+
+    /**
+     * Returns the number of permission checks that had to go to the database
+     *
+     * @return the number of permission checks that had to go to the database
+     */
+    long getMissCount();
+
+    /**
+     * Returns the number of subjects or entries dropped because the cache reached one of its size bounds
+     *
+     * @return the number of subjects or entries dropped because the cache reached one of its size bounds
+     */
+    long getEvictionCount();
+
+    /**
+     * Returns the number of times cached decisions were discarded because of a change to security or inventory data
+     *
+     * @return the number of times cached decisions were discarded because of a change to security or inventory data
+     */
+    long getInvalidationCount();
+
+    /**
+     * Returns the number of subjects currently holding cached decisions
+     *
+     * @return the number of subjects currently holding cached decisions
+     */
+    long getSubjectCount();
+
+    /**
+     * Returns the number of per-resource and per-group entries currently cached, across all subjects
+     *
+     * @return the number of per-resource and per-group entries currently cached, across all subjects
+     */
+    long getEntryCount();
+}
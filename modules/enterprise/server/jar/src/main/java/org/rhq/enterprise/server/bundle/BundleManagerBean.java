@@ -25,6 +25,7 @@ import java.io.FileOutputStream;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.URL;
+import java.security.DigestInputStream;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -89,6 +90,7 @@ import org.rhq.core.domain.util.PageList;
 import org.rhq.core.domain.util.StringUtils;
 import org.rhq.core.util.NumberUtil;
 import org.rhq.core.util.exception.ThrowableUtil;
+import org.rhq.core.util.MessageDigestGenerator;
 import org.rhq.core.util.stream.StreamUtil;
 import org.rhq.enterprise.server.RHQConstants;
 import org.rhq.enterprise.server.agentclient.AgentClient;
@@ -749,6 +751,40 @@ public class BundleManagerBean implements BundleManagerLocal, BundleManagerRemot
             throw new IllegalArgumentException("Invalid bundleVersionId: " + bundleVersionId);
         }
 
+        // Spool the file so we know its SHA-256 before deciding whether we need to store it at all.
+        File spoolFile = File.createTempFile("bundle-file", null);
+        try {
+            MessageDigestGenerator digestGenerator = new MessageDigestGenerator(MessageDigestGenerator.SHA_256);
+            StreamUtil.copy(new DigestInputStream(fileStream, digestGenerator.getMessageDigest()),
+                new FileOutputStream(spoolFile), true);
+            String sha256 = digestGenerator.getDigestString();
+
+            // Bundle file content is addressed by its SHA-256: if another version of this bundle already has a file
+            // with the same name and content, share its PackageVersion (and bits) rather than storing it again.
+            Bundle bundle = bundleVersion.getBundle();
+            Query q = entityManager.createNamedQuery(BundleFile.QUERY_FIND_PACKAGE_VERSIONS_BY_BUNDLE_AND_SHA256);
+            q.setParameter("bundleId", bundle.getId());
+            q.setParameter("fileName", name);
+            q.setParameter("sha256", sha256);
+            q.setMaxResults(1);
+            List<?> existing = q.getResultList();
+            if (!existing.isEmpty()) {
+                PackageVersion packageVersion = (PackageVersion) existing.get(0);
+                log.debug("Bundle file [" + name + "] of bundle version [" + bundleVersion
+                    + "] has the same content as [" + packageVersion + "] - sharing it");
+                return createBundleFile(bundleVersion, packageVersion);
+            }
+
+            return addBundleFile(subject, bundleVersion, name, version, architecture, new FileInputStream(spoolFile));
+        } finally {
+            safeClose(fileStream);
+            spoolFile.delete();
+        }
+    }
+
+    private BundleFile addBundleFile(Subject subject, BundleVersion bundleVersion, String name, String version,
+        Architecture architecture, InputStream fileStream) throws Exception {
+
         // Create the PackageVersion the BundleFile is tied to.  This implicitly creates the
         // Package for the PackageVersion.
         Bundle bundle = bundleVersion.getBundle();
@@ -759,8 +795,13 @@ public class BundleManagerBean implements BundleManagerLocal, BundleManagerRemot
             q.setParameter("name", architecture.getName());
             architecture = (Architecture) q.getSingleResult();
         }
-        PackageVersion packageVersion = contentManager.createPackageVersion(subject, name, packageType.getId(),
-            version, architecture.getId(), fileStream);
+        PackageVersion packageVersion;
+        try {
+            packageVersion = contentManager.createPackageVersion(subject, name, packageType.getId(), version,
+                architecture.getId(), fileStream);
+        } finally {
+            safeClose(fileStream);
+        }
 
         // set the PackageVersion's filename to the bundleFile name, it's left null by default
         packageVersion.setFileName(name);
@@ -779,6 +820,10 @@ public class BundleManagerBean implements BundleManagerLocal, BundleManagerRemot
 
         // With all the plumbing in place, create and persist the BundleFile. Tie it to the Package if the caller
         // wants this BundleFile pinned to themost recent version.
+        return createBundleFile(bundleVersion, packageVersion);
+    }
+
+    private BundleFile createBundleFile(BundleVersion bundleVersion, PackageVersion packageVersion) {
         BundleFile bundleFile = new BundleFile();
         bundleFile.setBundleVersion(bundleVersion);
         bundleFile.setPackageVersion(packageVersion);
@@ -970,7 +1015,15 @@ public class BundleManagerBean implements BundleManagerLocal, BundleManagerRemot
     @RequiredPermission(Permission.MANAGE_BUNDLE)
     public BundleDeployment scheduleBundleDeployment(Subject subject, int bundleDeploymentId, boolean isCleanDeployment)
         throws Exception {
-        return scheduleBundleDeploymentImpl(subject, bundleDeploymentId, isCleanDeployment, false, null);
+        return scheduleBundleDeploymentImpl(subject, bundleDeploymentId, isCleanDeployment, false, null,
+            BundleRollout.getDefault());
+    }
+
+    @Override
+    @RequiredPermission(Permission.MANAGE_BUNDLE)
+    public BundleDeployment scheduleBundleDeployment(Subject subject, int bundleDeploymentId,
+        boolean isCleanDeployment, BundleRollout rollout) throws Exception {
+        return scheduleBundleDeploymentImpl(subject, bundleDeploymentId, isCleanDeployment, false, null, rollout);
     }
 
     @Override
@@ -1016,12 +1069,13 @@ public class BundleManagerBean implements BundleManagerLocal, BundleManagerRemot
             .getBundleVersion().getId(), bundleDestinationId, name, desc, config);
 
         return scheduleBundleDeploymentImpl(subject, revertDeployment.getId(), isCleanDeployment, true, prevDeployment
-            .getReplacedBundleDeploymentId());
+            .getReplacedBundleDeploymentId(), BundleRollout.getDefault());
     }
 
     // revertedDeploymentReplacedDeployment is only meaningful if isRevert is true
     private BundleDeployment scheduleBundleDeploymentImpl(Subject subject, int bundleDeploymentId,
-        boolean isCleanDeployment, boolean isRevert, Integer revertedDeploymentReplacedDeployment) throws Exception {
+        boolean isCleanDeployment, boolean isRevert, Integer revertedDeploymentReplacedDeployment,
+        BundleRollout rollout) throws Exception {
 
         BundleDeployment newDeployment = entityManager.find(BundleDeployment.class, bundleDeploymentId);
         if (null == newDeployment) {
@@ -1038,12 +1092,18 @@ public class BundleManagerBean implements BundleManagerLocal, BundleManagerRemot
                 + "] group has no members. Invalid deployment destination");
         }
 
-        for (Resource groupMember : groupMembers) {
-            try {
-                scheduleBundleResourceDeployment(subject, newDeployment, groupMember, isCleanDeployment, isRevert);
-            } catch (Throwable t) {
-                log.error("Failed to complete scheduling of bundle deployment to [" + groupMember
-                    + "]. Other bundle deployments to other resources may have been scheduled. ", t);
+        if (rollout.isRolling(groupMembers.size())) {
+            scheduleBundleDeploymentRollout(subject, newDeployment, groupMembers, isCleanDeployment, isRevert,
+                rollout);
+        } else {
+            for (Resource groupMember : groupMembers) {
+                try {
+                    scheduleBundleResourceDeployment(subject, newDeployment, groupMember, isCleanDeployment,
+                        isRevert);
+                } catch (Throwable t) {
+                    log.error("Failed to complete scheduling of bundle deployment to [" + groupMember
+                        + "]. Other bundle deployments to other resources may have been scheduled. ", t);
+                }
             }
         }
 
@@ -1081,22 +1141,78 @@ public class BundleManagerBean implements BundleManagerLocal, BundleManagerRemot
         return newDeployment;
     }
 
+    // Creates a pending resource deployment for every member and leaves it to the rollout scheduler to launch them,
+    // once this transaction has committed, batch by batch.
+    private void scheduleBundleDeploymentRollout(Subject subject, BundleDeployment deployment,
+        Set<Resource> groupMembers, boolean isCleanDeployment, boolean isRevert, BundleRollout rollout)
+        throws Exception {
+
+        int batchCount = rollout.getBatchCount(groupMembers.size());
+        int batchSize = (rollout.getBatchSize() > 0) ? rollout.getBatchSize() : groupMembers.size();
+        List<Integer> resourceDeploymentIds = new ArrayList<Integer>(groupMembers.size());
+
+        for (Resource groupMember : groupMembers) {
+            BundleResourceDeployment resourceDeployment = bundleManager.createBundleResourceDeployment(subject,
+                deployment.getId(), groupMember.getId());
+            resourceDeploymentIds.add(resourceDeployment.getId());
+
+            BundleResourceDeploymentHistory history = new BundleResourceDeploymentHistory(subject.getName(),
+                BundleRolloutScheduler.AUDIT_ACTION_ROLLOUT, deployment.getName(),
+                BundleResourceDeploymentHistory.Category.AUDIT_MESSAGE, BundleResourceDeploymentHistory.Status.SUCCESS,
+                "Queued in batch " + ((resourceDeploymentIds.size() - 1) / batchSize + 1) + " of " + batchCount
+                    + " (" + rollout + ")", null);
+            bundleManager.addBundleResourceDeploymentHistory(subject, resourceDeployment.getId(), history);
+
+            // set directly, rather than through setBundleResourceDeploymentStatus, which would recompute the status
+            // of the whole bundle deployment for every member
+            entityManager.find(BundleResourceDeployment.class, resourceDeployment.getId()).setStatus(
+                BundleDeploymentStatus.PENDING);
+        }
+
+        BundleRolloutScheduler.getInstance().start(subject, deployment.getId(), deployment.getName(),
+            BundleRolloutScheduler.toBatches(resourceDeploymentIds, rollout), rollout, isCleanDeployment, isRevert);
+    }
+
     private BundleResourceDeployment scheduleBundleResourceDeployment(Subject subject, BundleDeployment deployment,
         Resource bundleTarget, boolean isCleanDeployment, boolean isRevert) throws Exception {
 
-        int bundleTargetResourceId = bundleTarget.getId();
-        AgentClient agentClient = agentManager.getAgentClient(subjectManager.getOverlord(), bundleTargetResourceId);
-        BundleAgentService bundleAgentService = agentClient.getBundleAgentService();
-
         // The BundleResourceDeployment record must exist in the db before the agent request because the agent may try
         // to add History to it during immediate deployments. So, create and persist it (requires a new trans).
         BundleResourceDeployment resourceDeployment = bundleManager.createBundleResourceDeployment(subject, deployment
-            .getId(), bundleTargetResourceId);
+            .getId(), bundleTarget.getId());
+
+        launchBundleResourceDeployment(subject, deployment, bundleTarget, resourceDeployment, isCleanDeployment,
+            isRevert);
+
+        return resourceDeployment;
+    }
+
+    @Override
+    @RequiredPermission(Permission.MANAGE_BUNDLE)
+    public void launchBundleResourceDeployment(Subject subject, int resourceDeploymentId, boolean isCleanDeployment,
+        boolean isRevert) throws Exception {
+
+        BundleResourceDeployment resourceDeployment = entityManager.find(BundleResourceDeployment.class,
+            resourceDeploymentId);
+        if (null == resourceDeployment) {
+            throw new IllegalArgumentException("Invalid resourceDeploymentId: " + resourceDeploymentId);
+        }
+
+        launchBundleResourceDeployment(subject, resourceDeployment.getBundleDeployment(), resourceDeployment
+            .getResource(), resourceDeployment, isCleanDeployment, isRevert);
+    }
+
+    private void launchBundleResourceDeployment(Subject subject, BundleDeployment deployment, Resource bundleTarget,
+        BundleResourceDeployment resourceDeployment, boolean isCleanDeployment, boolean isRevert) throws Exception {
 
         if (null != bundleTarget.getResourceType().getResourceTypeBundleConfiguration()) {
 
             // Ask the agent to schedule the request. The agent should add history as needed.
             try {
+                AgentClient agentClient = agentManager.getAgentClient(subjectManager.getOverlord(), bundleTarget
+                    .getId());
+                BundleAgentService bundleAgentService = agentClient.getBundleAgentService();
+
                 BundleScheduleRequest request = bundleManager.getScheduleRequest(subject, resourceDeployment.getId(),
                     isCleanDeployment, isRevert);
 
@@ -1139,8 +1255,6 @@ public class BundleManagerBean implements BundleManagerLocal, BundleManagerRemot
                     + deployment.getDestination().getName() + "]", null);
             bundleManager.addBundleResourceDeploymentHistory(subject, resourceDeployment.getId(), history);
         }
-
-        return resourceDeployment;
     }
 
     @Override
@@ -1246,6 +1360,7 @@ public class BundleManagerBean implements BundleManagerLocal, BundleManagerRemot
             case FAILURE:
                 someFailure = true;
                 break;
+            case PENDING:
             case IN_PROGRESS:
                 someInProgress = true;
                 break;
@@ -1647,8 +1762,27 @@ public class BundleManagerBean implements BundleManagerLocal, BundleManagerRemot
         int rowsUpdated = q.executeUpdate();
         entityManager.flush();
 
+        // remember the package versions of the bundle files, they may be shared with other bundle versions
+        List<Integer> packageVersionIds = new ArrayList<Integer>();
+        for (BundleFile bundleFile : bundleVersion.getBundleFiles()) {
+            packageVersionIds.add(bundleFile.getPackageVersion().getId());
+        }
+
         // remove the bundle version - cascade remove the deployments which will cascade remove the resource deployments.
         this.entityManager.remove(bundleVersion);
+        this.entityManager.flush();
+
+        // now remove the package versions (and their bits) that no remaining bundle file refers to
+        for (Integer packageVersionId : packageVersionIds) {
+            q = entityManager.createNamedQuery(BundleFile.QUERY_COUNT_BY_PACKAGE_VERSION_ID);
+            q.setParameter("packageVersionId", packageVersionId);
+            if (((Number) q.getSingleResult()).longValue() == 0L) {
+                PackageVersion doomed = entityManager.find(PackageVersion.class, packageVersionId);
+                if (null != doomed) {
+                    entityManager.remove(doomed);
+                }
+            }
+        }
 
         if (deleteBundleIfEmpty) {
             this.entityManager.flush();
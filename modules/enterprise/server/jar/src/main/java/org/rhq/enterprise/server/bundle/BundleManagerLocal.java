@@ -159,6 +159,24 @@ public interface BundleManagerLocal extends BundleManagerRemote {
     public BundleScheduleRequest getScheduleRequest(Subject subject, int resourceDeploymentId,
         boolean isCleanDeployment, boolean isRevert) throws Exception;
 
+    /**
+     * Like {@link BundleManagerRemote#scheduleBundleDeployment(Subject, int, boolean)} but rolls the deployment out
+     * to the destination group's members as described by the given rollout, rather than by the server's default
+     * rollout. When the rollout is paced, this returns as soon as the resource deployments have been created; the
+     * members not yet deployed to are left {@link BundleDeploymentStatus#PENDING} and are launched in the background
+     * by the {@link BundleRolloutScheduler}.
+     */
+    BundleDeployment scheduleBundleDeployment(Subject subject, int bundleDeploymentId, boolean isCleanDeployment,
+        BundleRollout rollout) throws Exception;
+
+    /**
+     * This is for internal use only - used by the {@link BundleRolloutScheduler} to ask the agent to deploy a
+     * resource deployment that was created pending, once its turn in the rollout has come. Failures to reach the
+     * agent are recorded on the resource deployment rather than thrown.
+     */
+    void launchBundleResourceDeployment(Subject subject, int resourceDeploymentId, boolean isCleanDeployment,
+        boolean isRevert) throws Exception;
+
     /**
      * This is a simple attempt at delete, typically used for removing a poorly defined deployment before it is
      * actually scheduled for deployment. The status must be PENDING. It will
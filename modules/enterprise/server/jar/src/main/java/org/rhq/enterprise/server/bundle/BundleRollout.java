@@ -0,0 +1,108 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2011 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+package org.rhq.enterprise.server.bundle;
+
+import java.io.Serializable;
+
+/**
+ * How a bundle deployment is rolled out to the members of its destination group.  The members are split into
+ * batches of {@link #getBatchSize() batchSize} members, which are deployed one batch after the other; within a batch
+ * at most {@link #getMaxInFlight() maxInFlight} members are deployed concurrently.  Once a batch has completed, the
+ * percentage of its members that were successfully deployed is compared to the
+ * {@link #getSuccessThreshold() successThreshold}, and if it falls short the rollout is halted and the members of the
+ * remaining batches are failed without being deployed.
+ * <p/>
+ * A batch size or max in flight of 0 means unlimited; the {@link #ALL_AT_ONCE} rollout therefore deploys to every
+ * member immediately, which is how deployments were always scheduled.  The {@link #getDefault() default} rollout,
+ * used when the caller does not ask for one, is read from the <code>rhq.server.bundle.rollout.*</code> system
+ * properties and is {@link #ALL_AT_ONCE} unless those are set.
+ */
+public class BundleRollout implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    public static final BundleRollout ALL_AT_ONCE = new BundleRollout(0, 0, 0);
+
+    private static final BundleRollout DEFAULT = new BundleRollout(Integer.parseInt(System.getProperty(
+        "rhq.server.bundle.rollout.batch-size", "0")), Integer.parseInt(System.getProperty(
+        "rhq.server.bundle.rollout.max-in-flight", "0")), Integer.parseInt(System.getProperty(
+        "rhq.server.bundle.rollout.success-threshold", "100")));
+
+    private final int batchSize;
+    private final int maxInFlight;
+    private final int successThreshold;
+
+    /**
+     * @param batchSize the number of members per batch, 0 for a single batch holding every member
+     * @param maxInFlight the maximum number of members deployed concurrently, 0 for no limit
+     * @param successThreshold the percentage (0-100) of a batch's members that must be deployed successfully for the
+     *                         rollout to proceed to the next batch
+     */
+    public BundleRollout(int batchSize, int maxInFlight, int successThreshold) {
+        if (batchSize < 0 || maxInFlight < 0) {
+            throw new IllegalArgumentException("batchSize and maxInFlight must not be negative");
+        }
+        if (successThreshold < 0 || successThreshold > 100) {
+            throw new IllegalArgumentException("successThreshold must be a percentage: " + successThreshold);
+        }
+        this.batchSize = batchSize;
+        this.maxInFlight = maxInFlight;
+        this.successThreshold = successThreshold;
+    }
+
+    public static BundleRollout getDefault() {
+        return DEFAULT;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    public int getSuccessThreshold() {
+        return successThreshold;
+    }
+
+    /**
+     * @param memberCount the number of members in the destination group
+     * @return true if deploying to that many members must be paced by the {@link BundleRolloutScheduler}, false if
+     *         they can all be deployed to immediately
+     */
+    public boolean isRolling(int memberCount) {
+        return (batchSize > 0 && batchSize < memberCount) || (maxInFlight > 0 && maxInFlight < memberCount);
+    }
+
+    /**
+     * @param memberCount the number of members in the destination group
+     * @return the number of batches the members are split into
+     */
+    public int getBatchCount(int memberCount) {
+        return (batchSize > 0) ? ((memberCount + batchSize - 1) / batchSize) : 1;
+    }
+
+    @Override
+    public String toString() {
+        return "BundleRollout[batchSize=" + batchSize + ", maxInFlight=" + maxInFlight + ", successThreshold="
+            + successThreshold + "%]";
+    }
+}
@@ -0,0 +1,342 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2011 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+package org.rhq.enterprise.server.bundle;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+import javax.transaction.Transaction;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.rhq.core.domain.auth.Subject;
+import org.rhq.core.domain.authz.Permission;
+import org.rhq.core.domain.bundle.BundleDeploymentStatus;
+import org.rhq.core.domain.bundle.BundleResourceDeployment;
+import org.rhq.core.domain.bundle.BundleResourceDeploymentHistory;
+import org.rhq.core.domain.criteria.BundleResourceDeploymentCriteria;
+import org.rhq.enterprise.server.authz.AuthorizationManagerLocal;
+import org.rhq.enterprise.server.util.LoggingThreadFactory;
+import org.rhq.enterprise.server.util.LookupUtil;
+
+/**
+ * Paces the deployment of a bundle deployment to the members of its destination group according to a
+ * {@link BundleRollout}.  The resource deployments of all members are created up front in the
+ * {@link BundleDeploymentStatus#PENDING} state, so the bundle deployment as a whole stays in progress until the last
+ * batch is done; this scheduler then launches them batch by batch, never having more than the allowed number in
+ * flight, and follows their progress by polling their status.  Since the agents report their results to the database
+ * (through whichever server they are connected to) polling works the same in a server cloud.
+ * <p/>
+ * Every step of the rollout is recorded in the resource deployment histories: the batch a member was queued in, when
+ * it was launched, and, should the rollout be halted, why the member was never deployed to.
+ * <p/>
+ * A rollout can outlive the session of the user that scheduled it, so the user's permission to deploy bundles is
+ * checked once, when the rollout starts, and the rollout itself then runs as the overlord.
+ * <p/>
+ * Rollouts live in memory only.  If the server goes down in the middle of one, members not yet launched stay pending
+ * and the bundle deployment has to be scheduled again.  If the transaction scheduling a rollout is rolled back, the
+ * rollout never starts and its members are failed instead.
+ */
+public class BundleRolloutScheduler {
+
+    static final String AUDIT_ACTION_ROLLOUT = "Rollout";
+
+    private static final long POLL_INTERVAL = Long.parseLong(System.getProperty(
+        "rhq.server.bundle.rollout.poll-interval", "5000"));
+
+    private static final BundleRolloutScheduler INSTANCE = new BundleRolloutScheduler();
+
+    private final Log log = LogFactory.getLog(BundleRolloutScheduler.class);
+
+    private final Executor executor;
+
+    BundleRolloutScheduler() {
+        this(Executors.newCachedThreadPool(new LoggingThreadFactory("BundleRollout", true)));
+    }
+
+    BundleRolloutScheduler(Executor executor) {
+        this.executor = executor;
+    }
+
+    public static BundleRolloutScheduler getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Starts rolling out a bundle deployment in the background.  If called within a transaction, the rollout only
+     * starts once that transaction has committed, so that it does not race the caller's own updates of the bundle
+     * deployment.
+     *
+     * @param subject the user that scheduled the bundle deployment, whose permission is checked when the rollout
+     *        starts
+     * @param bundleDeploymentId the bundle deployment being rolled out
+     * @param deploymentName the name of the bundle deployment, used in history entries
+     * @param batches the ids of the (pending) resource deployments, batch by batch
+     * @param rollout the rollout policy
+     * @param isCleanDeployment passed through to each resource deployment's schedule request
+     * @param isRevert passed through to each resource deployment's schedule request
+     */
+    public void start(Subject subject, int bundleDeploymentId, String deploymentName, List<List<Integer>> batches,
+        BundleRollout rollout, boolean isCleanDeployment, boolean isRevert) {
+
+        final Rollout task = new Rollout(subject, bundleDeploymentId, deploymentName, batches, rollout,
+            isCleanDeployment, isRevert, LookupUtil.getBundleManager(), LookupUtil.getAuthorizationManager(),
+            LookupUtil.getSubjectManager().getOverlord(), POLL_INTERVAL);
+
+        try {
+            Transaction tx = LookupUtil.getTransactionManager().getTransaction();
+            if (tx != null && tx.getStatus() == Status.STATUS_ACTIVE) {
+                tx.registerSynchronization(new StartAfterCompletion(task));
+                return;
+            }
+        } catch (Exception e) {
+            log.debug("Could not register post-commit start of rollout, starting it now: " + e);
+        }
+
+        executor.execute(task);
+    }
+
+    /**
+     * Starts a rollout once the transaction that scheduled it has committed.  The pending resource deployments were
+     * created in transactions of their own, so if the transaction rolls back they are failed instead of being left
+     * pending for good.
+     */
+    class StartAfterCompletion implements Synchronization {
+        private final Rollout rollout;
+
+        StartAfterCompletion(Rollout rollout) {
+            this.rollout = rollout;
+        }
+
+        public void beforeCompletion() {
+        }
+
+        public void afterCompletion(int status) {
+            if (status == Status.STATUS_COMMITTED) {
+                executor.execute(rollout);
+            } else {
+                executor.execute(new Runnable() {
+                    public void run() {
+                        rollout.abandon();
+                    }
+                });
+            }
+        }
+    }
+
+    class Rollout implements Runnable {
+        private final Subject subject;
+        private final int bundleDeploymentId;
+        private final String deploymentName;
+        private final List<List<Integer>> batches;
+        private final BundleRollout rollout;
+        private final boolean isCleanDeployment;
+        private final boolean isRevert;
+        private final BundleManagerLocal bundleManager;
+        private final AuthorizationManagerLocal authorizationManager;
+        private final Subject overlord;
+        private final long pollInterval;
+        private final Set<Integer> launched = new HashSet<Integer>();
+
+        Rollout(Subject subject, int bundleDeploymentId, String deploymentName, List<List<Integer>> batches,
+            BundleRollout rollout, boolean isCleanDeployment, boolean isRevert, BundleManagerLocal bundleManager,
+            AuthorizationManagerLocal authorizationManager, Subject overlord, long pollInterval) {
+            this.subject = subject;
+            this.bundleDeploymentId = bundleDeploymentId;
+            this.deploymentName = deploymentName;
+            this.batches = batches;
+            this.rollout = rollout;
+            this.isCleanDeployment = isCleanDeployment;
+            this.isRevert = isRevert;
+            this.bundleManager = bundleManager;
+            this.authorizationManager = authorizationManager;
+            this.overlord = overlord;
+            this.pollInterval = pollInterval;
+        }
+
+        public void run() {
+            int i = 0;
+            try {
+                if (!authorizationManager.hasGlobalPermission(subject, Permission.MANAGE_BUNDLE)) {
+                    halt(0, "User [" + subject.getName() + "] is not permitted to deploy bundles");
+                    return;
+                }
+
+                log.info("Rolling out bundle deployment [" + deploymentName + "] in " + batches.size()
+                    + " batches with " + rollout);
+
+                for (; i < batches.size(); ++i) {
+                    List<Integer> batch = batches.get(i);
+                    int succeeded = runBatch(i, batch);
+                    if (succeeded < 0) {
+                        log.warn("Bundle deployment [" + deploymentName + "] no longer exists, rollout abandoned");
+                        return;
+                    }
+
+                    int percent = (100 * succeeded) / batch.size();
+                    String summary = "Batch " + (i + 1) + " of " + batches.size() + " completed: " + succeeded
+                        + " of " + batch.size() + " deployments succeeded (" + percent + "%)";
+                    log.info("Bundle deployment [" + deploymentName + "]: " + summary);
+
+                    if (i < batches.size() - 1 && percent < rollout.getSuccessThreshold()) {
+                        halt(i + 1, summary + ", below the required " + rollout.getSuccessThreshold() + "%");
+                        return;
+                    }
+                }
+            } catch (InterruptedException e) {
+                log.warn("Rollout of bundle deployment [" + deploymentName + "] was interrupted");
+            } catch (RuntimeException e) {
+                log.error("Rollout of bundle deployment [" + deploymentName + "] failed", e);
+                halt(i, "Rollout failed: " + e);
+            }
+        }
+
+        /**
+         * Fails all members without launching any, because the rollout will never start.
+         */
+        void abandon() {
+            halt(0, "The transaction that scheduled the rollout was rolled back");
+        }
+
+        /**
+         * @return the number of successful deployments in the batch, or -1 if the bundle deployment was deleted
+         */
+        private int runBatch(int batchIndex, List<Integer> batch) throws InterruptedException {
+            LinkedList<Integer> queued = new LinkedList<Integer>(batch);
+            Set<Integer> inFlight = new LinkedHashSet<Integer>();
+            int succeeded = 0;
+            int maxInFlight = rollout.getMaxInFlight();
+
+            while (!queued.isEmpty() || !inFlight.isEmpty()) {
+                while (!queued.isEmpty() && (maxInFlight <= 0 || inFlight.size() < maxInFlight)) {
+                    int resourceDeploymentId = queued.removeFirst();
+                    inFlight.add(resourceDeploymentId);
+                    launched.add(resourceDeploymentId);
+                    launch(batchIndex, resourceDeploymentId);
+                }
+
+                Thread.sleep(pollInterval);
+
+                Map<Integer, BundleDeploymentStatus> statuses = getStatuses();
+                if (statuses.isEmpty()) {
+                    return -1;
+                }
+                for (Iterator<Integer> it = inFlight.iterator(); it.hasNext();) {
+                    BundleDeploymentStatus status = statuses.get(it.next());
+                    if (status == BundleDeploymentStatus.SUCCESS) {
+                        succeeded++;
+                        it.remove();
+                    } else if (status != BundleDeploymentStatus.IN_PROGRESS) {
+                        it.remove();
+                    }
+                }
+            }
+
+            return succeeded;
+        }
+
+        private void launch(int batchIndex, int resourceDeploymentId) {
+            try {
+                // flip the status in its own transaction, before the agent gets a chance to report back
+                bundleManager.setBundleResourceDeploymentStatus(overlord, resourceDeploymentId,
+                    BundleDeploymentStatus.IN_PROGRESS);
+                addHistory(resourceDeploymentId, BundleResourceDeploymentHistory.Status.SUCCESS, "Launched in batch "
+                    + (batchIndex + 1) + " of " + batches.size());
+                bundleManager.launchBundleResourceDeployment(overlord, resourceDeploymentId, isCleanDeployment,
+                    isRevert);
+            } catch (Throwable t) {
+                log.error("Failed to launch resource deployment [" + resourceDeploymentId + "] of bundle deployment ["
+                    + deploymentName + "]", t);
+                fail(resourceDeploymentId, "Failed to launch: " + t);
+            }
+        }
+
+        // fails the members of the given and later batches that have not been launched yet
+        private void halt(int firstSkippedBatch, String reason) {
+            log.warn("Halting rollout of bundle deployment [" + deploymentName + "]: " + reason);
+            for (int i = firstSkippedBatch; i < batches.size(); ++i) {
+                for (Integer resourceDeploymentId : batches.get(i)) {
+                    if (!launched.contains(resourceDeploymentId)) {
+                        fail(resourceDeploymentId, "Rollout halted, not deployed. " + reason);
+                    }
+                }
+            }
+        }
+
+        private void fail(int resourceDeploymentId, String message) {
+            try {
+                addHistory(resourceDeploymentId, BundleResourceDeploymentHistory.Status.FAILURE, message);
+                bundleManager.setBundleResourceDeploymentStatus(overlord, resourceDeploymentId,
+                    BundleDeploymentStatus.FAILURE);
+            } catch (Throwable t) {
+                log.error("Failed to fail resource deployment [" + resourceDeploymentId + "] of bundle deployment ["
+                    + deploymentName + "]", t);
+            }
+        }
+
+        private void addHistory(int resourceDeploymentId, BundleResourceDeploymentHistory.Status status,
+            String message) throws Exception {
+            BundleResourceDeploymentHistory history = new BundleResourceDeploymentHistory(subject.getName(),
+                AUDIT_ACTION_ROLLOUT, deploymentName, BundleResourceDeploymentHistory.Category.AUDIT_MESSAGE, status,
+                message, null);
+            bundleManager.addBundleResourceDeploymentHistory(overlord, resourceDeploymentId, history);
+        }
+
+        private Map<Integer, BundleDeploymentStatus> getStatuses() {
+            BundleResourceDeploymentCriteria criteria = new BundleResourceDeploymentCriteria();
+            criteria.addFilterBundleDeploymentId(bundleDeploymentId);
+            criteria.clearPaging();
+
+            List<BundleResourceDeployment> resourceDeployments = bundleManager.findBundleResourceDeploymentsByCriteria(
+                overlord, criteria);
+            Map<Integer, BundleDeploymentStatus> statuses = new HashMap<Integer, BundleDeploymentStatus>(
+                resourceDeployments.size());
+            for (BundleResourceDeployment resourceDeployment : resourceDeployments) {
+                statuses.put(resourceDeployment.getId(), resourceDeployment.getStatus());
+            }
+            return statuses;
+        }
+    }
+
+    /**
+     * Splits the given resource deployment ids into the batches of a rollout, preserving their order.
+     */
+    public static List<List<Integer>> toBatches(List<Integer> resourceDeploymentIds, BundleRollout rollout) {
+        int batchSize = (rollout.getBatchSize() > 0) ? rollout.getBatchSize() : resourceDeploymentIds.size();
+        List<List<Integer>> batches = new ArrayList<List<Integer>>();
+        for (int i = 0; i < resourceDeploymentIds.size(); i += batchSize) {
+            batches.add(new ArrayList<Integer>(resourceDeploymentIds.subList(i, Math.min(i + batchSize,
+                resourceDeploymentIds.size()))));
+        }
+        return batches;
+    }
+}
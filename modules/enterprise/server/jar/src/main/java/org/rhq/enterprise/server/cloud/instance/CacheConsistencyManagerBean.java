@@ -35,6 +35,7 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 import org.rhq.enterprise.server.alert.engine.AlertConditionCacheManagerLocal;
+import org.rhq.enterprise.server.authz.AuthorizationManagerLocal;
 
 /**
  * Each server has partitioned alerts condition cache data.  This session bean exists
@@ -60,6 +61,9 @@ public class CacheConsistencyManagerBean implements CacheConsistencyManagerLocal
     @EJB
     CacheConsistencyManagerLocal cacheConsistencyManager;
 
+    @EJB
+    AuthorizationManagerLocal authorizationManager;
+
     private final String TIMER_DATA = "CacheConsistencyManagerBean.reloadServerCacheIfNeeded";
 
     @SuppressWarnings("unchecked")
@@ -98,6 +102,19 @@ public class CacheConsistencyManagerBean implements CacheConsistencyManagerLocal
         // try reload the global cache separate from the agent caches for purposes of isolated failures
         reloadGlobalCacheIfNeeded();
         reloadAgentCachesAsNeeded();
+        synchronizePermissionCache();
+    }
+
+    private void synchronizePermissionCache() {
+        try {
+            authorizationManager.synchronizePermissionCache();
+        } catch (Throwable t) {
+            if (log.isDebugEnabled()) {
+                log.debug("Failed to synchronize permission cache", t);
+            } else {
+                log.error("Failed to synchronize permission cache, cause: " + t.getMessage());
+            }
+        }
     }
 
     private void reloadGlobalCacheIfNeeded() {
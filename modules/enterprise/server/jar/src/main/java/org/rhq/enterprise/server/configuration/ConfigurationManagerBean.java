@@ -42,6 +42,7 @@ import javax.xml.bind.annotation.adapters.XmlJavaTypeAdapter;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.hibernate.Hibernate;
+import org.jboss.annotation.IgnoreDependency;
 import org.jetbrains.annotations.Nullable;
 import org.quartz.JobDataMap;
 import org.quartz.JobDetail;
@@ -93,6 +94,7 @@ import org.rhq.core.domain.resource.ResourceErrorType;
 import org.rhq.core.domain.resource.ResourceType;
 import org.rhq.core.domain.resource.composite.ResourceComposite;
 import org.rhq.core.domain.resource.group.GroupCategory;
+import org.rhq.core.domain.resource.group.GroupDefinitionChangeType;
 import org.rhq.core.domain.resource.group.ResourceGroup;
 import org.rhq.core.domain.resource.group.composite.ResourceGroupComposite;
 import org.rhq.core.domain.util.OrderingField;
@@ -124,6 +126,7 @@ import org.rhq.enterprise.server.resource.ResourceNotFoundException;
 import org.rhq.enterprise.server.resource.group.ResourceGroupManagerLocal;
 import org.rhq.enterprise.server.resource.group.ResourceGroupNotFoundException;
 import org.rhq.enterprise.server.resource.group.ResourceGroupUpdateException;
+import org.rhq.enterprise.server.resource.group.definition.GroupDefinitionManagerLocal;
 import org.rhq.enterprise.server.scheduler.SchedulerLocal;
 import org.rhq.enterprise.server.system.ServerVersion;
 import org.rhq.enterprise.server.util.CriteriaQueryGenerator;
@@ -161,6 +164,9 @@ public class ConfigurationManagerBean implements ConfigurationManagerLocal, Conf
     private SchedulerLocal scheduler;
     @EJB
     private SubjectManagerLocal subjectManager;
+    @EJB
+    @IgnoreDependency
+    private GroupDefinitionManagerLocal groupDefinitionManager;
 
     @Nullable
     public @XmlJavaTypeAdapter(ConfigurationAdapter.class)
@@ -226,6 +232,7 @@ public class ConfigurationManagerBean implements ConfigurationManagerLocal, Conf
             update.setStatus(ConfigurationUpdateStatus.SUCCESS);
 
             resource.setConnected(true);
+            groupDefinitionManager.recordChange(GroupDefinitionChangeType.PLUGIN_CONFIGURATION);
 
             removeAnyExistingInvalidPluginConfigurationErrors(resource);
             // Flush before merging to ensure the update has been persisted and avoid StaleStateExceptions.
@@ -1430,6 +1437,9 @@ public class ConfigurationManagerBean implements ConfigurationManagerLocal, Conf
         }
 
         entityManager.persist(newUpdateRequest);
+        if (newStatus == ConfigurationUpdateStatus.SUCCESS) {
+            groupDefinitionManager.recordChange(GroupDefinitionChangeType.RESOURCE_CONFIGURATION);
+        }
         if (current != null) {
             if (newStatus == ConfigurationUpdateStatus.SUCCESS) {
                 // If this is the first configuration update since the resource was imported, don't alert
@@ -1478,6 +1488,7 @@ public class ConfigurationManagerBean implements ConfigurationManagerLocal, Conf
             // link to the newer, persisted configuration object
             Resource resource = update.getResource();
             resource.setResourceConfiguration(update.getConfiguration().deepCopyWithoutProxies());
+            groupDefinitionManager.recordChange(GroupDefinitionChangeType.RESOURCE_CONFIGURATION);
             notifyAlertConditionCacheManager("completeResourceConfigurationUpdate", update);
         }
 
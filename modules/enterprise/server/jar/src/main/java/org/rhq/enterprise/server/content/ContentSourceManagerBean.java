@@ -26,6 +26,7 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.security.DigestInputStream;
 import java.sql.Blob;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
@@ -141,6 +142,9 @@ public class ContentSourceManagerBean implements ContentSourceManagerLocal {
      */
     public static final String FILESYSTEM_PROPERTY = "rhq.server.content.filesystem";
 
+    // suffix of the temporary file package bits are downloaded to before they are verified and renamed
+    private static final String PARTIAL_DOWNLOAD_SUFFIX = ".part";
+
     private final Log log = LogFactory.getLog(ContentSourceManagerBean.class);
 
     @PersistenceContext(unitName = RHQConstants.PERSISTENCE_UNIT_NAME)
@@ -845,6 +849,12 @@ public class ContentSourceManagerBean implements ContentSourceManagerLocal {
                 pv.setPackageBits(packageBits); // associate the entities
                 entityManager.flush(); // may not be necessary
 
+                // calculate the digest while the bits are streamed so we never store bits we can't verify
+                MessageDigestGenerator digestGenerator = getDigestGenerator(pv);
+                if (digestGenerator != null) {
+                    bitsStream = new DigestInputStream(bitsStream, digestGenerator.getMessageDigest());
+                }
+
                 if (pk.getContentSource().getDownloadMode() == DownloadMode.DATABASE) {
                     conn = dataSource.getConnection();
                     // The blob has been initialized to EMPTY_BLOB already by createPackageBits...
@@ -861,6 +871,7 @@ public class ContentSourceManagerBean implements ContentSourceManagerLocal {
                             Blob blb = rs.getBlob(1);
 
                             StreamUtil.copy(bitsStream, blb.setBinaryStream(1), true);
+                            verifyDigest(digestGenerator, pv, packageVersionLocation);
                             ps2 = conn.prepareStatement("UPDATE " + PackageBits.TABLE_NAME
                                 + " SET bits = ? where id = ?");
                             ps2.setBlob(1, blb);
@@ -902,8 +913,23 @@ public class ContentSourceManagerBean implements ContentSourceManagerLocal {
                         download = true;
                     }
                     if (download) {
-                        StreamUtil.copy(bitsStream, new FileOutputStream(outputFile), true);
+                        // download to a temporary file first, so an interrupted download never leaves behind a
+                        // partial file under the name of the real one
+                        File partFile = new File(outputFile.getPath() + PARTIAL_DOWNLOAD_SUFFIX);
+                        StreamUtil.copy(bitsStream, new FileOutputStream(partFile), true);
                         bitsStream = null;
+                        try {
+                            verifyDigest(digestGenerator, pv, packageVersionLocation);
+                        } catch (Exception e) {
+                            partFile.delete();
+                            throw e;
+                        }
+                        outputFile.delete();
+                        if (!partFile.renameTo(outputFile)) {
+                            partFile.delete();
+                            throw new Exception("Cannot rename downloaded package bits [" + partFile + "] to ["
+                                + outputFile + "]");
+                        }
                     }
 
                 }
@@ -953,6 +979,60 @@ public class ContentSourceManagerBean implements ContentSourceManagerLocal {
         return packageBits;
     }
 
+    /**
+     * Returns a generator for the strongest digest the package version declares, or null if it declares none that can
+     * be verified. Despite its name, the SHA256 property holds whatever checksum the content source declared (yum
+     * repositories, for one, also declare SHA-1 checksums), so its algorithm is told by the length of the digest.
+     */
+    static MessageDigestGenerator getDigestGenerator(PackageVersion pv) {
+        String algorithm = getDigestAlgorithm(pv.getSHA256());
+        if (algorithm != null) {
+            return new MessageDigestGenerator(algorithm);
+        } else if (pv.getMD5() != null) {
+            return new MessageDigestGenerator(MessageDigestGenerator.MD5);
+        }
+        return null;
+    }
+
+    /**
+     * Returns the algorithm of the given hex encoded digest, or null if there is no digest or its length is not that
+     * of a known algorithm.
+     */
+    static String getDigestAlgorithm(String digest) {
+        if (digest == null) {
+            return null;
+        }
+
+        switch (digest.trim().length()) {
+        case 32:
+            return MessageDigestGenerator.MD5;
+        case 40:
+            return "SHA-1";
+        case 64:
+            return MessageDigestGenerator.SHA_256;
+        case 128:
+            return "SHA-512";
+        default:
+            return null;
+        }
+    }
+
+    static void verifyDigest(MessageDigestGenerator digestGenerator, PackageVersion pv, String location)
+        throws Exception {
+        if (digestGenerator == null) {
+            return;
+        }
+
+        String algorithm = digestGenerator.getMessageDigest().getAlgorithm();
+        String expected = algorithm.equals(getDigestAlgorithm(pv.getSHA256())) ? pv.getSHA256() : pv.getMD5();
+        String actual = digestGenerator.getDigestString();
+        if (!expected.trim().equalsIgnoreCase(actual)) {
+            throw new Exception("Package bits downloaded from [" + location + "] for [" + pv
+                + "] are corrupt. Expected " + algorithm + "=[" + expected + "], actual " + algorithm + "=[" + actual
+                + "]");
+        }
+    }
+
     /**
      * This creates a new PackageBits entity initialized to EMPTY_BLOB for the associated PackageBitsBlob.
      * Note that PackageBits and PackageBitsBlob are two entities that *share* the same db row.  This is
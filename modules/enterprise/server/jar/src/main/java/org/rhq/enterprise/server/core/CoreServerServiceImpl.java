@@ -49,6 +49,7 @@ import org.rhq.core.domain.cloud.composite.FailoverListComposite;
 import org.rhq.core.domain.plugin.Plugin;
 import org.rhq.core.domain.resource.Agent;
 import org.rhq.core.util.exception.WrappedRemotingException;
+import org.rhq.core.util.file.ZipDelta;
 import org.rhq.enterprise.communications.command.client.RemoteInputStream;
 import org.rhq.enterprise.server.alert.engine.AlertConditionCacheManagerLocal;
 import org.rhq.enterprise.server.auth.SubjectManagerLocal;
@@ -57,6 +58,7 @@ import org.rhq.enterprise.server.cloud.PartitionEventManagerLocal;
 import org.rhq.enterprise.server.cloud.instance.ServerManagerLocal;
 import org.rhq.enterprise.server.core.comm.ServerCommunicationsServiceMBean;
 import org.rhq.enterprise.server.core.comm.ServerCommunicationsServiceUtil;
+import org.rhq.enterprise.server.core.plugin.PluginDeltaCache;
 import org.rhq.enterprise.server.util.LookupUtil;
 
 /**
@@ -304,6 +306,35 @@ public class CoreServerServiceImpl implements CoreServerService {
         }
     }
 
+    /**
+     * @see CoreServerService#getPluginArchiveDelta(String, ZipDelta.Signature)
+     */
+    public byte[] getPluginArchiveDelta(String pluginName, ZipDelta.Signature currentSignature) {
+        EntityManager em = null;
+        Plugin plugin;
+
+        try {
+            em = LookupUtil.getEntityManager();
+            Query q = em.createNamedQuery(Plugin.QUERY_FIND_BY_NAME);
+            q.setParameter("name", pluginName);
+            plugin = (Plugin) q.getSingleResult();
+        } finally {
+            if (em != null) {
+                em.close();
+            }
+        }
+
+        try {
+            File pluginFile = getAgentFile(new File("rhq-plugins", plugin.getPath()).getPath());
+            return PluginDeltaCache.getInstance().getDelta(plugin, pluginFile, currentSignature);
+        } catch (Exception e) {
+            // the agent can still download the full plugin jar
+            log.warn("Failed to compute the delta for plugin [" + pluginName + "] from [" + currentSignature.getMd5()
+                + "]: " + e);
+            return null;
+        }
+    }
+
     /**
      * @see CoreServerService#getFileContents(String)
      */
@@ -316,20 +347,7 @@ public class CoreServerServiceImpl implements CoreServerService {
         }
 
         try {
-            ServerCommunicationsServiceMBean sc = ServerCommunicationsServiceUtil.getService();
-
-            String dir = sc.getConfiguration().getAgentFilesDirectory();
-            File file_to_stream = new File(dir, file);
-
-            // Make sure file_to_stream exists - its possible another server deployed this
-            // but our server hasn't had a chance to download it from the database yet.
-            // If this file does not exist, we need to immediately perform an agent scan
-            // which will pull down the plugin file from the database.
-            if (!file_to_stream.exists()) {
-                log.debug("Agent is asking for a plugin that isn't on file system [" + file_to_stream
-                    + "] - performing plugin scan");
-                LookupUtil.getPluginDeploymentScanner().scan();
-            }
+            File file_to_stream = getAgentFile(file);
 
             FileInputStream fis = new FileInputStream(file_to_stream);
             BufferedInputStream bis = new BufferedInputStream(fis, 1024 * 32);
@@ -341,6 +359,28 @@ public class CoreServerServiceImpl implements CoreServerService {
         }
     }
 
+    /**
+     * Returns the given file, located relative to the agent files location.
+     */
+    private File getAgentFile(String file) throws Exception {
+        ServerCommunicationsServiceMBean sc = ServerCommunicationsServiceUtil.getService();
+
+        String dir = sc.getConfiguration().getAgentFilesDirectory();
+        File agent_file = new File(dir, file);
+
+        // Make sure agent_file exists - its possible another server deployed this
+        // but our server hasn't had a chance to download it from the database yet.
+        // If this file does not exist, we need to immediately perform an agent scan
+        // which will pull down the plugin file from the database.
+        if (!agent_file.exists()) {
+            log.debug("Agent is asking for a plugin that isn't on file system [" + agent_file
+                + "] - performing plugin scan");
+            LookupUtil.getPluginDeploymentScanner().scan();
+        }
+
+        return agent_file;
+    }
+
     /**
      * @see CoreServerService#agentIsShuttingDown(String)
      */
@@ -0,0 +1,174 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2011 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package org.rhq.enterprise.server.core.plugin;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.rhq.core.domain.plugin.Plugin;
+import org.rhq.core.util.file.ZipDelta;
+
+/**
+ * Caches the deltas agents are sent to update their plugin jars. When a new version of a plugin is deployed, all the
+ * agents have the same old version of it, so the delta from that old version is computed once (even if all the
+ * agents ask for it at the same time) and then served from memory.
+ * <p/>
+ * Deltas are keyed on the plugin name and the MD5s of the old and new plugin jars. The cache is limited to
+ * <code>rhq.server.plugin-delta-cache.max-size</code> bytes (50MB by default); the least recently used deltas are
+ * evicted first. A delta is only used if it is smaller than <code>rhq.server.plugin-delta.max-ratio</code> percent
+ * (75 by default) of the plugin jar, otherwise agents are told to download the whole plugin jar.
+ */
+public class PluginDeltaCache {
+
+    private static final long MAX_SIZE = Long.parseLong(System.getProperty("rhq.server.plugin-delta-cache.max-size",
+        String.valueOf(50L * 1024 * 1024)));
+
+    private static final int MAX_RATIO = Integer.parseInt(System.getProperty("rhq.server.plugin-delta.max-ratio",
+        "75"));
+
+    private static final byte[] NO_DELTA = new byte[0];
+
+    private static final PluginDeltaCache INSTANCE = new PluginDeltaCache();
+
+    private final Log log = LogFactory.getLog(PluginDeltaCache.class);
+
+    private final long maxSize;
+    private final int maxRatio;
+    private final LinkedHashMap<String, byte[]> deltas = new LinkedHashMap<String, byte[]>(16, 0.75f, true);
+    private final Map<String, FutureTask<byte[]>> computing = new HashMap<String, FutureTask<byte[]>>();
+    private long size = 0L;
+
+    public static PluginDeltaCache getInstance() {
+        return INSTANCE;
+    }
+
+    private PluginDeltaCache() {
+        this(MAX_SIZE, MAX_RATIO);
+    }
+
+    /**
+     * @param maxSize the number of bytes of deltas to keep
+     * @param maxRatio the percentage of the size of a plugin jar its delta must stay below to be used
+     */
+    PluginDeltaCache(long maxSize, int maxRatio) {
+        this.maxSize = maxSize;
+        this.maxRatio = maxRatio;
+    }
+
+    /**
+     * Returns the delta that turns the plugin jar with the given signature into the given plugin's jar file.
+     *
+     * @param plugin the latest version of the plugin
+     * @param pluginFile the plugin's jar file
+     * @param signature the signature of the old plugin jar
+     *
+     * @return the delta, or <code>null</code> if there is no delta worth sending
+     *
+     * @throws Exception if the delta could not be computed
+     */
+    public byte[] getDelta(final Plugin plugin, final File pluginFile, final ZipDelta.Signature signature)
+        throws Exception {
+        if (signature.getMd5().equals(plugin.getMd5())) {
+            return null; // nothing to update
+        }
+
+        String key = plugin.getName() + '|' + signature.getMd5() + '|' + plugin.getMd5();
+        FutureTask<byte[]> task;
+        boolean compute = false;
+
+        synchronized (this) {
+            byte[] delta = this.deltas.get(key);
+            if (delta != null) {
+                return (delta == NO_DELTA) ? null : delta;
+            }
+
+            task = this.computing.get(key);
+            if (task == null) {
+                task = new FutureTask<byte[]>(new Callable<byte[]>() {
+                    public byte[] call() throws Exception {
+                        return computeDelta(plugin, pluginFile, signature);
+                    }
+                });
+                this.computing.put(key, task);
+                compute = true;
+            }
+        }
+
+        if (compute) {
+            task.run();
+            synchronized (this) {
+                this.computing.remove(key);
+                try {
+                    put(key, task.get());
+                } catch (ExecutionException e) {
+                    // not cached, the next agent asking will try again
+                }
+            }
+        }
+
+        try {
+            byte[] delta = task.get();
+            return (delta == NO_DELTA) ? null : delta;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw (cause instanceof Exception) ? (Exception) cause : e;
+        }
+    }
+
+    byte[] computeDelta(Plugin plugin, File pluginFile, ZipDelta.Signature signature) throws Exception {
+        long start = System.currentTimeMillis();
+        byte[] delta = ZipDelta.createDelta(signature, pluginFile, plugin.getMd5());
+        long jarSize = pluginFile.length();
+
+        if (delta.length * 100L > jarSize * this.maxRatio) {
+            log.info("Delta for plugin [" + plugin.getName() + "] from [" + signature.getMd5() + "] is " + delta.length
+                + " bytes, not small enough compared to the " + jarSize + " bytes of the plugin jar to be used");
+            return NO_DELTA;
+        }
+
+        log.info("Computed " + delta.length + " byte delta for plugin [" + plugin.getName() + "] from ["
+            + signature.getMd5() + "] to [" + plugin.getMd5() + "] (plugin jar is " + jarSize + " bytes) in "
+            + (System.currentTimeMillis() - start) + "ms");
+        return delta;
+    }
+
+    private void put(String key, byte[] delta) {
+        if (delta.length > this.maxSize) {
+            return;
+        }
+
+        this.deltas.put(key, delta);
+        this.size += delta.length;
+
+        // evict the least recently used deltas
+        for (Iterator<byte[]> i = this.deltas.values().iterator(); i.hasNext() && this.size > this.maxSize;) {
+            this.size -= i.next().length;
+            i.remove();
+        }
+    }
+}
@@ -40,6 +40,7 @@ import javax.security.auth.login.LoginException;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.jboss.annotation.IgnoreDependency;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
@@ -63,6 +64,7 @@ import org.rhq.core.domain.resource.ResourceCategory;
 import org.rhq.core.domain.resource.ResourceError;
 import org.rhq.core.domain.resource.ResourceErrorType;
 import org.rhq.core.domain.resource.ResourceType;
+import org.rhq.core.domain.resource.group.GroupDefinitionChangeType;
 import org.rhq.core.domain.util.PageControl;
 import org.rhq.core.domain.util.PageList;
 import org.rhq.core.domain.util.PageOrdering;
@@ -81,6 +83,7 @@ import org.rhq.enterprise.server.resource.ResourceAvailabilityManagerLocal;
 import org.rhq.enterprise.server.resource.ResourceManagerLocal;
 import org.rhq.enterprise.server.resource.ResourceTypeManagerLocal;
 import org.rhq.enterprise.server.resource.group.ResourceGroupManagerLocal;
+import org.rhq.enterprise.server.resource.group.definition.GroupDefinitionManagerLocal;
 import org.rhq.enterprise.server.resource.metadata.PluginManagerLocal;
 import org.rhq.enterprise.server.system.SystemManagerLocal;
 
@@ -122,6 +125,10 @@ public class DiscoveryBossBean implements DiscoveryBossLocal, DiscoveryBossRemot
     @EJB
     private PluginManagerLocal pluginManager;
 
+    @EJB
+    @IgnoreDependency
+    private GroupDefinitionManagerLocal groupDefinitionManager;
+
     public ResourceSyncInfo mergeInventoryReport(InventoryReport report) throws InvalidInventoryReportException {
         validateInventoryReport(report);
 
@@ -177,6 +184,12 @@ public class DiscoveryBossBean implements DiscoveryBossLocal, DiscoveryBossRemot
             }
         }
 
+        if (!roots.isEmpty()) {
+            // merged resources may have been added, renamed, re-versioned or had their plugin configuration changed
+            groupDefinitionManager.recordChange(GroupDefinitionChangeType.INVENTORY);
+            groupDefinitionManager.recordChange(GroupDefinitionChangeType.PLUGIN_CONFIGURATION);
+        }
+
         // Prepare the ResourceSyncInfo tree which contains all the info the PC needs to sync itself up with us.
         Resource platform = this.resourceManager.getPlatform(knownAgent);
 
@@ -324,6 +337,7 @@ public class DiscoveryBossBean implements DiscoveryBossLocal, DiscoveryBossRemot
         for (Resource server : servers) {
             resourceManager.setResourceStatus(user, server, status, true);
         }
+        groupDefinitionManager.recordChange(GroupDefinitionChangeType.INVENTORY);
         if (status == InventoryStatus.COMMITTED) {
             List<Integer> allResourceIds = new ArrayList<Integer>();
             for (Resource platform : platforms) {
@@ -425,6 +439,7 @@ public class DiscoveryBossBean implements DiscoveryBossLocal, DiscoveryBossRemot
             boolean changed = updateResourceVersion(existingResource, version);
             if (changed) {
                 this.entityManager.merge(existingResource);
+                groupDefinitionManager.recordChange(GroupDefinitionChangeType.INVENTORY);
             }
             return true;
         } else {
@@ -760,6 +775,8 @@ public class DiscoveryBossBean implements DiscoveryBossLocal, DiscoveryBossRemot
                 } else {
                     existingResource.setParentResource(Resource.ROOT);
                 }
+                resourceManager.moveResourceClosure(existingResource.getId(),
+                    (updatedParent != Resource.ROOT) ? updatedParent.getId() : Resource.ROOT_ID);
                 // now that the parent has been established, update the lineage. Note that this method will
                 // recurse on the children, so update only this resource and let the children be handled by
                 // the recursion.
@@ -840,6 +857,9 @@ public class DiscoveryBossBean implements DiscoveryBossLocal, DiscoveryBossRemot
         // Add a product version entry for the new resource.
         addProductVersionsRecursively(resource);
 
+        // link the new subtree into the hierarchy closure before anything queries it
+        resourceManager.addResourceClosure(resource);
+
         if (parentResource != null) {
             groupManager.updateImplicitGroupMembership(subjectManager.getOverlord(), resource);
         }
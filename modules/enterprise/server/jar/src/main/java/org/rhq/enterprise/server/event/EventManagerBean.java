@@ -89,7 +89,7 @@ public class EventManagerBean implements EventManagerLocal, EventManagerRemote {
         + "SELECT (SELECT id FROM RHQ_Event_Def WHERE name = ? AND resource_type_id = (SELECT id FROM RHQ_Resource_Type WHERE name = ? AND plugin = ?)), ?, ? FROM RHQ_Numbers WHERE i = 42 "
         + "AND NOT EXISTS (SELECT * FROM RHQ_Event_Source WHERE event_def_id = (SELECT id FROM RHQ_Event_Def WHERE name = ? AND resource_type_id = (SELECT id FROM RHQ_Resource_Type WHERE name = ? AND plugin = ?)) AND resource_id = ? AND location = ?)";
 
-    private static final String EVENT_INSERT_STMT = "INSERT INTO RHQ_Event (id, event_source_id, timestamp, severity, detail) "
+    private static final String EVENT_INSERT_STMT = "INSERT INTO %s (id, event_source_id, timestamp, severity, detail) "
         + "VALUES (%s, (SELECT id FROM RHQ_Event_Source WHERE event_def_id = (SELECT id FROM RHQ_Event_Def WHERE name = ? AND resource_type_id = (SELECT id FROM RHQ_Resource_Type WHERE name = ? AND plugin = ?)) AND resource_id = ? AND location = ?), ?, ?, ?)";
 
     private static final String EVENT_INSERT_STMT_AUTOINC = "INSERT INTO RHQ_Event (event_source_id, timestamp, severity, detail) "
@@ -154,22 +154,25 @@ public class EventManagerBean implements EventManagerLocal, EventManagerRemote {
                 JDBCUtil.safeClose(ps);
             }
 
-            if (dbType instanceof PostgresqlDatabaseType || dbType instanceof OracleDatabaseType
-                || dbType instanceof H2DatabaseType) {
-                String nextvalSql = JDBCUtil.getNextValSql(conn, Event.TABLE_NAME);
-                statementSql = String.format(EVENT_INSERT_STMT, nextvalSql);
-            } else if (dbType instanceof SQLServerDatabaseType) {
-                statementSql = EVENT_INSERT_STMT_AUTOINC;
-            } else {
-                throw new IllegalArgumentException("Unknown database type, can't continue: " + dbType);
-            }
+            String nextvalSql = (dbType instanceof SQLServerDatabaseType) ? null : JDBCUtil.getNextValSql(conn,
+                Event.TABLE_NAME);
+            boolean partitioned = EventPartitionUtility.isSupported(dbType);
 
-            // Then insert the "values" (i.e. the Events).
-            ps = conn.prepareStatement(statementSql);
+            // Then insert the "values" (i.e. the Events), into the partition matching their time if partitioned.
+            Map<String, PreparedStatement> statements = new HashMap<String, PreparedStatement>();
             try {
                 for (EventSource eventSource : events.keySet()) {
                     Set<Event> eventData = events.get(eventSource);
                     for (Event event : eventData) {
+                        String table = partitioned ? EventPartitionUtility.getInsertTable(conn, event.getTimestamp())
+                            : Event.TABLE_NAME;
+                        ps = statements.get(table);
+                        if (ps == null) {
+                            statementSql = (nextvalSql != null) ? String.format(EVENT_INSERT_STMT, table, nextvalSql)
+                                : EVENT_INSERT_STMT_AUTOINC;
+                            ps = conn.prepareStatement(statementSql);
+                            statements.put(table, ps);
+                        }
                         int paramIndex = 1;
                         ps.setString(paramIndex++, eventSource.getEventDefinition().getName());
                         ps.setString(paramIndex++, eventSource.getEventDefinition().getResourceType().getName());
@@ -178,16 +181,20 @@ public class EventManagerBean implements EventManagerLocal, EventManagerRemote {
                         ps.setString(paramIndex++, eventSource.getLocation());
                         ps.setLong(paramIndex++, event.getTimestamp());
                         ps.setString(paramIndex++, event.getSeverity().toString());
-                        ps.setString(paramIndex++, event.getDetail());
+                        ps.setString(paramIndex++, getDetailWithOccurrences(event));
                         ps.addBatch();
                     }
 
                     notifyAlertConditionCacheManager("addEventData", eventSource, eventData.toArray(new Event[eventData
                         .size()]));
                 }
-                ps.executeBatch();
+                for (PreparedStatement statement : statements.values()) {
+                    statement.executeBatch();
+                }
             } finally {
-                JDBCUtil.safeClose(ps);
+                for (PreparedStatement statement : statements.values()) {
+                    JDBCUtil.safeClose(statement);
+                }
             }
 
         } catch (Throwable t) {
@@ -206,6 +213,25 @@ public class EventManagerBean implements EventManagerLocal, EventManagerRemote {
         }
     }
 
+    /**
+     * Returns the detail to store for the given event; if the agent folded repeats into it, a line stating how often
+     * and until when the event repeated is appended, truncating the original detail if needed to make room for it.
+     */
+    private String getDetailWithOccurrences(Event event) {
+        String detail = event.getDetail();
+        if (event.getOccurrences() <= 1) {
+            return detail;
+        }
+
+        String occurrences = "\n[Occurred " + event.getOccurrences() + " times, last at "
+            + new Date(event.getLastTimestamp()) + "]";
+        int maxDetailLength = Event.DETAIL_MAX_LENGTH - occurrences.length();
+        if (detail.length() > maxDetailLength) {
+            detail = detail.substring(0, maxDetailLength);
+        }
+        return detail + occurrences;
+    }
+
     private void notifyAlertConditionCacheManager(String callingMethod, EventSource source, Event... events) {
         AlertConditionCacheStats stats = alertConditionCacheManager.checkConditions(source, events);
 
@@ -215,10 +241,30 @@ public class EventManagerBean implements EventManagerLocal, EventManagerRemote {
     @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
     @TransactionTimeout(6 * 60 * 60)
     public int purgeEventData(Date deleteUpToTime) throws SQLException {
+        long startTime = System.currentTimeMillis();
+        int deleted = 0;
+
+        Connection conn = null;
+        try {
+            conn = rhqDs.getConnection();
+            if (EventPartitionUtility.isSupported(DatabaseTypeFactory.getDatabaseType(conn))) {
+                // whole partitions go at once, only what's left of the partition straddling the cutoff is deleted
+                int dropped = EventPartitionUtility.dropPartitions(conn, deleteUpToTime.getTime());
+                if (dropped > 0) {
+                    log.info("Dropped [" + dropped + "] event partitions");
+                }
+                int created = EventPartitionUtility.createPartitions(conn, startTime);
+                if (created > 0) {
+                    log.info("Created [" + created + "] event partitions");
+                }
+            }
+        } finally {
+            JDBCUtil.safeClose(conn);
+        }
+
         Query q = entityManager.createQuery("DELETE FROM Event e WHERE e.timestamp < :cutOff");
         q.setParameter("cutOff", deleteUpToTime.getTime());
-        long startTime = System.currentTimeMillis();
-        int deleted = q.executeUpdate();
+        deleted += q.executeUpdate();
         MeasurementMonitor.getMBean().incrementPurgeTime(System.currentTimeMillis() - startTime);
         MeasurementMonitor.getMBean().setPurgedEvents(deleted);
         return deleted;
@@ -54,10 +54,11 @@ public interface EventManagerLocal {
     void addEventData(Map<EventSource, Set<Event>> events);
 
     /**
-     * Deletes event data older than the specified time.
+     * Deletes event data older than the specified time. Where events are partitioned by time, this drops the
+     * partitions holding only older events, and creates the partitions for the upcoming events.
      *
      * @param deleteUpToTime event data older than this time will be deleted
-     * @return number of deleted Events
+     * @return number of deleted Events, not counting the events dropped along with their partitions
      */
     int purgeEventData(Date deleteUpToTime) throws SQLException;
 
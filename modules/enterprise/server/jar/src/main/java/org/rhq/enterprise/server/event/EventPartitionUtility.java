@@ -0,0 +1,207 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2011 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package org.rhq.enterprise.server.event;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collections;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.rhq.core.db.DatabaseType;
+import org.rhq.core.db.PostgresqlDatabaseType;
+import org.rhq.core.domain.event.Event;
+import org.rhq.core.util.jdbc.JDBCUtil;
+
+/**
+ * Manages the time partitions of the event table. On Postgres, events are stored in child tables of RHQ_EVENT (one
+ * per day of event time, created ahead of time by the data purge job) whose CHECK constraints state the time range
+ * they hold. Queries keep going against RHQ_EVENT, which includes its children, and the planner skips every partition
+ * outside the time range of the query; purging drops whole partitions instead of deleting their rows one by one.
+ * <p/>
+ * Events that fall outside of the existing partitions - including all events stored before partitioning was in
+ * place - go into RHQ_EVENT itself, and are purged by deleting them as before. On the other databases all events
+ * always go into RHQ_EVENT.
+ * <p/>
+ * Like MeasurementDataManagerUtility, this is purposefully not TimeZone sensitive: a partition holds a day of UTC time.
+ */
+public class EventPartitionUtility {
+    private static final Log LOG = LogFactory.getLog(EventPartitionUtility.class);
+
+    private static final boolean ENABLED = Boolean.parseBoolean(System.getProperty(
+        "rhq.server.event-partitions.enabled", "true"));
+
+    public static final long MILLISECONDS_PER_PARTITION = 1000L * 60 * 60 * 24;
+
+    // the data purge job runs hourly, so this leaves plenty of time for the next partition to be created
+    public static final int PARTITIONS_AHEAD = 2;
+
+    private static final String PARTITION_PREFIX = Event.TABLE_NAME + "_P";
+
+    // how long a server trusts its list of partitions, which another server in the cloud may have changed
+    private static final long PARTITION_LIST_MAX_AGE = 1000L * 60 * 5;
+
+    private static final String QUERY_FIND_PARTITIONS = "" //
+        + "SELECT child.relname " //
+        + "  FROM pg_inherits inh " //
+        + "  JOIN pg_class child ON child.oid = inh.inhrelid " //
+        + "  JOIN pg_class parent ON parent.oid = inh.inhparent " //
+        + " WHERE parent.relname = ?";
+
+    private static Set<Long> partitions;
+    private static long partitionsLoadTime;
+
+    private EventPartitionUtility() {
+    }
+
+    public static boolean isSupported(DatabaseType dbType) {
+        return ENABLED && (dbType instanceof PostgresqlDatabaseType);
+    }
+
+    public static long getPartition(long timestamp) {
+        return timestamp / MILLISECONDS_PER_PARTITION;
+    }
+
+    public static String getPartitionTable(long partition) {
+        return PARTITION_PREFIX + partition;
+    }
+
+    /**
+     * Returns the table an event that occurred at the given time must be inserted into. Events older than the
+     * previous partition always go into RHQ_EVENT, so that an insert can never race with the purge dropping the
+     * partition it targets.
+     */
+    public static String getInsertTable(Connection conn, long timestamp) throws SQLException {
+        long partition = getPartition(timestamp);
+        if (partition < getPartition(System.currentTimeMillis()) - 1) {
+            return Event.TABLE_NAME;
+        }
+        return getPartitions(conn).contains(partition) ? getPartitionTable(partition) : Event.TABLE_NAME;
+    }
+
+    /**
+     * Makes sure the partitions for the current time and the next {@link #PARTITIONS_AHEAD} periods exist.
+     *
+     * @return the number of partitions created
+     */
+    public static int createPartitions(Connection conn, long now) throws SQLException {
+        Set<Long> existing = loadPartitions(conn);
+        int created = 0;
+        Statement stmt = null;
+        try {
+            stmt = conn.createStatement();
+            for (long partition = getPartition(now); partition <= getPartition(now) + PARTITIONS_AHEAD; partition++) {
+                if (existing.contains(partition)) {
+                    continue;
+                }
+                String table = getPartitionTable(partition);
+                long start = partition * MILLISECONDS_PER_PARTITION;
+                long end = start + MILLISECONDS_PER_PARTITION;
+
+                // constraints and indexes are not inherited, hence they are created for each partition
+                stmt.executeUpdate("CREATE TABLE " + table + " ( CHECK ( TIMESTAMP >= " + start + " AND TIMESTAMP < "
+                    + end + " ) ) INHERITS ( " + Event.TABLE_NAME + " )");
+                stmt.executeUpdate("ALTER TABLE " + table + " ADD CONSTRAINT " + table + "_PK PRIMARY KEY ( ID )");
+                stmt.executeUpdate("ALTER TABLE " + table + " ADD CONSTRAINT " + table
+                    + "_SRC_FK FOREIGN KEY ( EVENT_SOURCE_ID ) REFERENCES RHQ_EVENT_SOURCE ( ID )");
+                stmt.executeUpdate("CREATE INDEX " + table + "_IDX ON " + table + " ( EVENT_SOURCE_ID, TIMESTAMP )");
+                created++;
+                LOG.debug("Created event partition [" + table + "]");
+            }
+        } finally {
+            JDBCUtil.safeClose(stmt);
+            resetPartitions();
+        }
+        return created;
+    }
+
+    /**
+     * Drops every partition that only holds events older than the given time, and that is older than the previous
+     * partition (see {@link #getInsertTable(Connection, long)}). The partitions are not counted before being dropped,
+     * since that would mean scanning the very rows dropping them avoids touching.
+     *
+     * @return the number of partitions dropped
+     */
+    public static int dropPartitions(Connection conn, long deleteUpToTime) throws SQLException {
+        long lastDroppable = Math.min(getPartition(deleteUpToTime) - 1, getPartition(System.currentTimeMillis()) - 2);
+        int dropped = 0;
+        Statement stmt = null;
+        try {
+            stmt = conn.createStatement();
+            for (long partition : loadPartitions(conn)) {
+                if (partition > lastDroppable) {
+                    break; // partitions are sorted
+                }
+                String table = getPartitionTable(partition);
+                stmt.executeUpdate("DROP TABLE " + table);
+                dropped++;
+                LOG.debug("Dropped event partition [" + table + "]");
+            }
+        } finally {
+            JDBCUtil.safeClose(stmt);
+            resetPartitions();
+        }
+        return dropped;
+    }
+
+    private static synchronized Set<Long> getPartitions(Connection conn) throws SQLException {
+        if (partitions == null || (System.currentTimeMillis() - partitionsLoadTime) > PARTITION_LIST_MAX_AGE) {
+            partitions = Collections.unmodifiableSet(loadPartitions(conn));
+            partitionsLoadTime = System.currentTimeMillis();
+        }
+        return partitions;
+    }
+
+    // also used by the tests, whose partitions are rolled back
+    static synchronized void resetPartitions() {
+        partitions = null;
+    }
+
+    private static Set<Long> loadPartitions(Connection conn) throws SQLException {
+        Set<Long> result = new TreeSet<Long>();
+        PreparedStatement ps = null;
+        ResultSet rs = null;
+        try {
+            // unquoted identifiers are folded to lower case by postgres
+            ps = conn.prepareStatement(QUERY_FIND_PARTITIONS);
+            ps.setString(1, Event.TABLE_NAME.toLowerCase());
+            rs = ps.executeQuery();
+            String prefix = PARTITION_PREFIX.toLowerCase();
+            while (rs.next()) {
+                String table = rs.getString(1);
+                if (table.startsWith(prefix)) {
+                    try {
+                        result.add(Long.valueOf(table.substring(prefix.length())));
+                    } catch (NumberFormatException e) {
+                        LOG.warn("Ignoring unexpected child table [" + table + "] of " + Event.TABLE_NAME);
+                    }
+                }
+            }
+        } finally {
+            JDBCUtil.safeClose(ps, rs);
+        }
+        return result;
+    }
+}
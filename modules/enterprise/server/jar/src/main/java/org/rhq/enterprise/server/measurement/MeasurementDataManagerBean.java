@@ -71,6 +71,7 @@ import org.rhq.core.domain.measurement.ui.MetricDisplaySummary;
 import org.rhq.core.domain.resource.Agent;
 import org.rhq.core.domain.resource.Resource;
 import org.rhq.core.domain.resource.ResourceType;
+import org.rhq.core.domain.resource.group.GroupDefinitionChangeType;
 import org.rhq.core.domain.resource.group.ResourceGroup;
 import org.rhq.core.domain.util.OrderingField;
 import org.rhq.core.domain.util.PageList;
@@ -91,6 +92,7 @@ import org.rhq.enterprise.server.jaxb.adapter.MeasurementDataNumericHighLowCompo
 import org.rhq.enterprise.server.measurement.instrumentation.MeasurementMonitor;
 import org.rhq.enterprise.server.measurement.util.MeasurementDataManagerUtility;
 import org.rhq.enterprise.server.resource.group.ResourceGroupManagerLocal;
+import org.rhq.enterprise.server.resource.group.definition.GroupDefinitionManagerLocal;
 import org.rhq.enterprise.server.util.CriteriaQueryGenerator;
 import org.rhq.enterprise.server.util.CriteriaQueryRunner;
 
@@ -147,6 +149,9 @@ public class MeasurementDataManagerBean implements MeasurementDataManagerLocal,
     @EJB
     @IgnoreDependency
     private MeasurementDefinitionManagerLocal measurementDefinitionManager;
+    @EJB
+    @IgnoreDependency
+    private GroupDefinitionManagerLocal groupDefinitionManager;
 
     // doing a bulk delete in here, need to be in its own tx
     @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
@@ -321,6 +326,14 @@ public class MeasurementDataManagerBean implements MeasurementDataManagerLocal,
                 // It is expected that some of these batch updates didn't update anything as the previous value was the same
             }
 
+            // only values that differ from the previous one are inserted, only those can affect DynaGroup membership
+            for (int insertCount : res) {
+                if (insertCount != 0) {
+                    groupDefinitionManager.recordChange(GroupDefinitionChangeType.TRAIT);
+                    break;
+                }
+            }
+
             notifyAlertConditionCacheManager("mergeMeasurementReport", data.toArray(new MeasurementData[data.size()]));
         } catch (SQLException e) {
             log.warn("Failure saving measurement trait data:\n" + ThrowableUtil.getAllMessages(e));
@@ -25,9 +25,17 @@ package org.rhq.enterprise.server.plugin.pc.content.sync;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -53,6 +61,7 @@ import org.rhq.enterprise.server.plugin.pc.content.PackageSyncReport;
 import org.rhq.enterprise.server.plugin.pc.content.SyncException;
 import org.rhq.enterprise.server.plugin.pc.content.SyncProgressWeight;
 import org.rhq.enterprise.server.plugin.pc.content.SyncTracker;
+import org.rhq.enterprise.server.util.LoggingThreadFactory;
 import org.rhq.enterprise.server.util.LookupUtil;
 
 /**
@@ -63,6 +72,12 @@ import org.rhq.enterprise.server.util.LookupUtil;
  */
 public class PackageSourceSynchronizer {
 
+    /**
+     * The maximum number of package bits downloaded concurrently for a single repo.
+     */
+    private static final int DOWNLOAD_THREADS = Integer.parseInt(System.getProperty(
+        "rhq.server.content.sync.download-threads", "4"));
+
     private final Log log = LogFactory.getLog(this.getClass());
 
     private ContentSourceManagerLocal contentSourceManager;
@@ -182,36 +197,66 @@ public class PackageSourceSynchronizer {
         tracker.getRepoSyncResults().appendResults(msg);
         tracker.setRepoSyncResults(repoManager.mergeRepoSyncResults(tracker.getRepoSyncResults()));
 
-        // Download the bits for each unloaded package version. Abort the entire download if we
-        // fail getting just one package.
+        // Download the bits for each unloaded package version, up to DOWNLOAD_THREADS at a time. Each package's
+        // bits are committed in their own transaction, so if one package fails we stop starting new downloads, let
+        // the ones in flight finish and abort; the next sync only loads the packages that are still unloaded, i.e.
+        // it resumes where this one left off.
 
         // Note: This can potentially take a very long time.
-        for (PackageVersionContentSource item : packageVersionContentSources) {
-            PackageVersionContentSourcePK pk = item.getPackageVersionContentSourcePK();
-
-            try {
-                log.info("Downloading package version [" + pk.getPackageVersion() + "] located at ["
-                    + item.getLocation() + "]" + "] from [" + pk.getContentSource() + "]...");
-
-                tracker.getRepoSyncResults().appendResults(
-                    "Downloading package version [" + pk.getPackageVersion() + "] located at [" + item.getLocation()
-                        + "]");
-                tracker.setRepoSyncResults(repoManager.mergeRepoSyncResults(tracker.getRepoSyncResults()));
-
-                overlord = subjectManager.getOverlord();
-                contentSourceManager.downloadPackageBits(overlord, item);
-
-                // Tick off each package as completed work 
-                tracker.getProgressWatcher().finishWork(sw.getPackageBitsWeight() * 1);
-                tracker.getRepoSyncResults().setPercentComplete(
-                    new Long(tracker.getProgressWatcher().getPercentComplete()));
-                tracker.setRepoSyncResults(repoManager.mergeRepoSyncResults(tracker.getRepoSyncResults()));
-            } catch (Exception e) {
-                String errorMsg = "Failed to load package bits for package version [" + pk.getPackageVersion()
-                    + "] from content source [" + pk.getContentSource() + "] at location [" + item.getLocation() + "]."
-                    + "No more packages will be downloaded for this content source.";
-                throw new SyncException(errorMsg, e);
+        int threads = Math.max(1, Math.min(DOWNLOAD_THREADS, packageVersionContentSources.size()));
+        ExecutorService executor = Executors.newFixedThreadPool(threads, new LoggingThreadFactory(
+            "PackageBitsDownloader", true));
+        CompletionService<PackageVersionContentSource> completionService;
+        completionService = new ExecutorCompletionService<PackageVersionContentSource>(executor);
+
+        Iterator<PackageVersionContentSource> toDownload = packageVersionContentSources.iterator();
+        SyncException failure = null;
+        int inFlight = 0;
+
+        try {
+            while (inFlight < threads && toDownload.hasNext()) {
+                submitDownload(completionService, toDownload.next());
+                inFlight++;
+            }
+
+            while (inFlight > 0) {
+                Future<PackageVersionContentSource> future = completionService.take();
+                inFlight--;
+
+                try {
+                    PackageVersionContentSource item = future.get();
+                    PackageVersionContentSourcePK pk = item.getPackageVersionContentSourcePK();
+
+                    // Tick off each package as completed work
+                    tracker.getRepoSyncResults().appendResults(
+                        "Downloaded package version [" + pk.getPackageVersion() + "] located at ["
+                            + item.getLocation() + "]");
+                    tracker.getProgressWatcher().finishWork(sw.getPackageBitsWeight() * 1);
+                    tracker.getRepoSyncResults().setPercentComplete(
+                        new Long(tracker.getProgressWatcher().getPercentComplete()));
+                    tracker.setRepoSyncResults(repoManager.mergeRepoSyncResults(tracker.getRepoSyncResults()));
+                } catch (ExecutionException e) {
+                    if (failure == null) {
+                        failure = (e.getCause() instanceof SyncException) ? (SyncException) e.getCause()
+                            : new SyncException("Failed to load package bits for repo [" + repo.getName() + "]", e
+                                .getCause());
+                    } else {
+                        log.error("Another package failed to download while aborting: " + e.getCause().getMessage());
+                    }
+                }
+
+                if (failure == null && toDownload.hasNext()) {
+                    submitDownload(completionService, toDownload.next());
+                    inFlight++;
+                }
             }
+        } finally {
+            // only interrupts the downloads if we are bailing out because we were interrupted ourselves
+            executor.shutdownNow();
+        }
+
+        if (failure != null) {
+            throw failure;
         }
 
         log.info("All package bits for content source [" + source.getName() + "] have been downloaded."
@@ -221,6 +266,28 @@ public class PackageSourceSynchronizer {
 
     }
 
+    private void submitDownload(CompletionService<PackageVersionContentSource> completionService,
+        final PackageVersionContentSource item) {
+        completionService.submit(new Callable<PackageVersionContentSource>() {
+            public PackageVersionContentSource call() throws SyncException {
+                PackageVersionContentSourcePK pk = item.getPackageVersionContentSourcePK();
+
+                try {
+                    log.info("Downloading package version [" + pk.getPackageVersion() + "] located at ["
+                        + item.getLocation() + "]" + "] from [" + pk.getContentSource() + "]...");
+
+                    contentSourceManager.downloadPackageBits(subjectManager.getOverlord(), item);
+                    return item;
+                } catch (Exception e) {
+                    String errorMsg = "Failed to load package bits for package version [" + pk.getPackageVersion()
+                        + "] from content source [" + pk.getContentSource() + "] at location [" + item.getLocation()
+                        + "]." + "No more packages will be downloaded for this content source.";
+                    throw new SyncException(errorMsg, e);
+                }
+            }
+        });
+    }
+
     /**
      * Translates the domain representation of a list of packages into DTOs used in the plugin APIs.
      * During the translation the two collections (allDetails and keyPVCSMap) will be populated with
@@ -106,6 +106,7 @@ import org.rhq.core.domain.resource.composite.ResourceLineageComposite;
 import org.rhq.core.domain.resource.composite.ResourceWithAvailability;
 import org.rhq.core.domain.resource.flyweight.FlyweightCache;
 import org.rhq.core.domain.resource.flyweight.ResourceFlyweight;
+import org.rhq.core.domain.resource.group.GroupDefinitionChangeType;
 import org.rhq.core.domain.resource.group.ResourceGroup;
 import org.rhq.core.domain.resource.group.composite.AutoGroupComposite;
 import org.rhq.core.domain.util.PageControl;
@@ -125,6 +126,7 @@ import org.rhq.enterprise.server.measurement.MeasurementScheduleManagerLocal;
 import org.rhq.enterprise.server.resource.disambiguation.DisambiguationUpdateStrategy;
 import org.rhq.enterprise.server.resource.disambiguation.Disambiguator;
 import org.rhq.enterprise.server.resource.group.ResourceGroupManagerLocal;
+import org.rhq.enterprise.server.resource.group.definition.GroupDefinitionManagerLocal;
 import org.rhq.enterprise.server.util.CriteriaQueryGenerator;
 import org.rhq.enterprise.server.util.CriteriaQueryRunner;
 import org.rhq.enterprise.server.util.QueryUtility;
@@ -140,6 +142,9 @@ import org.rhq.enterprise.server.util.QueryUtility;
 public class ResourceManagerBean implements ResourceManagerLocal, ResourceManagerRemote {
     private final Log log = LogFactory.getLog(ResourceManagerBean.class);
 
+    // no real resource hierarchy comes close; reaching it means the rebuild is not converging
+    private static final int MAX_RESOURCE_CLOSURE_DEPTH = 1000;
+
     @PersistenceContext(unitName = RHQConstants.PERSISTENCE_UNIT_NAME)
     private EntityManager entityManager;
 
@@ -160,6 +165,9 @@ public class ResourceManagerBean implements ResourceManagerLocal, ResourceManage
     @EJB
     @IgnoreDependency
     private MeasurementScheduleManagerLocal measurementScheduleManager;
+    @EJB
+    @IgnoreDependency
+    private GroupDefinitionManagerLocal groupDefinitionManager;
 
     public void createResource(Subject user, Resource resource, int parentId) throws ResourceAlreadyExistsException {
         Resource parent = null;
@@ -192,9 +200,11 @@ public class ResourceManagerBean implements ResourceManagerLocal, ResourceManage
 
         entityManager.persist(resource);
         log.debug("********* resource persisted ************");
+        addResourceClosure(resource);
         // Execute sub-methods as overlord to bypass additional security checks.
         Subject overlord = this.subjectManager.getOverlord();
         updateImplicitMembership(overlord, resource);
+        groupDefinitionManager.recordChange(GroupDefinitionChangeType.INVENTORY);
 
         // Because this resource is in the process of creation it has no measurement schedules
         // defined. These are needed before applying alert templates for the resource type.
@@ -241,6 +251,7 @@ public class ResourceManagerBean implements ResourceManagerLocal, ResourceManage
         // NOTE: Updating the mtime will tell the Agent it needs to sync this Resource.
         persistedResource.setMtime(System.currentTimeMillis());
         persistedResource.setModifiedBy(user.getName());
+        groupDefinitionManager.recordChange(GroupDefinitionChangeType.INVENTORY);
 
         return entityManager.merge(persistedResource);
     }
@@ -275,6 +286,8 @@ public class ResourceManagerBean implements ResourceManagerLocal, ResourceManage
             throw new PermissionException("You do not have permission to uninventory resource [" + resourceId + "]");
         }
 
+        authorizationManager.invalidatePermissionCache();
+
         // if the resource has no parent, its a top root resource and its agent should be purged too
         // test code does not always follow this rule, so catch and continue.
         Agent doomedAgent = null;
@@ -355,6 +368,7 @@ public class ResourceManagerBean implements ResourceManagerLocal, ResourceManage
             log.error("Tried to uninventory " + toBeDeletedResourceIds.size()
                 + " resources, but actually uninventoried " + resourcesDeleted);
         }
+        groupDefinitionManager.recordChange(GroupDefinitionChangeType.INVENTORY);
 
         // still need to tell the agent about the removed resources so it stops avail reports
         if (agentClient != null) {
@@ -451,7 +465,8 @@ public class ResourceManagerBean implements ResourceManagerLocal, ResourceManage
     private boolean uninventoryResourcesBulkDelete(Subject overlord, List<Integer> resourceIds) {
         String[] nativeQueriesToExecute = new String[] { //
         ResourceGroup.QUERY_DELETE_EXPLICIT_BY_RESOURCE_IDS, // unmap from explicit groups
-            ResourceGroup.QUERY_DELETE_IMPLICIT_BY_RESOURCE_IDS // unmap from implicit groups
+            ResourceGroup.QUERY_DELETE_IMPLICIT_BY_RESOURCE_IDS, // unmap from implicit groups
+            Resource.QUERY_DELETE_CLOSURE_BY_RESOURCE_IDS // unlink from the hierarchy closure
         };
 
         boolean hasErrors = false;
@@ -701,32 +716,123 @@ public class ResourceManagerBean implements ResourceManagerLocal, ResourceManage
         return parent;
     }
 
-    @Nullable
-    private Integer getParentResourceId(int resourceId) {
+    // lineage is a getXXX (not findXXX) because it logically returns a single object, but modeled as a list here
+    @SuppressWarnings("unchecked")
+    public List<Integer> getResourceIdLineage(int resourceId) {
+        Query query = entityManager.createNativeQuery(Resource.QUERY_NATIVE_FIND_CLOSURE_ANCESTOR_IDS);
+        query.setParameter(1, resourceId);
+        List<Number> ancestorIds = query.getResultList();
 
-        Query query = entityManager.createNamedQuery(Resource.QUERY_FIND_PARENT_ID);
-        query.setParameter("id", resourceId);
+        List<Integer> lineage = new ArrayList<Integer>(ancestorIds.size());
+        for (Number ancestorId : ancestorIds) {
+            lineage.add(ancestorId.intValue());
+        }
 
-        try {
-            return (Integer) query.getSingleResult();
-        } catch (NoResultException nre) {
-            // this is OK, no parent means this is a platform
-            return null;
+        return lineage;
+    }
+
+    public void addResourceClosure(Resource resource) {
+        // the closure statements are native, so the new resources must be visible to them
+        entityManager.flush();
+
+        Query insertSelfQuery = entityManager.createNativeQuery(Resource.QUERY_NATIVE_INSERT_CLOSURE_SELF);
+        Query insertAncestorsQuery = entityManager.createNativeQuery(Resource.QUERY_NATIVE_INSERT_CLOSURE_ANCESTORS);
+
+        // BFS so that a parent's rows always exist by the time its children copy them; the parent is taken from the
+        // walk itself rather than from getParentResource(), which for agent-reported children may be a detached copy
+        LinkedList<Resource> toBeLinked = new LinkedList<Resource>();
+        LinkedList<Integer> parentIds = new LinkedList<Integer>();
+        toBeLinked.add(resource);
+        parentIds.add((resource.getParentResource() != null) ? resource.getParentResource().getId()
+            : Resource.ROOT_ID);
+        while (!toBeLinked.isEmpty()) {
+            Resource next = toBeLinked.removeFirst();
+            int parentId = parentIds.removeFirst();
+
+            insertSelfQuery.setParameter(1, next.getId());
+            insertSelfQuery.executeUpdate();
+
+            if (parentId != Resource.ROOT_ID) {
+                insertAncestorsQuery.setParameter(1, next.getId());
+                insertAncestorsQuery.setParameter(2, parentId);
+                insertAncestorsQuery.executeUpdate();
+            }
+
+            for (Resource child : next.getChildResources()) {
+                toBeLinked.add(child);
+                parentIds.add(next.getId());
+            }
         }
     }
 
-    // lineage is a getXXX (not findXXX) because it logically returns a single object, but modeled as a list here
-    public List<Integer> getResourceIdLineage(int resourceId) {
-        List<Integer> lineage = new ArrayList<Integer>();
+    public void moveResourceClosure(int resourceId, int parentResourceId) {
+        if (parentResourceId != Resource.ROOT_ID) {
+            Query cycleQuery = entityManager.createNativeQuery(Resource.QUERY_NATIVE_COUNT_CLOSURE_LINK);
+            cycleQuery.setParameter(1, resourceId);
+            cycleQuery.setParameter(2, parentResourceId);
+            if (((Number) cycleQuery.getSingleResult()).intValue() > 0) {
+                // the new parent is the resource itself or one of its descendants; linking would make the closure
+                // cyclic, so leave it as it is - verifyResourceClosure() will report the hierarchy as inconsistent
+                log.warn("Not moving the closure of resource [" + resourceId + "] under resource ["
+                    + parentResourceId + "], which is one of its descendants");
+                return;
+            }
+        }
+
+        Query detachQuery = entityManager.createNativeQuery(Resource.QUERY_NATIVE_DETACH_CLOSURE_SUBTREE);
+        detachQuery.setParameter(1, resourceId);
+        detachQuery.setParameter(2, resourceId);
+        detachQuery.executeUpdate();
 
-        Integer child = resourceId;
-        Integer parent = null;
-        while ((parent = getParentResourceId(child)) != null) {
-            lineage.add(parent);
-            child = parent;
+        if (parentResourceId != Resource.ROOT_ID) {
+            Query attachQuery = entityManager.createNativeQuery(Resource.QUERY_NATIVE_ATTACH_CLOSURE_SUBTREE);
+            attachQuery.setParameter(1, parentResourceId);
+            attachQuery.setParameter(2, resourceId);
+            attachQuery.executeUpdate();
         }
+    }
 
-        return lineage;
+    public int verifyResourceClosure() {
+        // parent pointers must be current in the database before they are compared
+        entityManager.flush();
+
+        Query missingQuery = entityManager.createNativeQuery(Resource.QUERY_NATIVE_COUNT_CLOSURE_MISSING_LINKS);
+        int missing = ((Number) missingQuery.getSingleResult()).intValue();
+
+        Query staleQuery = entityManager.createNativeQuery(Resource.QUERY_NATIVE_COUNT_CLOSURE_STALE_LINKS);
+        int stale = ((Number) staleQuery.getSingleResult()).intValue();
+
+        if (missing > 0 || stale > 0) {
+            log.warn("Resource closure is inconsistent: " + missing + " resources are missing rows, " + stale
+                + " rows no longer match the resource hierarchy");
+        }
+
+        return missing + stale;
+    }
+
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public void rebuildResourceClosure() {
+        long start = System.currentTimeMillis();
+
+        entityManager.createNativeQuery(Resource.QUERY_NATIVE_DELETE_CLOSURE).executeUpdate();
+        int rows = entityManager.createNativeQuery(Resource.QUERY_NATIVE_INSERT_CLOSURE_ALL_SELF).executeUpdate();
+
+        Query levelQuery = entityManager.createNativeQuery(Resource.QUERY_NATIVE_INSERT_CLOSURE_LEVEL);
+        int depth = 0;
+        int inserted;
+        do {
+            if (depth == MAX_RESOURCE_CLOSURE_DEPTH) {
+                log.error("Stopped rebuilding the resource closure at depth " + depth
+                    + " - the resource hierarchy is either corrupt or unreasonably deep");
+                break;
+            }
+            levelQuery.setParameter(1, depth++);
+            inserted = levelQuery.executeUpdate();
+            rows += inserted;
+        } while (inserted > 0);
+
+        log.info("Rebuilt resource closure with " + rows + " rows for a hierarchy of depth " + (depth - 1) + " in "
+            + (System.currentTimeMillis() - start) + "ms");
     }
 
     // lineage is a getXXX (not findXXX) because it logically returns a single object, but modeled as a list here
@@ -2431,14 +2537,16 @@ public class ResourceManagerBean implements ResourceManagerLocal, ResourceManage
             entityManager, false); // don't auto-init bags, we're returning composites not entities
         PageList<ResourceComposite> results = queryRunner.execute();
 
+        List<Resource> resources = new ArrayList<Resource>(results.size());
         for (ResourceComposite nextComposite : results) {
             Resource nextResource = nextComposite.getResource();
             ResourceType nextResourceType = nextResource.getResourceType();
             ResourceFacets facets = typeManager.getResourceFacets(nextResourceType.getId());
 
-            queryRunner.initFetchFields(nextResource); // manual field fetch for composite-wrapped entity
+            resources.add(nextResource);
             nextComposite.setResourceFacets(facets);
         }
+        queryRunner.initFetchFields(resources); // manual field fetch for composite-wrapped entities
 
         return results;
     }
@@ -141,8 +141,49 @@ public interface ResourceManagerLocal {
     @Nullable
     Resource getParentResource(int resourceId);
 
+    /**
+     * Returns the ids of the ancestors of the Resource with the specified id, nearest first. The Resource itself is not
+     * included, so the returned List is empty for a platform.
+     *
+     * @param  resourceId the id of a {@link Resource} in inventory
+     *
+     * @return the ids of the Resource's parent, grandparent, and so on up to the platform
+     */
     List<Integer> getResourceIdLineage(int resourceId);
 
+    /**
+     * Writes the RHQ_RESOURCE_CLOSURE rows for a newly persisted Resource and all of its (also newly persisted)
+     * descendants. This must be called after the Resource has been persisted and before any work that relies on the
+     * closure, such as {@link ResourceGroupManagerLocal#updateImplicitGroupMembership(Subject, Resource)}.
+     *
+     * @param resource the newly persisted Resource, whose child resources are walked parents-first
+     */
+    void addResourceClosure(Resource resource);
+
+    /**
+     * Re-links the closure rows of the subtree rooted at the specified Resource after its parent has changed. A move
+     * under the Resource itself or one of its descendants is refused, leaving the closure as it was.
+     *
+     * @param resourceId       the id of the Resource that was moved
+     * @param parentResourceId the id of its new parent, or {@link Resource#ROOT_ID} if it is now a root Resource
+     */
+    void moveResourceClosure(int resourceId, int parentResourceId);
+
+    /**
+     * Checks RHQ_RESOURCE_CLOSURE against the parent pointers of the inventory. Only the self and depth-1 rows are
+     * compared, which is enough to detect resources whose closure was never written or was not re-linked on a move.
+     *
+     * @return the number of inconsistencies found, zero if the closure is consistent
+     */
+    int verifyResourceClosure();
+
+    /**
+     * Discards and recomputes RHQ_RESOURCE_CLOSURE from the parent pointers of the inventory, one level at a time.
+     * This is the repair for a closure that {@link #verifyResourceClosure()} found to be inconsistent. A cycle in the
+     * parent pointers ends the walk instead of looping, and the walk gives up past a maximum depth.
+     */
+    void rebuildResourceClosure();
+
     /**
      * Returns the lineage of the Resource with the specified id. The lineage is represented as a List of Resources,
      * with the first item being the root of the Resource's ancestry (or the Resource itself if it is a root Resource
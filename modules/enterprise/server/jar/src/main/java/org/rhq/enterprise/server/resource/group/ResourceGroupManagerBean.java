@@ -28,7 +28,6 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -194,6 +193,7 @@ public class ResourceGroupManagerBean implements ResourceGroupManagerLocal, Reso
     @RequiredPermission(Permission.MANAGE_INVENTORY)
     public ResourceGroup updateResourceGroup(Subject user, ResourceGroup group, RecursivityChangeType changeType,
         boolean updateMembership) throws ResourceGroupUpdateException {
+        authorizationManager.invalidatePermissionCache();
 
         int groupId = group.getId();
         ResourceGroup attachedGroup = entityManager.find(ResourceGroup.class, groupId);
@@ -283,6 +283,8 @@ public class ResourceGroupManagerBean implements ResourceGroupManagerLocal, Reso
     @RequiredPermission(Permission.MANAGE_INVENTORY)
     public void deleteResourceGroup(Subject subject, int groupId) throws ResourceGroupNotFoundException,
         ResourceGroupDeleteException {
+        authorizationManager.invalidatePermissionCache();
+
         ResourceGroup group = getResourceGroupById(subject, groupId, null);
 
         for (Role doomedRoleRelationship : group.getRoles()) {
@@ -433,6 +435,8 @@ public class ResourceGroupManagerBean implements ResourceGroupManagerLocal, Reso
             return;
         }
 
+        authorizationManager.invalidatePermissionCache();
+
         boolean isRecursive = isRecursive(groupId); // will perform check for group existence
 
         // batch the removes to prevent the ORA error about IN clauses containing more than 1000 items
@@ -511,20 +515,15 @@ public class ResourceGroupManagerBean implements ResourceGroupManagerLocal, Reso
 
             // insert implicit resources
             if (isRecursive) {
-                insertImplicitStatement = conn
-                    .prepareStatement(ResourceGroup.QUERY_NATIVE_ADD_RESOURCES_TO_GROUP_IMPLICIT_RECURSIVE);
+                // a single statement for the whole batch, the closure table yields every descendant at any depth
+                String insertImplicitQueryString = JDBCUtil.transformQueryForMultipleInParameters(
+                    ResourceGroup.QUERY_NATIVE_ADD_RESOURCES_TO_GROUP_IMPLICIT_RECURSIVE, "@@RESOURCE_IDS@@",
+                    resourceIdsToAdd.length);
+                insertImplicitStatement = conn.prepareStatement(insertImplicitQueryString);
                 insertImplicitStatement.setInt(1, groupId);
-                insertImplicitStatement.setInt(9, groupId);
-                for (int resourceId : resourceIdsToAdd) {
-                    insertImplicitStatement.setInt(2, resourceId);
-                    insertImplicitStatement.setInt(3, resourceId);
-                    insertImplicitStatement.setInt(4, resourceId);
-                    insertImplicitStatement.setInt(5, resourceId);
-                    insertImplicitStatement.setInt(6, resourceId);
-                    insertImplicitStatement.setInt(7, resourceId);
-                    insertImplicitStatement.setInt(8, resourceId);
-                    insertImplicitStatement.executeUpdate();
-                }
+                JDBCUtil.bindNTimes(insertImplicitStatement, resourceIdsToAdd, 2);
+                insertImplicitStatement.setInt(resourceIdsToAdd.length + 2, groupId);
+                insertImplicitStatement.executeUpdate();
             } else {
                 String insertImplicitQueryString = JDBCUtil.transformQueryForMultipleInParameters(
                     ResourceGroup.QUERY_NATIVE_ADD_RESOURCES_TO_GROUP_IMPLICIT, "@@RESOURCE_IDS@@",
@@ -571,6 +570,8 @@ public class ResourceGroupManagerBean implements ResourceGroupManagerLocal, Reso
             return;
         }
 
+        authorizationManager.invalidatePermissionCache();
+
         boolean isRecursive = isRecursive(groupId); // will perform check for group existence
 
         // batch the removes to prevent the ORA error about IN clauses containing more than 1000 items
@@ -604,7 +605,7 @@ public class ResourceGroupManagerBean implements ResourceGroupManagerLocal, Reso
                 deleteImplicitStatement = conn
                     .prepareStatement(ResourceGroup.QUERY_NATIVE_REMOVE_RESOURCES_FROM_GROUP_IMPLICIT_RECURSIVE);
                 deleteImplicitStatement.setInt(1, groupId);
-                deleteImplicitStatement.setInt(9, groupId);
+                deleteImplicitStatement.setInt(3, groupId);
                 for (int resourceId : resourceIdsToRemove) {
                     // no-op if this resource's ancestor is also in the explicit list
                     List<Integer> lineage = resourceManager.getResourceIdLineage(resourceId);
@@ -614,13 +615,7 @@ public class ResourceGroupManagerBean implements ResourceGroupManagerLocal, Reso
                         continue;
                     }
                     deleteImplicitStatement.setInt(2, resourceId);
-                    deleteImplicitStatement.setInt(3, resourceId);
                     deleteImplicitStatement.setInt(4, resourceId);
-                    deleteImplicitStatement.setInt(5, resourceId);
-                    deleteImplicitStatement.setInt(6, resourceId);
-                    deleteImplicitStatement.setInt(7, resourceId);
-                    deleteImplicitStatement.setInt(8, resourceId);
-                    deleteImplicitStatement.setInt(10, resourceId);
                     deleteImplicitStatement.executeUpdate();
                 }
             } else {
@@ -656,6 +651,8 @@ public class ResourceGroupManagerBean implements ResourceGroupManagerLocal, Reso
     @RequiredPermission(Permission.MANAGE_INVENTORY)
     @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
     public void removeAllResourcesFromGroup(Subject subject, int groupId) throws ResourceGroupDeleteException {
+        authorizationManager.invalidatePermissionCache();
+
         Connection conn = null;
         PreparedStatement explicitStatement = null;
         PreparedStatement implicitStatement = null;
@@ -766,40 +763,27 @@ public class ResourceGroupManagerBean implements ResourceGroupManagerLocal, Reso
             return;
         }
 
-        /*
-         * BFS-construct the resource tree
-         */
-        List<Integer> resourceIdsToAdd = new ArrayList<Integer>();
-        List<Resource> toBeSearched = new LinkedList<Resource>();
-        toBeSearched.add(resource);
-        while (toBeSearched.size() > 0) {
-            Resource next = toBeSearched.remove(0);
-            resourceIdsToAdd.add(next.getId());
-            toBeSearched.addAll(next.getChildResources());
-        }
+        authorizationManager.invalidatePermissionCache();
 
         /*
-         * now add this resource and all of its descendants to whatever recursive groups it's parent is already in
+         * now add this resource and all of its descendants to whatever recursive groups it's parent is already in;
+         * the resource's closure rows must already have been written, so the subtree is a single indexed probe on
+         * RHQ_RESOURCE_CLOSURE instead of a walk over the (lazily loaded) child collections
          */
         Connection conn = null;
         PreparedStatement insertImplicitStatement = null;
         try {
             conn = rhqDs.getConnection();
+            insertImplicitStatement = conn
+                .prepareStatement(ResourceGroup.QUERY_NATIVE_ADD_RESOURCE_SUBTREE_TO_GROUP_IMPLICIT);
             for (Integer implicitRecursiveGroupId : implicitRecursiveGroupIds) {
                 /*
                  * do have to worry about whether these resources are already in the explicit resource list because
                  * they are being newly committed to inventory and thus shouldn't be in any group except the work
                  * being done right now. 
-                 * 
-                 * also, since we've already computed the toAddResourceIds by recursing down the chain resource passed 
-                 * to this method, we can just do simple RHQ_RESOURCE_GROUP_RES_IMP_MAP table insertions 
                  */
-                String insertImplicitQueryString = JDBCUtil.transformQueryForMultipleInParameters(
-                    ResourceGroup.QUERY_NATIVE_ADD_RESOURCES_TO_GROUP_IMPLICIT, "@@RESOURCE_IDS@@",
-                    resourceIdsToAdd.size());
-                insertImplicitStatement = conn.prepareStatement(insertImplicitQueryString);
                 insertImplicitStatement.setInt(1, implicitRecursiveGroupId);
-                JDBCUtil.bindNTimes(insertImplicitStatement, ArrayUtils.unwrapCollection(resourceIdsToAdd), 2);
+                insertImplicitStatement.setInt(2, resource.getId());
                 insertImplicitStatement.executeUpdate();
 
                 /*
@@ -1429,6 +1413,8 @@ public class ResourceGroupManagerBean implements ResourceGroupManagerLocal, Reso
         Subject subject, //
         int groupId, //
         boolean isRecursive) {
+        authorizationManager.invalidatePermissionCache();
+
         ResourceGroup group = entityManager.find(ResourceGroup.class, groupId);
         if (group == null) {
             throw new ResourceGroupNotFoundException(groupId);
@@ -1529,15 +1515,17 @@ public class ResourceGroupManagerBean implements ResourceGroupManagerLocal, Reso
 
         results = getAuthorizedGroupComposites(subject, authzType, results);
 
+        List<ResourceGroup> groups = new ArrayList<ResourceGroup>(results.size());
         for (ResourceGroupComposite composite : results) {
             ResourceGroup group = composite.getResourceGroup();
             ResourceType type = group.getResourceType();
             ResourceFacets facets = (type != null) ? resourceTypeManager.getResourceFacets(type.getId())
                 : ResourceFacets.NONE;
 
-            queryRunner.initFetchFields(group); // manual field fetch for composite-wrapped entity
+            groups.add(group);
             composite.setResourceFacets(facets);
         }
+        queryRunner.initFetchFields(groups); // manual field fetch for composite-wrapped entities
         return results;
     }
 
@@ -40,6 +40,8 @@ import org.rhq.core.domain.auth.Subject;
 import org.rhq.core.domain.authz.Permission;
 import org.rhq.core.domain.criteria.ResourceGroupDefinitionCriteria;
 import org.rhq.core.domain.resource.group.GroupDefinition;
+import org.rhq.core.domain.resource.group.GroupDefinitionChange;
+import org.rhq.core.domain.resource.group.GroupDefinitionChangeType;
 import org.rhq.core.domain.resource.group.ResourceGroup;
 import org.rhq.core.domain.util.PageControl;
 import org.rhq.core.domain.util.PageList;
@@ -72,6 +74,13 @@ import org.rhq.enterprise.server.util.CriteriaQueryRunner;
 public class GroupDefinitionManagerBean implements GroupDefinitionManagerLocal {
     private final Log log = LogFactory.getLog(GroupDefinitionManagerBean.class);
 
+    /*
+     * changes are time-stamped when they are recorded, but only become visible when the recording transaction
+     * commits; look back this far past the last calculation time so that changes committed by long-running
+     * transactions (e.g. large inventory merges) are not missed
+     */
+    private static final long CHANGE_LOG_GRACE_PERIOD = 5 * 60 * 1000L;
+
     @PersistenceContext(unitName = RHQConstants.PERSISTENCE_UNIT_NAME)
     private EntityManager entityManager;
 
@@ -98,6 +107,8 @@ public class GroupDefinitionManagerBean implements GroupDefinitionManagerLocal {
         recalculationFinderQuery.setParameter("now", System.currentTimeMillis());
         List<Integer> groupDefinitionIdsToRecalculate = recalculationFinderQuery.getResultList();
 
+        purgeObsoleteChanges();
+
         if (groupDefinitionIdsToRecalculate.size() == 0) {
             return; // this will skip the info logging, so we only log when this method does something meaningful
         }
@@ -106,6 +117,18 @@ public class GroupDefinitionManagerBean implements GroupDefinitionManagerLocal {
 
         long totalStart = System.currentTimeMillis();
         for (Integer groupDefinitionId : groupDefinitionIdsToRecalculate) {
+            try {
+                if (!isRecalculationRequired(groupDefinitionId)) {
+                    groupDefinitionManager.skipGroupMembershipCalculation(subject, groupDefinitionId);
+                    monitor.updateSkippedStatistic(getById(groupDefinitionId).getName());
+                    continue;
+                }
+            } catch (Throwable t) {
+                // fall through to a full recalculation, which is always correct
+                log.warn("Could not determine whether GroupDefinition[id=" + groupDefinitionId
+                    + "] needs recalculation, will fully recalculate it: " + t.getMessage());
+            }
+
             long singleStart = System.currentTimeMillis();
             boolean success = false;
             try {
@@ -133,6 +156,69 @@ public class GroupDefinitionManagerBean implements GroupDefinitionManagerLocal {
         monitor.updateAutoRecalculationThreadTime(totalEnd - totalStart);
     }
 
+    /*
+     * a group definition needs to be re-evaluated if it has never been calculated, if its expression changed since
+     * then, if it depends on data that is not tracked in the change log, or if data it depends on has changed since
+     */
+    @SuppressWarnings("unchecked")
+    private boolean isRecalculationRequired(int groupDefinitionId) throws GroupDefinitionNotFoundException {
+        GroupDefinition groupDefinition = getById(groupDefinitionId);
+        Set<GroupDefinitionChangeType> dependencies = groupDefinition.getDependencies();
+        Long lastCalculationTime = groupDefinition.getLastCalculationTime();
+        if (dependencies == null || lastCalculationTime == null) {
+            return true;
+        }
+
+        for (GroupDefinitionChangeType dependency : dependencies) {
+            if (!dependency.isTracked()) {
+                return true;
+            }
+        }
+
+        Query query = entityManager.createNamedQuery(GroupDefinitionChange.QUERY_FIND_CHANGE_TYPES_SINCE);
+        query.setParameter("since", lastCalculationTime - CHANGE_LOG_GRACE_PERIOD);
+        List<GroupDefinitionChangeType> changeTypes = query.getResultList();
+        for (GroupDefinitionChangeType changeType : changeTypes) {
+            if (dependencies.contains(changeType)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /*
+     * changes older than the oldest calculation time of any recalculating group definition can no longer cause a
+     * recalculation, so they can be dropped
+     */
+    private void purgeObsoleteChanges() {
+        Query oldestQuery = entityManager.createNamedQuery(GroupDefinition.QUERY_FIND_OLDEST_CALCULATION_TIME);
+        Long oldestCalculationTime = (Long) oldestQuery.getSingleResult();
+        long oldest = (oldestCalculationTime != null) ? oldestCalculationTime : System.currentTimeMillis();
+
+        Query purgeQuery = entityManager.createNamedQuery(GroupDefinitionChange.QUERY_DELETE_OLDER_THAN);
+        purgeQuery.setParameter("oldest", oldest - CHANGE_LOG_GRACE_PERIOD);
+        int purged = purgeQuery.executeUpdate();
+
+        if (log.isDebugEnabled() && purged > 0) {
+            log.debug("Purged [" + purged + "] obsolete DynaGroup change log entries");
+        }
+    }
+
+    public void recordChange(GroupDefinitionChangeType changeType) {
+        entityManager.persist(new GroupDefinitionChange(changeType));
+    }
+
+    @RequiredPermission(Permission.MANAGE_INVENTORY)
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public void skipGroupMembershipCalculation(Subject subject, int groupDefinitionId)
+        throws GroupDefinitionNotFoundException {
+        GroupDefinition groupDefinition = getById(groupDefinitionId);
+        groupDefinition.setLastCalculationTime(System.currentTimeMillis());
+
+        log.debug("Skipped recalculation of " + groupDefinition + ", none of its dependencies changed");
+    }
+
     public GroupDefinition getById(int groupDefinitionId) throws GroupDefinitionNotFoundException {
         GroupDefinition groupDefinition = entityManager.find(GroupDefinition.class, groupDefinitionId);
         if (groupDefinition == null) {
@@ -215,6 +301,10 @@ public class GroupDefinitionManagerBean implements GroupDefinitionManagerLocal {
         attachedGroupDefinition.setName(groupDefinition.getName());
         attachedGroupDefinition.setDescription(groupDefinition.getDescription());
         attachedGroupDefinition.setRecursive(groupDefinition.isRecursive());
+        if (!String.valueOf(groupDefinition.getExpression()).equals(attachedGroupDefinition.getExpression())) {
+            // dependencies are determined again by the next (full) recalculation
+            attachedGroupDefinition.setDependencies(null);
+        }
         attachedGroupDefinition.setExpression(groupDefinition.getExpression());
         attachedGroupDefinition.setRecalculationInterval(groupDefinition.getRecalculationInterval());
 
@@ -285,6 +375,7 @@ public class GroupDefinitionManagerBean implements GroupDefinitionManagerLocal {
         for (String expression : groupDefinition.getExpressionAsList()) {
             evaluator.addExpression(expression);
         }
+        groupDefinition.setDependencies(evaluator.getDependencies());
 
         Collection<Integer> doomedResourceGroupIds = new ArrayList<Integer>();
         for (Integer managedGroupId : getManagedResourceGroupIdsForGroupDefinition(groupDefinitionId)) {
@@ -23,6 +23,7 @@ import javax.ejb.Local;
 import org.rhq.core.domain.auth.Subject;
 import org.rhq.core.domain.criteria.ResourceGroupDefinitionCriteria;
 import org.rhq.core.domain.resource.group.GroupDefinition;
+import org.rhq.core.domain.resource.group.GroupDefinitionChangeType;
 import org.rhq.core.domain.util.PageControl;
 import org.rhq.core.domain.util.PageList;
 import org.rhq.enterprise.server.resource.group.ResourceGroupDeleteException;
@@ -52,6 +53,21 @@ public interface GroupDefinitionManagerLocal {
     void calculateGroupMembership(Subject subject, int groupDefinitionId) throws ResourceGroupDeleteException,
         GroupDefinitionDeleteException, GroupDefinitionNotFoundException, InvalidExpressionException;
 
+    /**
+     * Records the fact that data of the given type has changed in the current transaction, so that the recalculation
+     * thread will re-evaluate the group definitions depending on it.
+     *
+     * @param changeType the kind of data that changed
+     */
+    void recordChange(GroupDefinitionChangeType changeType);
+
+    /**
+     * Marks the given group definition as calculated without re-evaluating its expression; used by the recalculation
+     * thread when none of the data the definition depends on has changed since its last calculation.
+     */
+    void skipGroupMembershipCalculation(Subject subject, int groupDefinitionId)
+        throws GroupDefinitionNotFoundException;
+
     Integer calculateGroupMembership_helper(Subject subject, int groupDefinitionId, ExpressionEvaluator.Result result)
         throws ResourceGroupDeleteException, GroupDefinitionNotFoundException, GroupDefinitionNotFoundException;
 
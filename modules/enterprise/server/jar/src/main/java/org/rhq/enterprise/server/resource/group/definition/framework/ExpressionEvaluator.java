@@ -21,6 +21,7 @@ package org.rhq.enterprise.server.resource.group.definition.framework;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
@@ -38,6 +39,7 @@ import org.apache.commons.logging.LogFactory;
 
 import org.rhq.core.domain.measurement.AvailabilityType;
 import org.rhq.core.domain.resource.ResourceCategory;
+import org.rhq.core.domain.resource.group.GroupDefinitionChangeType;
 import org.rhq.enterprise.server.common.EntityManagerFacadeLocal;
 import org.rhq.enterprise.server.util.LookupUtil;
 import org.rhq.enterprise.server.util.QueryUtility;
@@ -78,6 +80,7 @@ public class ExpressionEvaluator implements Iterable<ExpressionEvaluator.Result>
     private Map<String, Class<?>> whereReplacementTypes;
     private Set<String> whereStatics;
     private List<String> groupByElements;
+    private Set<GroupDefinitionChangeType> dependencies;
 
     private List<String> simpleSubExpressions;
     private List<String> groupedSubExpressions;
@@ -108,6 +111,11 @@ public class ExpressionEvaluator implements Iterable<ExpressionEvaluator.Result>
         whereStatics = new LinkedHashSet<String>();
         groupByElements = new ArrayList<String>();
 
+        /*
+         * every expression is evaluated against the committed inventory, so all group definitions depend on it
+         */
+        dependencies = EnumSet.of(GroupDefinitionChangeType.INVENTORY);
+
         simpleSubExpressions = new ArrayList<String>();
         groupedSubExpressions = new ArrayList<String>();
 
@@ -183,6 +191,14 @@ public class ExpressionEvaluator implements Iterable<ExpressionEvaluator.Result>
         return this;
     }
 
+    /**
+     * @return the kinds of data the expressions added so far depend on; recalculation of the owning group definition
+     *         can be skipped as long as none of these have changed since it was last calculated
+     */
+    public Set<GroupDefinitionChangeType> getDependencies() {
+        return Collections.unmodifiableSet(dependencies);
+    }
+
     /**
      * @return the JPQL statement that will be sent to the database, assuming test mode is false (the default): -- if no
      *         groupBy expressions are present, it will query for the target object -- if at least one groupBy
@@ -490,6 +506,7 @@ public class ExpressionEvaluator implements Iterable<ExpressionEvaluator.Result>
                     }
                 }
                 addJoinCondition(JoinCondition.AVAILABILITY);
+                dependencies.add(GroupDefinitionChangeType.AVAILABILITY);
                 populatePredicateCollections(JoinCondition.AVAILABILITY.alias + ".availabilityType", type);
             } else if (context == ParseContext.Trait) {
                 // SELECT res.id FROM Resource res JOIN res.schedules sched, sched.definition def, MeasurementDataTrait trait
@@ -497,6 +514,7 @@ public class ExpressionEvaluator implements Iterable<ExpressionEvaluator.Result>
                 // (SELECT max(mdt.id.timestamp) FROM MeasurementDataTrait mdt WHERE sched.id = mdt.schedule.id)
                 String traitName = parseTraitName(originalTokens);
                 addJoinCondition(JoinCondition.SCHEDULES);
+                dependencies.add(GroupDefinitionChangeType.TRAIT);
                 populatePredicateCollections(METRIC_DEF_ALIAS + ".name", "%" + traitName + "%", false);
                 populatePredicateCollections(TRAIT_ALIAS + ".value", value);
                 whereStatics.add(TRAIT_ALIAS + ".schedule = " + JoinCondition.SCHEDULES.alias);
@@ -512,10 +530,12 @@ public class ExpressionEvaluator implements Iterable<ExpressionEvaluator.Result>
                     prefix = "pluginconfiguration";
                     joinCondition = JoinCondition.PLUGIN_CONFIGURATION;
                     definitionJoinCondition = JoinCondition.PLUGIN_CONFIGURATION_DEFINITION;
+                    dependencies.add(GroupDefinitionChangeType.PLUGIN_CONFIGURATION);
                 } else if (subcontext == ParseSubContext.ResourceConfiguration) {
                     prefix = "resourceconfiguration";
                     joinCondition = JoinCondition.RESOURCE_CONFIGURATION;
                     definitionJoinCondition = JoinCondition.RESOURCE_CONFIGURATION_DEFINITION;
+                    dependencies.add(GroupDefinitionChangeType.RESOURCE_CONFIGURATION);
                 } else {
                     throw new InvalidExpressionException("Invalid 'configuration' subexpression: " + subcontext);
                 }
@@ -51,6 +51,7 @@ public class GroupDefinitionRecalculationThreadMonitor implements GroupDefinitio
         private long dynaGroupCount;
         private long recalculationCount;
         private long successfulCount;
+        private long skippedCount;
         private long minExecutionTime;
         private long maxExecutionTime;
         private long totalEexecutionTime;
@@ -71,15 +72,22 @@ public class GroupDefinitionRecalculationThreadMonitor implements GroupDefinitio
             totalEexecutionTime += executionTime;
         }
 
+        public synchronized void skip() {
+            skippedCount++;
+        }
+
         public synchronized Map<String, Object> getStatistics() {
             Map<String, Object> stats = new HashMap<String, Object>();
             stats.put("dynaGroupCount", dynaGroupCount);
             stats.put("recalculationCount", recalculationCount);
             stats.put("successfulCount", successfulCount);
             stats.put("failureCount", recalculationCount - successfulCount);
+            stats.put("skippedCount", skippedCount);
             stats.put("minExecutionTime", minExecutionTime);
             stats.put("maxExecutionTime", maxExecutionTime);
-            stats.put("avgEexecutionTime", totalEexecutionTime / (double) recalculationCount);
+            // a definition that has only been skipped so far has no execution time to average
+            stats.put("avgEexecutionTime", (recalculationCount > 0) ? totalEexecutionTime / (double) recalculationCount
+                : 0.0);
             return stats;
         }
     }
@@ -146,6 +154,12 @@ public class GroupDefinitionRecalculationThreadMonitor implements GroupDefinitio
         stat.update(newDynaGroupCount, success, executionTime);
     }
 
+    public void updateSkippedStatistic(String groupDefinitionName) {
+        statistics.putIfAbsent(groupDefinitionName, new GroupDefinitionRecalculationStatistic());
+        GroupDefinitionRecalculationStatistic stat = statistics.get(groupDefinitionName);
+        stat.skip();
+    }
+
     public Map<String, Map<String, Object>> getStatistics() {
         Map<String, Map<String, Object>> results = new HashMap<String, Map<String, Object>>();
         for (Map.Entry<String, GroupDefinitionRecalculationStatistic> stat : statistics.entrySet()) {
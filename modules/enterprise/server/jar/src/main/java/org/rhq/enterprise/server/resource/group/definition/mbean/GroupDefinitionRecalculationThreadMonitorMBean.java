@@ -102,4 +102,13 @@ public interface GroupDefinitionRecalculationThreadMonitorMBean {
      */
     void updateStatistic(String groupDefinitionName, int newDynaGroupCount, boolean success, long executionTime);
 
+    /**
+     * Updates the internal {@link GroupDefinitionRecalculationThreadMonitor.GroupDefinitionRecalculationStatistic}
+     * for the {@link GroupDefinition} with the given name, recording that its recalculation was skipped because none
+     * of the data its expression depends on had changed.
+     *
+     * @param groupDefinitionName the name of the {@link GroupDefinition} whose internal statistics will be updated
+     */
+    void updateSkippedStatistic(String groupDefinitionName);
+
 }
\ No newline at end of file
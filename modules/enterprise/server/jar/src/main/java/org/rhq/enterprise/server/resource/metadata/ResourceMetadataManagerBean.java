@@ -642,6 +642,7 @@ public class ResourceMetadataManagerBean implements ResourceMetadataManagerLocal
                     resource.getParentResource().removeChildResource(resource);
                 }
                 newParent.addChildResource(resource);
+                resourceManager.moveResourceClosure(resource.getId(), newParent.getId());
                 // Assigning a new parent changes the ancestry for the resource and its children. Since the
                 // children are not handled in this method, update their ancestry now.
                 resourceManager.updateAncestry(subjectManager.getOverlord(), resource.getId());
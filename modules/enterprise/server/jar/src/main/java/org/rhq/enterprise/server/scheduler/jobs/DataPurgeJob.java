@@ -43,6 +43,7 @@ import org.rhq.enterprise.server.measurement.MeasurementBaselineManagerLocal;
 import org.rhq.enterprise.server.measurement.MeasurementCompressionManagerLocal;
 import org.rhq.enterprise.server.measurement.MeasurementDataManagerLocal;
 import org.rhq.enterprise.server.measurement.MeasurementOOBManagerLocal;
+import org.rhq.enterprise.server.resource.ResourceManagerLocal;
 import org.rhq.enterprise.server.scheduler.SchedulerLocal;
 import org.rhq.enterprise.server.system.SystemManagerLocal;
 import org.rhq.enterprise.server.util.LookupUtil;
@@ -88,6 +89,7 @@ public class DataPurgeJob extends AbstractStatefulJob {
                 LookupUtil.getSubjectManager().getOverlord());
             compressMeasurementData(LookupUtil.getMeasurementCompressionManager());
             purgeEverything(systemConfig);
+            verifyResourceClosure(LookupUtil.getResourceManager());
             performDatabaseMaintenance(LookupUtil.getSystemManager(), systemConfig);
             calculateAutoBaselines(LookupUtil.getMeasurementBaselineManager());
             calculateOOBs();
@@ -272,6 +274,26 @@ public class DataPurgeJob extends AbstractStatefulJob {
         }
     }
 
+    private void verifyResourceClosure(ResourceManagerLocal resourceManager) {
+        long timeStart = System.currentTimeMillis();
+        LOG.info("Resource closure verification starting at " + new Date(timeStart));
+        int inconsistencies = 0;
+
+        try {
+            inconsistencies = resourceManager.verifyResourceClosure();
+            if (inconsistencies > 0) {
+                LOG.warn("Found [" + inconsistencies + "] resource closure inconsistencies - rebuilding the closure");
+                resourceManager.rebuildResourceClosure();
+            }
+        } catch (Exception e) {
+            LOG.error("Failed to verify resource closure. Cause: " + e, e);
+        } finally {
+            long duration = System.currentTimeMillis() - timeStart;
+            LOG.info("Verified resource closure, found [" + inconsistencies + "] inconsistencies - completed in ["
+                + duration + "]ms");
+        }
+    }
+
     private void performDatabaseMaintenance(SystemManagerLocal systemManager, Properties systemConfig) {
         long timeStart = System.currentTimeMillis();
         LOG.info("Database maintenance starting at " + new Date(timeStart));
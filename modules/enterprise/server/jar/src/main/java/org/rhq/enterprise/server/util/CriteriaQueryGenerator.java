@@ -24,9 +24,15 @@ package org.rhq.enterprise.server.util;
 
 import java.lang.reflect.Field;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.persistence.EntityManager;
 import javax.persistence.EnumType;
@@ -88,9 +94,51 @@ public final class CriteriaQueryGenerator {
 
     private static List<String> EXPRESSION_START_KEYWORDS;
 
+    private static final int QUERY_PLAN_CACHE_SIZE = Integer.parseInt(System.getProperty(
+        "rhq.server.criteria-query-plan-cache.size", "500"));
+
+    /*
+     * the generated query strings, keyed by everything that goes into generating them (see getQueryPlanKey); the
+     * values bound to the query are not part of the key, so repeated criteria queries of the same shape only need
+     * to read the filter values and bind them.
+     */
+    private static final Map<String, QueryPlan> QUERY_PLANS = Collections
+        .synchronizedMap(new LinkedHashMap<String, QueryPlan>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, QueryPlan> eldest) {
+                return size() > QUERY_PLAN_CACHE_SIZE;
+            }
+        });
+
+    // the filter, fetch and sort fields of each criteria class, which only change with the class itself
+    private static final ConcurrentMap<Class<?>, Map<Criteria.Type, List<Field>>> CRITERIA_FIELDS = new ConcurrentHashMap<Class<?>, Map<Criteria.Type, List<Field>>>();
+
+    private static class QueryPlan {
+        private final String queryString;
+        private final List<Field> persistentBagFields;
+        private final List<Field> joinFetchFields;
+        private final List<String> keysetExpressions;
+        private final String keysetJoins;
+
+        private QueryPlan(String queryString, List<Field> persistentBagFields, List<Field> joinFetchFields,
+            List<String> keysetExpressions, String keysetJoins) {
+            this.queryString = queryString;
+            this.persistentBagFields = new ArrayList<Field>(persistentBagFields);
+            this.joinFetchFields = new ArrayList<Field>(joinFetchFields);
+            this.keysetExpressions = new ArrayList<String>(keysetExpressions);
+            this.keysetJoins = keysetJoins;
+        }
+    }
+
     private List<Field> persistentBagFields = new ArrayList<Field>();
     private List<Field> joinFetchFields = new ArrayList<Field>();
 
+    // keyset paging state, initialized along with the data query string
+    private List<String> keysetExpressions = new ArrayList<String>();
+    private String keysetJoins = "";
+
     static {
         EXPRESSION_START_KEYWORDS = new ArrayList<String>(2);
         EXPRESSION_START_KEYWORDS.add("NOT");
@@ -185,7 +233,7 @@ public final class CriteriaQueryGenerator {
                 + "   FROM Subject innerSubject" + NL //
                 + "   JOIN innerSubject.roles r" + NL //
                 + "   JOIN r.permissions p" + NL //
-                + "   WHERE innerSubject.id = " + this.authorizationSubjectId + NL //
+                + "   WHERE innerSubject.id = :authzSubjectId" + NL //
                 + "   AND p IN ( :requiredPerms ) ) = :requiredPermsSize" + NL;
         }
     }
@@ -201,7 +249,7 @@ public final class CriteriaQueryGenerator {
         customAuthzFragment = customAuthzFragment.replace("%alias%", criteria.getAlias());
         customAuthzFragment = customAuthzFragment.replace("%aliasWithFragment%", aliasReplacement);
         customAuthzFragment = customAuthzFragment.replace("%innerAlias%", innerAliasReplacement);
-        customAuthzFragment = customAuthzFragment.replace("%subjectId%", String.valueOf(subjectId));
+        customAuthzFragment = customAuthzFragment.replace("%subjectId%", ":authzSubjectId");
         return customAuthzFragment;
     }
 
@@ -226,7 +274,7 @@ public final class CriteriaQueryGenerator {
         customAuthzFragment = customAuthzFragment.replace("%alias%", criteria.getAlias());
         customAuthzFragment = customAuthzFragment.replace("%aliasWithFragment%", aliasReplacement);
         customAuthzFragment = customAuthzFragment.replace("%innerAlias%", innerAliasReplacement);
-        customAuthzFragment = customAuthzFragment.replace("%subjectId%", String.valueOf(subjectId));
+        customAuthzFragment = customAuthzFragment.replace("%subjectId%", ":authzSubjectId");
         return customAuthzFragment;
     }
 
@@ -258,6 +306,10 @@ public final class CriteriaQueryGenerator {
             query = query.replace(":requiredPermsSize", String.valueOf(requiredPerms.size()));
         }
 
+        if (isAuthorizationSubjectIdBound()) {
+            query = query.replace(":authzSubjectId", String.valueOf(this.authorizationSubjectId));
+        }
+
         return query;
     }
 
@@ -306,7 +358,77 @@ public final class CriteriaQueryGenerator {
         return EnumType.STRING; // catch-all
     }
 
+    /**
+     * Returns the JPQL for the data or count query of the criteria, from the query plan cache if a query of the same
+     * shape has been generated before.
+     */
     public String getQueryString(boolean countQuery) {
+        String key = getQueryPlanKey(countQuery);
+        QueryPlan plan = QUERY_PLANS.get(key);
+        if (plan != null) {
+            HibernatePerformanceMonitor.get().recordCriteriaQueryPlanHit();
+            if (countQuery == false) {
+                persistentBagFields = new ArrayList<Field>(plan.persistentBagFields);
+                joinFetchFields = new ArrayList<Field>(plan.joinFetchFields);
+                keysetExpressions = new ArrayList<String>(plan.keysetExpressions);
+                keysetJoins = plan.keysetJoins;
+            }
+            LOG.debug(plan.queryString);
+            return plan.queryString;
+        }
+
+        long start = System.nanoTime();
+        String queryString = generateQueryString(countQuery);
+        HibernatePerformanceMonitor.get().recordCriteriaQueryPlanMiss(className, System.nanoTime() - start);
+
+        QUERY_PLANS.put(key, new QueryPlan(queryString, persistentBagFields, joinFetchFields, keysetExpressions,
+            keysetJoins));
+        return queryString;
+    }
+
+    /**
+     * Builds the key of the query plan cache: everything the generated JPQL depends on - the criteria class, which
+     * filters are set (and whether they are string filters or their overrides), the fetch fields, the sort shape,
+     * the projection and the authorization and search fragments - but none of the values that are bound to it.
+     */
+    private String getQueryPlanKey(boolean countQuery) {
+        StringBuilder key = new StringBuilder();
+        key.append(countQuery).append('|').append(criteria.getClass().getName()).append('|').append(alias);
+        key.append('|').append(projection).append('|').append(groupByClause).append('|').append(havingClause);
+        key.append('|').append(criteria.isFiltersOptional()).append('|').append(criteria.isCaseSensitive());
+        key.append('|').append(criteria.hasCustomizedSorting()).append('|').append(criteria.isKeysetPaging());
+        key.append('|').append(criteria.getPageAfterId() != null);
+
+        key.append("|filters:");
+        for (Map.Entry<String, Object> filterField : new TreeMap<String, Object>(getFilterFields(criteria))
+            .entrySet()) {
+            Object value = filterField.getValue();
+            key.append(filterField.getKey()).append('=');
+            if (value instanceof Criteria.NonBindingOverrideFilter) {
+                key.append(value);
+            } else {
+                key.append((value instanceof String) ? "string" : "value");
+            }
+            key.append('/').append(criteria.getJPQLFilterOverride(filterField.getKey())).append(',');
+        }
+
+        if (countQuery == false) {
+            key.append("|fetch:").append(getFetchFields(criteria));
+        }
+
+        key.append("|sort:");
+        for (OrderingField orderingField : getPageControl(criteria).getOrderingFields()) {
+            key.append(orderingField.getField()).append(' ').append(orderingField.getOrdering()).append('/');
+            key.append(criteria.getJPQLSortOverride(orderingField.getField())).append(',');
+        }
+
+        key.append("|authz:").append(authorizationPermsFragment).append('|').append(
+            authorizationCustomConditionFragment);
+        key.append("|search:").append(searchExpressionWhereClause);
+        return key.toString();
+    }
+
+    private String generateQueryString(boolean countQuery) {
         StringBuilder results = new StringBuilder();
         results.append("SELECT ");
         if (countQuery) {
@@ -327,6 +449,10 @@ public final class CriteriaQueryGenerator {
         }
         results.append("FROM ").append(className).append(' ').append(alias).append(NL);
         if (countQuery == false) {
+            // the fetch fields are re-collected each time the data query is generated
+            persistentBagFields.clear();
+            joinFetchFields.clear();
+
             /* 
              * don't fetch in the count query to avoid: "query specified join fetching, 
              * but the owner of the fetched association was not present in the select list"
@@ -360,6 +486,9 @@ public final class CriteriaQueryGenerator {
         PageControl pc = getPageControl(criteria);
         List<String> orderingFieldRequiredJoins = new ArrayList<String>();
         List<String> orderingFieldTokens = new ArrayList<String>();
+        List<String> orderingFieldExpressions = new ArrayList<String>();
+        List<PageOrdering> orderingFieldOrderings = new ArrayList<PageOrdering>();
+        StringBuilder orderingFieldJoins = new StringBuilder();
 
         for (OrderingField orderingField : pc.getOrderingFields()) {
             PageOrdering ordering = orderingField.getOrdering();
@@ -379,6 +508,8 @@ public final class CriteriaQueryGenerator {
             if (criteria.hasCustomizedSorting()) {
                 // customized sorting does not get LEFT JOIN expressions added
                 orderingFieldTokens.add(sortFragment + " " + ordering);
+                orderingFieldExpressions.add(sortFragment);
+                orderingFieldOrderings.add(ordering);
                 continue;
             }
 
@@ -386,6 +517,8 @@ public final class CriteriaQueryGenerator {
             if (lastDelimiterIndex == -1) {
                 // does not require joins, just add the ordering field token directly
                 orderingFieldTokens.add(sortFragment + " " + ordering);
+                orderingFieldExpressions.add(sortFragment);
+                orderingFieldOrderings.add(ordering);
                 continue;
             }
 
@@ -394,6 +527,8 @@ public final class CriteriaQueryGenerator {
                 // only one dot implies its a property/field directly off of the primary alias
                 // thus, also does not require joins, just add the ordering field token directly
                 orderingFieldTokens.add(sortFragment + " " + ordering);
+                orderingFieldExpressions.add(sortFragment);
+                orderingFieldOrderings.add(ordering);
                 continue;
             }
 
@@ -407,16 +542,50 @@ public final class CriteriaQueryGenerator {
                 joinAlias = "orderingField" + orderingFieldRequiredJoins.size();
                 orderingFieldRequiredJoins.add(expressionRoot);
                 results.append("LEFT JOIN ").append(expressionRoot).append(" ").append(joinAlias).append(NL);
+                orderingFieldJoins.append("LEFT JOIN ").append(expressionRoot).append(" ").append(joinAlias).append(NL);
             } else {
                 joinAlias = "orderingField" + expressionRootIndex;
             }
 
             orderingFieldTokens.add(joinAlias + "." + expressionLeaf + " " + ordering);
+            orderingFieldExpressions.add(joinAlias + "." + expressionLeaf);
+            orderingFieldOrderings.add(ordering);
+        }
+
+        // keyset paging seeks past the sort values of the last entity of the previous page
+        String keysetFragment = null;
+        if (countQuery == false && criteria.isKeysetPaging()) {
+            if (criteria.hasCustomizedSorting() || groupByClause != null) {
+                throw new IllegalArgumentException("Keyset paging is not supported for criteria with customized "
+                    + "sorting or grouped results");
+            }
+
+            // make the ordering total by breaking ties with the entity id
+            String idExpression = alias + ".id";
+            if (!orderingFieldExpressions.contains(idExpression)) {
+                orderingFieldTokens.add(idExpression + " " + PageOrdering.ASC);
+                orderingFieldExpressions.add(idExpression);
+                orderingFieldOrderings.add(PageOrdering.ASC);
+            }
+
+            for (String expression : orderingFieldExpressions) {
+                if (isNumber(expression)) {
+                    throw new IllegalArgumentException("Keyset paging is not supported when sorting by column ordinal");
+                }
+            }
+
+            keysetExpressions = orderingFieldExpressions;
+            keysetJoins = orderingFieldJoins.toString();
+
+            if (criteria.getPageAfterId() != null) {
+                keysetFragment = getKeysetFragment(orderingFieldExpressions, orderingFieldOrderings);
+            }
         }
 
         Map<String, Object> filterFields = getFilterFields(criteria);
         if (filterFields.size() > 0 || authorizationPermsFragment != null
-            || authorizationCustomConditionFragment != null || searchExpressionWhereClause != null) {
+            || authorizationCustomConditionFragment != null || searchExpressionWhereClause != null
+            || keysetFragment != null) {
             results.append("WHERE ");
         }
 
@@ -499,6 +668,16 @@ public final class CriteriaQueryGenerator {
             results.append(searchExpressionWhereClause);
         }
 
+        if (keysetFragment != null) {
+            if (firstCrit) {
+                firstCrit = false;
+            } else {
+                // the page boundary applies regardless of conjunctiveFragment
+                results.append(NL).append(" AND ");
+            }
+            results.append(keysetFragment);
+        }
+
         if (countQuery == false) {
             // group by clause
             if (groupByClause != null) {
@@ -529,6 +708,62 @@ public final class CriteriaQueryGenerator {
         return results.toString();
     }
 
+    /**
+     * Builds the predicate that selects the rows following, in the given ordering, the row whose sort values are bound
+     * to the :keysetValueN parameters: (e0 > :v0) OR (e0 = :v0 AND e1 > :v1) OR ..., with the comparison reversed for
+     * descending sort fields.
+     */
+    private String getKeysetFragment(List<String> expressions, List<PageOrdering> orderings) {
+        StringBuilder fragment = new StringBuilder("( ");
+        for (int i = 0; i < expressions.size(); i++) {
+            if (i > 0) {
+                fragment.append(NL).append("  OR ");
+            }
+            fragment.append("( ");
+            for (int j = 0; j < i; j++) {
+                fragment.append(expressions.get(j)).append(" = :keysetValue").append(j).append(" AND ");
+            }
+            String comparison = (orderings.get(i) == PageOrdering.DESC) ? " < " : " > ";
+            fragment.append(expressions.get(i)).append(comparison).append(":keysetValue").append(i).append(" )");
+        }
+        fragment.append(" )");
+        return fragment.toString();
+    }
+
+    /**
+     * Looks up the sort values of the entity that keyset paging is to continue after.
+     */
+    private Object[] getKeysetValues(EntityManager em) {
+        StringBuilder queryString = new StringBuilder("SELECT ");
+        for (int i = 0; i < keysetExpressions.size(); i++) {
+            if (i > 0) {
+                queryString.append(", ");
+            }
+            queryString.append(keysetExpressions.get(i));
+        }
+        queryString.append(NL).append("FROM ").append(className).append(' ').append(alias).append(NL);
+        queryString.append(keysetJoins);
+        queryString.append("WHERE ").append(alias).append(".id = :pageAfterId");
+
+        Query query = em.createQuery(queryString.toString());
+        query.setParameter("pageAfterId", criteria.getPageAfterId());
+        List<?> rows = query.getResultList();
+        if (rows.isEmpty()) {
+            throw new IllegalArgumentException("Cannot page after " + className + "[id=" + criteria.getPageAfterId()
+                + "], it does not exist");
+        }
+
+        Object row = rows.get(0);
+        Object[] values = (keysetExpressions.size() == 1) ? new Object[] { row } : (Object[]) row;
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] == null) {
+                throw new IllegalArgumentException("Cannot page after " + className + "[id="
+                    + criteria.getPageAfterId() + "], its sort value for " + keysetExpressions.get(i) + " is null");
+            }
+        }
+        return values;
+    }
+
     private boolean isNumber(String input) {
         if (input == null) {
             return false;
@@ -565,21 +800,30 @@ public final class CriteriaQueryGenerator {
     }
 
     private static List<Field> getFields(Criteria criteria, Criteria.Type fieldType) {
-        String prefix = fieldType.name().toLowerCase();
-        List<Field> results = new ArrayList<Field>();
-
-        Class<?> currentLevelClass = criteria.getClass();
-        while (currentLevelClass.equals(Criteria.class) == false) {
-            for (Field field : currentLevelClass.getDeclaredFields()) {
-                field.setAccessible(true);
-                if (field.getName().startsWith(prefix)) {
-                    results.add(field);
+        Map<Criteria.Type, List<Field>> fieldsByType = CRITERIA_FIELDS.get(criteria.getClass());
+        if (fieldsByType == null) {
+            fieldsByType = new EnumMap<Criteria.Type, List<Field>>(Criteria.Type.class);
+            for (Criteria.Type type : Criteria.Type.values()) {
+                String prefix = type.name().toLowerCase();
+                List<Field> results = new ArrayList<Field>();
+
+                Class<?> currentLevelClass = criteria.getClass();
+                while (currentLevelClass.equals(Criteria.class) == false) {
+                    for (Field field : currentLevelClass.getDeclaredFields()) {
+                        field.setAccessible(true);
+                        if (field.getName().startsWith(prefix)) {
+                            results.add(field);
+                        }
+                    }
+                    currentLevelClass = currentLevelClass.getSuperclass();
                 }
+
+                fieldsByType.put(type, Collections.unmodifiableList(results));
             }
-            currentLevelClass = currentLevelClass.getSuperclass();
+            CRITERIA_FIELDS.putIfAbsent(criteria.getClass(), fieldsByType);
         }
 
-        return results;
+        return fieldsByType.get(fieldType);
     }
 
     public static String getCleansedFieldName(Field field, int leadingCharsToStrip) {
@@ -742,7 +986,21 @@ public final class CriteriaQueryGenerator {
         String queryString = getQueryString(false);
         Query query = em.createQuery(queryString);
         setBindValues(query);
-        PersistenceUtility.setDataPage(query, getPageControl(criteria));
+        PageControl pageControl = getPageControl(criteria);
+        if (criteria.isKeysetPaging()) {
+            if (criteria.getPageAfterId() != null) {
+                Object[] keysetValues = getKeysetValues(em);
+                for (int i = 0; i < keysetValues.length; i++) {
+                    query.setParameter("keysetValue" + i, keysetValues[i]);
+                }
+            }
+            // the keyset predicate already skipped the previous pages
+            if (pageControl.getPageSize() > 0) {
+                query.setMaxResults(pageControl.getPageSize());
+            }
+        } else {
+            PersistenceUtility.setDataPage(query, pageControl);
+        }
         return query;
     }
 
@@ -780,6 +1038,19 @@ public final class CriteriaQueryGenerator {
             query.setParameter("requiredPerms", requiredPerms);
             query.setParameter("requiredPermsSize", (long) requiredPerms.size());
         }
+        if (isAuthorizationSubjectIdBound()) {
+            query.setParameter("authzSubjectId", this.authorizationSubjectId);
+        }
+    }
+
+    /*
+     * the generated authorization fragments refer to the subject by parameter rather than by literal, so that the
+     * query strings (and Hibernate's query plans for them) are shared by all subjects
+     */
+    private boolean isAuthorizationSubjectIdBound() {
+        return (authorizationPermsFragment != null && authorizationPermsFragment.contains(":authzSubjectId"))
+            || (authorizationCustomConditionFragment != null && authorizationCustomConditionFragment
+                .contains(":authzSubjectId"));
     }
 
     private String prepareStringBindValue(String value) {
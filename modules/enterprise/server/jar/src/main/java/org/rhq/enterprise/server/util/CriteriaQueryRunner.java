@@ -24,8 +24,11 @@
 package org.rhq.enterprise.server.util;
 
 import java.lang.reflect.Field;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 
 import javax.persistence.EntityManager;
 import javax.persistence.Query;
@@ -33,6 +36,7 @@ import javax.persistence.Query;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.hibernate.Hibernate;
+import org.hibernate.Session;
 
 import org.rhq.core.domain.criteria.Criteria;
 import org.rhq.core.domain.criteria.Criteria.Restriction;
@@ -43,6 +47,9 @@ public class CriteriaQueryRunner<T> {
 
     private static final Log LOG = LogFactory.getLog(CriteriaQueryRunner.class);
 
+    // keeps the IN lists of the batch fetch queries within the limits of all supported databases
+    private static final int FETCH_BATCH_SIZE = 1000;
+
     private Criteria criteria;
     private CriteriaQueryGenerator queryGenerator;
     private EntityManager entityManager;
@@ -105,11 +112,13 @@ public class CriteriaQueryRunner<T> {
          */
         if (automaticFetching) {
             if (!queryGenerator.getPersistentBagFields().isEmpty()) {
+                batchFetch(results, queryGenerator.getPersistentBagFields());
                 for (T entity : results) {
                     initPersistentBags(entity);
                 }
             }
             if (queryGenerator.isProjectionAltered() && !queryGenerator.getJoinFetchFields().isEmpty()) {
+                batchFetch(results, queryGenerator.getJoinFetchFields());
                 for (T entity : results) {
                     initJoinFetchFields(entity);
                 }
@@ -126,6 +135,59 @@ public class CriteriaQueryRunner<T> {
         return (int) count;
     }
 
+    /**
+     * Returns an iterator over the entire result set of the criteria, which pulls the results from the database in
+     * chunks of the given size using keyset paging (see {@link Criteria#setPagingAfter(Integer, int)}), so that
+     * neither the database nor the server ever hold more than one chunk.  The paging and restriction of the criteria
+     * are overwritten.  The persistence context is flushed and cleared before each chunk after the first, which
+     * detaches the results previously returned; use this only in read-only contexts, and only for criteria that
+     * return entities.
+     */
+    public Iterator<T> iterator(final int chunkSize) {
+        if (queryGenerator.isProjectionAltered()) {
+            throw new IllegalStateException("Chunked iteration is only supported for criteria returning entities");
+        }
+
+        criteria.setRestriction(Restriction.COLLECTION_ONLY);
+        criteria.setPagingAfter(null, chunkSize);
+
+        return new Iterator<T>() {
+            private Iterator<? extends T> chunk = getCollection().iterator();
+            private int chunkCount = 0;
+            private Object lastId = null;
+
+            public boolean hasNext() {
+                if (chunk.hasNext()) {
+                    return true;
+                }
+                if (chunkCount < chunkSize || lastId == null) {
+                    return false; // the last chunk was not full, so there are no more results
+                }
+
+                entityManager.flush();
+                entityManager.clear();
+                criteria.setPagingAfter((Integer) lastId, chunkSize);
+                chunk = getCollection().iterator();
+                chunkCount = 0;
+                return chunk.hasNext();
+            }
+
+            public T next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                T entity = chunk.next();
+                chunkCount++;
+                lastId = getId(entity);
+                return entity;
+            }
+
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
     public void initFetchFields(Object entity) {
         initPersistentBags(entity);
         if (queryGenerator.isProjectionAltered()) {
@@ -133,6 +195,56 @@ public class CriteriaQueryRunner<T> {
         }
     }
 
+    /**
+     * Same as calling {@link #initFetchFields(Object)} for each of the given entities, except that the fields are
+     * loaded for many entities at once rather than with one query per entity and field.
+     */
+    public void initFetchFields(Collection<?> entities) {
+        batchFetch(entities, queryGenerator.getPersistentBagFields());
+        if (queryGenerator.isProjectionAltered()) {
+            batchFetch(entities, queryGenerator.getJoinFetchFields());
+        }
+        for (Object entity : entities) {
+            initFetchFields(entity);
+        }
+    }
+
+    /**
+     * Loads the given fields of the given entities with one fetch join query per field and batch of entities, which
+     * initializes the fields of the entities already in the persistence context. The subsequent per-entity
+     * initialization then finds everything loaded; if the batch fetch fails, it falls back to loading each field of
+     * each entity on its own.
+     */
+    private void batchFetch(Collection<?> entities, List<Field> fields) {
+        if (entities.size() < 2 || fields.isEmpty()) {
+            return;
+        }
+
+        try {
+            List<Object> ids = new ArrayList<Object>(entities.size());
+            for (Object entity : entities) {
+                ids.add(getId(entity));
+            }
+
+            String entityName = criteria.getPersistentClass().getName();
+            for (Field field : fields) {
+                String queryString = "SELECT DISTINCT entity FROM " + entityName + " entity LEFT JOIN FETCH entity."
+                    + field.getName() + " WHERE entity.id IN ( :ids )";
+                for (int i = 0; i < ids.size(); i += FETCH_BATCH_SIZE) {
+                    Query query = entityManager.createQuery(queryString);
+                    query.setParameter("ids", ids.subList(i, Math.min(i + FETCH_BATCH_SIZE, ids.size())));
+                    query.getResultList();
+                }
+            }
+        } catch (Exception e) {
+            LOG.debug("Could not batch fetch " + fields + ", fetching them for each entity instead: " + e);
+        }
+    }
+
+    private Object getId(Object entity) {
+        return ((Session) entityManager.getDelegate()).getIdentifier(entity);
+    }
+
     private void initPersistentBags(Object entity) {
         for (Field persistentBagField : queryGenerator.getPersistentBagFields()) {
             initialize(entity, persistentBagField);
@@ -42,6 +42,11 @@ public class HibernatePerformanceMonitor {
     private static HibernatePerformanceMonitor singleton = new HibernatePerformanceMonitor();
     private AtomicLong idGenerator = new AtomicLong(0);
 
+    // criteria query plan cache statistics, see CriteriaQueryGenerator
+    private AtomicLong criteriaQueryPlanHits = new AtomicLong(0);
+    private AtomicLong criteriaQueryPlanMisses = new AtomicLong(0);
+    private AtomicLong criteriaQueryPlanGenerationNanos = new AtomicLong(0);
+
     private HibernatePerformanceMonitor() {
         watches = new ConcurrentHashMap<Long, HibernateStatisticsStopWatch>();
     }
@@ -61,6 +66,7 @@ public class HibernatePerformanceMonitor {
             Statistics stats = PersistenceUtility.getStatisticsService(entityManager, platformMBeanServer);
             stats.clear();
         }
+        zeroCriteriaQueryPlanStats();
     }
 
     public long start() {
@@ -115,4 +121,45 @@ public class HibernatePerformanceMonitor {
         }
     }
 
+    public void recordCriteriaQueryPlanHit() {
+        criteriaQueryPlanHits.incrementAndGet();
+    }
+
+    public void recordCriteriaQueryPlanMiss(String entityName, long generationNanos) {
+        long misses = criteriaQueryPlanMisses.incrementAndGet();
+        criteriaQueryPlanGenerationNanos.addAndGet(generationNanos);
+        if (isLoggingEnabled()) {
+            log.debug("Generated criteria query for " + entityName + " in " + (generationNanos / 1000) + "us "
+                + getCriteriaQueryPlanStatistics(misses));
+        }
+    }
+
+    public long getCriteriaQueryPlanHits() {
+        return criteriaQueryPlanHits.get();
+    }
+
+    public long getCriteriaQueryPlanMisses() {
+        return criteriaQueryPlanMisses.get();
+    }
+
+    /**
+     * @return the total time spent generating criteria queries that were not found in the query plan cache, in millis
+     */
+    public long getCriteriaQueryPlanGenerationTime() {
+        return criteriaQueryPlanGenerationNanos.get() / 1000000L;
+    }
+
+    public void zeroCriteriaQueryPlanStats() {
+        criteriaQueryPlanHits.set(0);
+        criteriaQueryPlanMisses.set(0);
+        criteriaQueryPlanGenerationNanos.set(0);
+    }
+
+    private String getCriteriaQueryPlanStatistics(long misses) {
+        long hits = criteriaQueryPlanHits.get();
+        long hitRate = (hits + misses == 0) ? 0 : (100 * hits) / (hits + misses);
+        return "(query plan cache: hits=" + hits + ", misses=" + misses + ", hitRate=" + hitRate
+            + "%, totalGenerationTime=" + getCriteriaQueryPlanGenerationTime() + "ms)";
+    }
+
 }
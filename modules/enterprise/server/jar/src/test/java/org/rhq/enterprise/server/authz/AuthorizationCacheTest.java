@@ -0,0 +1,131 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2011 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package org.rhq.enterprise.server.authz;
+
+import java.util.EnumSet;
+
+import org.testng.annotations.Test;
+
+import org.rhq.core.domain.authz.Permission;
+
+@Test
+public class AuthorizationCacheTest {
+
+    public void testResourceMasks() {
+        AuthorizationCache cache = new AuthorizationCache();
+        long generation = cache.getGeneration();
+
+        assert cache.hasResourcePermission(1, 10, Permission.CONTROL) == null : "Nothing should be cached yet";
+        cache.putResourcePermissions(1, 10, EnumSet.of(Permission.CONTROL), generation);
+        assert cache.hasResourcePermission(1, 10, Permission.CONTROL);
+        assert !cache.hasResourcePermission(1, 10, Permission.DELETE_RESOURCE) : "All permissions should be known";
+        assert cache.canViewResource(1, 10) == null : "Viewability is loaded separately";
+
+        cache.putResourceViewable(1, 10, true, generation);
+        assert cache.canViewResource(1, 10);
+        assert cache.hasResourcePermission(1, 10, Permission.CONTROL) : "Permissions should survive adding the view";
+
+        assert cache.hasResourcePermission(2, 10, Permission.CONTROL) == null : "Subjects should not share entries";
+        assert cache.hasGroupPermission(1, 10, Permission.CONTROL) == null : "Groups should not share resource entries";
+        assert cache.getHitCount() == 4;
+        assert cache.getMissCount() == 4;
+    }
+
+    public void testGlobalPermissions() {
+        AuthorizationCache cache = new AuthorizationCache();
+        assert cache.hasGlobalPermission(1, Permission.MANAGE_INVENTORY) == null;
+
+        cache.putGlobalPermissions(1, EnumSet.noneOf(Permission.class), cache.getGeneration());
+        assert !cache.hasGlobalPermission(1, Permission.MANAGE_INVENTORY) : "No permissions is a cacheable answer";
+    }
+
+    public void testStaleLoadIsDropped() {
+        AuthorizationCache cache = new AuthorizationCache();
+        long generation = cache.getGeneration();
+
+        // the roles changed while the permissions were being loaded
+        cache.invalidateSubject(1);
+        cache.putGroupPermissions(1, 20, EnumSet.of(Permission.MODIFY_RESOURCE), generation);
+        cache.putGroupViewable(1, 20, true, generation);
+        assert cache.hasGroupPermission(1, 20, Permission.MODIFY_RESOURCE) == null;
+        assert cache.canViewGroup(1, 20) == null;
+        assert cache.getEntryCount() == 0;
+    }
+
+    public void testInvalidation() {
+        AuthorizationCache cache = new AuthorizationCache();
+        cache.putResourceViewable(1, 10, true, cache.getGeneration());
+        cache.putResourceViewable(2, 10, false, cache.getGeneration());
+        assert cache.getSubjectCount() == 2;
+
+        cache.invalidateSubject(1);
+        assert cache.canViewResource(1, 10) == null;
+        assert !cache.canViewResource(2, 10) : "Other subjects should keep their entries";
+        assert cache.getAndClearCloudInvalidationPending();
+        assert !cache.getAndClearCloudInvalidationPending();
+
+        cache.invalidateAll();
+        assert cache.getSubjectCount() == 0;
+        assert cache.getInvalidationCount() == 2;
+        assert cache.getAndClearCloudInvalidationPending();
+    }
+
+    public void testBatchInvalidation() {
+        AuthorizationCache cache = new AuthorizationCache();
+        Object batch = new Object();
+
+        assert cache.invalidateAll(batch);
+        cache.putResourceViewable(1, 10, true, cache.getGeneration());
+        assert !cache.invalidateAll(batch) : "A batch should only invalidate once";
+        assert cache.canViewResource(1, 10);
+        assert cache.invalidateAll(new Object()) : "Other batches should still invalidate";
+        assert cache.getInvalidationCount() == 2;
+
+        cache.endBatch(batch);
+        assert cache.invalidateAll(batch) : "An ended batch should invalidate again";
+    }
+
+    public void testCloudGeneration() {
+        AuthorizationCache cache = new AuthorizationCache();
+        assert !cache.updateCloudGeneration(5) : "The first generation read should not clear the cache";
+
+        cache.putResourceViewable(1, 10, true, cache.getGeneration());
+        assert !cache.updateCloudGeneration(5);
+        assert cache.canViewResource(1, 10);
+
+        assert cache.updateCloudGeneration(6) : "Another server invalidated its cache";
+        assert cache.canViewResource(1, 10) == null;
+        assert !cache.getAndClearCloudInvalidationPending() : "A remote invalidation should not be sent back";
+    }
+
+    public void testSubjectEviction() {
+        AuthorizationCache cache = new AuthorizationCache();
+        int maxSubjects = Integer.parseInt(System.getProperty("rhq.server.authz-cache.max-subjects", "1000"));
+        for (int subjectId = 0; subjectId <= maxSubjects; subjectId++) {
+            cache.putResourceViewable(subjectId, 10, true, cache.getGeneration());
+            // keep the first subject recently used
+            cache.canViewResource(0, 10);
+        }
+
+        assert cache.getSubjectCount() == maxSubjects;
+        assert cache.getEvictionCount() == 1;
+        assert cache.canViewResource(0, 10) : "The least recently used subject should have been evicted instead";
+        assert cache.canViewResource(1, 10) == null;
+    }
+}
@@ -0,0 +1,342 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2011 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package org.rhq.enterprise.server.bundle;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.Executor;
+
+import javax.transaction.Status;
+
+import org.jmock.Expectations;
+import org.jmock.Sequence;
+import org.jmock.api.Action;
+import org.jmock.api.Invocation;
+import org.jmock.lib.action.CustomAction;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import org.rhq.core.domain.auth.Subject;
+import org.rhq.core.domain.authz.Permission;
+import org.rhq.core.domain.bundle.BundleDeploymentStatus;
+import org.rhq.core.domain.bundle.BundleResourceDeployment;
+import org.rhq.core.domain.bundle.BundleResourceDeploymentHistory;
+import org.rhq.core.domain.criteria.BundleResourceDeploymentCriteria;
+import org.rhq.core.domain.util.PageControl;
+import org.rhq.core.domain.util.PageList;
+import org.rhq.enterprise.server.authz.AuthorizationManagerLocal;
+import org.rhq.test.JMockTest;
+
+/**
+ * Runs rollouts against a mocked bundle manager. The statuses the rollout polls are those it set itself, those the
+ * agents reported by the actions of the launches, and the outcomes of the deployments still in progress when polled.
+ */
+@Test
+public class BundleRolloutSchedulerTest extends JMockTest {
+
+    private static final BundleRollout ROLLOUT = new BundleRollout(2, 1, 50);
+
+    private final Subject user = new Subject("user", true, false);
+    private final Subject overlord = new Subject("overlord", true, true);
+
+    private BundleManagerLocal bundleManager;
+    private AuthorizationManagerLocal authorizationManager;
+    private Map<Integer, BundleDeploymentStatus> statuses;
+    private Map<Integer, BundleDeploymentStatus> outcomes;
+    private Map<Integer, Set<Integer>> inFlightAtLaunch;
+
+    @BeforeMethod
+    public void createManagers() throws Exception {
+        bundleManager = context.mock(BundleManagerLocal.class);
+        authorizationManager = context.mock(AuthorizationManagerLocal.class);
+        statuses = new TreeMap<Integer, BundleDeploymentStatus>();
+        outcomes = new TreeMap<Integer, BundleDeploymentStatus>();
+        inFlightAtLaunch = new TreeMap<Integer, Set<Integer>>();
+
+        // the history is recorded as the overlord too
+        context.checking(new Expectations() {
+            {
+                allowing(bundleManager).addBundleResourceDeploymentHistory(with(same(overlord)),
+                    with(any(Integer.class)), with(any(BundleResourceDeploymentHistory.class)));
+            }
+        });
+    }
+
+    public void testRolloutRunsAsOverlord() throws Exception {
+        permit(true);
+        allowPolling();
+        final Sequence launches = context.sequence("launches");
+        context.checking(new Expectations() {
+            {
+                for (int id = 1; id <= 4; id++) {
+                    oneOf(bundleManager).setBundleResourceDeploymentStatus(overlord, id,
+                        BundleDeploymentStatus.IN_PROGRESS);
+                    inSequence(launches);
+                    will(setStatus());
+                    oneOf(bundleManager).launchBundleResourceDeployment(overlord, id, false, false);
+                    inSequence(launches);
+                    will(report(id, BundleDeploymentStatus.SUCCESS));
+                }
+            }
+        });
+
+        run(ROLLOUT, 1, 2, 3, 4);
+        assertStatuses(BundleDeploymentStatus.SUCCESS, 1, 2, 3, 4);
+    }
+
+    public void testRolloutOfUnpermittedUserFailsAllMembers() throws Exception {
+        permit(false);
+        expectFailed(1, 2, 3, 4);
+
+        run(ROLLOUT, 1, 2, 3, 4);
+        assertStatuses(BundleDeploymentStatus.FAILURE, 1, 2, 3, 4);
+    }
+
+    public void testRuntimeExceptionFailsRemainingMembers() throws Exception {
+        permit(true);
+        context.checking(new Expectations() {
+            {
+                allowing(bundleManager).findBundleResourceDeploymentsByCriteria(with(same(overlord)),
+                    with(any(BundleResourceDeploymentCriteria.class)));
+                will(throwException(new IllegalStateException("Lost the database")));
+
+                // the first member was launched before the failure, and is left to report its own result
+                oneOf(bundleManager).setBundleResourceDeploymentStatus(overlord, 1, BundleDeploymentStatus.IN_PROGRESS);
+                will(setStatus());
+                oneOf(bundleManager).launchBundleResourceDeployment(overlord, 1, false, false);
+                will(report(1, BundleDeploymentStatus.SUCCESS));
+            }
+        });
+        expectFailed(2, 3, 4);
+
+        run(ROLLOUT, 1, 2, 3, 4);
+        assertStatuses(BundleDeploymentStatus.SUCCESS, 1);
+        assertStatuses(BundleDeploymentStatus.FAILURE, 2, 3, 4);
+    }
+
+    public void testBatchesLaunchedOneAfterAnother() throws Exception {
+        permit(true);
+        allowPolling();
+        allowLaunches();
+
+        run(new BundleRollout(2, 0, 0), 1, 2, 3, 4, 5);
+        assertStatuses(BundleDeploymentStatus.SUCCESS, 1, 2, 3, 4, 5);
+
+        // a batch is launched all at once, but only once the previous one is done
+        assert inFlightAtLaunch.keySet().equals(set(1, 2, 3, 4, 5)) : inFlightAtLaunch;
+        assert inFlightAtLaunch.get(1).isEmpty() && inFlightAtLaunch.get(2).equals(set(1)) : inFlightAtLaunch;
+        assert inFlightAtLaunch.get(3).isEmpty() && inFlightAtLaunch.get(4).equals(set(3)) : inFlightAtLaunch;
+        assert inFlightAtLaunch.get(5).isEmpty() : inFlightAtLaunch;
+    }
+
+    public void testMaxInFlightLaunchedAtOnce() throws Exception {
+        permit(true);
+        allowPolling();
+        allowLaunches();
+
+        run(new BundleRollout(0, 2, 0), 1, 2, 3, 4, 5);
+        assertStatuses(BundleDeploymentStatus.SUCCESS, 1, 2, 3, 4, 5);
+
+        // the next member is launched as soon as one in flight is done
+        assert inFlightAtLaunch.get(1).isEmpty() && inFlightAtLaunch.get(2).equals(set(1)) : inFlightAtLaunch;
+        for (int id = 3; id <= 5; id++) {
+            assert inFlightAtLaunch.get(id).size() < 2 : inFlightAtLaunch;
+        }
+    }
+
+    public void testRolloutHaltedBelowSuccessThreshold() throws Exception {
+        permit(true);
+        allowPolling();
+        allowLaunches();
+        outcomes.put(2, BundleDeploymentStatus.FAILURE);
+        outcomes.put(3, BundleDeploymentStatus.FAILURE);
+        outcomes.put(4, BundleDeploymentStatus.FAILURE);
+        expectFailed(5, 6, 7);
+
+        // half of the first batch succeeds, which is enough, but none of the second
+        run(new BundleRollout(2, 0, 50), 1, 2, 3, 4, 5, 6, 7);
+        assert inFlightAtLaunch.keySet().equals(set(1, 2, 3, 4)) : "The rollout should have been halted";
+        assertStatuses(BundleDeploymentStatus.SUCCESS, 1);
+        assertStatuses(BundleDeploymentStatus.FAILURE, 2, 3, 4, 5, 6, 7);
+    }
+
+    public void testFailedLastBatchDoesNotHalt() throws Exception {
+        permit(true);
+        allowPolling();
+        allowLaunches();
+        outcomes.put(3, BundleDeploymentStatus.FAILURE);
+
+        run(new BundleRollout(2, 0, 100), 1, 2, 3);
+        assertStatuses(BundleDeploymentStatus.SUCCESS, 1, 2);
+        assertStatuses(BundleDeploymentStatus.FAILURE, 3);
+    }
+
+    public void testRolloutStartedAfterCommit() throws Exception {
+        permit(true);
+        allowPolling();
+        allowLaunches();
+
+        BundleRolloutScheduler scheduler = createScheduler();
+        scheduler.new StartAfterCompletion(createRollout(scheduler, ROLLOUT, 1, 2)).afterCompletion(
+            Status.STATUS_COMMITTED);
+        assertStatuses(BundleDeploymentStatus.SUCCESS, 1, 2);
+    }
+
+    public void testRolledBackRolloutFailsAllMembers() throws Exception {
+        expectFailed(1, 2, 3);
+
+        // neither the permission is checked nor any member launched
+        BundleRolloutScheduler scheduler = createScheduler();
+        scheduler.new StartAfterCompletion(createRollout(scheduler, ROLLOUT, 1, 2, 3)).afterCompletion(
+            Status.STATUS_ROLLEDBACK);
+        assertStatuses(BundleDeploymentStatus.FAILURE, 1, 2, 3);
+    }
+
+    private void run(BundleRollout rollout, Integer... resourceDeploymentIds) {
+        createRollout(new BundleRolloutScheduler(), rollout, resourceDeploymentIds).run();
+    }
+
+    private BundleRolloutScheduler.Rollout createRollout(BundleRolloutScheduler scheduler, BundleRollout rollout,
+        Integer... resourceDeploymentIds) {
+        List<Integer> ids = Arrays.asList(resourceDeploymentIds);
+        for (Integer id : ids) {
+            statuses.put(id, BundleDeploymentStatus.PENDING);
+        }
+        return scheduler.new Rollout(user, 1, "deployment", BundleRolloutScheduler.toBatches(ids, rollout), rollout,
+            false, false, bundleManager, authorizationManager, overlord, 1L);
+    }
+
+    // runs everything right away, so that the test sees what a rollout started
+    private BundleRolloutScheduler createScheduler() {
+        return new BundleRolloutScheduler(new Executor() {
+            public void execute(Runnable command) {
+                command.run();
+            }
+        });
+    }
+
+    private void permit(final boolean permitted) {
+        context.checking(new Expectations() {
+            {
+                oneOf(authorizationManager).hasGlobalPermission(user, Permission.MANAGE_BUNDLE);
+                will(returnValue(permitted));
+            }
+        });
+    }
+
+    private void allowPolling() {
+        context.checking(new Expectations() {
+            {
+                allowing(bundleManager).findBundleResourceDeploymentsByCriteria(with(same(overlord)),
+                    with(any(BundleResourceDeploymentCriteria.class)));
+                will(new CustomAction("return the statuses") {
+                    public Object invoke(Invocation invocation) {
+                        for (Map.Entry<Integer, BundleDeploymentStatus> entry : statuses.entrySet()) {
+                            if (entry.getValue() == BundleDeploymentStatus.IN_PROGRESS) {
+                                entry.setValue(outcomes.containsKey(entry.getKey()) ? outcomes.get(entry.getKey())
+                                    : BundleDeploymentStatus.SUCCESS);
+                            }
+                        }
+                        List<BundleResourceDeployment> resourceDeployments = new ArrayList<BundleResourceDeployment>();
+                        for (Map.Entry<Integer, BundleDeploymentStatus> entry : statuses.entrySet()) {
+                            BundleResourceDeployment resourceDeployment = new BundleResourceDeployment(null, null);
+                            resourceDeployment.setId(entry.getKey());
+                            resourceDeployment.setStatus(entry.getValue());
+                            resourceDeployments.add(resourceDeployment);
+                        }
+                        return new PageList<BundleResourceDeployment>(resourceDeployments, PageControl
+                            .getUnlimitedInstance());
+                    }
+                });
+            }
+        });
+    }
+
+    // the agents take until the next poll to report the outcome, which is a success unless stated otherwise
+    private void allowLaunches() throws Exception {
+        context.checking(new Expectations() {
+            {
+                allowing(bundleManager).setBundleResourceDeploymentStatus(with(same(overlord)),
+                    with(any(Integer.class)), with(equal(BundleDeploymentStatus.IN_PROGRESS)));
+                will(new CustomAction("record the members in flight and set the status") {
+                    public Object invoke(Invocation invocation) throws Throwable {
+                        Set<Integer> inFlight = new TreeSet<Integer>();
+                        for (Map.Entry<Integer, BundleDeploymentStatus> entry : statuses.entrySet()) {
+                            if (entry.getValue() == BundleDeploymentStatus.IN_PROGRESS) {
+                                inFlight.add(entry.getKey());
+                            }
+                        }
+                        inFlightAtLaunch.put((Integer) invocation.getParameter(1), inFlight);
+                        return setStatus().invoke(invocation);
+                    }
+                });
+                allowing(bundleManager).launchBundleResourceDeployment(with(same(overlord)), with(any(Integer.class)),
+                    with(equal(false)), with(equal(false)));
+            }
+        });
+    }
+
+    private void expectFailed(final int... resourceDeploymentIds) throws Exception {
+        context.checking(new Expectations() {
+            {
+                for (int id : resourceDeploymentIds) {
+                    oneOf(bundleManager)
+                        .setBundleResourceDeploymentStatus(overlord, id, BundleDeploymentStatus.FAILURE);
+                    will(setStatus());
+                }
+            }
+        });
+    }
+
+    private void assertStatuses(BundleDeploymentStatus status, int... resourceDeploymentIds) {
+        for (int id : resourceDeploymentIds) {
+            assert statuses.get(id) == status : statuses;
+        }
+    }
+
+    private Set<Integer> set(Integer... resourceDeploymentIds) {
+        return new TreeSet<Integer>(Arrays.asList(resourceDeploymentIds));
+    }
+
+    // the action of setting the status of a resource deployment
+    private Action setStatus() {
+        return new CustomAction("set the status") {
+            public Object invoke(Invocation invocation) {
+                Integer resourceDeploymentId = (Integer) invocation.getParameter(1);
+                statuses.put(resourceDeploymentId, (BundleDeploymentStatus) invocation.getParameter(2));
+                return null;
+            }
+        };
+    }
+
+    // the action of an agent reporting the result of its resource deployment as soon as it is launched
+    private Action report(final int resourceDeploymentId, final BundleDeploymentStatus status) {
+        return new CustomAction("report " + status) {
+            public Object invoke(Invocation invocation) {
+                statuses.put(resourceDeploymentId, status);
+                return null;
+            }
+        };
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2011 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package org.rhq.enterprise.server.content;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+
+import org.testng.annotations.Test;
+
+import org.rhq.core.domain.content.PackageVersion;
+import org.rhq.core.util.MessageDigestGenerator;
+import org.rhq.core.util.stream.StreamUtil;
+
+/**
+ * Tests the verification of the digests of downloaded package bits.
+ */
+@Test
+public class ContentSourceManagerBeanDigestTest {
+
+    private static final byte[] BITS = "the package bits".getBytes();
+
+    public void testSha256() throws Exception {
+        PackageVersion pv = new PackageVersion();
+        pv.setSHA256(digest("SHA-256", BITS));
+        pv.setMD5(digest("MD5", BITS));
+
+        MessageDigestGenerator generator = download(pv, BITS);
+        assert generator.getMessageDigest().getAlgorithm().equals(MessageDigestGenerator.SHA_256);
+        ContentSourceManagerBean.verifyDigest(generator, pv, "location");
+    }
+
+    public void testSha1() throws Exception {
+        // yum repositories declaring "sha" checksums end up with a SHA-1 digest in the SHA256 property
+        PackageVersion pv = new PackageVersion();
+        pv.setSHA256(digest("SHA-1", BITS).toUpperCase());
+
+        MessageDigestGenerator generator = download(pv, BITS);
+        assert generator.getMessageDigest().getAlgorithm().equals("SHA-1");
+        ContentSourceManagerBean.verifyDigest(generator, pv, "location");
+    }
+
+    public void testMismatch() throws Exception {
+        PackageVersion pv = new PackageVersion();
+        pv.setSHA256(digest("SHA-256", BITS));
+
+        MessageDigestGenerator generator = download(pv, "corrupted package bits".getBytes());
+        try {
+            ContentSourceManagerBean.verifyDigest(generator, pv, "location");
+            assert false : "The corrupted bits should not have been verified";
+        } catch (Exception e) {
+            assert e.getMessage().contains("are corrupt") : e;
+        }
+    }
+
+    public void testUnknownDigest() throws Exception {
+        PackageVersion pv = new PackageVersion();
+        pv.setSHA256("0123456789abcdef");
+        assert ContentSourceManagerBean.getDigestGenerator(pv) == null : "An unknown digest should not be verified";
+        ContentSourceManagerBean.verifyDigest(null, pv, "location");
+
+        // the MD5 is verified instead, if there is one
+        pv.setMD5(digest("MD5", BITS));
+        MessageDigestGenerator generator = download(pv, BITS);
+        assert generator.getMessageDigest().getAlgorithm().equals(MessageDigestGenerator.MD5);
+        ContentSourceManagerBean.verifyDigest(generator, pv, "location");
+
+        assert ContentSourceManagerBean.getDigestGenerator(new PackageVersion()) == null;
+    }
+
+    private MessageDigestGenerator download(PackageVersion pv, byte[] bits) throws Exception {
+        MessageDigestGenerator generator = ContentSourceManagerBean.getDigestGenerator(pv);
+        InputStream in = new DigestInputStream(new ByteArrayInputStream(bits), generator.getMessageDigest());
+        StreamUtil.slurp(in);
+        return generator;
+    }
+
+    private String digest(String algorithm, byte[] bits) throws Exception {
+        StringBuilder hex = new StringBuilder();
+        for (byte b : MessageDigest.getInstance(algorithm).digest(bits)) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+}
@@ -0,0 +1,215 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2011 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package org.rhq.enterprise.server.core.plugin;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import org.rhq.core.domain.plugin.Plugin;
+import org.rhq.core.util.MessageDigestGenerator;
+import org.rhq.core.util.file.FileUtil;
+import org.rhq.core.util.file.ZipDelta;
+
+@Test
+public class PluginDeltaCacheTest {
+    private File testDir;
+
+    @BeforeMethod
+    public void createTestDir() throws Exception {
+        testDir = FileUtil.createTempDirectory("pluginDeltaCacheTest", ".dir", null);
+    }
+
+    @AfterMethod(alwaysRun = true)
+    public void deleteTestDir() {
+        FileUtil.purge(testDir, true);
+    }
+
+    public void testDeltaComputedOnceForConcurrentAgents() throws Exception {
+        File oldJar = createJar("old.jar", "1");
+        File newJar = createJar("new.jar", "2");
+        final Plugin plugin = new Plugin("test", "test.jar", MessageDigestGenerator.getDigestString(newJar));
+        final ZipDelta.Signature signature = ZipDelta.createSignature(oldJar);
+        final CountingPluginDeltaCache cache = new CountingPluginDeltaCache(1024L * 1024, 100);
+        cache.computeTime = 200L;
+
+        final File pluginFile = newJar;
+        final CountDownLatch start = new CountDownLatch(1);
+        ExecutorService agents = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<byte[]>> deltas = new ArrayList<Future<byte[]>>();
+            for (int i = 0; i < 8; i++) {
+                deltas.add(agents.submit(new Callable<byte[]>() {
+                    public byte[] call() throws Exception {
+                        start.await();
+                        return cache.getDelta(plugin, pluginFile, signature);
+                    }
+                }));
+            }
+            start.countDown();
+
+            byte[] delta = deltas.get(0).get();
+            assert delta != null && delta.length > 0;
+            for (Future<byte[]> other : deltas) {
+                assert other.get() == delta : "All agents should have been given the same delta";
+            }
+        } finally {
+            agents.shutdownNow();
+        }
+        assert cache.computations.get() == 1 : "The delta was computed " + cache.computations + " times";
+
+        // later agents are served from the cache
+        assert cache.getDelta(plugin, newJar, signature) != null;
+        assert cache.computations.get() == 1;
+
+        // an agent with the latest plugin needs no delta at all
+        assert cache.getDelta(plugin, newJar, ZipDelta.createSignature(newJar)) == null;
+        assert cache.computations.get() == 1;
+    }
+
+    public void testLeastRecentlyUsedDeltasEvicted() throws Exception {
+        File newJar = createJar("new.jar", "new");
+        Plugin plugin = new Plugin("test", "test.jar", MessageDigestGenerator.getDigestString(newJar));
+        ZipDelta.Signature a = ZipDelta.createSignature(createJar("a.jar", "a"));
+        ZipDelta.Signature b = ZipDelta.createSignature(createJar("b.jar", "b"));
+        ZipDelta.Signature c = ZipDelta.createSignature(createJar("c.jar", "c"));
+
+        // room for two of the 100 byte deltas
+        CountingPluginDeltaCache cache = new CountingPluginDeltaCache(250L, 100);
+        cache.deltaSize = 100;
+
+        cache.getDelta(plugin, newJar, a);
+        cache.getDelta(plugin, newJar, b);
+        cache.getDelta(plugin, newJar, a); // a is now used more recently than b
+        assert cache.computations.get() == 2;
+
+        cache.getDelta(plugin, newJar, c); // evicts b
+        assert cache.computations.get() == 3;
+        cache.getDelta(plugin, newJar, a);
+        cache.getDelta(plugin, newJar, c);
+        assert cache.computations.get() == 3 : "a and c should still be cached";
+        cache.getDelta(plugin, newJar, b);
+        assert cache.computations.get() == 4 : "b should have been evicted";
+
+        // a delta larger than the whole cache is never kept
+        cache = new CountingPluginDeltaCache(50L, 100);
+        cache.deltaSize = 100;
+        cache.getDelta(plugin, newJar, a);
+        cache.getDelta(plugin, newJar, a);
+        assert cache.computations.get() == 2;
+    }
+
+    public void testDeltaNotWorthSending() throws Exception {
+        File oldJar = createJar("old.jar", "1");
+        File newJar = createJar("new.jar", "2");
+        Plugin plugin = new Plugin("test", "test.jar", MessageDigestGenerator.getDigestString(newJar));
+        ZipDelta.Signature signature = ZipDelta.createSignature(oldJar);
+
+        // no delta can be smaller than 0% of the jar
+        CountingPluginDeltaCache cache = new CountingPluginDeltaCache(1024L * 1024, 0);
+        assert cache.getDelta(plugin, newJar, signature) == null;
+        assert cache.getDelta(plugin, newJar, signature) == null;
+        assert cache.computations.get() == 1 : "That there is no delta worth sending should be remembered too";
+    }
+
+    public void testFailedDeltaNotCached() throws Exception {
+        File oldJar = createJar("old.jar", "1");
+        File newJar = createJar("new.jar", "2");
+        Plugin plugin = new Plugin("test", "test.jar", MessageDigestGenerator.getDigestString(newJar));
+        ZipDelta.Signature signature = ZipDelta.createSignature(oldJar);
+
+        CountingPluginDeltaCache cache = new CountingPluginDeltaCache(1024L * 1024, 100);
+        cache.failures = 1;
+        try {
+            cache.getDelta(plugin, newJar, signature);
+            assert false : "The failure to compute the delta should have been thrown";
+        } catch (IOException expected) {
+        }
+
+        // the next agent asking tries again
+        assert cache.getDelta(plugin, newJar, signature) != null;
+        assert cache.computations.get() == 2;
+    }
+
+    private File createJar(String name, String descriptor) throws IOException {
+        File file = new File(testDir, name);
+        Random random = new Random(42L); // the classes are the same in every version of the plugin
+        ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(file));
+        try {
+            zip.putNextEntry(new ZipEntry("META-INF/rhq-plugin.xml"));
+            zip.write(descriptor.getBytes());
+            for (int i = 0; i < 10; i++) {
+                byte[] content = new byte[4096];
+                random.nextBytes(content);
+                zip.putNextEntry(new ZipEntry("org/rhq/plugins/test/Component" + i + ".class"));
+                zip.write(content);
+            }
+        } finally {
+            zip.close();
+        }
+        return file;
+    }
+
+    /**
+     * Counts the deltas it computes; it can also be made to take its time, to fail, or to return deltas of a given
+     * size instead of real ones.
+     */
+    private static class CountingPluginDeltaCache extends PluginDeltaCache {
+        final AtomicInteger computations = new AtomicInteger();
+        long computeTime;
+        int deltaSize;
+        int failures;
+
+        CountingPluginDeltaCache(long maxSize, int maxRatio) {
+            super(maxSize, maxRatio);
+        }
+
+        @Override
+        byte[] computeDelta(Plugin plugin, File pluginFile, ZipDelta.Signature signature) throws Exception {
+            computations.incrementAndGet();
+            Thread.sleep(computeTime);
+            if (failures > 0) {
+                failures--;
+                throw new IOException("Failed to read " + pluginFile);
+            }
+            if (deltaSize > 0) {
+                ByteArrayOutputStream delta = new ByteArrayOutputStream();
+                delta.write(new byte[deltaSize]);
+                return delta.toByteArray();
+            }
+            return super.computeDelta(plugin, pluginFile, signature);
+        }
+    }
+}
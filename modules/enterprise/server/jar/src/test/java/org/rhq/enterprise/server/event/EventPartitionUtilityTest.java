@@ -0,0 +1,169 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2011 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package org.rhq.enterprise.server.event;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.testng.SkipException;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import org.rhq.core.domain.event.Event;
+import org.rhq.core.util.jdbc.JDBCUtil;
+import org.rhq.enterprise.server.test.AbstractEJB3Test;
+
+/**
+ * Runs the partition maintenance against the test database, in a transaction that is rolled back after each test.
+ */
+@Test
+public class EventPartitionUtilityTest extends AbstractEJB3Test {
+
+    private static final long DAY = EventPartitionUtility.MILLISECONDS_PER_PARTITION;
+
+    private Connection conn;
+
+    @BeforeMethod
+    public void beginTransaction() throws Exception {
+        if (!isPostgres()) {
+            throw new SkipException("Event partitions are only supported on Postgres");
+        }
+        getTransactionManager().begin();
+        conn = getConnection();
+    }
+
+    @AfterMethod(alwaysRun = true)
+    public void rollbackTransaction() throws Exception {
+        if (conn != null) {
+            JDBCUtil.safeClose(conn);
+            conn = null;
+            getTransactionManager().rollback();
+            EventPartitionUtility.resetPartitions(); // the partitions created by the test are gone
+        }
+    }
+
+    public void testCreatePartitions() throws Exception {
+        // far enough ahead for none of the partitions to exist yet
+        long later = System.currentTimeMillis() + 365 * DAY;
+        long first = EventPartitionUtility.getPartition(later);
+        long last = first + EventPartitionUtility.PARTITIONS_AHEAD;
+
+        assert EventPartitionUtility.createPartitions(conn, later) == EventPartitionUtility.PARTITIONS_AHEAD + 1;
+        Set<String> tables = getPartitionTables();
+        for (long partition = first; partition <= last; partition++) {
+            assert tables.contains(partitionTable(partition)) : "Missing partition " + partition + ": " + tables;
+        }
+
+        // constraints and indexes are not inherited, so every partition gets its own
+        String table = partitionTable(first);
+        Set<String> constraints = getNames("SELECT c.conname FROM pg_constraint c "
+            + "JOIN pg_class t ON t.oid = c.conrelid WHERE t.relname = ?", table);
+        assert constraints.contains(table + "_pk") && constraints.contains(table + "_src_fk") : constraints;
+        Set<String> indexes = getNames("SELECT indexname FROM pg_indexes WHERE tablename = ?", table);
+        assert indexes.contains(table + "_idx") : indexes;
+
+        // existing partitions are not created again
+        assert EventPartitionUtility.createPartitions(conn, later) == 0;
+        assert EventPartitionUtility.createPartitions(conn, later + DAY) == 1;
+        assert getPartitionTables().contains(partitionTable(last + 1));
+    }
+
+    public void testDropPartitions() throws Exception {
+        long now = System.currentTimeMillis();
+        long today = EventPartitionUtility.getPartition(now);
+        for (long partition = today - 10; partition < today; partition += EventPartitionUtility.PARTITIONS_AHEAD + 1) {
+            EventPartitionUtility.createPartitions(conn, partition * DAY);
+        }
+        Set<String> tables = getPartitionTables();
+        for (long partition = today - 10; partition <= today + 1; partition++) {
+            assert tables.contains(partitionTable(partition)) : "Missing partition " + partition + ": " + tables;
+        }
+
+        // only the partitions holding nothing but events older than the cutoff go
+        long cutoff = (today - 5) * DAY + 1000L;
+        assert EventPartitionUtility.dropPartitions(conn, cutoff) >= 5;
+        tables = getPartitionTables();
+        for (long partition = today - 10; partition <= today - 6; partition++) {
+            assert !tables.contains(partitionTable(partition)) : "Partition " + partition + " should be dropped";
+        }
+        assert tables.contains(partitionTable(today - 5)) : "The partition straddling the cutoff should be kept";
+
+        // the current and previous partitions are kept whatever the cutoff, as events may still be inserted into them
+        assert EventPartitionUtility.dropPartitions(conn, now + 1000L) == 4;
+        tables = getPartitionTables();
+        assert !tables.contains(partitionTable(today - 2));
+        assert tables.contains(partitionTable(today - 1));
+        assert tables.contains(partitionTable(today));
+        assert tables.contains(partitionTable(today + 1));
+    }
+
+    public void testInsertTable() throws Exception {
+        long now = System.currentTimeMillis();
+        long today = EventPartitionUtility.getPartition(now);
+        long lastWeek = now - 7 * DAY;
+        EventPartitionUtility.createPartitions(conn, lastWeek);
+        EventPartitionUtility.createPartitions(conn, now);
+
+        assert EventPartitionUtility.getInsertTable(conn, now).equals(EventPartitionUtility.getPartitionTable(today));
+        assert EventPartitionUtility.getInsertTable(conn, now + DAY).equals(
+            EventPartitionUtility.getPartitionTable(today + 1));
+
+        // there is no partition yet for after the ones created ahead
+        long afterLast = now + (EventPartitionUtility.PARTITIONS_AHEAD + 1) * DAY;
+        assert EventPartitionUtility.getInsertTable(conn, afterLast).equals(Event.TABLE_NAME);
+
+        // events older than the previous partition go into RHQ_EVENT even if their partition exists, so that they
+        // can't be inserted into a partition being dropped
+        assert EventPartitionUtility.getInsertTable(conn, lastWeek).equals(Event.TABLE_NAME);
+    }
+
+    /**
+     * @return the child tables of RHQ_EVENT, in the lower case postgres stores unquoted identifiers in
+     */
+    private Set<String> getPartitionTables() throws Exception {
+        return getNames("SELECT child.relname FROM pg_inherits inh JOIN pg_class child ON child.oid = inh.inhrelid "
+            + "JOIN pg_class parent ON parent.oid = inh.inhparent WHERE parent.relname = ?", Event.TABLE_NAME
+            .toLowerCase());
+    }
+
+    private Set<String> getNames(String query, String parameter) throws Exception {
+        Set<String> names = new HashSet<String>();
+        PreparedStatement ps = null;
+        ResultSet rs = null;
+        try {
+            ps = conn.prepareStatement(query);
+            ps.setString(1, parameter);
+            rs = ps.executeQuery();
+            while (rs.next()) {
+                names.add(rs.getString(1));
+            }
+        } finally {
+            JDBCUtil.safeClose(ps, rs);
+        }
+        return names;
+    }
+
+    private static String partitionTable(long partition) {
+        return EventPartitionUtility.getPartitionTable(partition).toLowerCase();
+    }
+}
@@ -20,10 +20,12 @@ package org.rhq.enterprise.server.resource.group.definition.framework.test;
 
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.EnumSet;
 import java.util.List;
 
 import org.testng.annotations.Test;
 
+import org.rhq.core.domain.resource.group.GroupDefinitionChangeType;
 import org.rhq.enterprise.server.resource.group.definition.framework.ExpressionEvaluator;
 import org.rhq.enterprise.server.test.AbstractEJB3Test;
 import org.rhq.enterprise.server.util.QueryUtility;
@@ -254,6 +256,29 @@ public class ExpressionEvaluatorTest extends AbstractEJB3Test {
         }
     }
 
+    @Test(groups = "integration.session")
+    public void testDependencies() throws Exception {
+        ExpressionEvaluator evaluator = new ExpressionEvaluator();
+        evaluator.setTestMode(true); // to prevent actual query from happening
+        evaluator.addExpression("resource.type.plugin = JBossAS");
+        assert evaluator.getDependencies().equals(EnumSet.of(GroupDefinitionChangeType.INVENTORY)) : evaluator
+            .getDependencies();
+
+        evaluator.addExpression("resource.trait[partitionName] = cluster-1");
+        evaluator.addExpression("groupby resource.pluginConfiguration[bindAddress]");
+        assert evaluator.getDependencies().equals(
+            EnumSet.of(GroupDefinitionChangeType.INVENTORY, GroupDefinitionChangeType.TRAIT,
+                GroupDefinitionChangeType.PLUGIN_CONFIGURATION)) : evaluator.getDependencies();
+
+        evaluator = new ExpressionEvaluator();
+        evaluator.setTestMode(true);
+        evaluator.addExpression("resource.availability = UP");
+        evaluator.addExpression("resource.resourceConfiguration[port] = 8080");
+        assert evaluator.getDependencies().equals(
+            EnumSet.of(GroupDefinitionChangeType.INVENTORY, GroupDefinitionChangeType.AVAILABILITY,
+                GroupDefinitionChangeType.RESOURCE_CONFIGURATION)) : evaluator.getDependencies();
+    }
+
     private String cleanUp(String result) {
         return result.replaceAll("\\s+", " ").trim();
     }
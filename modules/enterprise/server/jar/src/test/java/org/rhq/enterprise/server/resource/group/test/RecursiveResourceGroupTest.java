@@ -174,6 +174,52 @@ public class RecursiveResourceGroupTest extends AbstractEJB3Test {
         }
     }
 
+    @Test(groups = "integration.session")
+    public void testDeepImplicitGroupMembership() throws Throwable {
+        getTransactionManager().begin();
+        try {
+            EntityManager em = getEntityManager();
+
+            // setup simple test structures
+            Subject subject = SessionTestHelper.createNewSubject(em, "fake subject");
+            Role role = SessionTestHelper
+                .createNewRoleForSubject(em, subject, "fake role", Permission.MANAGE_INVENTORY);
+
+            ResourceGroup recursiveGroup = SessionTestHelper.createNewMixedGroupForRole(em, role, "fake group", true);
+
+            // a chain deeper than the fixed number of parent joins the recursive queries used to be limited to
+            List<Resource> fullTree = ResourceTreeHelper.createTree(em, "A=B; B=C; C=D; D=E; E=F; F=G; G=H; H=I; I=J");
+            Resource nodeA = ResourceTreeHelper.findNode(fullTree, "A");
+            Resource nodeC = ResourceTreeHelper.findNode(fullTree, "C");
+            Resource nodeJ = ResourceTreeHelper.findNode(fullTree, "J");
+
+            List<Integer> lineage = resourceManager.getResourceIdLineage(nodeJ.getId());
+            assert lineage.size() == 9 : "Failed: lineage of deepest node, size was " + lineage.size();
+            assert lineage.get(0) == nodeJ.getParentResource().getId() : "Failed: lineage should start at the parent";
+            assert lineage.get(8) == nodeA.getId() : "Failed: lineage should end at the root";
+
+            resourceGroupManager.addResourcesToGroup(subject, recursiveGroup.getId(), new int[] { nodeA.getId() });
+            List<Integer> implicitIds = resourceManager.findImplicitResourceIdsByResourceGroup(recursiveGroup.getId());
+            verifyEqual("Failed: deep implicit resources", getIds(ResourceTreeHelper.getSubtree(nodeA)), implicitIds);
+
+            // removing an explicit member whose ancestor is also an explicit member leaves the implicit membership alone
+            resourceGroupManager.addResourcesToGroup(subject, recursiveGroup.getId(), new int[] { nodeC.getId() });
+            resourceGroupManager.removeResourcesFromGroup(subject, recursiveGroup.getId(), new int[] { nodeC.getId() });
+            implicitIds = resourceManager.findImplicitResourceIdsByResourceGroup(recursiveGroup.getId());
+            verifyEqual("Failed: deep implicit resources after remove", getIds(ResourceTreeHelper.getSubtree(nodeA)),
+                implicitIds);
+
+            resourceGroupManager.removeResourcesFromGroup(subject, recursiveGroup.getId(), new int[] { nodeA.getId() });
+            implicitIds = resourceManager.findImplicitResourceIdsByResourceGroup(recursiveGroup.getId());
+            assert implicitIds.isEmpty() : "Failed: deep implicit resources should be empty, found " + implicitIds;
+        } catch (Throwable t) {
+            t.printStackTrace();
+            throw t;
+        } finally {
+            getTransactionManager().rollback();
+        }
+    }
+
     @Test(groups = "integration.session")
     public void testImplicitGroupMembershipFromComplexGroupUpdates() throws Throwable {
         Subject subject = null;
@@ -0,0 +1,174 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2011 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License, version 2, as
+ * published by the Free Software Foundation, and/or the GNU Lesser
+ * General Public License, version 2.1, also as published by the Free
+ * Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License and the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * and the GNU Lesser General Public License along with this program;
+ * if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.rhq.enterprise.server.util;
+
+import org.testng.annotations.Test;
+
+import org.rhq.core.domain.criteria.Criteria;
+import org.rhq.core.domain.util.PageOrdering;
+import org.rhq.enterprise.server.util.CriteriaQueryGenerator.AuthorizationTokenType;
+
+/**
+ * Tests the JPQL {@link CriteriaQueryGenerator} generates for keyset paging, and its query plan cache.
+ */
+@Test
+public class CriteriaQueryGeneratorTest {
+
+    private static final String NL = System.getProperty("line.separator");
+
+    public void testKeysetPagingAscending() {
+        WidgetCriteria criteria = new WidgetCriteria();
+        criteria.addSortName(PageOrdering.ASC);
+
+        criteria.setPagingAfter(null, 10);
+        assert new CriteriaQueryGenerator(null, criteria).getQueryString(false).equals("" //
+            + "SELECT widget" + NL //
+            + "FROM Widget widget" + NL //
+            + NL + "ORDER BY widget.name ASC, widget.id ASC" + NL) : "The first page needs no keyset";
+
+        criteria.setPagingAfter(5, 10);
+        assertQuery(criteria, "" //
+            + "( ( widget.name > :keysetValue0 )" + NL //
+            + "  OR ( widget.name = :keysetValue0 AND widget.id > :keysetValue1 ) )" + NL //
+            + "ORDER BY widget.name ASC, widget.id ASC");
+    }
+
+    public void testKeysetPagingDescending() {
+        WidgetCriteria criteria = new WidgetCriteria();
+        criteria.addSortName(PageOrdering.DESC);
+        criteria.addSortId(PageOrdering.DESC);
+        criteria.setPagingAfter(5, 10);
+
+        // the id is already sorted on, so it breaks the ties in its own order
+        assertQuery(criteria, "" //
+            + "( ( widget.name < :keysetValue0 )" + NL //
+            + "  OR ( widget.name = :keysetValue0 AND widget.id < :keysetValue1 ) )" + NL //
+            + "ORDER BY widget.name DESC, widget.id DESC");
+    }
+
+    public void testKeysetPagingMixedOrderings() {
+        WidgetCriteria criteria = new WidgetCriteria();
+        criteria.addSortOwnerId(PageOrdering.ASC);
+        criteria.addSortName(PageOrdering.DESC);
+        criteria.setPagingAfter(5, 10);
+
+        assertQuery(criteria, "" //
+            + "( ( widget.ownerId > :keysetValue0 )" + NL //
+            + "  OR ( widget.ownerId = :keysetValue0 AND widget.name < :keysetValue1 )" + NL //
+            + "  OR ( widget.ownerId = :keysetValue0 AND widget.name = :keysetValue1 AND widget.id > :keysetValue2 ) )"
+            + NL + "ORDER BY widget.ownerId ASC, widget.name DESC, widget.id ASC");
+    }
+
+    public void testKeysetPagingAfterFilters() {
+        WidgetCriteria criteria = new WidgetCriteria();
+        criteria.addFilterOwnerId(1);
+        criteria.setFiltersOptional(true);
+        criteria.setPagingAfter(5, 10);
+
+        // the page boundary is not made optional along with the filters
+        assertQuery(criteria, "( widget.ownerId = :ownerId )" + NL //
+            + " AND ( ( widget.id > :keysetValue0 ) )" + NL //
+            + "ORDER BY widget.id ASC");
+        assert !new CriteriaQueryGenerator(null, criteria).getQueryString(true).contains("keysetValue")
+            : "The count query should count all results, not those after the page";
+    }
+
+    public void testSubjectsShareQueryPlan() {
+        CriteriaQueryGenerator firstGenerator = createGenerator(1);
+        CriteriaQueryGenerator secondGenerator = createGenerator(2);
+
+        String queryString = firstGenerator.getQueryString(false);
+        assert queryString.contains(":authzSubjectId") : "The subject should be bound, not inlined";
+        assert secondGenerator.getQueryString(false) == queryString : "Both subjects should use the cached plan";
+        assert secondGenerator.getQueryString(true) == firstGenerator.getQueryString(true);
+    }
+
+    public void testParameterReplacedQueryInlinesSubject() {
+        String query = createGenerator(42).getParameterReplacedQuery(false);
+        assert !query.contains(":authzSubjectId");
+        assert query.contains("s.id = 42");
+        query = createGenerator(43).getParameterReplacedQuery(false);
+        assert query.contains("s.id = 43") : "A cached plan should not keep the subject it was generated for";
+    }
+
+    private void assertQuery(WidgetCriteria criteria, String whereAndOrderBy) {
+        String expected = "SELECT widget" + NL + "FROM Widget widget" + NL + "WHERE " + whereAndOrderBy + NL;
+        String queryString = new CriteriaQueryGenerator(null, criteria).getQueryString(false);
+        assert queryString.equals(expected) : queryString;
+    }
+
+    private CriteriaQueryGenerator createGenerator(int subjectId) {
+        WidgetCriteria criteria = new WidgetCriteria();
+        criteria.addSortId(PageOrdering.ASC);
+        CriteriaQueryGenerator generator = new CriteriaQueryGenerator(null, criteria);
+        generator.setAuthorizationResourceFragment(AuthorizationTokenType.RESOURCE, null, subjectId);
+        return generator;
+    }
+
+    @SuppressWarnings("unused")
+    public static class Widget {
+        private Integer id;
+        private String name;
+        private Integer ownerId;
+    }
+
+    @SuppressWarnings("unused")
+    public static class WidgetCriteria extends Criteria {
+        private static final long serialVersionUID = 1L;
+
+        private Integer filterOwnerId;
+
+        private PageOrdering sortId;
+        private PageOrdering sortName;
+        private PageOrdering sortOwnerId;
+
+        @Override
+        public Class<?> getPersistentClass() {
+            return Widget.class;
+        }
+
+        @Override
+        public String getAlias() {
+            return "widget";
+        }
+
+        public void addFilterOwnerId(Integer filterOwnerId) {
+            this.filterOwnerId = filterOwnerId;
+        }
+
+        public void addSortId(PageOrdering sortId) {
+            addSortField("id");
+            this.sortId = sortId;
+        }
+
+        public void addSortName(PageOrdering sortName) {
+            addSortField("name");
+            this.sortName = sortName;
+        }
+
+        public void addSortOwnerId(PageOrdering sortOwnerId) {
+            addSortField("ownerId");
+            this.sortOwnerId = sortOwnerId;
+        }
+    }
+}
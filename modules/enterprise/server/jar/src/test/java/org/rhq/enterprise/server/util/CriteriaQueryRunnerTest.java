@@ -0,0 +1,280 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2011 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License, version 2, as
+ * published by the Free Software Foundation, and/or the GNU Lesser
+ * General Public License, version 2.1, also as published by the Free
+ * Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License and the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * and the GNU Lesser General Public License along with this program;
+ * if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.rhq.enterprise.server.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import javax.persistence.EntityManager;
+
+import org.hibernate.Hibernate;
+import org.hibernate.stat.Statistics;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import org.rhq.core.domain.auth.Subject;
+import org.rhq.core.domain.criteria.Criteria.Restriction;
+import org.rhq.core.domain.criteria.ResourceTypeCriteria;
+import org.rhq.core.domain.resource.ResourceCategory;
+import org.rhq.core.domain.resource.ResourceSubCategory;
+import org.rhq.core.domain.resource.ResourceType;
+import org.rhq.core.domain.util.PageList;
+import org.rhq.core.domain.util.PageOrdering;
+import org.rhq.core.server.PersistenceUtility;
+import org.rhq.enterprise.server.test.AbstractEJB3Test;
+
+/**
+ * Tests the keyset paging, chunked iteration and batch fetching of criteria queries against the database, with
+ * resource types of a plugin of their own.
+ */
+@Test
+public class CriteriaQueryRunnerTest extends AbstractEJB3Test {
+
+    private static final String PLUGIN = "CriteriaQueryRunnerTestPlugin";
+
+    private static final ResourceCategory[] CATEGORIES = { ResourceCategory.SERVER, ResourceCategory.PLATFORM,
+        ResourceCategory.SERVICE, ResourceCategory.SERVER };
+
+    private Subject overlord;
+    private EntityManager em;
+
+    @BeforeMethod
+    public void beginTransaction() throws Exception {
+        overlord = LookupUtil.getSubjectManager().getOverlord();
+        getTransactionManager().begin();
+        em = getEntityManager();
+    }
+
+    @AfterMethod(alwaysRun = true)
+    public void rollbackTransaction() throws Exception {
+        getTransactionManager().rollback();
+    }
+
+    public void testKeysetPagingAcrossPageBoundaries() {
+        createTypes(7, false);
+        Statistics stats = getStatistics();
+
+        ResourceTypeCriteria criteria = createCriteria();
+        criteria.addSortName(PageOrdering.DESC);
+        criteria.setRestriction(Restriction.COLLECTION_ONLY);
+
+        long queries = stats.getQueryExecutionCount();
+        criteria.setPagingAfter(null, 3);
+        List<ResourceType> page = execute(criteria);
+        assert getNames(page).equals(list("type7", "type6", "type5")) : getNames(page);
+        assert stats.getQueryExecutionCount() - queries == 1 : "COLLECTION_ONLY should not count the results";
+
+        queries = stats.getQueryExecutionCount();
+        criteria.setPagingAfter(page.get(2).getId(), 3);
+        page = execute(criteria);
+        assert getNames(page).equals(list("type4", "type3", "type2")) : getNames(page);
+        assert stats.getQueryExecutionCount() - queries == 2 : "Only the keyset values should be looked up";
+
+        criteria.setPagingAfter(page.get(2).getId(), 3);
+        page = execute(criteria);
+        assert getNames(page).equals(list("type1")) : "The last page should not be full: " + getNames(page);
+
+        criteria.setPagingAfter(page.get(0).getId(), 3);
+        assert execute(criteria).isEmpty() : "There should be nothing after the last result";
+    }
+
+    public void testKeysetPagingWithDuplicateSortKeys() {
+        List<ResourceType> types = createTypes(8, false);
+
+        // descending categories, with the types of the same category in ascending id order
+        Collections.sort(types, new Comparator<ResourceType>() {
+            public int compare(ResourceType first, ResourceType second) {
+                int comparison = second.getCategory().name().compareTo(first.getCategory().name());
+                return (comparison != 0) ? comparison : first.getId() - second.getId();
+            }
+        });
+        assertPagedInOrder(types, PageOrdering.DESC, null);
+    }
+
+    public void testKeysetPagingWithMixedOrderings() {
+        List<ResourceType> types = createTypes(8, false);
+
+        // ascending categories, with the types of the same category in descending name order
+        Collections.sort(types, new Comparator<ResourceType>() {
+            public int compare(ResourceType first, ResourceType second) {
+                int comparison = first.getCategory().name().compareTo(second.getCategory().name());
+                return (comparison != 0) ? comparison : second.getName().compareTo(first.getName());
+            }
+        });
+        assertPagedInOrder(types, PageOrdering.ASC, PageOrdering.DESC);
+    }
+
+    public void testKeysetPagingOfEmptyResult() {
+        ResourceTypeCriteria criteria = createCriteria();
+        criteria.setPagingAfter(null, 10);
+
+        PageList<ResourceType> results = execute(criteria);
+        assert results.isEmpty();
+        assert results.getTotalSize() == 0;
+    }
+
+    public void testIterator() {
+        createTypes(10, false);
+        ResourceTypeCriteria criteria = createCriteria();
+        criteria.addSortName(PageOrdering.ASC);
+
+        List<ResourceType> types = new ArrayList<ResourceType>();
+        for (Iterator<ResourceType> i = createRunner(criteria).iterator(4); i.hasNext();) {
+            types.add(i.next());
+        }
+
+        assert getNames(types).equals(list("type1", "type10", "type2", "type3", "type4", "type5", "type6", "type7",
+            "type8", "type9")) : getNames(types);
+        assert !em.contains(types.get(0)) : "The persistence context should be cleared between chunks";
+        assert em.contains(types.get(8)) : "The last chunk should still be managed";
+    }
+
+    public void testIteratorOverFullLastChunk() {
+        createTypes(8, false);
+
+        int count = 0;
+        for (Iterator<ResourceType> i = createRunner(createCriteria()).iterator(4); i.hasNext(); i.next()) {
+            count++;
+        }
+        assert count == 8;
+    }
+
+    public void testIteratorOverEmptyResult() {
+        Iterator<ResourceType> i = createRunner(createCriteria()).iterator(4);
+
+        assert !i.hasNext();
+        try {
+            i.next();
+            assert false : "There should be no next result";
+        } catch (NoSuchElementException e) {
+            // expected
+        }
+    }
+
+    public void testBatchFetch() {
+        // more types than fit in one IN list
+        createTypes(1001, true);
+        Statistics stats = getStatistics();
+
+        ResourceTypeCriteria criteria = createCriteria();
+        criteria.fetchSubCategories(true);
+        criteria.setRestriction(Restriction.COLLECTION_ONLY);
+        criteria.setPaging(0, 2000);
+
+        long queries = stats.getQueryExecutionCount();
+        long collectionFetches = stats.getCollectionFetchCount();
+        List<ResourceType> types = execute(criteria);
+        assert types.size() == 1001 : types.size();
+        assert stats.getQueryExecutionCount() - queries == 3 : "The bags should be fetched in two batches";
+        assert stats.getCollectionFetchCount() == collectionFetches : "No bag should be fetched on its own";
+
+        em.clear();
+        for (ResourceType type : types) {
+            assert Hibernate.isInitialized(type.getChildSubCategories()) : type;
+            assert type.getChildSubCategories().size() == 1 : type.getChildSubCategories();
+        }
+    }
+
+    private void assertPagedInOrder(List<ResourceType> expected, PageOrdering categoryOrdering,
+        PageOrdering nameOrdering) {
+        for (int pageSize = 1; pageSize <= expected.size() + 1; pageSize++) {
+            ResourceTypeCriteria criteria = createCriteria();
+            criteria.addSortCategory(categoryOrdering);
+            if (nameOrdering != null) {
+                criteria.addSortName(nameOrdering);
+            }
+            criteria.setRestriction(Restriction.COLLECTION_ONLY);
+
+            List<ResourceType> types = new ArrayList<ResourceType>();
+            Integer lastId = null;
+            while (true) {
+                criteria.setPagingAfter(lastId, pageSize);
+                List<ResourceType> page = execute(criteria);
+                assert page.size() <= pageSize;
+                types.addAll(page);
+                if (page.size() < pageSize) {
+                    break;
+                }
+                lastId = page.get(page.size() - 1).getId();
+            }
+            assert getNames(types).equals(getNames(expected)) : "Page size " + pageSize + " returned "
+                + getNames(types) + " instead of " + getNames(expected);
+        }
+    }
+
+    /**
+     * Creates the types "type1" to "typeN" and detaches them, so that queries load them from the database.
+     */
+    private List<ResourceType> createTypes(int count, boolean withSubCategory) {
+        List<ResourceType> types = new ArrayList<ResourceType>();
+        for (int i = 1; i <= count; i++) {
+            ResourceType type = new ResourceType("type" + i, PLUGIN, CATEGORIES[i % CATEGORIES.length], null);
+            if (withSubCategory) {
+                type.addChildSubCategory(new ResourceSubCategory("subCategory" + i));
+            }
+            em.persist(type);
+            types.add(type);
+        }
+        em.flush();
+        em.clear();
+        return types;
+    }
+
+    private ResourceTypeCriteria createCriteria() {
+        ResourceTypeCriteria criteria = new ResourceTypeCriteria();
+        criteria.addFilterPluginName(PLUGIN);
+        return criteria;
+    }
+
+    private PageList<ResourceType> execute(ResourceTypeCriteria criteria) {
+        return createRunner(criteria).execute();
+    }
+
+    private CriteriaQueryRunner<ResourceType> createRunner(ResourceTypeCriteria criteria) {
+        CriteriaQueryGenerator generator = new CriteriaQueryGenerator(overlord, criteria);
+        return new CriteriaQueryRunner<ResourceType>(criteria, generator, em);
+    }
+
+    private Statistics getStatistics() {
+        return PersistenceUtility.getHibernateSession(em).getSessionFactory().getStatistics();
+    }
+
+    private List<String> getNames(List<ResourceType> types) {
+        List<String> names = new ArrayList<String>();
+        for (ResourceType type : types) {
+            names.add(type.getName());
+        }
+        return names;
+    }
+
+    private List<String> list(String... names) {
+        List<String> list = new ArrayList<String>();
+        Collections.addAll(list, names);
+        return list;
+    }
+}
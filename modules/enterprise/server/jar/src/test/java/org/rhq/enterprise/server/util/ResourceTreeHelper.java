@@ -19,6 +19,7 @@
 package org.rhq.enterprise.server.util;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
@@ -31,6 +32,7 @@ import org.rhq.core.domain.resource.InventoryStatus;
 import org.rhq.core.domain.resource.Resource;
 import org.rhq.core.domain.resource.ResourceCategory;
 import org.rhq.core.domain.resource.ResourceType;
+import org.rhq.enterprise.server.resource.ResourceManagerLocal;
 
 /**
  * Will create a tree of resources based off of a short-hand, string representation of the tree Pre-condition: resource
@@ -131,9 +133,16 @@ public class ResourceTreeHelper {
         }
 
         // only flush when we are in persisting mode
-        if (entityManager != null)
+        if (entityManager != null) {
             entityManager.flush();
 
+            // recursive group membership is computed from the hierarchy closure, so it has to be written as well
+            ResourceManagerLocal resourceManager = LookupUtil.getResourceManager();
+            for (Resource root : roots) {
+                resourceManager.addResourceClosure(root);
+            }
+        }
+
         return roots;
     }
 
@@ -159,6 +168,8 @@ public class ResourceTreeHelper {
         for (Resource child : root.getChildResources()) {
             deleteTree(entityManager, child);
         }
+        entityManager.createNativeQuery(Resource.QUERY_DELETE_CLOSURE_BY_RESOURCE_IDS).setParameter("resourceIds",
+            Collections.singletonList(root.getId())).executeUpdate();
         Resource doomedResource = entityManager.find(Resource.class, root.getId());
         entityManager.remove(doomedResource);
     }
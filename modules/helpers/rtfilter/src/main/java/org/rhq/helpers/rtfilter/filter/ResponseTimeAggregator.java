@@ -0,0 +1,196 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2008 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package org.rhq.helpers.rtfilter.filter;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Aggregates response times in memory instead of logging one line per request. Request threads record into one of a
+ * fixed number of stripes, picked by the hash of the URL, so concurrent requests for different URLs rarely contend
+ * for the same monitor. A daemon timer drains the stripes once per interval and appends one line per URL to the
+ * summary file, in the following format:
+ *
+ * <p/><code>URL begin_time end_time minimum maximum total count</code>
+ *
+ * <p/>Times are in milliseconds. The summary file is read (and truncated) by the agent's response-time parser.
+ */
+public class ResponseTimeAggregator {
+    private static final int STRIPE_COUNT = 32;
+
+    private final Log log = LogFactory.getLog(this.getClass());
+
+    private final Stripe[] stripes;
+    private final long interval;
+    private final long maxSummaryFileSize;
+    private File summaryFile;
+    private Timer timer;
+    private long intervalStart;
+    private long recordedCount;
+
+    public ResponseTimeAggregator(long interval, long maxSummaryFileSize) {
+        this.interval = interval;
+        this.maxSummaryFileSize = maxSummaryFileSize;
+        this.stripes = new Stripe[STRIPE_COUNT];
+        for (int i = 0; i < this.stripes.length; i++) {
+            this.stripes[i] = new Stripe();
+        }
+        this.intervalStart = System.currentTimeMillis();
+    }
+
+    /**
+     * Records a single request.
+     *
+     * @param url      the (possibly chopped) URL of the request
+     * @param duration the time taken to service the request, in milliseconds
+     */
+    public void record(String url, long duration) {
+        Stripe stripe = this.stripes[(url.hashCode() & 0x7fffffff) % this.stripes.length];
+        synchronized (stripe) {
+            Stats stats = (Stats) stripe.stats.get(url);
+            if (stats == null) {
+                stats = new Stats();
+                stripe.stats.put(url, stats);
+            }
+            stats.add(duration);
+        }
+    }
+
+    /**
+     * Starts writing summaries to the given file, once per interval.
+     *
+     * @param summaryFile the file summaries are appended to
+     */
+    public synchronized void start(File summaryFile) {
+        if (this.timer != null) {
+            return;
+        }
+        this.summaryFile = summaryFile;
+        this.timer = new Timer(true);
+        this.timer.schedule(new TimerTask() {
+            public void run() {
+                writeSummary();
+            }
+        }, this.interval, this.interval);
+    }
+
+    /**
+     * Stops the timer and writes out whatever has been recorded since the last summary.
+     */
+    public synchronized void stop() {
+        if (this.timer != null) {
+            this.timer.cancel();
+            this.timer = null;
+            writeSummary();
+        }
+    }
+
+    public synchronized long getRecordedCount() {
+        return this.recordedCount;
+    }
+
+    synchronized void writeSummary() {
+        long intervalEnd = System.currentTimeMillis();
+        long intervalBegin = this.intervalStart;
+        this.intervalStart = intervalEnd;
+
+        StringBuffer buf = new StringBuffer();
+        for (int i = 0; i < this.stripes.length; i++) {
+            Map drained;
+            Stripe stripe = this.stripes[i];
+            synchronized (stripe) {
+                if (stripe.stats.isEmpty()) {
+                    continue;
+                }
+                drained = stripe.stats;
+                stripe.stats = new HashMap();
+            }
+
+            for (Iterator iter = drained.entrySet().iterator(); iter.hasNext();) {
+                Map.Entry entry = (Map.Entry) iter.next();
+                Stats stats = (Stats) entry.getValue();
+                // Format: <url> <begin> <end> <min> <max> <total> <count>
+                buf.append(entry.getKey()).append(' ').append(intervalBegin).append(' ').append(intervalEnd)
+                    .append(' ').append(stats.min).append(' ').append(stats.max).append(' ').append(stats.total)
+                    .append(' ').append(stats.count).append('\n');
+                this.recordedCount += stats.count;
+            }
+        }
+
+        if ((buf.length() == 0) || (this.summaryFile == null)) {
+            return;
+        }
+
+        // If nobody is collecting the summaries, start over rather than growing the file forever.
+        boolean append = (this.summaryFile.length() <= this.maxSummaryFileSize);
+        if (!append) {
+            log.warn("Response time summary '" + this.summaryFile + "' has exceeded maximum file size ("
+                + this.maxSummaryFileSize + " bytes) - truncating it...");
+        }
+
+        BufferedWriter writer = null;
+        try {
+            writer = new BufferedWriter(new FileWriter(this.summaryFile, append));
+            writer.write(buf.toString());
+        } catch (IOException e) {
+            log.error("Failed to write response time summary '" + this.summaryFile + "' - cause: " + e);
+        } finally {
+            if (writer != null) {
+                try {
+                    writer.close();
+                } catch (IOException e) {
+                    log.error("Failed to close response time summary '" + this.summaryFile + "'.");
+                }
+            }
+        }
+    }
+
+    private static class Stripe {
+        // guarded by the stripe itself
+        private Map stats = new HashMap();
+    }
+
+    private static class Stats {
+        private long min = Long.MAX_VALUE;
+        private long max;
+        private long total;
+        private long count;
+
+        private void add(long duration) {
+            if (duration < this.min) {
+                this.min = duration;
+            }
+            if (duration > this.max) {
+                this.max = duration;
+            }
+            this.total += duration;
+            this.count++;
+        }
+    }
+}
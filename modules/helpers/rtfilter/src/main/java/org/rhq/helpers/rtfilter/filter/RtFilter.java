@@ -49,6 +49,11 @@ import org.rhq.helpers.rtfilter.util.ServletUtility;
  * conf/web.xml, there will be one instance of this filter per deployed webapp, inserted ahead of any per-webapp filters
  * in the filter chain. We assume the same is true for other servlet containers, but Tomcat is the only servlet
  * container that has been tested.
+ * <p/>
+ * When the 'aggregate' init param is true, requests are not logged one by one. Instead they are aggregated in memory
+ * per URL by a {@link ResponseTimeAggregator}, which writes a summary (min/max/total/count per URL) to a
+ * "_rt.summary" file alongside the log once every 'timeBetweenFlushesInSec' seconds. The filter's lock is then only
+ * taken once, to determine the vhost of the webapp.
  *
  * @author Heiko W. Rupp
  * @author Ian Springer
@@ -66,11 +71,13 @@ public class RtFilter implements Filter {
     private static final long DEFAULT_FLUSH_AFTER_LINES = 10L;
     private static final long DEFAULT_MAX_LOG_FILE_SIZE = 1024L * 1024 * 5; // 5 MB
     private static final boolean DEFAULT_CHOP_QUERY_STRING = true;
+    private static final String LOG_FILE_SUFFIX = "_rt.log";
+    private static final String SUMMARY_FILE_SUFFIX = "_rt.summary";
 
     private final Log log = LogFactory.getLog(this.getClass());
 
-    private boolean initialized = false;
-    private boolean fileDone = false;
+    private volatile boolean initialized = false;
+    private volatile boolean fileDone = false;
     private long requestCount = 0;
     private boolean chopUrl = DEFAULT_CHOP_QUERY_STRING;
     private File logDirectory;
@@ -91,6 +98,8 @@ public class RtFilter implements Filter {
 
     private final Object lock = new Object();
     private Properties vhostMappings = new Properties();
+    private boolean aggregate = false;
+    private ResponseTimeAggregator aggregator;
     private static final String HOST_TOKEN = "%HOST%";
 
     /**
@@ -102,6 +111,11 @@ public class RtFilter implements Filter {
      */
     public void doFilter(ServletRequest req, ServletResponse resp, FilterChain chain) throws IOException,
         ServletException {
+        if (this.aggregator != null) {
+            doFilterAggregated(req, resp, chain);
+            return;
+        }
+
         long t1 = 0;
         HttpServletRequest hreq = (HttpServletRequest) req;
         RtFilterResponseWrapper hresp = new RtFilterResponseWrapper(resp);
@@ -163,6 +177,67 @@ public class RtFilter implements Filter {
         }
     }
 
+    /**
+     * The aggregating variant of {@link #doFilter(ServletRequest, ServletResponse, FilterChain)}. The request is
+     * recorded with the aggregator, so no shared lock is held once the vhost is known.
+     */
+    private void doFilterAggregated(ServletRequest req, ServletResponse resp, FilterChain chain) throws IOException,
+        ServletException {
+        HttpServletRequest hreq = (HttpServletRequest) req;
+        RtFilterResponseWrapper hresp = new RtFilterResponseWrapper(resp);
+        long t1 = System.currentTimeMillis();
+
+        try {
+            chain.doFilter(req, hresp);
+        } finally {
+            if (this.initialized) {
+                try {
+                    long duration = System.currentTimeMillis() - t1;
+
+                    int statusCode = hresp.getStatus();
+                    // Only record successful requests (2xx or 3xx) since that's all we care about for now...
+                    if ((statusCode < 200) || (statusCode >= 400)) {
+                        return;
+                    }
+
+                    String uri = hreq.getRequestURI();
+                    String url = getRequestURL(hreq);
+
+                    if (this.dontLogPattern != null) {
+                        Matcher matcher = this.dontLogPattern.matcher((this.matchOnUriOnly) ? uri : url);
+                        if (matcher.matches()) {
+                            return;
+                        }
+                    }
+
+                    if (!this.fileDone) {
+                        synchronized (lock) {
+                            if (!this.fileDone) {
+                                openFile(req.getServerName());
+                            }
+                        }
+                    }
+
+                    if (duration < 0) {
+                        log.error("Calculated response time for request to [" + url + "] (" + duration
+                            + " ms) is negative!");
+                        return;
+                    }
+                    if (duration == 0) {
+                        // See writeLogEntry() - the system clock may be too coarse to measure the request.
+                        duration = 1;
+                    }
+
+                    this.aggregator.record((this.chopUrl) ? uri : url, duration);
+                } catch (Exception e) {
+                    synchronized (lock) {
+                        handleFatalError(e);
+                    }
+                }
+            }
+        }
+    }
+
     /**
      * Open the logfile for the given serverName. If serverName is localhost, then no
      * vhost portion is added to the logfile name. Otherwise the logfile name is
@@ -238,7 +313,17 @@ public class RtFilter implements Filter {
         // prevent interpretation of the / as a dir separator.
         String contextFileName = contextName.replace('/', '_');
 
-        String logFileName = this.logFilePrefix + vhost + contextFileName + "_rt.log";
+        if (this.aggregator != null) {
+            File summaryFile = new File(this.logDirectory, this.logFilePrefix + vhost + contextFileName
+                + SUMMARY_FILE_SUFFIX);
+            log.info("-- Filter openFile: Writing response-time summary for webapp with context root '"
+                + this.contextName + "' to '" + summaryFile + "' (hashCode=" + hashCode() + ")...");
+            this.aggregator.start(summaryFile);
+            fileDone = true;
+            return;
+        }
+
+        String logFileName = this.logFilePrefix + vhost + contextFileName + LOG_FILE_SUFFIX;
         this.logFile = new File(this.logDirectory, logFileName);
         log.info("-- Filter openFile: Writing response-time log for webapp with context root '" + this.contextName
             + "' to '" + this.logFile + "' (hashCode=" + hashCode() + ")...");
@@ -268,6 +353,9 @@ public class RtFilter implements Filter {
                 initializeParameters(filterConfig);
                 ServletContext servletContext = filterConfig.getServletContext();
                 this.contextName = ServletUtility.getContextRoot(servletContext);
+                if (this.aggregate) {
+                    this.aggregator = new ResponseTimeAggregator(this.timeBetweenFlushes, this.maxLogFileSize);
+                }
 
                 /*
                  * We don't open the file here, as we have no way to know the vhost this filter instance is for.
@@ -289,7 +377,12 @@ public class RtFilter implements Filter {
      */
     public void destroy() {
         synchronized (lock) {
-            log.info("-- Filter destroy: " + this.requestCount + " requests processed (hashCode=" + hashCode() + ").");
+            long processed = this.requestCount;
+            if (this.aggregator != null) {
+                this.aggregator.stop();
+                processed += this.aggregator.getRecordedCount();
+            }
+            log.info("-- Filter destroy: " + processed + " requests processed (hashCode=" + hashCode() + ").");
             closeFileWriter();
             this.initialized = false;
         }
@@ -347,6 +440,11 @@ public class RtFilter implements Filter {
             this.chopUrl = Boolean.valueOf(chop.trim()).booleanValue();
         }
 
+        String aggregateString = conf.getInitParameter(InitParams.AGGREGATE);
+        if (aggregateString != null) {
+            this.aggregate = Boolean.valueOf(aggregateString.trim()).booleanValue();
+        }
+
         String logDirectoryPath = conf.getInitParameter(InitParams.LOG_DIRECTORY);
         if (logDirectoryPath != null) {
             this.logDirectory = new File(logDirectoryPath.trim());
@@ -584,5 +682,6 @@ public class RtFilter implements Filter {
         public static final String FLUSH_AFTER_LINES = "flushAfterLines";
         public static final String MAX_LOG_FILE_SIZE = "maxLogFileSize";
         public static final String VHOST_MAPPING_FILE = "vHostMappingFile";
+        public static final String AGGREGATE = "aggregate";
     }
 }
@@ -39,6 +39,7 @@ import org.rhq.core.pluginapi.inventory.DeleteResourceFacet;
 import org.rhq.core.pluginapi.inventory.InvalidPluginConfigurationException;
 import org.rhq.core.pluginapi.inventory.ResourceComponent;
 import org.rhq.core.pluginapi.inventory.ResourceContext;
+import org.rhq.plugins.apache.augeas.ApacheAugeasTreeCache;
 import org.rhq.plugins.apache.mapping.ApacheAugeasMapping;
 import org.rhq.plugins.apache.util.AugeasNodeSearch;
 
@@ -72,7 +73,7 @@ public class ApacheDirectoryComponent implements ResourceComponent<ApacheVirtual
     public Configuration loadResourceConfiguration() throws Exception {
         ApacheVirtualHostServiceComponent parentVirtualHost = resourceContext.getParentResourceComponent();
 
-        AugeasComponent comp = getAugeas();
+        ApacheAugeasTreeCache.Reader comp = getSharedAugeas();
         try {
             AugeasTree tree = comp.getAugeasTree(ApacheServerComponent.AUGEAS_HTTP_MODULE_NAME);
             ConfigurationDefinition resourceConfigDef = resourceContext.getResourceType()
@@ -166,6 +167,13 @@ public class ApacheDirectoryComponent implements ResourceComponent<ApacheVirtual
         return resourceContext.getParentResourceComponent().getAugeas();
     }
 
+    /**
+     * @see ApacheServerComponent#getSharedAugeas()
+     */
+    public ApacheAugeasTreeCache.Reader getSharedAugeas() {
+        return resourceContext.getParentResourceComponent().getSharedAugeas();
+    }
+
     /**
      * @see ApacheServerComponent#finishConfigurationUpdate(ConfigurationUpdateReport)
      */
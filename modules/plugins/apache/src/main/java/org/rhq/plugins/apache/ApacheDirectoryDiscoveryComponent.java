@@ -29,7 +29,6 @@ import java.util.Set;
 
 import net.augeas.AugeasException;
 
-import org.rhq.augeas.AugeasComponent;
 import org.rhq.augeas.node.AugeasNode;
 import org.rhq.augeas.tree.AugeasTree;
 import org.rhq.core.domain.configuration.Configuration;
@@ -39,6 +38,7 @@ import org.rhq.core.pluginapi.inventory.DiscoveredResourceDetails;
 import org.rhq.core.pluginapi.inventory.InvalidPluginConfigurationException;
 import org.rhq.core.pluginapi.inventory.ResourceDiscoveryComponent;
 import org.rhq.core.pluginapi.inventory.ResourceDiscoveryContext;
+import org.rhq.plugins.apache.augeas.ApacheAugeasTreeCache;
 import org.rhq.plugins.apache.util.AugeasNodeSearch;
 import org.rhq.plugins.apache.util.AugeasNodeValueUtil;
 
@@ -64,7 +64,7 @@ public class ApacheDirectoryDiscoveryComponent implements ResourceDiscoveryCompo
         if (!context.getParentResourceComponent().isAugeasEnabled())
             return discoveredResources;
 
-        AugeasComponent comp = context.getParentResourceComponent().getAugeas();
+        ApacheAugeasTreeCache.Reader comp = context.getParentResourceComponent().getSharedAugeas();
         AugeasTree tree = null;
 
         try {
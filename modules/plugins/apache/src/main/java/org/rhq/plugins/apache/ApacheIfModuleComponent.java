@@ -38,6 +38,7 @@ import org.rhq.core.pluginapi.inventory.DeleteResourceFacet;
 import org.rhq.core.pluginapi.inventory.InvalidPluginConfigurationException;
 import org.rhq.core.pluginapi.inventory.ResourceComponent;
 import org.rhq.core.pluginapi.inventory.ResourceContext;
+import org.rhq.plugins.apache.augeas.ApacheAugeasTreeCache;
 import org.rhq.plugins.apache.mapping.ApacheAugeasMapping;
 import org.rhq.plugins.apache.util.AugeasNodeSearch;
 
@@ -65,9 +66,9 @@ public class ApacheIfModuleComponent implements ResourceComponent<ApacheVirtualH
     }
 
     public Configuration loadResourceConfiguration() throws Exception {
-        AugeasComponent comp = null;
+        ApacheAugeasTreeCache.Reader comp = null;
         try {
-            comp = parentComponent.getAugeas();
+            comp = parentComponent.getSharedAugeas();
             AugeasTree tree = comp.getAugeasTree(ApacheServerComponent.AUGEAS_HTTP_MODULE_NAME);
             ConfigurationDefinition resourceConfigDef = context.getResourceType().getResourceConfigurationDefinition();
 
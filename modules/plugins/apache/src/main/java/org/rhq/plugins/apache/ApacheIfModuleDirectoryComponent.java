@@ -37,6 +37,7 @@ import org.rhq.core.pluginapi.configuration.ConfigurationUpdateReport;
 import org.rhq.core.pluginapi.inventory.InvalidPluginConfigurationException;
 import org.rhq.core.pluginapi.inventory.ResourceComponent;
 import org.rhq.core.pluginapi.inventory.ResourceContext;
+import org.rhq.plugins.apache.augeas.ApacheAugeasTreeCache;
 import org.rhq.plugins.apache.mapping.ApacheAugeasMapping;
 import org.rhq.plugins.apache.util.AugeasNodeSearch;
 
@@ -64,7 +65,7 @@ public class ApacheIfModuleDirectoryComponent implements ResourceComponent<Apach
 
     public Configuration loadResourceConfiguration() throws Exception {
         ConfigurationDefinition resourceConfigDef = context.getResourceType().getResourceConfigurationDefinition();
-        AugeasComponent comp = parentComponent.getAugeas();
+        ApacheAugeasTreeCache.Reader comp = parentComponent.getSharedAugeas();
         AugeasTree tree = null;
         try {
             tree = comp.getAugeasTree(ApacheServerComponent.AUGEAS_HTTP_MODULE_NAME);
@@ -26,7 +26,6 @@ import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
 
-import org.rhq.augeas.AugeasComponent;
 import org.rhq.augeas.node.AugeasNode;
 import org.rhq.augeas.tree.AugeasTree;
 import org.rhq.core.domain.resource.ResourceType;
@@ -34,6 +33,7 @@ import org.rhq.core.pluginapi.inventory.DiscoveredResourceDetails;
 import org.rhq.core.pluginapi.inventory.InvalidPluginConfigurationException;
 import org.rhq.core.pluginapi.inventory.ResourceDiscoveryComponent;
 import org.rhq.core.pluginapi.inventory.ResourceDiscoveryContext;
+import org.rhq.plugins.apache.augeas.ApacheAugeasTreeCache;
 import org.rhq.plugins.apache.util.AugeasNodeSearch;
 
 public class ApacheIfModuleDirectoryDiscoveryComponent implements ResourceDiscoveryComponent<ApacheDirectoryComponent> {
@@ -52,7 +52,7 @@ public class ApacheIfModuleDirectoryDiscoveryComponent implements ResourceDiscov
         if (!directory.isAugeasEnabled())
             return discoveredResources;
 
-        AugeasComponent comp = directory.getAugeas();
+        ApacheAugeasTreeCache.Reader comp = directory.getSharedAugeas();
         AugeasTree tree = null;
         try {
             tree = comp.getAugeasTree(ApacheServerComponent.AUGEAS_HTTP_MODULE_NAME);
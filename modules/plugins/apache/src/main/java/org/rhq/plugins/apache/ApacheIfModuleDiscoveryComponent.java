@@ -26,7 +26,6 @@ import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
 
-import org.rhq.augeas.AugeasComponent;
 import org.rhq.augeas.node.AugeasNode;
 import org.rhq.augeas.tree.AugeasTree;
 import org.rhq.core.domain.resource.ResourceType;
@@ -34,6 +33,7 @@ import org.rhq.core.pluginapi.inventory.DiscoveredResourceDetails;
 import org.rhq.core.pluginapi.inventory.InvalidPluginConfigurationException;
 import org.rhq.core.pluginapi.inventory.ResourceDiscoveryComponent;
 import org.rhq.core.pluginapi.inventory.ResourceDiscoveryContext;
+import org.rhq.plugins.apache.augeas.ApacheAugeasTreeCache;
 import org.rhq.plugins.apache.util.AugeasNodeSearch;
 
 public class ApacheIfModuleDiscoveryComponent implements ResourceDiscoveryComponent<ApacheVirtualHostServiceComponent> {
@@ -53,7 +53,7 @@ public class ApacheIfModuleDiscoveryComponent implements ResourceDiscoveryCompon
         if (!virtualHost.isAugeasEnabled()) {
             return discoveredResources;
         }
-        AugeasComponent comp = virtualHost.getAugeas();
+        ApacheAugeasTreeCache.Reader comp = virtualHost.getSharedAugeas();
         AugeasTree tree = null;
         try {
 
@@ -78,12 +78,14 @@ import org.rhq.core.system.OperatingSystemType;
 import org.rhq.core.system.ProcessInfo;
 import org.rhq.core.system.SystemInfo;
 import org.rhq.plugins.apache.augeas.ApacheAugeasNode;
+import org.rhq.plugins.apache.augeas.ApacheAugeasTreeCache;
 import org.rhq.plugins.apache.augeas.AugeasConfigurationApache;
 import org.rhq.plugins.apache.augeas.AugeasTreeBuilderApache;
 import org.rhq.plugins.apache.mapping.ApacheAugeasMapping;
 import org.rhq.plugins.apache.parser.ApacheConfigReader;
 import org.rhq.plugins.apache.parser.ApacheDirective;
 import org.rhq.plugins.apache.parser.ApacheDirectiveTree;
+import org.rhq.plugins.apache.parser.ApacheDirectiveTreeCache;
 import org.rhq.plugins.apache.parser.ApacheParser;
 import org.rhq.plugins.apache.parser.ApacheParserImpl;
 import org.rhq.plugins.apache.util.ApacheBinaryInfo;
@@ -162,6 +164,11 @@ public class ApacheServerComponent implements AugeasRHQComponent, ResourceCompon
     private long availPingTime = -1;
     
     private Map<String, String> moduleNames;
+
+    /**
+     * The Augeas tree shared by this server and its child resources for reading the configuration.
+     */
+    private ApacheAugeasTreeCache augeasTreeCache;
     
     /**
      * Delegate instance for handling all calls to invoke operations on this component.
@@ -173,6 +180,11 @@ public class ApacheServerComponent implements AugeasRHQComponent, ResourceCompon
         this.resourceContext = resourceContext;
         this.eventContext = resourceContext.getEventContext();
         this.snmpClient = new SNMPClient();
+        this.augeasTreeCache = new ApacheAugeasTreeCache(AUGEAS_HTTP_MODULE_NAME) {
+            protected AugeasComponent createAugeas() {
+                return createAugeasComponent(false);
+            }
+        };
         
         try {
             boolean configured = false;
@@ -263,6 +275,7 @@ public class ApacheServerComponent implements AugeasRHQComponent, ResourceCompon
         if (this.snmpClient != null) {
             this.snmpClient.close();
         }
+        invalidateConfigurationCache();
         return;
     }
 
@@ -343,7 +356,7 @@ public class ApacheServerComponent implements AugeasRHQComponent, ResourceCompon
         if (!isAugeasEnabled())
             throw new RuntimeException(CONFIGURATION_NOT_SUPPORTED_ERROR_MESSAGE);
 
-        AugeasComponent comp = getAugeas();
+        ApacheAugeasTreeCache.Reader comp = getSharedAugeas();
         try {
             ConfigurationDefinition resourceConfigDef = resourceContext.getResourceType()
                 .getResourceConfigurationDefinition();
@@ -400,7 +413,23 @@ public class ApacheServerComponent implements AugeasRHQComponent, ResourceCompon
         }
     }
 
+    /**
+     * Returns a new Augeas component to make changes to the configuration with. Once the component is closed,
+     * the configuration shared through {@link #getSharedAugeas()} and {@link #loadParser()} is loaded again.
+     */
     public AugeasComponent getAugeas() throws AugeasTreeException {
+        return createAugeasComponent(true);
+    }
+
+    /**
+     * Returns a reader of the Augeas tree this server and its child resources share for reading the
+     * configuration. The tree must not be modified and the reader has to be closed once done with the tree.
+     */
+    public ApacheAugeasTreeCache.Reader getSharedAugeas() throws AugeasTreeException {
+        return augeasTreeCache.getReader();
+    }
+
+    private AugeasComponent createAugeasComponent(final boolean forUpdate) {
         return new AugeasComponent() {
 
             public AugeasConfiguration initConfiguration() {
@@ -417,6 +446,14 @@ public class ApacheServerComponent implements AugeasRHQComponent, ResourceCompon
                 return builder;
             }
 
+            @Override
+            public void close() {
+                super.close();
+                if (forUpdate) {
+                    // the configuration files may have been changed in the meantime
+                    invalidateConfigurationCache();
+                }
+            }
         };
     }
 
@@ -962,11 +999,25 @@ public class ApacheServerComponent implements AugeasRHQComponent, ResourceCompon
         }
     }
 
+    /**
+     * Returns the parsed configuration of this server, which is shared with its child resources and therefore
+     * must not be modified.
+     *
+     * @see ApacheDirectiveTreeCache
+     */
     public ApacheDirectiveTree loadParser() {
-        ApacheDirectiveTree tree = new ApacheDirectiveTree();
-        ApacheParser parser = new ApacheParserImpl(tree, getServerRoot().getAbsolutePath());
-        ApacheConfigReader.buildTree(getHttpdConfFile().getAbsolutePath(), parser);
-        return tree;
+        return ApacheDirectiveTreeCache.getTree(getHttpdConfFile().getAbsolutePath(), getServerRoot()
+            .getAbsolutePath());
+    }
+
+    private void invalidateConfigurationCache() {
+        if (augeasTreeCache != null) {
+            augeasTreeCache.invalidate();
+        }
+        File httpdConf = getHttpdConfFile();
+        if (httpdConf != null) {
+            ApacheDirectiveTreeCache.invalidate(httpdConf.getAbsolutePath());
+        }
     }
 
     public boolean isAugeasEnabled() {
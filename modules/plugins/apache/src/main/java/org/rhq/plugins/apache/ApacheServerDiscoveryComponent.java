@@ -57,11 +57,9 @@ import org.rhq.core.pluginapi.upgrade.ResourceUpgradeContext;
 import org.rhq.core.pluginapi.upgrade.ResourceUpgradeFacet;
 import org.rhq.core.pluginapi.util.FileUtils;
 import org.rhq.core.system.ProcessInfo;
-import org.rhq.plugins.apache.parser.ApacheConfigReader;
 import org.rhq.plugins.apache.parser.ApacheDirective;
 import org.rhq.plugins.apache.parser.ApacheDirectiveTree;
-import org.rhq.plugins.apache.parser.ApacheParser;
-import org.rhq.plugins.apache.parser.ApacheParserImpl;
+import org.rhq.plugins.apache.parser.ApacheDirectiveTreeCache;
 import org.rhq.plugins.apache.util.ApacheBinaryInfo;
 import org.rhq.plugins.apache.util.AugeasNodeValueUtil;
 import org.rhq.plugins.apache.util.HttpdAddressUtility;
@@ -597,12 +595,13 @@ public class ApacheServerDiscoveryComponent implements ResourceDiscoveryComponen
         }
     }
 
+    /**
+     * Returns the parsed configuration, which is shared and therefore must not be modified.
+     *
+     * @see ApacheDirectiveTreeCache
+     */
     public static ApacheDirectiveTree loadParser(String path, String serverRoot) {
-
-        ApacheDirectiveTree tree = new ApacheDirectiveTree();
-        ApacheParser parser = new ApacheParserImpl(tree, serverRoot);
-        ApacheConfigReader.buildTree(path, parser);
-        return tree;
+        return ApacheDirectiveTreeCache.getTree(path, serverRoot);
     }
 
     public static String scanForGlobInclude(ApacheDirectiveTree tree) {
@@ -53,6 +53,7 @@ import org.rhq.core.pluginapi.inventory.ResourceContext;
 import org.rhq.core.pluginapi.measurement.MeasurementFacet;
 import org.rhq.core.pluginapi.util.ResponseTimeConfiguration;
 import org.rhq.core.pluginapi.util.ResponseTimeLogParser;
+import org.rhq.plugins.apache.augeas.ApacheAugeasTreeCache;
 import org.rhq.plugins.apache.mapping.ApacheAugeasMapping;
 import org.rhq.plugins.apache.parser.ApacheDirective;
 import org.rhq.plugins.apache.parser.ApacheDirectiveTree;
@@ -158,7 +159,7 @@ public class ApacheVirtualHostServiceComponent implements ResourceComponent<Apac
         if (!parent.isAugeasEnabled())
             throw new Exception(ApacheServerComponent.CONFIGURATION_NOT_SUPPORTED_ERROR_MESSAGE);
 
-        AugeasComponent comp = getAugeas();
+        ApacheAugeasTreeCache.Reader comp = getSharedAugeas();
         try {
             AugeasTree tree = comp.getAugeasTree(ApacheServerComponent.AUGEAS_HTTP_MODULE_NAME);
             ConfigurationDefinition resourceConfigDef = resourceContext.getResourceType()
@@ -242,6 +243,24 @@ public class ApacheVirtualHostServiceComponent implements ResourceComponent<Apac
             return;
         }
 
+        // read all the columns needed at once - the session caches them for the other vhosts of the server
+        List<String> mibNames = new ArrayList<String>();
+        for (MeasurementScheduleRequest schedule : schedules) {
+            String metricName = schedule.getName();
+            if (!metricName.equals(RESPONSE_TIME_METRIC) && !mibNames.contains(getMibName(metricName))) {
+                mibNames.add(getMibName(metricName));
+            }
+        }
+
+        Map<String, Map<String, SNMPValue>> columns = null;
+        if (!mibNames.isEmpty()) {
+            try {
+                columns = snmpSession.getColumns(mibNames);
+            } catch (SNMPException e) {
+                log.error("An error occurred while attempting to collect SNMP metrics.", e);
+            }
+        }
+
         for (MeasurementScheduleRequest schedule : schedules) {
             String metricName = schedule.getName();
             if (metricName.equals(RESPONSE_TIME_METRIC)) {
@@ -259,10 +278,10 @@ public class ApacheVirtualHostServiceComponent implements ResourceComponent<Apac
                         + RESPONSE_TIME_LOG_FILE_CONFIG_PROP + "' connection property.");
                     // TODO: Communicate this error back to the server for display in the GUI.
                 }
-            } else {
+            } else if (columns != null) {
                 // Assume anything else is an SNMP metric.
                 try {
-                    collectSnmpMetric(report, primaryIndex, snmpSession, schedule);
+                    collectSnmpMetric(report, primaryIndex, columns, schedule);
                 } catch (SNMPException e) {
                     log.error("An error occurred while attempting to collect an SNMP metric.", e);
                 }
@@ -376,6 +395,13 @@ public class ApacheVirtualHostServiceComponent implements ResourceComponent<Apac
         return resourceContext.getParentResourceComponent().getAugeas();
     }
 
+    /**
+     * @see ApacheServerComponent#getSharedAugeas()
+     */
+    public ApacheAugeasTreeCache.Reader getSharedAugeas() {
+        return resourceContext.getParentResourceComponent().getSharedAugeas();
+    }
+
     /**
      * Returns a node corresponding to this component in the Augeas tree.
      * 
@@ -449,22 +475,17 @@ public class ApacheVirtualHostServiceComponent implements ResourceComponent<Apac
         resourceContext.getParentResourceComponent().deleteEmptyFile(tree, deletedNode);
     }
 
-    private void collectSnmpMetric(MeasurementReport report, int primaryIndex, SNMPSession snmpSession,
-        MeasurementScheduleRequest schedule) throws SNMPException {
-        SNMPValue snmpValue = null;
+    private void collectSnmpMetric(MeasurementReport report, int primaryIndex,
+        Map<String, Map<String, SNMPValue>> columns, MeasurementScheduleRequest schedule) throws SNMPException {
         String metricName = schedule.getName();
+        String mibName = getMibName(metricName);
         int dotIndex = metricName.indexOf('.');
-        String mibName;
+        String index;
         if (dotIndex == -1) {
             // it's a service metric (e.g. "wwwServiceName") or a summary metric (e.g. "wwwSummaryInRequests")
-            mibName = metricName;
-            List<SNMPValue> snmpValues = snmpSession.getColumn(mibName);
-
-            // NOTE: We assume SNMPValue's are returned in index-order.
-            snmpValue = snmpValues.get(primaryIndex - 1);
+            index = String.valueOf(primaryIndex);
         } else {
             // it's a request or response metric (e.g. "wwwRequestInRequests.GET" or "wwwResponseOutResponses.200")
-            mibName = metricName.substring(0, dotIndex);
             String mibSecondaryIndex = metricName.substring(dotIndex + 1);
             String oid;
             try {
@@ -474,21 +495,15 @@ public class ApacheVirtualHostServiceComponent implements ResourceComponent<Apac
                 // OID must be encoded as a string (e.g. 3.71.69.84 == "GET") - decode it
                 oid = convertStringToOid(mibSecondaryIndex);
             }
+            index = primaryIndex + "." + oid;
+        }
 
-            boolean found = false;
-            Map<String, SNMPValue> table = snmpSession.getTable(mibName, primaryIndex);
-            if (table != null) {
-                snmpValue = table.get(oid);
-                if (snmpValue != null) {
-                    found = true;
-                }
-            }
-
-            if (!found) {
-                log.error("Entry '" + oid + "' not found for " + mibName + "[" + primaryIndex + "].");
-                log.error("Table:\n" + table);
-                return;
-            }
+        Map<String, SNMPValue> column = columns.get(mibName);
+        SNMPValue snmpValue = (column != null) ? column.get(index) : null;
+        if (snmpValue == null) {
+            log.error("Entry '" + index + "' not found for " + mibName + ".");
+            log.debug("Column:\n" + column);
+            return;
         }
 
         log.debug("Collected SNMP metric [" + metricName + "], value = " + snmpValue);
@@ -497,6 +512,11 @@ public class ApacheVirtualHostServiceComponent implements ResourceComponent<Apac
         ApacheServerComponent.addSnmpMetricValueToReport(report, schedule, snmpValue, valueIsTimestamp);
     }
 
+    private static String getMibName(String metricName) {
+        int dotIndex = metricName.indexOf('.');
+        return (dotIndex == -1) ? metricName : metricName.substring(0, dotIndex);
+    }
+
     private String convertStringToOid(String string) {
         String oid;
         StringBuilder strBuf = new StringBuilder();
@@ -0,0 +1,183 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2011 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License, version 2, as
+ * published by the Free Software Foundation, and/or the GNU Lesser
+ * General Public License, version 2.1, also as published by the Free
+ * Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License and the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * and the GNU Lesser General Public License along with this program;
+ * if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+
+package org.rhq.plugins.apache.augeas;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.rhq.augeas.AugeasComponent;
+import org.rhq.augeas.config.AugeasConfiguration;
+import org.rhq.augeas.tree.AugeasTree;
+import org.rhq.plugins.apache.util.ConfigurationSnapshot;
+
+/**
+ * Keeps the Augeas tree of one Apache server loaded, so that the components reading the configuration of the
+ * server, its virtual hosts, directories etc. don't each load all the configuration files into Augeas again.
+ * <p>
+ * The tree is only handed out through the {@link Reader}s returned from {@link #getReader()}, one reader at a
+ * time because Augeas is not thread safe. The tree is loaded again once any of the configuration
+ * files changes (see {@link ConfigurationSnapshot}) or when it is {@link #invalidate() invalidated}. Readers
+ * must not modify the tree; changes are made using an Augeas tree of their own.
+ */
+public abstract class ApacheAugeasTreeCache {
+
+    /**
+     * How often the tree is loaded at most to get one matching the snapshot of the configuration files. A
+     * configuration that keeps changing while it is loaded is loaded again the next time it is needed.
+     */
+    private static final int MAX_LOADS = 3;
+
+    private final String moduleName;
+    private final ReentrantLock lock = new ReentrantLock();
+    private AugeasComponent component;
+    private AugeasTree tree;
+    private ConfigurationSnapshot snapshot;
+
+    /**
+     * @param moduleName the name of the Augeas module for the Apache configuration
+     */
+    public ApacheAugeasTreeCache(String moduleName) {
+        this.moduleName = moduleName;
+    }
+
+    /**
+     * Creates the component the shared tree is loaded with.
+     */
+    protected abstract AugeasComponent createAugeas();
+
+    /**
+     * Returns a reader of the shared tree. The reader has to be closed once done with the tree, like an
+     * {@link AugeasComponent}.
+     */
+    public Reader getReader() {
+        return new Reader();
+    }
+
+    /**
+     * Drops the shared tree, it is loaded again the next time it is needed.
+     */
+    public void invalidate() {
+        lock.lock();
+        try {
+            release();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private AugeasTree getTree() {
+        if (tree != null && snapshot != null && snapshot.isCurrent()) {
+            return tree;
+        }
+
+        // the files are snapshot before they are loaded, assuming they are the ones loaded last time
+        ConfigurationSnapshot before = (snapshot != null) ? snapshot.retake() : null;
+        release();
+        for (int loads = 1;; loads++) {
+            AugeasComponent newComponent = createAugeas();
+            try {
+                AugeasTree newTree = newComponent.getAugeasTree(moduleName);
+                AugeasConfigurationApache config = (AugeasConfigurationApache) newComponent.getConfiguration();
+                List<File> files = config.getAllConfigurationFiles();
+                List<String> includes = config.getModules().get(0).getIncludedGlobs();
+
+                boolean snapshotMatches = before != null && before.isOf(files, includes);
+                if (snapshotMatches || loads == MAX_LOADS) {
+                    snapshot = snapshotMatches ? before : null;
+                    tree = newTree;
+                    component = newComponent;
+                    return tree;
+                }
+                before = new ConfigurationSnapshot(files, config.getServerRootPath(), includes);
+            } catch (RuntimeException e) {
+                newComponent.close();
+                throw e;
+            }
+            newComponent.close();
+        }
+    }
+
+    private void release() {
+        if (component != null) {
+            component.close();
+        }
+        component = null;
+        tree = null;
+        snapshot = null;
+    }
+
+    /**
+     * Gives access to the shared tree. The tree is locked for the reader from the first call to
+     * {@link #getAugeasTree(String)} until the reader is {@link #close() closed}.
+     */
+    public class Reader {
+        private boolean locked;
+
+        private Reader() {
+        }
+
+        /**
+         * Returns the shared tree, loading it if needed.
+         *
+         * @param name the name of the Augeas module for the Apache configuration
+         */
+        public AugeasTree getAugeasTree(String name) {
+            if (!moduleName.equals(name)) {
+                throw new IllegalArgumentException("Only the tree of the [" + moduleName + "] module is shared.");
+            }
+
+            if (!locked) {
+                lock.lock();
+                locked = true;
+            }
+            try {
+                return getTree();
+            } catch (RuntimeException e) {
+                close();
+                throw e;
+            }
+        }
+
+        /**
+         * Returns the configuration the shared tree was loaded with.
+         */
+        public AugeasConfiguration getConfiguration() {
+            if (!locked || component == null) {
+                throw new IllegalStateException("The shared Augeas tree is not loaded.");
+            }
+            return component.getConfiguration();
+        }
+
+        /**
+         * Unlocks the shared tree for other readers.
+         */
+        public void close() {
+            if (locked) {
+                locked = false;
+                lock.unlock();
+            }
+        }
+    }
+}
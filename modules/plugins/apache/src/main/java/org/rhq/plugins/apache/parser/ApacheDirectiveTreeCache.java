@@ -0,0 +1,133 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2011 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+package org.rhq.plugins.apache.parser;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.rhq.plugins.apache.util.ConfigurationSnapshot;
+
+/**
+ * Keeps the parsed configuration of each Apache server, so that the server, its virtual hosts
+ * and the discovery don't each parse httpd.conf and all the files it includes again.
+ * <p>
+ * A tree is parsed again once any of the files it was parsed from changes (see {@link ConfigurationSnapshot}).
+ * The trees are shared, so they must not be modified - {@link ApacheDirectiveTree#clone() clone} them first
+ * if need be.
+ */
+public class ApacheDirectiveTreeCache {
+
+    /**
+     * How often the configuration is parsed at most to get a tree matching its snapshot. A configuration that
+     * keeps changing while it is parsed is parsed again the next time it is needed.
+     */
+    private static final int MAX_PARSES = 3;
+
+    private static final Map<String, CachedTree> TREES = new ConcurrentHashMap<String, CachedTree>();
+
+    private ApacheDirectiveTreeCache() {
+    }
+
+    /**
+     * Returns the parsed configuration.
+     *
+     * @param path the path to the main configuration file (httpd.conf)
+     * @param serverRoot the server root the relative paths in the configuration are relative to
+     * @return the directive tree, which must not be modified
+     */
+    public static ApacheDirectiveTree getTree(String path, String serverRoot) {
+        String key = getKey(path, serverRoot);
+        CachedTree cached = TREES.get(key);
+        if (cached == null) {
+            synchronized (TREES) {
+                cached = TREES.get(key);
+                if (cached == null) {
+                    cached = new CachedTree(path, serverRoot);
+                    TREES.put(key, cached);
+                }
+            }
+        }
+        return cached.getTree();
+    }
+
+    /**
+     * Forgets the parsed configuration, e.g. because it was just modified or the server it belongs to is
+     * no longer managed.
+     *
+     * @param path the path to the main configuration file (httpd.conf)
+     */
+    public static void invalidate(String path) {
+        String prefix = getKey(path, "");
+        for (String key : TREES.keySet()) {
+            if (key.startsWith(prefix)) {
+                TREES.remove(key);
+            }
+        }
+    }
+
+    private static String getKey(String path, String serverRoot) {
+        return new File(path).getAbsolutePath() + File.pathSeparator + serverRoot;
+    }
+
+    private static class CachedTree {
+        private final String path;
+        private final String serverRoot;
+        private ApacheDirectiveTree tree;
+        private ConfigurationSnapshot snapshot;
+
+        private CachedTree(String path, String serverRoot) {
+            this.path = path;
+            this.serverRoot = serverRoot;
+        }
+
+        private synchronized ApacheDirectiveTree getTree() {
+            if (tree != null && snapshot != null && snapshot.isCurrent()) {
+                return tree;
+            }
+
+            // the files are snapshot before they are parsed, assuming they are the ones parsed last time
+            ConfigurationSnapshot before = (snapshot != null) ? snapshot.retake() : new ConfigurationSnapshot(
+                Collections.singletonList(new File(path)), serverRoot, Collections.<String> emptyList());
+            for (int parses = 1;; parses++) {
+                ApacheDirectiveTree newTree = new ApacheDirectiveTree();
+                ApacheParserImpl parser = new ApacheParserImpl(newTree, serverRoot);
+                ApacheConfigReader.buildTree(path, parser);
+
+                List<File> files = new ArrayList<File>();
+                files.add(new File(path));
+                files.addAll(parser.getIncludedFiles());
+
+                tree = newTree;
+                if (before.isOf(files, parser.getIncludes().keySet())) {
+                    snapshot = before;
+                    return tree;
+                } else if (parses == MAX_PARSES) {
+                    snapshot = null;
+                    return tree;
+                }
+                before = new ConfigurationSnapshot(files, serverRoot, parser.getIncludes().keySet());
+            }
+        }
+    }
+}
@@ -1,7 +1,12 @@
 package org.rhq.plugins.apache.parser;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import org.rhq.augeas.util.Glob;
 
@@ -11,6 +16,7 @@ public class ApacheParserImpl implements ApacheParser{
     private final ApacheDirectiveTree tree;
     private ApacheDirectiveStack stack;
     private String serverRootPath;
+    private final Map<String, List<File>> includes = new LinkedHashMap<String, List<File>>();
 
     public ApacheParserImpl(ApacheDirectiveTree tree,String serverRootPath){          
       stack = new ApacheDirectiveStack();
@@ -22,6 +28,7 @@ public class ApacheParserImpl implements ApacheParser{
     public void addDirective(ApacheDirective directive) throws Exception{
         if (directive.getName().equals(INCLUDE_DIRECTIVE)){
             List<File> files = getIncludeFiles(directive.getValuesAsString());
+            includes.put(directive.getValuesAsString(), files);
             for (File fl : files){
                 if (fl.exists() && fl.isFile()) {
                     ApacheConfigReader.searchFile(fl.getAbsolutePath(), this);
@@ -42,6 +49,28 @@ public class ApacheParserImpl implements ApacheParser{
       stack.addDirective(directive);      
     }
 
+    /**
+     * @return the file name patterns of the Include directives found so far and the files each of them matched
+     */
+    public Map<String, List<File>> getIncludes() {
+        return includes;
+    }
+
+    /**
+     * @return the files that were read because of the Include directives found so far
+     */
+    public List<File> getIncludedFiles() {
+        Set<File> ret = new LinkedHashSet<File>();
+        for (List<File> files : includes.values()) {
+            for (File fl : files) {
+                if (fl.exists() && fl.isFile()) {
+                    ret.add(fl);
+                }
+            }
+        }
+        return new ArrayList<File>(ret);
+    }
+
     private  List<File> getIncludeFiles(String foundInclude) {
         File check = new File(foundInclude);        
         File root = new File(check.isAbsolute() ? Glob.rootPortion(foundInclude) : serverRootPath);
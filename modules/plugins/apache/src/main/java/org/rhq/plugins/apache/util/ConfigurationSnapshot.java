@@ -0,0 +1,111 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2011 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+package org.rhq.plugins.apache.util;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.rhq.augeas.util.Glob;
+
+/**
+ * The state of the files an Apache configuration is made of, i.e. the main configuration file and
+ * everything it includes, at the time the configuration was parsed.
+ * <p>
+ * A snapshot has to be taken <i>before</i> parsing, so that a file changed while it is being parsed is
+ * noticed. Because what the configuration includes is only known after parsing, the parsed files are
+ * {@link #isOf(List, Collection) compared} to the ones of the snapshot, and the configuration parsed
+ * again with a new snapshot of the files if they differ.
+ * <p>
+ * The configuration is still current if none of the files was modified and each of the Include
+ * file name patterns still matches the same files, so that a file added to a directory included
+ * with a wildcard is noticed too.
+ */
+public class ConfigurationSnapshot {
+
+    private final List<File> files;
+    private final String serverRoot;
+    private final Map<String, List<File>> includes;
+    private final ConfigurationTimestamp timestamp;
+
+    /**
+     * @param files all the files the configuration was parsed from
+     * @param serverRoot the server root the relative Include file name patterns are relative to
+     * @param includes the file name patterns of the Include directives
+     */
+    public ConfigurationSnapshot(List<File> files, String serverRoot, Collection<String> includes) {
+        this.files = new ArrayList<File>(files);
+        this.serverRoot = serverRoot;
+        this.includes = new LinkedHashMap<String, List<File>>();
+        for (String include : includes) {
+            this.includes.put(include, getIncludeFiles(serverRoot, include));
+        }
+        this.timestamp = new ConfigurationTimestamp(this.files);
+    }
+
+    public List<File> getFiles() {
+        return files;
+    }
+
+    public ConfigurationTimestamp getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * @return a new snapshot of the same files
+     */
+    public ConfigurationSnapshot retake() {
+        return new ConfigurationSnapshot(files, serverRoot, includes.keySet());
+    }
+
+    /**
+     * @param files all the files a configuration was parsed from
+     * @param includes the file name patterns of its Include directives
+     * @return true if this is a snapshot of those files
+     */
+    public boolean isOf(List<File> files, Collection<String> includes) {
+        return new HashSet<File>(this.files).equals(new HashSet<File>(files))
+            && this.includes.keySet().equals(new HashSet<String>(includes));
+    }
+
+    /**
+     * @return true if the files are still the same as when this snapshot was taken
+     */
+    public boolean isCurrent() {
+        for (Map.Entry<String, List<File>> include : includes.entrySet()) {
+            if (!include.getValue().equals(getIncludeFiles(serverRoot, include.getKey()))) {
+                return false;
+            }
+        }
+
+        return timestamp.equals(new ConfigurationTimestamp(files));
+    }
+
+    private static List<File> getIncludeFiles(String serverRoot, String include) {
+        File check = new File(include);
+        File root = new File(check.isAbsolute() ? Glob.rootPortion(include) : serverRoot);
+
+        return Glob.match(root, include, Glob.ALPHABETICAL_COMPARATOR);
+    }
+}
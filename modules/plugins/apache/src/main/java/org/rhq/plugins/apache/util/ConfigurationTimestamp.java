@@ -29,22 +29,26 @@ import java.util.List;
 import java.util.Map;
 
 /**
- * Encapsulates the logic to check whether any of the provided files has changed.
+ * Encapsulates the logic to check whether any of the provided files has changed, i.e. whether
+ * its modification time or its size is different.
  * 
  * @author Lukas Krejci
  */
 public class ConfigurationTimestamp {
 
     private Map<String, Long> lastModifiedTimes;
+    private Map<String, Long> lengths;
     
     public ConfigurationTimestamp() {
         lastModifiedTimes = new HashMap<String, Long>();
+        lengths = new HashMap<String, Long>();
     }
     
     public ConfigurationTimestamp(List<File> files) {
         this();
         for(File f : files) {
             lastModifiedTimes.put(f.getAbsolutePath(), f.lastModified());
+            lengths.put(f.getAbsolutePath(), f.length());
         }
     }
     
@@ -67,6 +71,11 @@ public class ConfigurationTimestamp {
             if (!entry.getValue().equals(otherModified)) return false;
         }
         
-        return true;
+        return lengths.equals(other.lengths);
+    }
+
+    @Override
+    public int hashCode() {
+        return lastModifiedTimes.hashCode();
     }
 }
@@ -66,6 +66,21 @@ public interface SNMPSession {
     @NotNull
     List<SNMPValue> getColumn(String mibName) throws SNMPException;
 
+    /**
+     * Retrieves all values from several columns of an SNMP table at once. The columns are walked side by side, so that
+     * each request to the agent returns the next rows of all of the columns (using GETBULK requests with SNMP v2c and
+     * later), rather than walking each column on its own.
+     *
+     * @param  mibNames the names of the columns of the SNMP table
+     *
+     * @return the values of each of the columns, keyed by the index of their row (i.e. the OID suffix following the OID
+     *         of the column) in index-order
+     *
+     * @throws SNMPException if an error occurs communicating with the SNMP agent.
+     */
+    @NotNull
+    Map<String, Map<String, SNMPValue>> getColumns(List<String> mibNames) throws SNMPException;
+
     /**
      * TODO
      *
@@ -22,14 +22,22 @@ import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 /**
- * SNMPSession interface cache. Cache is per-session instance. Currently supports getColumn, getBulk, and getTable
- * methods only.
+ * SNMPSession interface cache. Cache is per-session instance. Currently supports getColumn, getColumns, getBulk,
+ * getTable and ping methods only.
+ * <p>
+ * getColumns caches each of the columns on its own, so that the columns requested by one caller are reused by the
+ * others (e.g. the virtual hosts of an Apache server all reading the same columns of the WWW-MIB tables), and only
+ * the columns not cached yet are retrieved from the agent, all in one walk.
  */
 class SNMPSessionCache implements InvocationHandler {
     private SNMPSession session;
@@ -37,14 +45,23 @@ class SNMPSessionCache implements InvocationHandler {
     private Map columnCache = new HashMap();
     private Map bulkCache = new HashMap();
     private Map tableCache = new HashMap();
+    private final Map<String, SNMPCacheObject> columnsCache = new HashMap<String, SNMPCacheObject>();
+    private final SNMPCacheObject pingCache = new SNMPCacheObject();
     private final Log log = LogFactory.getLog(this.getClass());
 
     public static final int EXPIRE_DEFAULT = 30 * 1000; //30 seconds
+
+    /**
+     * The result of a ping is kept only briefly, just so that the components checking their availability one after
+     * another don't each ping the agent.
+     */
+    public static final int PING_EXPIRE = 5 * 1000; //5 seconds
     private int expire;
 
     SNMPSessionCache(SNMPSession session, int expire) {
         this.session = session;
         this.expire = expire;
+        this.pingCache.expire = Math.min(expire, PING_EXPIRE);
     }
 
     static SNMPSession newInstance(SNMPSession session, int expire) throws SNMPException {
@@ -121,7 +138,11 @@ class SNMPSessionCache implements InvocationHandler {
         long timeNow = 0;
 
         //XXX perhaps more later
-        if (name.equals("getBulk")) {
+        if (name.equals("getColumns")) {
+            return getColumns((List<String>) args[0]);
+        } else if (name.equals("ping")) {
+            return ping();
+        } else if (name.equals("getBulk")) {
             cache = this.bulkCache;
             cacheKey = args[0];
         } else if (name.equals("getTable")) {
@@ -171,4 +192,54 @@ class SNMPSessionCache implements InvocationHandler {
 
         return retval;
     }
+
+    private Map<String, Map<String, SNMPValue>> getColumns(List<String> mibNames) throws SNMPException {
+        // callers asking for the same columns at the same time wait for each other rather than all walking them
+        synchronized (this.columnsCache) {
+            long timeNow = System.currentTimeMillis();
+            List<String> missing = new ArrayList<String>();
+            for (String mibName : mibNames) {
+                SNMPCacheObject cacheVal = getFromCache(timeNow, this.columnsCache, "getColumns", mibName);
+                if ((cacheVal.value == null) && !missing.contains(mibName)) {
+                    missing.add(mibName);
+                }
+            }
+
+            if (!missing.isEmpty()) {
+                Map<String, Map<String, SNMPValue>> retrieved;
+                try {
+                    retrieved = this.session.getColumns(missing);
+                } catch (RuntimeException e) {
+                    String msg = e + " (while invoking: " + invokerToString("getColumns", new Object[] { missing }, null)
+                        + ")";
+                    throw new SNMPException(msg);
+                }
+
+                for (String mibName : missing) {
+                    SNMPCacheObject cacheVal = this.columnsCache.get(mibName);
+                    cacheVal.value = retrieved.get(mibName);
+                    cacheVal.timestamp = timeNow;
+                }
+            }
+
+            Map<String, Map<String, SNMPValue>> columns = new LinkedHashMap<String, Map<String, SNMPValue>>();
+            for (String mibName : mibNames) {
+                columns.put(mibName, (Map<String, SNMPValue>) this.columnsCache.get(mibName).value);
+            }
+
+            return columns;
+        }
+    }
+
+    private Boolean ping() {
+        synchronized (this.pingCache) {
+            long timeNow = System.currentTimeMillis();
+            if ((this.pingCache.value == null) || ((timeNow - this.pingCache.timestamp) > this.pingCache.expire)) {
+                this.pingCache.value = this.session.ping();
+                this.pingCache.timestamp = timeNow;
+            }
+
+            return (Boolean) this.pingCache.value;
+        }
+    }
 }
\ No newline at end of file
@@ -42,6 +42,8 @@ import org.snmp4j.smi.UdpAddress;
 import org.snmp4j.smi.VariableBinding;
 import org.snmp4j.transport.DefaultUdpTransportMapping;
 import org.snmp4j.util.DefaultPDUFactory;
+import org.snmp4j.util.TableEvent;
+import org.snmp4j.util.TableUtils;
 import org.snmp4j.util.TreeEvent;
 import org.snmp4j.util.TreeUtils;
 
@@ -148,6 +150,43 @@ class SNMPSession_v1 implements SNMPSession {
         return values;
     }
 
+    @NotNull
+    public Map<String, Map<String, SNMPValue>> getColumns(List<String> mibNames) throws SNMPException {
+        Map<String, Map<String, SNMPValue>> columns = new LinkedHashMap<String, Map<String, SNMPValue>>();
+        OID[] oids = new OID[mibNames.size()];
+        for (int i = 0; i < oids.length; i++) {
+            oids[i] = SNMPClient.getMibOID(mibNames.get(i));
+            columns.put(mibNames.get(i), new LinkedHashMap<String, SNMPValue>());
+        }
+
+        if (oids.length == 0) {
+            return columns;
+        }
+
+        TableUtils tableUtils = new TableUtils(session, new DefaultPDUFactory());
+        tableUtils.setMaxNumRowsPerPDU(GETBULK_MAX_REPETITIONS);
+        List<TableEvent> events = tableUtils.getTable(this.target, oids, null, null);
+        for (TableEvent event : events) {
+            if (event.isError()) {
+                throw new SNMPException("Error occurred while retrieving columns " + mibNames + ": "
+                    + event.getErrorMessage(), event.getException());
+            }
+
+            VariableBinding[] varBindings = event.getColumns();
+            if (varBindings != null) {
+                String index = event.getIndex().toString();
+                for (int i = 0; i < varBindings.length; i++) {
+                    // a row does not need to have a value in each of the columns
+                    if (varBindings[i] != null) {
+                        columns.get(mibNames.get(i)).put(index, new SNMPValue(varBindings[i]));
+                    }
+                }
+            }
+        }
+
+        return columns;
+    }
+
     @NotNull
     public Map<String, SNMPValue> getTable(String mibName, int index) throws SNMPException {
         Map<String, SNMPValue> map = new LinkedHashMap<String, SNMPValue>();
@@ -0,0 +1,213 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2011 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+package org.rhq.plugins.apache;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+
+import static org.testng.Assert.*;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import org.rhq.augeas.AugeasComponent;
+import org.rhq.augeas.config.AugeasConfiguration;
+import org.rhq.augeas.tree.AugeasTree;
+import org.rhq.augeas.tree.AugeasTreeBuilder;
+import org.rhq.core.domain.configuration.Configuration;
+import org.rhq.core.domain.configuration.PropertySimple;
+import org.rhq.core.pluginapi.util.FileUtils;
+import org.rhq.core.util.file.FileUtil;
+import org.rhq.plugins.apache.augeas.ApacheAugeasTreeCache;
+import org.rhq.plugins.apache.augeas.AugeasConfigurationApache;
+import org.rhq.test.JMockTest;
+
+/**
+ * Tests that the shared Augeas tree is reused until one of the files it was loaded from changes, also while it
+ * is being loaded. Augeas itself is not needed, the trees are mocks loaded with the configuration of the test files.
+ */
+@Test
+public class ApacheAugeasTreeCacheTest extends JMockTest {
+
+    private File tmpDir;
+    private File httpdConf;
+    private ApacheAugeasTreeCache cache;
+    private int loads;
+    private Runnable duringLoad;
+    private AugeasTree changedTree;
+
+    @BeforeMethod
+    public void createConfigurationFiles() throws Exception {
+        tmpDir = FileUtil.createTempDirectory("apache-augeas-tree-cache-tests", null, null);
+        httpdConf = new File(tmpDir, "httpd.conf");
+        new File(tmpDir, "conf.d").mkdir();
+
+        write(httpdConf, "Listen 80\nInclude conf.d/*.conf\n");
+        write(new File(tmpDir, "conf.d/a.conf"), "<VirtualHost *:80>\nServerName a\n</VirtualHost>\n");
+
+        loads = 0;
+        duringLoad = null;
+        changedTree = null;
+        cache = new ApacheAugeasTreeCache(ApacheTestConstants.MODULE_NAME) {
+            protected AugeasComponent createAugeas() {
+                return new TestAugeasComponent();
+            }
+        };
+    }
+
+    @AfterMethod
+    public void deleteConfigurationFiles() throws IOException {
+        cache.invalidate();
+        FileUtils.purge(tmpDir, true);
+    }
+
+    public void testTreeIsShared() {
+        AugeasTree tree = getTree();
+        int treeLoads = loads;
+        assertSame(getTree(), tree, "The tree should not have been loaded again");
+        assertEquals(loads, treeLoads);
+    }
+
+    public void testChangedFileIsNoticed() throws Exception {
+        AugeasTree tree = getTree();
+
+        // a different size is noticed even if the modification time is the same
+        File included = new File(tmpDir, "conf.d/a.conf");
+        long lastModified = included.lastModified();
+        write(included, "<VirtualHost *:80>\nServerName a\n</VirtualHost>\n<VirtualHost *:81>\n</VirtualHost>\n");
+        included.setLastModified(lastModified);
+
+        int treeLoads = loads;
+        assertNotSame(getTree(), tree);
+        assertEquals(loads, treeLoads + 1, "The files loaded last time should not need to be loaded twice");
+    }
+
+    public void testNewIncludedFileIsNoticed() throws Exception {
+        AugeasTree tree = getTree();
+
+        write(new File(tmpDir, "conf.d/b.conf"), "<VirtualHost *:81>\nServerName b\n</VirtualHost>\n");
+
+        AugeasTree newTree = getTree();
+        assertNotSame(newTree, tree);
+        assertSame(getTree(), newTree);
+    }
+
+    public void testFileChangedWhileLoadingIsNoticed() throws Exception {
+        getTree();
+
+        write(httpdConf, "Listen 8080\nInclude conf.d/*.conf\n");
+        File included = new File(tmpDir, "conf.d/a.conf");
+        changeWhileLoading(included, "<VirtualHost *:80>\nServerName changed\n</VirtualHost>\n");
+        AugeasTree tree = getTree();
+        assertSame(tree, changedTree);
+
+        AugeasTree newTree = getTree();
+        assertNotSame(newTree, tree, "A file changed while the tree was loaded should be loaded again");
+        assertSame(getTree(), newTree);
+    }
+
+    public void testNewIncludedFileChangedWhileLoadingIsNoticed() throws Exception {
+        getTree();
+
+        File included = new File(tmpDir, "conf.d/b.conf");
+        write(included, "<VirtualHost *:81>\nServerName b\n</VirtualHost>\n");
+        changeWhileLoading(included, "<VirtualHost *:81>\nServerName changed\n</VirtualHost>\n");
+
+        // the file was not part of the snapshot taken before loading, so the tree is loaded again
+        AugeasTree newTree = getTree();
+        assertNotNull(changedTree);
+        assertNotSame(newTree, changedTree, "The tree loaded before the new file changed should not be used");
+        assertSame(getTree(), newTree);
+    }
+
+    private void changeWhileLoading(final File file, final String contents) {
+        duringLoad = new Runnable() {
+            public void run() {
+                duringLoad = null;
+                write(file, contents);
+            }
+        };
+    }
+
+    private AugeasTree getTree() {
+        ApacheAugeasTreeCache.Reader reader = cache.getReader();
+        try {
+            return reader.getAugeasTree(ApacheTestConstants.MODULE_NAME);
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static void write(File file, String contents) {
+        try {
+            FileWriter writer = new FileWriter(file);
+            try {
+                writer.write(contents);
+            } finally {
+                writer.close();
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Scans the configuration files for includes like Augeas is loaded, and stands in for the loaded tree with a
+     * mock. The files can be changed while they are "loaded".
+     */
+    private class TestAugeasComponent extends AugeasComponent {
+        private AugeasConfigurationApache config;
+
+        public AugeasConfiguration initConfiguration() {
+            Configuration pluginConfig = new Configuration();
+            pluginConfig.put(new PropertySimple("configurationFilesInclusionPatterns", httpdConf.getAbsolutePath()));
+            pluginConfig.put(new PropertySimple("augeasModuleName", ApacheTestConstants.MODULE_NAME));
+            pluginConfig.put(new PropertySimple(ApacheTestConstants.PLUGIN_CONFIG_PROP_SERVER_ROOT,
+                tmpDir.getAbsolutePath()));
+            return new AugeasConfigurationApache(tmpDir.getAbsolutePath(), pluginConfig);
+        }
+
+        public AugeasTreeBuilder initTreeBuilder() {
+            return null;
+        }
+
+        @Override
+        public AugeasTree getAugeasTree(String moduleName) {
+            config = (AugeasConfigurationApache) initConfiguration();
+            AugeasTree tree = context.mock(AugeasTree.class, "tree" + ++loads);
+            if (duringLoad != null) {
+                duringLoad.run();
+                changedTree = tree;
+            }
+            return tree;
+        }
+
+        @Override
+        public AugeasConfiguration getConfiguration() {
+            return config;
+        }
+
+        @Override
+        public void close() {
+            config = null;
+        }
+    }
+}
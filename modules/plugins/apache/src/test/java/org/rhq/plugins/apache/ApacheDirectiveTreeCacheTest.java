@@ -0,0 +1,103 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2011 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+package org.rhq.plugins.apache;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+
+import static org.testng.Assert.*;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import org.rhq.core.pluginapi.util.FileUtils;
+import org.rhq.core.util.file.FileUtil;
+import org.rhq.plugins.apache.parser.ApacheDirectiveTree;
+import org.rhq.plugins.apache.parser.ApacheDirectiveTreeCache;
+
+/**
+ * Tests that the parsed configuration is reused until one of the files it was parsed from changes.
+ */
+@Test
+public class ApacheDirectiveTreeCacheTest {
+
+    private File tmpDir;
+    private File httpdConf;
+
+    @BeforeMethod
+    public void createConfigurationFiles() throws Exception {
+        tmpDir = FileUtil.createTempDirectory("apache-directive-tree-cache-tests", null, null);
+        httpdConf = new File(tmpDir, "httpd.conf");
+        new File(tmpDir, "conf.d").mkdir();
+
+        write(httpdConf, "Listen 80\nInclude conf.d/*.conf\n");
+        write(new File(tmpDir, "conf.d/a.conf"), "<VirtualHost *:80>\nServerName a\n</VirtualHost>\n");
+    }
+
+    @AfterMethod
+    public void deleteConfigurationFiles() throws IOException {
+        ApacheDirectiveTreeCache.invalidate(httpdConf.getAbsolutePath());
+        FileUtils.purge(tmpDir, true);
+    }
+
+    public void testTreeIsShared() {
+        ApacheDirectiveTree tree = getTree();
+        assertEquals(tree.search("/<VirtualHost").size(), 1);
+        assertSame(getTree(), tree, "The configuration should not have been parsed again");
+    }
+
+    public void testChangedFileIsNoticed() throws Exception {
+        ApacheDirectiveTree tree = getTree();
+
+        // a different size is noticed even if the modification time is the same
+        File included = new File(tmpDir, "conf.d/a.conf");
+        long lastModified = included.lastModified();
+        write(included, "<VirtualHost *:80>\nServerName a\n</VirtualHost>\n<VirtualHost *:81>\n</VirtualHost>\n");
+        included.setLastModified(lastModified);
+
+        ApacheDirectiveTree newTree = getTree();
+        assertNotSame(newTree, tree);
+        assertEquals(newTree.search("/<VirtualHost").size(), 2);
+    }
+
+    public void testNewIncludedFileIsNoticed() throws Exception {
+        ApacheDirectiveTree tree = getTree();
+
+        write(new File(tmpDir, "conf.d/b.conf"), "<VirtualHost *:81>\nServerName b\n</VirtualHost>\n");
+
+        ApacheDirectiveTree newTree = getTree();
+        assertNotSame(newTree, tree);
+        assertEquals(newTree.search("/<VirtualHost").size(), 2);
+    }
+
+    private ApacheDirectiveTree getTree() {
+        return ApacheDirectiveTreeCache.getTree(httpdConf.getAbsolutePath(), tmpDir.getAbsolutePath());
+    }
+
+    private static void write(File file, String contents) throws IOException {
+        FileWriter writer = new FileWriter(file);
+        try {
+            writer.write(contents);
+        } finally {
+            writer.close();
+        }
+    }
+}
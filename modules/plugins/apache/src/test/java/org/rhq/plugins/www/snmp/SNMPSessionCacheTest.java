@@ -0,0 +1,135 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2011 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+package org.rhq.plugins.www.snmp;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+import org.testng.annotations.Test;
+
+/**
+ * Tests that the columns retrieved for one caller of a cached session are reused by the others.
+ */
+@Test
+public class SNMPSessionCacheTest {
+
+    public void testColumnsAreShared() throws Exception {
+        CountingSession counting = new CountingSession();
+        SNMPSession session = SNMPSessionCache.newInstance(counting, 60 * 1000);
+
+        Map<String, Map<String, SNMPValue>> first = session.getColumns(Arrays.asList("wwwServiceName",
+            "wwwRequestInRequests"));
+        assertEquals(counting.requests.size(), 1);
+        assertEquals(first.keySet(), new LinkedHashSet<String>(Arrays.asList("wwwServiceName",
+            "wwwRequestInRequests")));
+
+        // only the column not read yet is retrieved from the agent
+        Map<String, Map<String, SNMPValue>> second = session.getColumns(Arrays.asList("wwwRequestInRequests",
+            "wwwSummaryInRequests"));
+        assertEquals(counting.requests.size(), 2);
+        assertEquals(counting.requests.get(1), Arrays.asList("wwwSummaryInRequests"));
+        assertSame(second.get("wwwRequestInRequests"), first.get("wwwRequestInRequests"));
+
+        session.getColumns(Arrays.asList("wwwSummaryInRequests", "wwwServiceName"));
+        assertEquals(counting.requests.size(), 2);
+    }
+
+    public void testExpiredColumnsAreRetrievedAgain() throws Exception {
+        CountingSession counting = new CountingSession();
+        SNMPSession session = SNMPSessionCache.newInstance(counting, -1);
+
+        session.getColumns(Arrays.asList("wwwServiceName"));
+        session.getColumns(Arrays.asList("wwwServiceName"));
+        assertEquals(counting.requests.size(), 2);
+    }
+
+    public void testPingIsShared() throws Exception {
+        CountingSession counting = new CountingSession();
+        SNMPSession session = SNMPSessionCache.newInstance(counting, 60 * 1000);
+
+        assertTrue(session.ping());
+        assertTrue(session.ping());
+        assertEquals(counting.pings, 1);
+    }
+
+    private static class CountingSession implements SNMPSession {
+        private final List<List<String>> requests = new ArrayList<List<String>>();
+        private int pings;
+
+        public Map<String, Map<String, SNMPValue>> getColumns(List<String> mibNames) {
+            requests.add(new ArrayList<String>(mibNames));
+            Map<String, Map<String, SNMPValue>> columns = new LinkedHashMap<String, Map<String, SNMPValue>>();
+            for (String mibName : mibNames) {
+                columns.put(mibName, new LinkedHashMap<String, SNMPValue>());
+            }
+            return columns;
+        }
+
+        public boolean ping() {
+            pings++;
+            return true;
+        }
+
+        public SNMPValue getSingleValue(String mibName) {
+            throw new UnsupportedOperationException();
+        }
+
+        public SNMPValue getNextValue(String mibName) {
+            throw new UnsupportedOperationException();
+        }
+
+        public List<SNMPValue> getColumn(String mibName) {
+            throw new UnsupportedOperationException();
+        }
+
+        public Map<String, SNMPValue> getTable(String mibName, int index) {
+            throw new UnsupportedOperationException();
+        }
+
+        public List<SNMPValue> getBulk(String mibName) {
+            throw new UnsupportedOperationException();
+        }
+
+        public long getTimeout() {
+            return 0;
+        }
+
+        public void setTimeout(long timeout) {
+        }
+
+        public int getRetries() {
+            return 0;
+        }
+
+        public void setRetries(int retries) {
+        }
+
+        public void close() {
+        }
+    }
+}
@@ -26,11 +26,17 @@ import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.TreeMap;
+
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 /**
+ * The queries are run using the statements cached for the connection by {@link PreparedStatementCache}, except for
+ * the updates which are rarely run more than once.
+ *
  * @author Greg Hinkle
  */
 public class DatabaseQueryUtility {
@@ -38,14 +44,15 @@ public class DatabaseQueryUtility {
 
     public static int executeUpdate(DatabaseComponent databaseComponent, String query, Object... parameters)
         throws SQLException {
+        Connection connection = databaseComponent.getConnection();
         PreparedStatement statement = null;
         try {
-            statement = databaseComponent.getConnection().prepareStatement(query);
+            statement = connection.prepareStatement(query);
             bindParameters(statement, parameters);
 
             return statement.executeUpdate();
         } catch (SQLException e) {
-            databaseComponent.removeConnection();
+            removeConnection(databaseComponent, connection);
             throw e;
         } finally {
             close(statement, null);
@@ -54,20 +61,23 @@ public class DatabaseQueryUtility {
 
     public static Double getSingleNumericQueryValue(DatabaseComponent databaseComponent, String query,
         Object... parameters) {
-        PreparedStatement statement = null;
+        Connection connection = databaseComponent.getConnection();
+        PreparedStatementCache statements = PreparedStatementCache.getCache(connection);
         ResultSet resultSet = null;
-        try {
-            statement = databaseComponent.getConnection().prepareStatement(query);
-            bindParameters(statement, parameters);
-            resultSet = statement.executeQuery();
+        synchronized (statements) {
+            try {
+                PreparedStatement statement = statements.prepareStatement(query);
+                bindParameters(statement, parameters);
+                resultSet = statement.executeQuery();
 
-            if (resultSet.next()) {
-                return resultSet.getDouble(1);
+                if (resultSet.next()) {
+                    return resultSet.getDouble(1);
+                }
+            } catch (SQLException e) {
+                removeConnection(databaseComponent, connection);
+            } finally {
+                close(null, resultSet);
             }
-        } catch (SQLException e) {
-            databaseComponent.removeConnection();
-        } finally {
-            close(statement, resultSet);
         }
 
         return Double.NaN;
@@ -84,35 +94,38 @@ public class DatabaseQueryUtility {
      */
     public static Map<String, Double> getNumericQueryValues(DatabaseComponent databaseComponent, String query,
         Object... parameters) {
-        PreparedStatement statement = null;
+        Connection connection = databaseComponent.getConnection();
+        PreparedStatementCache statements = PreparedStatementCache.getCache(connection);
         ResultSet resultSet = null;
-        try {
-            statement = databaseComponent.getConnection().prepareStatement(query);
-            bindParameters(statement, parameters);
+        synchronized (statements) {
+            try {
+                PreparedStatement statement = statements.prepareStatement(query);
+                bindParameters(statement, parameters);
 
-            resultSet = statement.executeQuery();
+                resultSet = statement.executeQuery();
 
-            Map<String, Double> row = new HashMap<String, Double>();
+                Map<String, Double> row = new HashMap<String, Double>();
 
-            ResultSetMetaData md = resultSet.getMetaData();
-            String[] names = getColumns(md);
+                ResultSetMetaData md = resultSet.getMetaData();
+                String[] names = getColumns(md);
 
-            if (resultSet.next()) {
-                for (String name : names) {
-                    try {
-                        row.put(name, resultSet.getDouble(name));
-                    } catch (SQLException e) {
-                        // Ignore columns that can't be read as doubles
+                if (resultSet.next()) {
+                    for (String name : names) {
+                        try {
+                            row.put(name, resultSet.getDouble(name));
+                        } catch (SQLException e) {
+                            // Ignore columns that can't be read as doubles
+                        }
                     }
                 }
-            }
 
-            return row;
-        } catch (SQLException e) {
-            LOG.debug("Unable to read value", e);
-            databaseComponent.removeConnection();
-        } finally {
-            close(statement, resultSet);
+                return row;
+            } catch (SQLException e) {
+                LOG.debug("Unable to read value", e);
+                removeConnection(databaseComponent, connection);
+            } finally {
+                close(null, resultSet);
+            }
         }
 
         return Collections.emptyMap();
@@ -130,36 +143,95 @@ public class DatabaseQueryUtility {
      */
     public static Map<String, Double> getNumericQueryValueMap(DatabaseComponent databaseComponent, String query,
         Object... parameters) {
-        PreparedStatement statement = null;
+        Connection connection = databaseComponent.getConnection();
+        PreparedStatementCache statements = PreparedStatementCache.getCache(connection);
         ResultSet resultSet = null;
-        try {
-            Connection c = databaseComponent.getConnection();
-            statement = c.prepareStatement(query);
-            bindParameters(statement, parameters);
+        synchronized (statements) {
+            try {
+                PreparedStatement statement = statements.prepareStatement(query);
+                bindParameters(statement, parameters);
 
-            resultSet = statement.executeQuery();
+                resultSet = statement.executeQuery();
 
-            Map<String, Double> map = new HashMap<String, Double>();
+                Map<String, Double> map = new HashMap<String, Double>();
 
-            while (resultSet.next()) {
-                try {
-                    map.put(resultSet.getString(1), resultSet.getDouble(2));
-                } catch (SQLException e) {
-                    // Ignore columns that can't be read as doubles
+                while (resultSet.next()) {
+                    try {
+                        map.put(resultSet.getString(1), resultSet.getDouble(2));
+                    } catch (SQLException e) {
+                        // Ignore columns that can't be read as doubles
+                    }
                 }
-            }
 
-            return map;
-        } catch (SQLException e) {
-            LOG.info("Unable to read value", e);
-            databaseComponent.removeConnection();
-        } finally {
-            close(statement, resultSet);
+                return map;
+            } catch (SQLException e) {
+                LOG.info("Unable to read value", e);
+                removeConnection(databaseComponent, connection);
+            } finally {
+                close(null, resultSet);
+            }
         }
 
         return Collections.emptyMap();
     }
 
+    /**
+     * Used to read many rows of columns at once, e.g. the statistics of all the tables of a database, rather than
+     * running a query for each of them. See {@link QueryResultCache}.
+     *
+     * @param  databaseComponent the component to execute on
+     * @param  query             the sql query to run
+     * @param  keyColumn         the column identifying the rows, e.g. the name of the table
+     * @param  parameters        any parameters to bind first
+     *
+     * @return the numeric values of each row keyed by the case insensitive column names, against the value of the key
+     *         column of the row (if more rows have the same key the first one is used), or null if the query failed
+     */
+    public static Map<String, Map<String, Double>> getNumericQueryValueRows(DatabaseComponent databaseComponent,
+        String query, String keyColumn, Object... parameters) {
+        Connection connection = databaseComponent.getConnection();
+        PreparedStatementCache statements = PreparedStatementCache.getCache(connection);
+        ResultSet resultSet = null;
+        synchronized (statements) {
+            try {
+                PreparedStatement statement = statements.prepareStatement(query);
+                bindParameters(statement, parameters);
+
+                resultSet = statement.executeQuery();
+
+                Map<String, Map<String, Double>> rows = new LinkedHashMap<String, Map<String, Double>>();
+
+                String[] names = getColumns(resultSet.getMetaData());
+
+                while (resultSet.next()) {
+                    String key = resultSet.getString(keyColumn);
+                    if (rows.containsKey(key)) {
+                        continue;
+                    }
+
+                    Map<String, Double> row = new TreeMap<String, Double>(String.CASE_INSENSITIVE_ORDER);
+                    for (String name : names) {
+                        try {
+                            row.put(name, resultSet.getDouble(name));
+                        } catch (SQLException e) {
+                            // Ignore columns that can't be read as doubles
+                        }
+                    }
+                    rows.put(key, row);
+                }
+
+                return rows;
+            } catch (SQLException e) {
+                LOG.info("Unable to read values", e);
+                removeConnection(databaseComponent, connection);
+            } finally {
+                close(null, resultSet);
+            }
+        }
+
+        return null;
+    }
+
     private static void bindParameters(PreparedStatement statement, Object... parameters) throws SQLException {
         int i = 1;
         for (Object p : parameters) {
@@ -173,6 +245,11 @@ public class DatabaseQueryUtility {
         }
     }
 
+    private static void removeConnection(DatabaseComponent databaseComponent, Connection connection) {
+        PreparedStatementCache.remove(connection);
+        databaseComponent.removeConnection();
+    }
+
     public static String[] getColumns(ResultSetMetaData rsmd) throws SQLException {
         String[] names = new String[rsmd.getColumnCount()];
         for (int i = 0; i < rsmd.getColumnCount(); i++) {
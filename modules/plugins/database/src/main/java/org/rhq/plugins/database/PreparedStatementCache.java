@@ -0,0 +1,146 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2011 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package org.rhq.plugins.database;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Keeps the statements prepared for the queries run over and over on a connection, such as the metric queries run on
+ * each collection, so that they don't have to be prepared again every time. The least recently used statements are
+ * closed once there are more than <code>rhq.database.statement-cache-size</code> (100 by default) of them.
+ * <p>
+ * A statement may only be used by one thread at a time, so the statements of a connection may only be used while
+ * holding the lock of its cache:
+ *
+ * <pre>
+ * PreparedStatementCache cache = PreparedStatementCache.getCache(connection);
+ * synchronized (cache) {
+ *     PreparedStatement statement = cache.prepareStatement(query);
+ *     ...
+ * }
+ * </pre>
+ *
+ * The cached statements must not be closed by their users. They are closed when they are evicted from the cache or
+ * when the cache of the connection is {@link #remove(Connection) removed}, e.g. after the connection failed.
+ */
+public class PreparedStatementCache {
+    private static final int MAX_STATEMENTS = Integer.getInteger("rhq.database.statement-cache-size", 100);
+
+    private static final Map<Connection, PreparedStatementCache> CACHES = new IdentityHashMap<Connection, PreparedStatementCache>();
+
+    private final Connection connection;
+
+    private final Map<String, PreparedStatement> statements = new LinkedHashMap<String, PreparedStatement>(16, 0.75f,
+        true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+            if (size() > MAX_STATEMENTS) {
+                DatabaseQueryUtility.close(eldest.getValue(), null);
+                return true;
+            }
+
+            return false;
+        }
+    };
+
+    private PreparedStatementCache(Connection connection) {
+        this.connection = connection;
+    }
+
+    /**
+     * @param  connection the connection to get the statements of
+     *
+     * @return the cache of the statements prepared on the connection
+     */
+    public static PreparedStatementCache getCache(Connection connection) {
+        synchronized (CACHES) {
+            PreparedStatementCache cache = CACHES.get(connection);
+            if (cache == null) {
+                removeClosedConnections();
+                cache = new PreparedStatementCache(connection);
+                CACHES.put(connection, cache);
+            }
+
+            return cache;
+        }
+    }
+
+    /**
+     * Closes the statements cached for the connection and forgets them.
+     *
+     * @param connection the connection whose statements should be closed
+     */
+    public static void remove(Connection connection) {
+        PreparedStatementCache cache;
+        synchronized (CACHES) {
+            cache = CACHES.remove(connection);
+        }
+
+        if (cache != null) {
+            synchronized (cache) {
+                for (PreparedStatement statement : cache.statements.values()) {
+                    DatabaseQueryUtility.close(statement, null);
+                }
+                cache.statements.clear();
+            }
+        }
+    }
+
+    /**
+     * Returns the statement prepared for the query, preparing it if it has not been yet. The caller must hold the lock
+     * of this cache until done with the statement and its results.
+     *
+     * @param  sql the query
+     *
+     * @return the prepared statement, with its parameters cleared
+     *
+     * @throws SQLException if the statement could not be prepared
+     */
+    public synchronized PreparedStatement prepareStatement(String sql) throws SQLException {
+        PreparedStatement statement = this.statements.get(sql);
+        if (statement == null) {
+            statement = this.connection.prepareStatement(sql);
+            this.statements.put(sql, statement);
+        } else {
+            statement.clearParameters();
+        }
+
+        return statement;
+    }
+
+    // the statements of closed connections are closed with them, so they just need to be forgotten
+    private static void removeClosedConnections() {
+        for (Iterator<Connection> i = CACHES.keySet().iterator(); i.hasNext();) {
+            Connection connection = i.next();
+            try {
+                if ((connection == null) || connection.isClosed()) {
+                    i.remove();
+                }
+            } catch (SQLException e) {
+                i.remove();
+            }
+        }
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2011 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package org.rhq.plugins.database;
+
+import java.util.Map;
+
+/**
+ * Runs a query returning a row for each of many resources of the same type (e.g. the statistics of all the tables of a
+ * database) on behalf of all of them, and serves the rows of the individual resources from the results until they get
+ * too old. A parent component keeps one of these for its children, which then cost one query per collection
+ * interval rather than one query per child and collection.
+ *
+ * @see DatabaseQueryUtility#getNumericQueryValueRows(DatabaseComponent, String, String, Object...)
+ */
+public class QueryResultCache {
+    private final String query;
+    private final String keyColumn;
+
+    private Map<String, Map<String, Double>> rows;
+    private long timestamp;
+
+    /**
+     * @param query     the query returning the rows of all the resources
+     * @param keyColumn the column identifying the resource of a row
+     */
+    public QueryResultCache(String query, String keyColumn) {
+        this.query = query;
+        this.keyColumn = keyColumn;
+    }
+
+    /**
+     * Returns the rows, running the query again if they are older than <code>maxAge</code>. Callers asking for the
+     * rows while the query runs wait for its results.
+     *
+     * @param  databaseComponent the component to run the query with
+     * @param  maxAge            how old, in milliseconds, the rows may be
+     *
+     * @return the numeric values of the rows keyed by the case insensitive column names, against the value of the key
+     *         column, or null if the query failed
+     */
+    public synchronized Map<String, Map<String, Double>> getRows(DatabaseComponent databaseComponent, long maxAge) {
+        long now = System.currentTimeMillis();
+        if ((this.rows == null) || ((now - this.timestamp) > maxAge)) {
+            this.rows = DatabaseQueryUtility.getNumericQueryValueRows(databaseComponent, this.query, this.keyColumn);
+            this.timestamp = now;
+        }
+
+        return this.rows;
+    }
+
+    /**
+     * Forgets the rows, so that the query is run again the next time they are asked for.
+     */
+    public synchronized void clear() {
+        this.rows = null;
+    }
+}
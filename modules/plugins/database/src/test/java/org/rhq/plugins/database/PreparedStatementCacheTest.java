@@ -0,0 +1,211 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2011 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License, version 2, as
+ * published by the Free Software Foundation, and/or the GNU Lesser
+ * General Public License, version 2.1, also as published by the Free
+ * Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License and the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * and the GNU Lesser General Public License along with this program;
+ * if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.rhq.plugins.database;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import org.jmock.Expectations;
+import org.testng.annotations.Test;
+
+import org.rhq.test.JMockTest;
+
+/**
+ * Tests the statements {@link PreparedStatementCache} keeps for each connection, and how {@link DatabaseQueryUtility}
+ * uses them.
+ */
+@Test
+public class PreparedStatementCacheTest extends JMockTest {
+
+    private static final int MAX_STATEMENTS = Integer.getInteger("rhq.database.statement-cache-size", 100);
+
+    public void testStatementsCachedPerConnection() throws Exception {
+        final Connection first = createConnection("first");
+        final Connection second = createConnection("second");
+        final PreparedStatement firstSelect1 = context.mock(PreparedStatement.class, "first select 1");
+        final PreparedStatement firstSelect2 = context.mock(PreparedStatement.class, "first select 2");
+        final PreparedStatement secondSelect1 = context.mock(PreparedStatement.class, "second select 1");
+        context.checking(new Expectations() {
+            {
+                oneOf(first).prepareStatement("select 1");
+                will(returnValue(firstSelect1));
+                oneOf(firstSelect1).clearParameters();
+                oneOf(first).prepareStatement("select 2");
+                will(returnValue(firstSelect2));
+                oneOf(second).prepareStatement("select 1");
+                will(returnValue(secondSelect1));
+            }
+        });
+
+        PreparedStatementCache firstCache = PreparedStatementCache.getCache(first);
+        try {
+            assert PreparedStatementCache.getCache(first) == firstCache;
+            assert PreparedStatementCache.getCache(second) != firstCache;
+
+            synchronized (firstCache) {
+                assert firstCache.prepareStatement("select 1") == firstSelect1;
+                assert firstCache.prepareStatement("select 1") == firstSelect1;
+                assert firstCache.prepareStatement("select 2") == firstSelect2;
+            }
+
+            PreparedStatementCache secondCache = PreparedStatementCache.getCache(second);
+            synchronized (secondCache) {
+                assert secondCache.prepareStatement("select 1") == secondSelect1
+                    : "Connections must not share statements";
+            }
+
+            // removing the caches closes their statements
+            context.checking(new Expectations() {
+                {
+                    oneOf(firstSelect1).close();
+                    oneOf(firstSelect2).close();
+                    oneOf(secondSelect1).close();
+                }
+            });
+        } finally {
+            PreparedStatementCache.remove(first);
+            PreparedStatementCache.remove(second);
+        }
+    }
+
+    public void testLeastRecentlyUsedStatementsClosed() throws Exception {
+        final Connection connection = createConnection("connection");
+        final PreparedStatement[] statements = new PreparedStatement[MAX_STATEMENTS + 1];
+        for (int i = 0; i < statements.length; i++) {
+            statements[i] = context.mock(PreparedStatement.class, "select " + i);
+        }
+        final PreparedStatement select1Again = context.mock(PreparedStatement.class, "select 1 again");
+        context.checking(new Expectations() {
+            {
+                for (int i = 0; i < statements.length; i++) {
+                    oneOf(connection).prepareStatement("select " + i);
+                    will(returnValue(statements[i]));
+                }
+                oneOf(statements[0]).clearParameters();
+
+                // only the least recently used is closed
+                oneOf(statements[1]).close();
+            }
+        });
+
+        PreparedStatementCache cache = PreparedStatementCache.getCache(connection);
+        try {
+            synchronized (cache) {
+                for (int i = 0; i < MAX_STATEMENTS; i++) {
+                    cache.prepareStatement("select " + i);
+                }
+                cache.prepareStatement("select 0"); // "select 1" is now the least recently used
+                cache.prepareStatement("select " + MAX_STATEMENTS);
+            }
+            context.assertIsSatisfied();
+
+            // an evicted statement is prepared again, evicting the next least recently used
+            context.checking(new Expectations() {
+                {
+                    oneOf(connection).prepareStatement("select 1");
+                    will(returnValue(select1Again));
+                    oneOf(statements[2]).close();
+                }
+            });
+            synchronized (cache) {
+                assert cache.prepareStatement("select 1") == select1Again;
+            }
+            context.assertIsSatisfied();
+
+            // removing the cache closes the remaining statements
+            context.checking(new Expectations() {
+                {
+                    oneOf(statements[0]).close();
+                    for (int i = 3; i < statements.length; i++) {
+                        oneOf(statements[i]).close();
+                    }
+                    oneOf(select1Again).close();
+                }
+            });
+        } finally {
+            PreparedStatementCache.remove(connection);
+        }
+    }
+
+    public void testStatementsDroppedOnFailure() throws Exception {
+        final DatabaseComponent<?> component = context.mock(DatabaseComponent.class);
+        final Connection connection = createConnection("connection");
+        final PreparedStatement statement = context.mock(PreparedStatement.class, "statement");
+        final PreparedStatement statementAgain = context.mock(PreparedStatement.class, "statement again");
+        final ResultSet resultSet = context.mock(ResultSet.class);
+        context.checking(new Expectations() {
+            {
+                allowing(component).getConnection();
+                will(returnValue(connection));
+                allowing(resultSet).next();
+                will(returnValue(true));
+                allowing(resultSet).getDouble(1);
+                will(returnValue(42.0));
+                allowing(resultSet).close();
+
+                // the statement is reused...
+                oneOf(connection).prepareStatement("select value");
+                will(returnValue(statement));
+                allowing(statement).clearParameters();
+                exactly(2).of(statement).executeQuery();
+                will(returnValue(resultSet));
+
+                // ...until the connection fails, which closes it...
+                oneOf(statement).executeQuery();
+                will(throwException(new SQLException("Connection reset")));
+                oneOf(statement).close();
+                oneOf(component).removeConnection();
+
+                // ...so that it is prepared again
+                oneOf(connection).prepareStatement("select value");
+                will(returnValue(statementAgain));
+                oneOf(statementAgain).executeQuery();
+                will(returnValue(resultSet));
+                oneOf(statementAgain).close();
+            }
+        });
+
+        try {
+            assert DatabaseQueryUtility.getSingleNumericQueryValue(component, "select value") == 42.0;
+            assert DatabaseQueryUtility.getSingleNumericQueryValue(component, "select value") == 42.0;
+            assert DatabaseQueryUtility.getSingleNumericQueryValue(component, "select value").isNaN();
+            assert DatabaseQueryUtility.getSingleNumericQueryValue(component, "select value") == 42.0;
+        } finally {
+            PreparedStatementCache.remove(connection);
+        }
+    }
+
+    // creating a cache checks whether the connections of the other caches have been closed
+    private Connection createConnection(String name) throws SQLException {
+        final Connection connection = context.mock(Connection.class, name);
+        context.checking(new Expectations() {
+            {
+                allowing(connection).isClosed();
+                will(returnValue(false));
+            }
+        });
+        return connection;
+    }
+}
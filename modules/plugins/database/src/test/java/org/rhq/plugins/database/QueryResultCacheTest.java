@@ -0,0 +1,203 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2011 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License, version 2, as
+ * published by the Free Software Foundation, and/or the GNU Lesser
+ * General Public License, version 2.1, also as published by the Free
+ * Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License and the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * and the GNU Lesser General Public License along with this program;
+ * if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.rhq.plugins.database;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.jmock.Expectations;
+import org.jmock.api.Invocation;
+import org.jmock.lib.action.CustomAction;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import org.rhq.test.JMockTest;
+
+/**
+ * Tests the rows a {@link QueryResultCache} serves to the children of a component.
+ */
+@Test
+public class QueryResultCacheTest extends JMockTest {
+
+    private static final String QUERY = "select relname, seq_scan, n_live_tup from pg_stat_user_tables";
+
+    private DatabaseComponent<?> component;
+    private Connection connection;
+    private PreparedStatement statement;
+    private int executions;
+
+    @BeforeMethod
+    public void createDatabase() throws Exception {
+        component = context.mock(DatabaseComponent.class);
+        connection = context.mock(Connection.class);
+        statement = context.mock(PreparedStatement.class);
+        context.checking(new Expectations() {
+            {
+                allowing(component).getConnection();
+                will(returnValue(connection));
+                allowing(connection).isClosed();
+                will(returnValue(false));
+                allowing(connection).prepareStatement(QUERY);
+                will(returnValue(statement));
+                allowing(statement).clearParameters();
+                allowing(statement).close();
+            }
+        });
+    }
+
+    @AfterMethod
+    public void removeStatements() {
+        PreparedStatementCache.remove(connection);
+    }
+
+    public void testRowsSharedUntilTooOld() throws Exception {
+        QueryResultCache cache = new QueryResultCache(QUERY, "relname");
+
+        expectQuery();
+        Map<String, Map<String, Double>> rows = cache.getRows(component, 60000L);
+        assert rows.size() == 2 : rows;
+        assert rows.get("users").get("SEQ_SCAN") == 3.0 : "Columns should be case insensitive: " + rows;
+        assert rows.get("groups").get("n_live_tup") == 10.0 : rows;
+        assert !rows.get("users").containsKey("relname") : "Only numeric columns should be kept: " + rows;
+
+        // another child asking within the max age gets the same rows, without the query being run again
+        assert cache.getRows(component, 60000L) == rows;
+
+        // a child allowing older values doesn't make the others get them
+        Thread.sleep(20L);
+        expectQuery();
+        assert cache.getRows(component, 10L) != rows;
+
+        cache.clear();
+        expectQuery();
+        cache.getRows(component, 60000L);
+    }
+
+    public void testConcurrentChildrenWaitForQuery() throws Exception {
+        final QueryResultCache cache = new QueryResultCache(QUERY, "relname");
+        final ResultSet resultSet = createRows();
+        context.checking(new Expectations() {
+            {
+                oneOf(statement).executeQuery();
+                will(new CustomAction("execute slowly") {
+                    public Object invoke(Invocation invocation) throws Throwable {
+                        Thread.sleep(200L);
+                        return resultSet;
+                    }
+                });
+            }
+        });
+
+        ExecutorService children = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Map<String, Map<String, Double>>>> results =
+                new ArrayList<Future<Map<String, Map<String, Double>>>>();
+            for (int i = 0; i < 4; i++) {
+                results.add(children.submit(new Callable<Map<String, Map<String, Double>>>() {
+                    public Map<String, Map<String, Double>> call() {
+                        return cache.getRows(component, 60000L);
+                    }
+                }));
+            }
+
+            Map<String, Map<String, Double>> rows = results.get(0).get();
+            for (Future<Map<String, Map<String, Double>>> result : results) {
+                assert result.get() == rows;
+            }
+        } finally {
+            children.shutdownNow();
+        }
+    }
+
+    public void testFailedQuery() throws Exception {
+        QueryResultCache cache = new QueryResultCache(QUERY, "relname");
+        context.checking(new Expectations() {
+            {
+                oneOf(statement).executeQuery();
+                will(throwException(new SQLException("Connection reset")));
+                oneOf(component).removeConnection();
+            }
+        });
+
+        assert cache.getRows(component, 60000L) == null;
+
+        // the failure is not served as if it were the rows
+        expectQuery();
+        assert cache.getRows(component, 60000L).size() == 2;
+    }
+
+    private void expectQuery() throws SQLException {
+        final ResultSet resultSet = createRows();
+        context.checking(new Expectations() {
+            {
+                oneOf(statement).executeQuery();
+                will(returnValue(resultSet));
+            }
+        });
+    }
+
+    // the rows of the tables, the last of which repeats the key of the first
+    private ResultSet createRows() throws SQLException {
+        executions++;
+        final ResultSet resultSet = context.mock(ResultSet.class, "rows " + executions);
+        final ResultSetMetaData metaData = context.mock(ResultSetMetaData.class, "columns " + executions);
+        context.checking(new Expectations() {
+            {
+                allowing(resultSet).getMetaData();
+                will(returnValue(metaData));
+                allowing(metaData).getColumnCount();
+                will(returnValue(3));
+                allowing(metaData).getColumnName(1);
+                will(returnValue("relname"));
+                allowing(metaData).getColumnName(2);
+                will(returnValue("seq_scan"));
+                allowing(metaData).getColumnName(3);
+                will(returnValue("n_live_tup"));
+
+                exactly(4).of(resultSet).next();
+                will(onConsecutiveCalls(returnValue(true), returnValue(true), returnValue(true), returnValue(false)));
+                exactly(3).of(resultSet).getString("relname");
+                will(onConsecutiveCalls(returnValue("users"), returnValue("groups"), returnValue("users")));
+                allowing(resultSet).getDouble("relname");
+                will(throwException(new SQLException("Not a number")));
+                exactly(2).of(resultSet).getDouble("seq_scan");
+                will(onConsecutiveCalls(returnValue(3.0), returnValue(5.0)));
+                exactly(2).of(resultSet).getDouble("n_live_tup");
+                will(onConsecutiveCalls(returnValue(100.0), returnValue(10.0)));
+                oneOf(resultSet).close();
+            }
+        });
+        return resultSet;
+    }
+}
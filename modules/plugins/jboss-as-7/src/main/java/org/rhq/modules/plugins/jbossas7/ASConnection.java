@@ -26,6 +26,7 @@ import java.io.OutputStream;
 import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.concurrent.Semaphore;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -36,22 +37,37 @@ import org.codehaus.jackson.map.ObjectMapper;
 import org.codehaus.jackson.map.SerializationConfig;
 
 import org.rhq.modules.plugins.jbossas7.json.ComplexResult;
+import org.rhq.modules.plugins.jbossas7.json.CompositeOperation;
 import org.rhq.modules.plugins.jbossas7.json.Operation;
+import org.rhq.modules.plugins.jbossas7.json.ReadResource;
 import org.rhq.modules.plugins.jbossas7.json.Result;
 
 /**
  * Provide connections to the AS and reading / writing date from/to it.
+ *
+ * The http connections are kept alive and reused by the JDK between requests. To keep
+ * the number of connections to one server small, at most <i>as7plugin.max-connections</i>
+ * (5 by default, which is also the number of idle connections per server the JDK keeps)
+ * requests are sent to it at the same time.
  * @author Heiko W. Rupp
  */
 public class ASConnection {
 
     public static final String MANAGEMENT = "/management";
+    private static final int MAX_CONNECTIONS = Integer.getInteger("as7plugin.max-connections", 5);
+    // ObjectMappers are thread safe once configured, so they are shared by all connections
+    private static final ObjectMapper mapper = new ObjectMapper();
+    private static final ObjectMapper indentingMapper = new ObjectMapper();
+    static {
+        indentingMapper.configure(SerializationConfig.Feature.INDENT_OUTPUT, true);
+    }
     private final Log log = LogFactory.getLog(ASConnection.class);
     URL url;
     String urlString;
-    private ObjectMapper mapper;
     public static boolean verbose = false; // This is a variable on purpose, so devs can switch it on in the debugger or in the agent
-    private HttpURLConnection conn;
+    private final String serverKey;
+    private final Semaphore connectionPermits = new Semaphore(MAX_CONNECTIONS, true);
+    private final ReadResourceBatcher batcher;
 
     /**
      * Construct an ASConnection object. The real "physical" connection is done in
@@ -60,6 +76,10 @@ public class ASConnection {
      * @param port Port of the JSON api.
      */
     public ASConnection(String host, int port) {
+        this(host, port, Long.getLong("as7plugin.batch-window", 0L));
+    }
+
+    ASConnection(String host, int port, long batchWindow) {
 
         try {
             url = new URL("http", host, port, MANAGEMENT);
@@ -72,7 +92,8 @@ public class ASConnection {
         // read system property "as7plugin.verbose"
         verbose = Boolean.getBoolean("as7plugin.verbose");
 
-        mapper = new ObjectMapper();
+        serverKey = host + ":" + port;
+        batcher = new ReadResourceBatcher(this, batchWindow);
     }
 
     /**
@@ -92,20 +113,23 @@ public class ASConnection {
         InputStream inputStream = null;
         BufferedReader br = null;
         InputStream es = null;
+        HttpURLConnection conn = null;
+        boolean failed = true;
+        connectionPermits.acquireUninterruptibly();
         long t1 = System.currentTimeMillis();
         try {
 
+            byte[] json = mapper.writeValueAsBytes(operation);
+            if (verbose) {
+                log.info("Json to send: " + new String(json, "UTF-8"));
+            }
+
             conn = (HttpURLConnection) url.openConnection();
             conn.setDoOutput(true);
             conn.setRequestMethod("POST");
+            conn.setFixedLengthStreamingMode(json.length);
             OutputStream out = conn.getOutputStream();
-
-            String result = mapper.writeValueAsString(operation);
-            if (verbose) {
-                log.info("Json to send: " + result);
-            }
-            mapper.writeValue(out, operation);
-
+            out.write(json);
             out.flush();
             out.close();
 
@@ -118,7 +142,8 @@ public class ASConnection {
 
             if (inputStream != null) {
 
-                br = new BufferedReader(new InputStreamReader(inputStream));
+                // the response is read to its end, so that the JDK can reuse the connection
+                br = new BufferedReader(new InputStreamReader(inputStream, "UTF-8"));
                 String line;
                 StringBuilder builder = new StringBuilder();
                 while ((line = br.readLine()) != null) {
@@ -131,11 +156,10 @@ public class ASConnection {
                     outcome = builder.toString();
                     operationResult = mapper.readTree(outcome);
                     if (verbose) {
-                        ObjectMapper om2 = new ObjectMapper();
-                        om2.configure(SerializationConfig.Feature.INDENT_OUTPUT, true);
-                        String tmp = om2.writeValueAsString(operationResult);
+                        String tmp = indentingMapper.writeValueAsString(operationResult);
                         log.info(tmp);
                     }
+                    failed = responseCode != HttpURLConnection.HTTP_OK;
                 } else {
                     outcome = "- no response from server -";
                     Result noResult = new Result();
@@ -191,10 +215,12 @@ public class ASConnection {
                     e.printStackTrace(); // TODO: Customise this generated block
                 }
             }
+            connectionPermits.release();
             long t2 = System.currentTimeMillis();
             PluginStats stats = PluginStats.getInstance();
             stats.incrementRequestCount();
             stats.addRequestTime(t2 - t1);
+            stats.getServerStats(serverKey).addRequest(t2 - t1, failed);
         }
 
         return null;
@@ -248,6 +274,38 @@ public class ASConnection {
         }
     }
 
+    /**
+     * Read a resource. If <i>as7plugin.batch-window</i> is set to a number of milliseconds,
+     * the resources read by different components within this time are read from the server
+     * together, as the steps of one composite operation.
+     * @param op ReadResource operation to execute
+     * @return ComplexResult of the execution
+     */
+    public ComplexResult readResource(ReadResource op) {
+        return batcher.read(op);
+    }
+
+    /**
+     * Read attributes with a composite operation of read-attribute steps. This is batched with
+     * the reads of other components just like {@link #readResource(ReadResource)}.
+     * @param op CompositeOperation with a read-attribute step per attribute
+     * @return ComplexResult of the execution, with the value of each attribute in the "step-n" members
+     */
+    public ComplexResult readAttributes(CompositeOperation op) {
+        return batcher.read(op);
+    }
+
+    boolean isBatching() {
+        return batcher.isBatching();
+    }
+
+    /**
+     * @return host:port of the management interface this connection talks to
+     */
+    public String getServerKey() {
+        return serverKey;
+    }
+
     public void writeValue(OutputStream out, Object value) throws IOException, JsonGenerationException,
         JsonMappingException {
         //    JsonGenerator jgen = _jsonFactory.createJsonGenerator(out, JsonEncoding.UTF8);
@@ -148,44 +148,90 @@ public class BaseComponent<T extends ResourceComponent<?>> implements ResourceCo
      */
     public  void getValues(MeasurementReport report, Set<MeasurementScheduleRequest> metrics) throws Exception {
 
-
+        List<MeasurementScheduleRequest> requests = new ArrayList<MeasurementScheduleRequest>(metrics.size());
         for (MeasurementScheduleRequest req : metrics) {
-
-
             if (req.getName().startsWith(INTERNAL))
                 processPluginStats(req,report);
-            else {
-                // Metrics from the application server
+            else
+                requests.add(req);
+        }
+
+        if (requests.isEmpty())
+            return;
+
+        // Metrics from the application server. Read just the requested attributes of the resource
+        // at once, unless there is just one (and it can't be batched with other reads)
+        Map<String,Object> attributes = null;
+        if (requests.size() > 1 || connection.isBatching()) {
+            CompositeOperation op = new CompositeOperation();
+            for (MeasurementScheduleRequest req : requests)
+                op.addStep(new ReadAttribute(address, req.getName()));
+            ComplexResult res = connection.readAttributes(op);
+            if (res != null && res.isSuccess())
+                attributes = getStepValues(res, requests);
+            else
+                log.debug("Reading the attributes at [" + address + "] failed, reading them one by one: " +
+                        (res != null ? res.getFailureDescription() : null));
+        }
 
-                Operation op = new ReadAttribute(address,req.getName()); // TODO batching
+        for (MeasurementScheduleRequest req : requests) {
+
+            Object value;
+            if (attributes != null && attributes.containsKey(req.getName())) {
+                value = attributes.get(req.getName());
+            } else {
+                Operation op = new ReadAttribute(address,req.getName());
                 Result res = connection.execute(op, false);
                 if (!res.isSuccess()) {
                     log.warn("Getting metric [" + req.getName() +"] at [ " + address + "] failed: " + res.getFailureDescription());
                     continue;
                 }
+                value = res.getResult();
+            }
 
-                String val = (String) res.getResult();
-                if (val==null) // One of the AS7 ways of telling "This is not implemented" See also AS7-1454
-                    continue;
-
-                if (req.getDataType()== DataType.MEASUREMENT) {
-                    if (!val.equals("no metrics available")) { // AS 7 returns this
-                        try {
-                            Double d = Double.parseDouble(val);
-                            MeasurementDataNumeric data = new MeasurementDataNumeric(req,d);
-                            report.addData(data);
-                        } catch (NumberFormatException e) {
-                            log.warn("Non numeric input for [" + req.getName() + "] : [" + val + "]");
-                        }
+            if (value==null) // One of the AS7 ways of telling "This is not implemented" See also AS7-1454
+                continue;
+            String val = (value instanceof String) ? (String) value : String.valueOf(value);
+
+            if (req.getDataType()== DataType.MEASUREMENT) {
+                if (!val.equals("no metrics available")) { // AS 7 returns this
+                    try {
+                        Double d = Double.parseDouble(val);
+                        MeasurementDataNumeric data = new MeasurementDataNumeric(req,d);
+                        report.addData(data);
+                    } catch (NumberFormatException e) {
+                        log.warn("Non numeric input for [" + req.getName() + "] : [" + val + "]");
                     }
-                } else if (req.getDataType()== DataType.TRAIT) {
-                    MeasurementDataTrait data = new MeasurementDataTrait(req,val);
-                    report.addData(data);
                 }
+            } else if (req.getDataType()== DataType.TRAIT) {
+                MeasurementDataTrait data = new MeasurementDataTrait(req,val);
+                report.addData(data);
             }
         }
     }
 
+    /**
+     * Take the values of the attributes out of the result of a composite operation with a
+     * read-attribute step per request, which has them in its "step-1" ... "step-n" members.
+     * @param compositeResult result of the composite operation
+     * @param requests requests in the order of the steps
+     * @return the values of the attributes whose steps succeeded, keyed on the attribute name
+     */
+    @SuppressWarnings("unchecked")
+    static Map<String,Object> getStepValues(ComplexResult compositeResult, List<MeasurementScheduleRequest> requests) {
+        Map<String,Object> values = new HashMap<String,Object>(requests.size());
+        Map<String,Object> steps = compositeResult.getResult();
+        if (steps == null)
+            return values;
+
+        for (int i = 0; i < requests.size(); i++) {
+            Object step = steps.get("step-" + (i + 1));
+            if (step instanceof Map && "success".equals(((Map<String,Object>) step).get("outcome")))
+                values.put(requests.get(i).getName(), ((Map<String,Object>) step).get("result"));
+        }
+        return values;
+    }
+
     /**
      * Return internal statistics data
      * @param req Schedule for the requested data
@@ -211,6 +257,18 @@ public class BaseComponent<T extends ResourceComponent<?>> implements ResourceCo
         else if (name.equals("maxTime")) {
             val = (double) stats.getMaxTime();
         }
+        else if (name.equals("serverRequests")) {
+            val = (double) stats.getServerStats(connection.getServerKey()).getRequestCount();
+        }
+        else if (name.equals("serverRequestTime")) {
+            val = (double) stats.getServerStats(connection.getServerKey()).getRequestTime();
+        }
+        else if (name.equals("serverFailures")) {
+            val = (double) stats.getServerStats(connection.getServerKey()).getFailureCount();
+        }
+        else if (name.equals("serverBatchedReads")) {
+            val = (double) stats.getServerStats(connection.getServerKey()).getBatchedSteps();
+        }
         else
             val = Double.NaN;
 
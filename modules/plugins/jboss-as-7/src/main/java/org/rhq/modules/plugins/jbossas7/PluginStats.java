@@ -2,10 +2,13 @@ package org.rhq.modules.plugins.jbossas7;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * Singleton that keeps track of some statistics of this plugin
+ * Singleton that keeps track of some statistics of this plugin, globally and
+ * per server (identified by the host:port of its management interface)
  * @author Heiko W. Rupp
  */
 public class PluginStats {
@@ -16,7 +19,7 @@ public class PluginStats {
     private static final int FIFO_SIZE = 200; // Initial capacity
     List<Long> maxTime = new ArrayList<Long>(FIFO_SIZE);
     final Object lock = new Object();
-
+    private final ConcurrentMap<String, ServerStats> serverStats = new ConcurrentHashMap<String, ServerStats>();
 
     public static PluginStats getInstance() {
         return ourInstance;
@@ -58,4 +61,61 @@ public class PluginStats {
             maxTime.add(time);
         }
     }
+
+    /**
+     * Return the statistics of the server with the passed key, creating them if needed
+     * @param server host:port of the management interface of the server
+     * @return statistics of this server
+     */
+    public ServerStats getServerStats(String server) {
+        ServerStats stats = serverStats.get(server);
+        if (stats == null) {
+            ServerStats newStats = new ServerStats();
+            stats = serverStats.putIfAbsent(server, newStats);
+            if (stats == null)
+                stats = newStats;
+        }
+        return stats;
+    }
+
+    /**
+     * Statistics of the requests sent to one server
+     */
+    public static class ServerStats {
+        AtomicLong requestCount = new AtomicLong();
+        AtomicLong requestTime = new AtomicLong();
+        AtomicLong failureCount = new AtomicLong();
+        AtomicLong batchedSteps = new AtomicLong();
+
+        public void addRequest(long time, boolean failed) {
+            requestCount.incrementAndGet();
+            requestTime.addAndGet(time);
+            if (failed)
+                failureCount.incrementAndGet();
+        }
+
+        /**
+         * Record that a number of operations were sent together as the steps of one composite request
+         * @param steps number of operations
+         */
+        public void addBatchedSteps(int steps) {
+            batchedSteps.addAndGet(steps);
+        }
+
+        public long getRequestCount() {
+            return requestCount.get();
+        }
+
+        public long getRequestTime() {
+            return requestTime.get();
+        }
+
+        public long getFailureCount() {
+            return failureCount.get();
+        }
+
+        public long getBatchedSteps() {
+            return batchedSteps.get();
+        }
+    }
 }
@@ -0,0 +1,174 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2011 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package org.rhq.modules.plugins.jbossas7;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import org.rhq.modules.plugins.jbossas7.json.ComplexResult;
+import org.rhq.modules.plugins.jbossas7.json.CompositeOperation;
+import org.rhq.modules.plugins.jbossas7.json.Operation;
+
+/**
+ * Sends the read operations (read-resource, or composites of read-attribute steps) that the
+ * components sharing a connection issue at about the same time to the server together, as the
+ * steps of one composite operation.
+ *
+ * The first read starts a batch and waits for the batch window to pass, the reads
+ * coming in meanwhile join the batch. If the composite operation fails (e.g. because one
+ * of the resources went away), the reads of the batch are sent one by one.
+ * A window of 0 disables batching.
+ */
+class ReadResourceBatcher {
+
+    private final ASConnection connection;
+    private final long window;
+    private List<PendingRead> batch;
+
+    ReadResourceBatcher(ASConnection connection, long window) {
+        this.connection = connection;
+        this.window = window;
+    }
+
+    boolean isBatching() {
+        return window > 0;
+    }
+
+    ComplexResult read(Operation op) {
+        if (!isBatching()) {
+            return connection.executeComplex(op);
+        }
+
+        PendingRead read = new PendingRead(op);
+        List<PendingRead> myBatch = null;
+        synchronized (this) {
+            if (batch == null) {
+                batch = new ArrayList<PendingRead>();
+                myBatch = batch;
+            }
+            batch.add(read);
+        }
+
+        if (myBatch == null) {
+            return read.await();
+        }
+
+        try {
+            try {
+                Thread.sleep(window);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            synchronized (this) {
+                batch = null;
+            }
+            execute(myBatch);
+        } finally {
+            // whatever happened, nobody must be left waiting
+            for (PendingRead pending : myBatch) {
+                pending.done();
+            }
+        }
+        return read.result;
+    }
+
+    private void execute(List<PendingRead> reads) {
+        if (reads.size() == 1) {
+            reads.get(0).result = connection.executeComplex(reads.get(0).op);
+            return;
+        }
+
+        CompositeOperation composite = new CompositeOperation();
+        for (PendingRead read : reads) {
+            composite.addStep(read.op);
+        }
+        ComplexResult compositeResult = connection.executeComplex(composite);
+        if (compositeResult != null && compositeResult.isSuccess()) {
+            PluginStats.getInstance().getServerStats(connection.getServerKey()).addBatchedSteps(reads.size());
+            if (getStepResults(compositeResult, reads)) {
+                return;
+            }
+        }
+
+        for (PendingRead read : reads) {
+            read.result = connection.executeComplex(read.op);
+        }
+    }
+
+    /**
+     * Take the results of the individual reads out of the result of the composite operation, which
+     * has them in its "step-1" ... "step-n" members.
+     * @return true if all steps had a result
+     */
+    @SuppressWarnings("unchecked")
+    static boolean getStepResults(ComplexResult compositeResult, List<PendingRead> reads) {
+        Map<String, Object> steps = compositeResult.getResult();
+        if (steps == null) {
+            return false;
+        }
+
+        boolean complete = true;
+        for (int i = 0; i < reads.size(); i++) {
+            Object step = steps.get("step-" + (i + 1));
+            if (!(step instanceof Map)) {
+                complete = false;
+                continue;
+            }
+            Map<String, Object> stepMap = (Map<String, Object>) step;
+            ComplexResult result = new ComplexResult();
+            Object outcome = stepMap.get("outcome");
+            result.setOutcome(outcome != null ? outcome.toString() : "failure");
+            if (stepMap.get("result") instanceof Map) {
+                result.setResult((Map<String, Object>) stepMap.get("result"));
+            }
+            result.setFailureDescription(stepMap.get("failure-description"));
+            reads.get(i).result = result;
+        }
+        return complete;
+    }
+
+    static class PendingRead {
+        final Operation op;
+        final CountDownLatch latch = new CountDownLatch(1);
+        volatile ComplexResult result;
+
+        PendingRead(Operation op) {
+            this.op = op;
+        }
+
+        void done() {
+            latch.countDown();
+        }
+
+        ComplexResult await() {
+            try {
+                latch.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                ComplexResult failure = new ComplexResult();
+                failure.setOutcome("failure");
+                failure.setFailureDescription("Interrupted while waiting for the batched read");
+                return failure;
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,209 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2011 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package org.rhq.modules.plugins.jbossas7;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.testng.annotations.Test;
+
+import org.rhq.core.domain.measurement.DataType;
+import org.rhq.core.domain.measurement.MeasurementDataNumeric;
+import org.rhq.core.domain.measurement.MeasurementReport;
+import org.rhq.core.domain.measurement.MeasurementScheduleRequest;
+import org.rhq.modules.plugins.jbossas7.json.Address;
+import org.rhq.modules.plugins.jbossas7.json.ComplexResult;
+import org.rhq.modules.plugins.jbossas7.json.CompositeOperation;
+import org.rhq.modules.plugins.jbossas7.json.Operation;
+import org.rhq.modules.plugins.jbossas7.json.Result;
+
+/**
+ * Test the reading of metrics in {@link BaseComponent#getValues(MeasurementReport, Set)}
+ */
+@Test
+public class MetricReadingTest {
+
+    public void compositeReadTest() throws Exception {
+
+        FakeConnection connection = new FakeConnection();
+        MeasurementReport report = getValues(connection, "bytesSent", "requestCount", "name");
+
+        // only the requested attributes are read, all in one request
+        assert connection.requests.size() == 1 : connection.requests;
+        CompositeOperation composite = (CompositeOperation) connection.requests.get(0);
+        assert composite.numberOfSteps() == 3;
+        for (int i = 0; i < 3; i++) {
+            assert "read-attribute".equals(composite.step(i).getOperation());
+            assert "subsystem=web,connector=http".equals(composite.step(i).getAddress().getPath());
+        }
+        assert "bytesSent".equals(composite.step(0).getAdditionalProperties().get("name"));
+        assert "requestCount".equals(composite.step(1).getAdditionalProperties().get("name"));
+
+        assert getNumericValues(report).equals(numeric("bytesSent", 42.0, "requestCount", 7.0)) : report;
+        assert report.getTraitData().size() == 1;
+        assert "http".equals(report.getTraitData().iterator().next().getValue());
+    }
+
+    public void failedCompositeReadTest() throws Exception {
+
+        FakeConnection connection = new FakeConnection();
+        MeasurementReport report = getValues(connection, "bytesSent", "missing", "requestCount");
+
+        // the composite fails as a whole, so the attributes are read one by one
+        assert connection.requests.size() == 4 : connection.requests;
+        assert connection.requests.get(0) instanceof CompositeOperation;
+        for (int i = 1; i < 4; i++) {
+            assert "read-attribute".equals(connection.requests.get(i).getOperation());
+        }
+        assert getNumericValues(report).equals(numeric("bytesSent", 42.0, "requestCount", 7.0)) : report;
+    }
+
+    public void singleReadTest() throws Exception {
+
+        FakeConnection connection = new FakeConnection();
+        MeasurementReport report = getValues(connection, "requestCount");
+
+        assert connection.requests.size() == 1 : connection.requests;
+        assert "read-attribute".equals(connection.requests.get(0).getOperation());
+        assert getNumericValues(report).equals(numeric("requestCount", 7.0)) : report;
+    }
+
+    public void stepValuesTest() throws Exception {
+
+        List<MeasurementScheduleRequest> requests = new ArrayList<MeasurementScheduleRequest>();
+        requests.add(request(1, "bytesSent"));
+        requests.add(request(2, "undefined"));
+        requests.add(request(3, "missing"));
+
+        Map<String, Object> steps = new HashMap<String, Object>();
+        steps.put("step-1", step("success", "42"));
+        steps.put("step-2", step("success", null));
+        steps.put("step-3", step("failed", null));
+        ComplexResult result = new ComplexResult();
+        result.setOutcome("success");
+        result.setResult(steps);
+
+        Map<String, Object> values = BaseComponent.getStepValues(result, requests);
+        assert "42".equals(values.get("bytesSent"));
+        assert values.containsKey("undefined") && values.get("undefined") == null : "An undefined value was read";
+        assert !values.containsKey("missing") : "A failed step has no value";
+    }
+
+    private MeasurementReport getValues(FakeConnection connection, String... names) throws Exception {
+        BaseComponent<?> component = new BaseComponent();
+        component.connection = connection;
+        component.address = new Address("subsystem=web,connector=http");
+
+        Set<MeasurementScheduleRequest> requests = new LinkedHashSet<MeasurementScheduleRequest>();
+        for (int i = 0; i < names.length; i++) {
+            requests.add(request(i + 1, names[i]));
+        }
+        MeasurementReport report = new MeasurementReport();
+        component.getValues(report, requests);
+        return report;
+    }
+
+    private MeasurementScheduleRequest request(int scheduleId, String name) {
+        DataType dataType = "name".equals(name) ? DataType.TRAIT : DataType.MEASUREMENT;
+        return new MeasurementScheduleRequest(scheduleId, name, 60000L, true, dataType);
+    }
+
+    private Map<String, Object> step(String outcome, Object result) {
+        Map<String, Object> step = new HashMap<String, Object>();
+        step.put("outcome", outcome);
+        step.put("result", result);
+        return step;
+    }
+
+    private Map<String, Double> getNumericValues(MeasurementReport report) {
+        Map<String, Double> values = new HashMap<String, Double>();
+        for (MeasurementDataNumeric data : report.getNumericData()) {
+            values.put(data.getName(), data.getValue());
+        }
+        return values;
+    }
+
+    private Map<String, Double> numeric(Object... namesAndValues) {
+        Map<String, Double> values = new HashMap<String, Double>();
+        for (int i = 0; i < namesAndValues.length; i += 2) {
+            values.put((String) namesAndValues[i], (Double) namesAndValues[i + 1]);
+        }
+        return values;
+    }
+
+    /**
+     * Answers read-attribute requests, alone or as the steps of a composite, from a fixed set of
+     * attributes. Like AS7, a composite with a failed step fails as a whole.
+     */
+    private static class FakeConnection extends ASConnection {
+        final List<Operation> requests = new ArrayList<Operation>();
+        final Map<String, Object> attributes = new HashMap<String, Object>();
+
+        FakeConnection() {
+            super("localhost", 9990, 0L);
+            attributes.put("bytesSent", "42");
+            attributes.put("requestCount", 7);
+            attributes.put("name", "http");
+        }
+
+        @Override
+        public ComplexResult executeComplex(Operation op) {
+            requests.add(op);
+            CompositeOperation composite = (CompositeOperation) op;
+            Map<String, Object> steps = new HashMap<String, Object>();
+            boolean success = true;
+            for (int i = 0; i < composite.numberOfSteps(); i++) {
+                Result result = answer(composite.step(i));
+                Map<String, Object> step = new HashMap<String, Object>();
+                step.put("outcome", result.getOutcome());
+                step.put("result", result.getResult());
+                steps.put("step-" + (i + 1), step);
+                success &= result.isSuccess();
+            }
+            ComplexResult res = new ComplexResult();
+            res.setOutcome(success ? "success" : "failed");
+            res.setResult(steps);
+            return res;
+        }
+
+        @Override
+        public Result execute(Operation op, boolean isComplex) {
+            requests.add(op);
+            return answer(op);
+        }
+
+        private Result answer(Operation op) {
+            assert "read-attribute".equals(op.getOperation()) : op;
+            Object name = op.getAdditionalProperties().get("name");
+            Result result = new Result();
+            if (attributes.containsKey(name)) {
+                result.setOutcome("success");
+                result.setResult(attributes.get(name));
+            } else {
+                result.setOutcome("failed");
+                result.setFailureDescription("No known attribute " + name);
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2011 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package org.rhq.modules.plugins.jbossas7;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.codehaus.jackson.map.ObjectMapper;
+import org.testng.annotations.Test;
+
+import org.rhq.modules.plugins.jbossas7.json.Address;
+import org.rhq.modules.plugins.jbossas7.json.ComplexResult;
+import org.rhq.modules.plugins.jbossas7.json.CompositeOperation;
+import org.rhq.modules.plugins.jbossas7.json.Operation;
+import org.rhq.modules.plugins.jbossas7.json.ReadResource;
+
+/**
+ * Test the batching of read-resource operations
+ */
+@Test
+public class ReadResourceBatcherTest {
+
+    public void stepResultsTest() throws Exception {
+
+        String json = "{\"outcome\" : \"success\", \"result\" : {" +
+                "\"step-1\" : {\"outcome\" : \"success\", \"result\" : {\"bytesSent\" : \"42\"}}," +
+                "\"step-2\" : {\"outcome\" : \"success\", \"result\" : {\"requestCount\" : 7}}}}";
+        ComplexResult compositeResult = new ObjectMapper().readValue(json, ComplexResult.class);
+
+        List<ReadResourceBatcher.PendingRead> reads = new ArrayList<ReadResourceBatcher.PendingRead>();
+        reads.add(new ReadResourceBatcher.PendingRead(new ReadResource(new Address("subsystem=web,connector=http"))));
+        reads.add(new ReadResourceBatcher.PendingRead(new ReadResource(new Address("subsystem=web,connector=ajp"))));
+
+        assert ReadResourceBatcher.getStepResults(compositeResult, reads);
+        assert reads.get(0).result.isSuccess();
+        assert "42".equals(reads.get(0).result.getResult().get("bytesSent"));
+        assert Integer.valueOf(7).equals(reads.get(1).result.getResult().get("requestCount"));
+
+        // a step missing from the result means the reads have to be done again
+        reads.add(new ReadResourceBatcher.PendingRead(new ReadResource(new Address("subsystem=web"))));
+        assert !ReadResourceBatcher.getStepResults(compositeResult, reads);
+    }
+
+    public void batchingTest() throws Exception {
+
+        final FakeConnection connection = new FakeConnection(200L);
+        ExecutorService executor = Executors.newFixedThreadPool(5);
+        try {
+            List<Future<ComplexResult>> results = new ArrayList<Future<ComplexResult>>();
+            for (int i = 0; i < 5; i++) {
+                final String path = "subsystem=web,connector=c" + i;
+                results.add(executor.submit(new Callable<ComplexResult>() {
+                    public ComplexResult call() throws Exception {
+                        return connection.readResource(new ReadResource(new Address(path)));
+                    }
+                }));
+            }
+
+            for (int i = 0; i < 5; i++) {
+                ComplexResult result = results.get(i).get();
+                assert result.isSuccess();
+                assert ("subsystem=web,connector=c" + i).equals(result.getResult().get("path")) : result.getResult();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // the 5 reads should have been sent in one composite request, allowing for a slow thread start
+        assert connection.requests.size() <= 2 : connection.requests;
+        assert connection.requests.get(0) instanceof CompositeOperation;
+    }
+
+    public void noBatchingTest() throws Exception {
+
+        FakeConnection connection = new FakeConnection(0L);
+        ComplexResult result = connection.readResource(new ReadResource(new Address("subsystem=web")));
+        assert result.isSuccess();
+        assert connection.requests.size() == 1;
+        assert connection.requests.get(0) instanceof ReadResource;
+    }
+
+    /**
+     * Answers all (composite) read-resource requests with the path of the resource read
+     */
+    private static class FakeConnection extends ASConnection {
+        final List<Operation> requests = Collections.synchronizedList(new ArrayList<Operation>());
+
+        FakeConnection(long batchWindow) {
+            super("localhost", 9990, batchWindow);
+        }
+
+        @Override
+        public ComplexResult executeComplex(Operation op) {
+            requests.add(op);
+            Map<String, Object> result = new HashMap<String, Object>();
+            if (op instanceof CompositeOperation) {
+                CompositeOperation composite = (CompositeOperation) op;
+                for (int i = 0; i < composite.numberOfSteps(); i++) {
+                    Map<String, Object> step = new HashMap<String, Object>();
+                    step.put("outcome", "success");
+                    step.put("result", answer(composite.step(i)));
+                    result.put("step-" + (i + 1), step);
+                }
+            } else {
+                result = answer(op);
+            }
+            ComplexResult res = new ComplexResult();
+            res.setOutcome("success");
+            res.setResult(result);
+            return res;
+        }
+
+        private Map<String, Object> answer(Operation op) {
+            return Collections.<String, Object> singletonMap("path", op.getAddress().getPath());
+        }
+    }
+}
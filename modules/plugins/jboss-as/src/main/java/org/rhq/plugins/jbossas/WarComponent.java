@@ -54,6 +54,7 @@ import org.rhq.core.pluginapi.operation.OperationFacet;
 import org.rhq.core.pluginapi.operation.OperationResult;
 import org.rhq.core.pluginapi.util.ResponseTimeConfiguration;
 import org.rhq.core.pluginapi.util.ResponseTimeLogParser;
+import org.rhq.core.pluginapi.util.ResponseTimeSummaryParser;
 import org.rhq.plugins.jbossas.util.DeploymentUtility;
 import org.rhq.plugins.jbossas.util.WarDeploymentInformation;
 import org.rhq.plugins.jbossas.util.WarDiscoveryHelper;
@@ -152,7 +153,7 @@ public class WarComponent extends ApplicationComponent implements OperationFacet
         ResponseTimeConfiguration responseTimeConfig = new ResponseTimeConfiguration(pluginConfig);
         File logFile = responseTimeConfig.getLogFile();
         if (logFile != null) {
-            this.logParser = new ResponseTimeLogParser(logFile);
+            this.logParser = new ResponseTimeSummaryParser(logFile);
             this.logParser.setExcludes(responseTimeConfig.getExcludes());
             this.logParser.setTransforms(responseTimeConfig.getTransforms());
         }
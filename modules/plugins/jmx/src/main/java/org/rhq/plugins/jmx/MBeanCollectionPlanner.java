@@ -0,0 +1,217 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2011 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License, version 2, as
+ * published by the Free Software Foundation, and/or the GNU Lesser
+ * General Public License, version 2.1, also as published by the Free
+ * Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License and the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * and the GNU Lesser General Public License along with this program;
+ * if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.rhq.plugins.jmx;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import org.mc4j.ems.connection.EmsConnection;
+import org.mc4j.ems.connection.bean.EmsBean;
+import org.mc4j.ems.connection.bean.attribute.EmsAttribute;
+
+/**
+ * Plans the attribute reads of the {@link MBeanResourceComponent}s sharing a JMX connection, whichever
+ * {@link JMXComponent} the connection comes from. There is one planner per connection, see
+ * {@link #getInstance(EmsConnection)}.
+ * <p/>
+ * The {@link EmsBean}s the components read from, other than their own, are looked up once and then cached by object
+ * name. A cached bean is dropped when the connection it was loaded from is no longer the current one, when reading
+ * from it fails or when it is found to be unregistered.
+ * <p/>
+ * All the attributes a component reads from one MBean are read in one call. If a sibling component is already
+ * reading all the attributes needed from the same MBean, the values that read returns are used rather than reading
+ * them again.
+ *
+ * @see MBeanResourceComponent#getCollectionPlanner()
+ */
+public class MBeanCollectionPlanner {
+
+    /**
+     * The planners of the open connections. A planner is only referenced weakly, by the components using it, since
+     * the beans it caches reference its connection.
+     */
+    private static final Map<EmsConnection, WeakReference<MBeanCollectionPlanner>> PLANNERS =
+        new WeakHashMap<EmsConnection, WeakReference<MBeanCollectionPlanner>>();
+
+    private final Map<String, EmsBean> beans = new ConcurrentHashMap<String, EmsBean>();
+    private final Map<String, List<Read>> reads = new HashMap<String, List<Read>>();
+
+    /**
+     * Returns the planner of the components using the given connection. The planner is kept for as long as a component
+     * references it.
+     *
+     * @param connection the connection, may be <code>null</code> if the components are not connected
+     *
+     * @return the planner
+     */
+    public static MBeanCollectionPlanner getInstance(EmsConnection connection) {
+        if (connection == null) {
+            return new MBeanCollectionPlanner(); // nothing to share until there is a connection
+        }
+
+        synchronized (PLANNERS) {
+            WeakReference<MBeanCollectionPlanner> reference = PLANNERS.get(connection);
+            MBeanCollectionPlanner planner = (reference != null) ? reference.get() : null;
+            if (planner == null) {
+                planner = new MBeanCollectionPlanner();
+                PLANNERS.put(connection, new WeakReference<MBeanCollectionPlanner>(planner));
+            }
+            return planner;
+        }
+    }
+
+    /**
+     * Returns the bean with the given object name, from the cache if it was already looked up on the given
+     * connection.
+     *
+     * @param connection the current connection
+     * @param objectName the object name of the bean
+     *
+     * @return the bean or <code>null</code> if there is no such bean
+     */
+    public EmsBean getBean(EmsConnection connection, String objectName) {
+        EmsBean bean = this.beans.get(objectName);
+        if (bean != null && connection.equals(bean.getConnectionProvider().getExistingConnection())) {
+            return bean;
+        }
+
+        bean = connection.getBean(objectName);
+        if (bean != null) {
+            this.beans.put(objectName, bean);
+        } else {
+            this.beans.remove(objectName);
+        }
+        return bean;
+    }
+
+    /**
+     * Forgets the bean with the given object name, e.g. because it got unregistered.
+     *
+     * @param objectName the object name of the bean
+     */
+    public void invalidate(String objectName) {
+        this.beans.remove(objectName);
+    }
+
+    /**
+     * Reads the given attributes of the given bean.
+     *
+     * @param bean the bean to read the attributes from
+     * @param attributeNames the names of the attributes to read
+     *
+     * @return the attributes read, by name
+     */
+    public Map<String, EmsAttribute> refreshAttributes(final EmsBean bean, Collection<String> attributeNames) {
+        final String objectName = bean.getBeanName().getCanonicalName();
+        final Set<String> names = new HashSet<String>(attributeNames);
+        Read read = null;
+        boolean own = false;
+
+        synchronized (this.reads) {
+            List<Read> inProgress = this.reads.get(objectName);
+            if (inProgress != null) {
+                for (Read other : inProgress) {
+                    if (other.names.containsAll(names)) {
+                        read = other;
+                        break;
+                    }
+                }
+            } else {
+                inProgress = new ArrayList<Read>(1);
+                this.reads.put(objectName, inProgress);
+            }
+
+            if (read == null) {
+                read = new Read(names, new Callable<Map<String, EmsAttribute>>() {
+                    public Map<String, EmsAttribute> call() {
+                        return readAttributes(objectName, bean, names);
+                    }
+                });
+                inProgress.add(read);
+                own = true;
+            }
+        }
+
+        if (own) {
+            try {
+                read.task.run();
+            } finally {
+                synchronized (this.reads) {
+                    List<Read> inProgress = this.reads.get(objectName);
+                    inProgress.remove(read);
+                    if (inProgress.isEmpty()) {
+                        this.reads.remove(objectName);
+                    }
+                }
+            }
+        }
+
+        try {
+            return read.task.get();
+        } catch (ExecutionException e) {
+            invalidate(objectName);
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new RuntimeException(cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while reading attributes of [" + objectName + "]", e);
+        }
+    }
+
+    private Map<String, EmsAttribute> readAttributes(String objectName, EmsBean bean, Set<String> names) {
+        List<EmsAttribute> refreshed = bean.refreshAttributes(new ArrayList<String>(names));
+        if (refreshed.isEmpty() && !names.isEmpty()) {
+            // most likely the bean is gone, look it up again next time
+            invalidate(objectName);
+        }
+        Map<String, EmsAttribute> attributes = new HashMap<String, EmsAttribute>(refreshed.size() * 2);
+        for (EmsAttribute attribute : refreshed) {
+            attributes.put(attribute.getName(), attribute);
+        }
+        return attributes;
+    }
+
+    private static class Read {
+        private final Set<String> names;
+        private final FutureTask<Map<String, EmsAttribute>> task;
+
+        private Read(Set<String> names, Callable<Map<String, EmsAttribute>> callable) {
+            this.names = names;
+            this.task = new FutureTask<Map<String, EmsAttribute>>(callable);
+        }
+    }
+}
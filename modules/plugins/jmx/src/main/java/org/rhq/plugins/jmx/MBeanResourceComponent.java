@@ -30,6 +30,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -37,6 +38,8 @@ import java.util.SortedSet;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
 import javax.management.openmbean.CompositeData;
 
 import org.apache.commons.logging.Log;
@@ -55,7 +58,6 @@ import org.rhq.core.domain.configuration.definition.PropertyDefinition;
 import org.rhq.core.domain.configuration.definition.PropertyDefinitionSimple;
 import org.rhq.core.domain.measurement.AvailabilityType;
 import org.rhq.core.domain.measurement.DataType;
-import org.rhq.core.domain.measurement.MeasurementDataNumeric;
 import org.rhq.core.domain.measurement.MeasurementDataTrait;
 import org.rhq.core.domain.measurement.MeasurementReport;
 import org.rhq.core.domain.measurement.MeasurementScheduleRequest;
@@ -100,6 +102,9 @@ public class MBeanResourceComponent<T extends JMXComponent<?>> implements Measur
      */
     protected ResourceContext<T> resourceContext;
 
+    private MBeanCollectionPlanner collectionPlanner;
+    private EmsConnection collectionPlannerConnection;
+
     /**
      * Stores the context and loads the MBean.
      * @see ResourceComponent#start(ResourceContext)
@@ -116,6 +121,8 @@ public class MBeanResourceComponent<T extends JMXComponent<?>> implements Measur
     public void stop() {
         setResourceContext(null);
         setEmsBean(null);
+        this.collectionPlanner = null;
+        this.collectionPlannerConnection = null;
     }
 
     /**
@@ -161,6 +168,21 @@ public class MBeanResourceComponent<T extends JMXComponent<?>> implements Measur
         this.resourceContext = resourceContext;
     }
 
+    /**
+     * Returns the planner of the attribute reads of this component. The planner is shared by all the MBean resource
+     * components using the same connection, whatever component the connection comes from.
+     *
+     * @return the collection planner
+     */
+    protected MBeanCollectionPlanner getCollectionPlanner() {
+        EmsConnection connection = getEmsConnection();
+        if (this.collectionPlanner == null || connection != this.collectionPlannerConnection) {
+            this.collectionPlanner = MBeanCollectionPlanner.getInstance(connection);
+            this.collectionPlannerConnection = connection;
+        }
+        return this.collectionPlanner;
+    }
+
     /**
      * Loads the MBean in a default way. This default mechanism is to look in the
      * plugin configuration for a key of {@link #OBJECT_NAME_PROP} and uses that
@@ -244,6 +266,10 @@ public class MBeanResourceComponent<T extends JMXComponent<?>> implements Measur
             String emsBeanName = emsBean.getBeanName().getCanonicalName();
             int size = emsBean.getConnectionProvider().getExistingConnection().queryBeans(emsBeanName).size();
             isAvailable = (size == 1);
+            if (!isAvailable) {
+                // siblings reading this bean must look it up again
+                getCollectionPlanner().invalidate(emsBeanName);
+            }
         }
         return isAvailable;
     }
@@ -281,20 +307,48 @@ public class MBeanResourceComponent<T extends JMXComponent<?>> implements Measur
             }
         }
 
+        // Several templates can name the same bean, possibly this component's main bean - all the attributes of a
+        // bean are read at once
+        String defaultBeanName = bean.getBeanName().getCanonicalName();
+        Map<String, Set<MeasurementScheduleRequest>> otherBeans = new LinkedHashMap<String, Set<MeasurementScheduleRequest>>();
+        for (Map.Entry<String, Set<MeasurementScheduleRequest>> entry : beansMap.entrySet()) {
+            String beanName = getCanonicalName(transformBeanName(entry.getKey()));
+            if (beanName.equals(defaultBeanName)) {
+                defaultBeanRequests.addAll(entry.getValue());
+            } else {
+                Set<MeasurementScheduleRequest> props = otherBeans.get(beanName);
+                if (props == null) {
+                    otherBeans.put(beanName, entry.getValue());
+                } else {
+                    props.addAll(entry.getValue());
+                }
+            }
+        }
+
         // First do the default properties against this component's main bean
-        getBeanProperties(report, bean, defaultBeanRequests);
+        if (!defaultBeanRequests.isEmpty()) {
+            getBeanProperties(report, bean, defaultBeanRequests);
+        }
 
-        for (String beanNameTemplate : beansMap.keySet()) {
-            String transformedbeanName = transformBeanName(beanNameTemplate);
-            EmsBean otherBean = getEmsConnection().getBean(transformedbeanName);
+        MBeanCollectionPlanner planner = getCollectionPlanner();
+        for (Map.Entry<String, Set<MeasurementScheduleRequest>> entry : otherBeans.entrySet()) {
+            EmsBean otherBean = planner.getBean(getEmsConnection(), entry.getKey());
             if (otherBean == null) {
-                log.info("Unable to retrieve associated MBean: " + transformedbeanName);
+                log.info("Unable to retrieve associated MBean: " + entry.getKey());
             } else {
-                getBeanProperties(report, otherBean, beansMap.get(beanNameTemplate));
+                getBeanProperties(report, otherBean, entry.getValue());
             }
         }
     }
 
+    private static String getCanonicalName(String objectName) {
+        try {
+            return new ObjectName(objectName).getCanonicalName();
+        } catch (MalformedObjectNameException e) {
+            return objectName;
+        }
+    }
+
     protected String transformBeanName(String beanTemplate) {
         Matcher m = TEMPLATE_PATTERN.matcher(beanTemplate);
 
@@ -312,38 +366,26 @@ public class MBeanResourceComponent<T extends JMXComponent<?>> implements Measur
 
     protected void getBeanProperties(MeasurementReport report, EmsBean thisBean,
         Set<MeasurementScheduleRequest> requests) {
-        List<String> props = new ArrayList<String>();
+        Map<MeasurementScheduleRequest, String> fullProperties = new HashMap<MeasurementScheduleRequest, String>();
+        Map<MeasurementScheduleRequest, String> attributeNames = new LinkedHashMap<MeasurementScheduleRequest, String>();
         for (MeasurementScheduleRequest request : requests) {
             Matcher m = PROPERTY_PATTERN.matcher(request.getName());
             if (m.matches()) {
                 // Complex property
-                props.add(getAttributeName(m.group(2)));
+                fullProperties.put(request, m.group(2));
+                attributeNames.put(request, getAttributeName(m.group(2)));
             } else {
                 // Simple property
-                props.add(request.getName());
+                attributeNames.put(request, request.getName());
             }
         }
 
-        List<EmsAttribute> refreshedAttributes = thisBean.refreshAttributes(props);
+        Map<String, EmsAttribute> refreshedAttributes = getCollectionPlanner().refreshAttributes(thisBean,
+            attributeNames.values());
 
         for (MeasurementScheduleRequest request : requests) {
-            Matcher m = PROPERTY_PATTERN.matcher(request.getName());
-            String fullProperty = null;
-            String attributeName;
-            if (m.matches()) {
-                // Complex property
-                fullProperty = m.group(2);
-                attributeName = getAttributeName(fullProperty);
-            } else {
-                attributeName = request.getName();
-            }
-
-            EmsAttribute attribute = null;
-            for (EmsAttribute refreshedAttribute : refreshedAttributes) {
-                if (attributeName.equals(refreshedAttribute.getName())) {
-                    attribute = refreshedAttribute;
-                }
-            }
+            String fullProperty = fullProperties.get(request);
+            EmsAttribute attribute = refreshedAttributes.get(attributeNames.get(request));
 
             if (attribute == null) {
                 log.debug("Unable to collect measurement, attribute [" + request.getName() + "] not found on ["
@@ -357,7 +399,7 @@ public class MBeanResourceComponent<T extends JMXComponent<?>> implements Measur
                 }
 
                 if ((request.getDataType() == DataType.MEASUREMENT) && (value instanceof Number)) {
-                    report.addData(new MeasurementDataNumeric(request, ((Number) value).doubleValue()));
+                    report.addData(request, ((Number) value).doubleValue());
                 } else if (request.getDataType() == DataType.TRAIT) {
                     String displayValue = null;
                     if ((value != null) && value.getClass().isArray()) {
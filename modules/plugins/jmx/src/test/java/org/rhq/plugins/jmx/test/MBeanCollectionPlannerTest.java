@@ -0,0 +1,224 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2011 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License, version 2, as
+ * published by the Free Software Foundation, and/or the GNU Lesser
+ * General Public License, version 2.1, also as published by the Free
+ * Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License and the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * and the GNU Lesser General Public License along with this program;
+ * if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.rhq.plugins.jmx.test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.hamcrest.Description;
+import org.hamcrest.TypeSafeMatcher;
+import org.jmock.Expectations;
+import org.jmock.api.Invocation;
+import org.jmock.lib.action.CustomAction;
+import org.mc4j.ems.connection.EmsConnection;
+import org.mc4j.ems.connection.bean.EmsBean;
+import org.mc4j.ems.connection.bean.EmsBeanName;
+import org.mc4j.ems.connection.bean.attribute.EmsAttribute;
+import org.mc4j.ems.connection.support.ConnectionProvider;
+import org.testng.annotations.Test;
+
+import org.rhq.plugins.jmx.MBeanCollectionPlanner;
+import org.rhq.test.JMockTest;
+
+/**
+ * Tests how often {@link MBeanCollectionPlanner} looks up beans and reads their attributes.
+ */
+@Test
+public class MBeanCollectionPlannerTest extends JMockTest {
+
+    private static final String OBJECT_NAME = "test:type=Test";
+
+    private int attributeCount;
+
+    public void testOnePlannerPerConnection() {
+        EmsConnection first = context.mock(EmsConnection.class, "first");
+        EmsConnection second = context.mock(EmsConnection.class, "second");
+
+        MBeanCollectionPlanner planner = MBeanCollectionPlanner.getInstance(first);
+        assert MBeanCollectionPlanner.getInstance(first) == planner : "Components of one connection should share";
+        assert MBeanCollectionPlanner.getInstance(second) != planner;
+        assert MBeanCollectionPlanner.getInstance(null) != MBeanCollectionPlanner.getInstance(null);
+    }
+
+    public void testBeansCached() {
+        EmsConnection connection = context.mock(EmsConnection.class, "connection");
+        MBeanCollectionPlanner planner = MBeanCollectionPlanner.getInstance(connection);
+
+        EmsBean bean = expectLookup(connection, "bean");
+        assert planner.getBean(connection, OBJECT_NAME) == bean;
+        assert planner.getBean(connection, OBJECT_NAME) == bean;
+        context.assertIsSatisfied();
+
+        planner.invalidate(OBJECT_NAME);
+        bean = expectLookup(connection, "invalidatedBean");
+        assert planner.getBean(connection, OBJECT_NAME) == bean;
+        context.assertIsSatisfied();
+
+        // a bean loaded from a connection that is no longer current is looked up again
+        EmsConnection reconnected = context.mock(EmsConnection.class, "reconnected");
+        expectLookup(reconnected, "reconnectedBean");
+        planner.getBean(reconnected, OBJECT_NAME);
+        final EmsBean unreadableBean = expectLookup(connection, "unreadableBean");
+        assert planner.getBean(connection, OBJECT_NAME) == unreadableBean;
+        context.assertIsSatisfied();
+
+        // so is a bean that could not be read
+        context.checking(new Expectations() {
+            {
+                oneOf(unreadableBean).refreshAttributes(with(names("A")));
+                will(returnValue(new ArrayList<EmsAttribute>()));
+            }
+        });
+        assert planner.refreshAttributes(unreadableBean, Arrays.asList("A")).isEmpty();
+        bean = expectLookup(connection, "lookedUpAgainBean");
+        assert planner.getBean(connection, OBJECT_NAME) == bean;
+    }
+
+    public void testReadInProgressShared() throws Exception {
+        EmsConnection connection = context.mock(EmsConnection.class);
+        final MBeanCollectionPlanner planner = MBeanCollectionPlanner.getInstance(connection);
+        final EmsBean bean = expectLookup(connection, "bean");
+        planner.getBean(connection, OBJECT_NAME);
+
+        final CountDownLatch reading = new CountDownLatch(1);
+        final CountDownLatch proceed = new CountDownLatch(1);
+        final List<EmsAttribute> attributes = createAttributes("A", "B");
+        context.checking(new Expectations() {
+            {
+                oneOf(bean).refreshAttributes(with(names("A", "B")));
+                will(new CustomAction("read slowly") {
+                    public Object invoke(Invocation invocation) throws Throwable {
+                        reading.countDown();
+                        proceed.await(10, TimeUnit.SECONDS);
+                        return attributes;
+                    }
+                });
+                oneOf(bean).refreshAttributes(with(names("B", "C")));
+                will(returnValue(createAttributes("B", "C")));
+            }
+        });
+
+        ExecutorService components = Executors.newFixedThreadPool(3);
+        try {
+            Future<Map<String, EmsAttribute>> all = components.submit(read(planner, bean, "A", "B"));
+            assert reading.await(10, TimeUnit.SECONDS);
+
+            // a sibling needing some of those attributes waits for them, one needing others reads them itself
+            Future<Map<String, EmsAttribute>> some = components.submit(read(planner, bean, "A"));
+            Future<Map<String, EmsAttribute>> others = components.submit(read(planner, bean, "B", "C"));
+            Thread.sleep(500L);
+            proceed.countDown();
+
+            assert all.get().keySet().containsAll(Arrays.asList("A", "B")) : all.get();
+            assert some.get().get("A") == all.get().get("A") : "The read in progress should have been shared";
+            assert others.get().keySet().containsAll(Arrays.asList("B", "C")) : others.get();
+        } finally {
+            components.shutdownNow();
+        }
+        context.assertIsSatisfied();
+
+        // later reads are not shared
+        context.checking(new Expectations() {
+            {
+                oneOf(bean).refreshAttributes(with(names("A")));
+                will(returnValue(createAttributes("A")));
+            }
+        });
+        planner.refreshAttributes(bean, Arrays.asList("A"));
+    }
+
+    private Callable<Map<String, EmsAttribute>> read(final MBeanCollectionPlanner planner, final EmsBean bean,
+        final String... attributeNames) {
+        return new Callable<Map<String, EmsAttribute>>() {
+            public Map<String, EmsAttribute> call() {
+                return planner.refreshAttributes(bean, Arrays.asList(attributeNames));
+            }
+        };
+    }
+
+    /**
+     * Expects the connection to be asked for the test bean once, and returns the bean it answers with.
+     */
+    private EmsBean expectLookup(final EmsConnection connection, String name) {
+        final EmsBean bean = context.mock(EmsBean.class, name);
+        final EmsBeanName beanName = context.mock(EmsBeanName.class, name + "Name");
+        final ConnectionProvider connectionProvider = context.mock(ConnectionProvider.class, name + "Provider");
+        context.checking(new Expectations() {
+            {
+                oneOf(connection).getBean(OBJECT_NAME);
+                will(returnValue(bean));
+
+                allowing(bean).getBeanName();
+                will(returnValue(beanName));
+                allowing(beanName).getCanonicalName();
+                will(returnValue(OBJECT_NAME));
+                allowing(bean).getConnectionProvider();
+                will(returnValue(connectionProvider));
+                allowing(connectionProvider).getExistingConnection();
+                will(returnValue(connection));
+            }
+        });
+        return bean;
+    }
+
+    private List<EmsAttribute> createAttributes(String... names) {
+        List<EmsAttribute> attributes = new ArrayList<EmsAttribute>();
+        for (final String name : names) {
+            final EmsAttribute attribute = context.mock(EmsAttribute.class, name + attributeCount++);
+            attributes.add(attribute);
+            context.checking(new Expectations() {
+                {
+                    allowing(attribute).getName();
+                    will(returnValue(name));
+                }
+            });
+        }
+        return attributes;
+    }
+
+    /**
+     * Matches a list of attribute names regardless of their order.
+     */
+    private static TypeSafeMatcher<List<String>> names(final String... names) {
+        return new TypeSafeMatcher<List<String>>() {
+            @Override
+            public boolean matchesSafely(List<String> item) {
+                return item.size() == names.length && new HashSet<String>(item).equals(
+                    new HashSet<String>(Arrays.asList(names)));
+            }
+
+            public void describeTo(Description description) {
+                description.appendValueList("names ", ", ", "", names);
+            }
+        };
+    }
+}
@@ -36,6 +36,7 @@ import org.rhq.core.pluginapi.inventory.ResourceContext;
 import org.rhq.core.pluginapi.measurement.MeasurementFacet;
 import org.rhq.plugins.database.DatabaseComponent;
 import org.rhq.plugins.database.DatabaseQueryUtility;
+import org.rhq.plugins.database.QueryResultCache;
 
 /**
  * @author Greg Hinkle
@@ -47,6 +48,12 @@ public class OracleServerComponent implements DatabaseComponent, MeasurementFace
 
     private ResourceContext resourceContext;
 
+    private final QueryResultCache userSessions = new QueryResultCache(
+        "SELECT username, COUNT(*) AS activeConnections FROM V$SESSION WHERE username IS NOT NULL GROUP BY username",
+        "username");
+
+    private final QueryResultCache users = new QueryResultCache("SELECT username FROM DBA_USERS", "username");
+
     public void start(ResourceContext resourceContext) throws InvalidPluginConfigurationException, Exception {
         this.resourceContext = resourceContext;
         this.connection = buildConnection(resourceContext.getPluginConfiguration());
@@ -60,6 +67,8 @@ public class OracleServerComponent implements DatabaseComponent, MeasurementFace
                 LOG.debug("Unable to close oracle connection", e);
             }
         }
+        this.userSessions.clear();
+        this.users.clear();
     }
 
     public AvailabilityType getAvailability() {
@@ -87,6 +96,30 @@ public class OracleServerComponent implements DatabaseComponent, MeasurementFace
         }
     }
 
+    /**
+     * Returns the number of sessions of each of the users. The sessions of all the users are counted at once, by one
+     * query shared by all the user components.
+     *
+     * @param  maxAge how old, in milliseconds, the counts may be
+     *
+     * @return the rows of the query keyed by the user name, each with the <code>activeConnections</code> column, or
+     *         null if the sessions could not be counted. Users without a session have no row.
+     */
+    public Map<String, Map<String, Double>> getUserSessions(long maxAge) {
+        return this.userSessions.getRows(this, maxAge);
+    }
+
+    /**
+     * Returns the users of the database, read at once for all the user components.
+     *
+     * @param  maxAge how old, in milliseconds, the list of the users may be
+     *
+     * @return the rows of DBA_USERS keyed by the user name, or null if the users could not be read
+     */
+    public Map<String, Map<String, Double>> getUsers(long maxAge) {
+        return this.users.getRows(this, maxAge);
+    }
+
     public Connection getConnection() {
         if (this.connection == null) {
             try {
@@ -18,9 +18,6 @@
  */
 package org.rhq.plugins.oracle;
 
-import java.sql.PreparedStatement;
-import java.sql.ResultSet;
-import java.sql.SQLException;
 import java.util.Map;
 import java.util.Set;
 import org.rhq.core.domain.measurement.AvailabilityType;
@@ -28,28 +25,23 @@ import org.rhq.core.domain.measurement.MeasurementDataNumeric;
 import org.rhq.core.domain.measurement.MeasurementReport;
 import org.rhq.core.domain.measurement.MeasurementScheduleRequest;
 import org.rhq.core.pluginapi.measurement.MeasurementFacet;
-import org.rhq.core.util.jdbc.JDBCUtil;
 import org.rhq.plugins.database.AbstractDatabaseComponent;
-import org.rhq.plugins.database.DatabaseQueryUtility;
 
 /**
  * @author Greg Hinkle
  */
 public class OracleUserComponent extends AbstractDatabaseComponent implements MeasurementFacet {
+    /**
+     * How old the users and session counts shared by the users may be at most; the session counts no more than half of
+     * the collection interval either.
+     */
+    private static final long MAX_AGE = 60 * 1000L;
+
     public AvailabilityType getAvailability() {
-        PreparedStatement statement = null;
-        ResultSet resultSet = null;
-        try {
-            statement = getConnection().prepareStatement("SELECT COUNT(*) FROM DBA_USERS WHERE username = ?");
-            statement.setString(1, this.resourceContext.getResourceKey());
-            resultSet = statement.executeQuery();
-            if (resultSet.next() && (resultSet.getInt(1) == 1)) {
-                return AvailabilityType.UP;
-            }
-        } catch (SQLException e) {
-            // Problems ? Mark the resource as down
-        } finally {
-            JDBCUtil.safeClose(statement, resultSet);
+        // Problems reading the users ? Mark the resource as down
+        Map<String, Map<String, Double>> users = getServer().getUsers(MAX_AGE);
+        if ((users != null) && users.containsKey(this.resourceContext.getResourceKey())) {
+            return AvailabilityType.UP;
         }
 
         return AvailabilityType.DOWN;
@@ -57,15 +49,19 @@ public class OracleUserComponent extends AbstractDatabaseComponent implements Me
 
     public void getValues(MeasurementReport report, Set<MeasurementScheduleRequest> metrics) throws Exception {
         for (MeasurementScheduleRequest request : metrics) {
-            if (request.getName().equals("sessions")) {
-                Map<String, Double> values = DatabaseQueryUtility
-                    .getNumericQueryValues(this, "SELECT COUNT(*) as activeConnections FROM V$SESSION WHERE username = ?",
-                        this.resourceContext.getResourceKey());
-                Double sessions = values.get("count");
+            if (request.getName().equals("activeConnections")) {
+                Map<String, Map<String, Double>> sessions = getServer().getUserSessions(Math.min(MAX_AGE,
+                    request.getInterval() / 2));
                 if (sessions != null) {
-                    report.addData(new MeasurementDataNumeric(request, sessions));
+                    Map<String, Double> userSessions = sessions.get(this.resourceContext.getResourceKey());
+                    double count = (userSessions != null) ? userSessions.get("activeConnections") : 0;
+                    report.addData(new MeasurementDataNumeric(request, count));
                 }
             }
         }
     }
+
+    private OracleServerComponent getServer() {
+        return (OracleServerComponent) this.resourceContext.getParentResourceComponent();
+    }
 }
\ No newline at end of file
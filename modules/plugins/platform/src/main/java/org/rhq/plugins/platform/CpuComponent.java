@@ -31,7 +31,6 @@ import org.hyperic.sigar.Cpu;
 import org.hyperic.sigar.CpuInfo;
 
 import org.rhq.core.domain.measurement.AvailabilityType;
-import org.rhq.core.domain.measurement.MeasurementDataNumeric;
 import org.rhq.core.domain.measurement.MeasurementDataTrait;
 import org.rhq.core.domain.measurement.MeasurementReport;
 import org.rhq.core.domain.measurement.MeasurementScheduleRequest;
@@ -99,7 +98,7 @@ public class CpuComponent implements ResourceComponent<PlatformComponent>, Measu
                     Long longValue = (Long) ObjectUtil.lookupAttributeProperty(cpu, property);
                     // A value of -1 indicates SIGAR does not support the metric on the Agent platform type.
                     if (longValue != null && longValue != -1) {
-                        report.addData(new MeasurementDataNumeric(request, longValue.doubleValue()));
+                        report.addData(request, longValue.doubleValue());
                     }
                 } else if (property.startsWith("CpuPerc.")) {
 
@@ -143,7 +142,7 @@ public class CpuComponent implements ResourceComponent<PlatformComponent>, Measu
                     //    + num + "\n   Prev=" + previousCpu + "\n   Curr=" + currentCpu);
 
                     if (num != null) {
-                        report.addData(new MeasurementDataNumeric(request, num.doubleValue()));
+                        report.addData(request, num.doubleValue());
                     }
                 } else if (property.startsWith("CpuInfo.")) {
                     if (cpuInfo == null) {
@@ -153,7 +152,7 @@ public class CpuComponent implements ResourceComponent<PlatformComponent>, Measu
                     property = property.substring(property.indexOf(".") + 1);
                     Number num = ((Number) ObjectUtil.lookupAttributeProperty(cpuInfo, property));
                     if (num != null) {
-                        report.addData(new MeasurementDataNumeric(request, num.doubleValue()));
+                        report.addData(request, num.doubleValue());
                     }
                 } else if (property.startsWith("CpuTrait.")) {
                     if (cpuInfo == null) {
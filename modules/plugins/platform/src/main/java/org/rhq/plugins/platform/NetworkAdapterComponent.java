@@ -28,7 +28,6 @@ import java.util.Set;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.rhq.core.domain.measurement.AvailabilityType;
-import org.rhq.core.domain.measurement.MeasurementDataNumeric;
 import org.rhq.core.domain.measurement.MeasurementDataTrait;
 import org.rhq.core.domain.measurement.MeasurementReport;
 import org.rhq.core.domain.measurement.MeasurementScheduleRequest;
@@ -90,7 +89,7 @@ public class NetworkAdapterComponent implements ResourceComponent<PlatformCompon
             } else {
                 Number number = ((Number) ObjectUtil.lookupAttributeProperty(stats, request.getName()));
                 if (number != null) {
-                    report.addData(new MeasurementDataNumeric(request, number.doubleValue()));
+                    report.addData(request, number.doubleValue());
                 }
             }
         }
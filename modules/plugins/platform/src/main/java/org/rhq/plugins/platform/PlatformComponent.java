@@ -44,7 +44,6 @@ import org.rhq.core.domain.configuration.PropertyList;
 import org.rhq.core.domain.configuration.PropertyMap;
 import org.rhq.core.domain.configuration.PropertySimple;
 import org.rhq.core.domain.measurement.AvailabilityType;
-import org.rhq.core.domain.measurement.MeasurementDataNumeric;
 import org.rhq.core.domain.measurement.MeasurementDataTrait;
 import org.rhq.core.domain.measurement.MeasurementReport;
 import org.rhq.core.domain.measurement.MeasurementScheduleRequest;
@@ -150,7 +149,7 @@ public class PlatformComponent implements ResourceComponent<PlatformComponent>,
 
                 property = property.substring(property.indexOf(".") + 1);
                 double memoryValue = ((Number) getObjectProperty(platformMemoryInfo, property)).doubleValue();
-                report.addData(new MeasurementDataNumeric(request, memoryValue));
+                report.addData(request, memoryValue);
             } else if (property.startsWith("SwapInfo.")) {
                 if (platformSwapInfo == null) {
                     platformSwapInfo = info.getSwapInfo();
@@ -158,7 +157,7 @@ public class PlatformComponent implements ResourceComponent<PlatformComponent>,
                 if (platformSwapInfo != null) {
                     property = property.substring(property.indexOf(".") + 1);
                     double swapValue = ((Number) getObjectProperty(platformSwapInfo, property)).doubleValue();
-                    report.addData(new MeasurementDataNumeric(request, swapValue));
+                    report.addData(request, swapValue);
                 }
             } else if (property.startsWith("CpuPerc.")) {
 
@@ -166,7 +165,7 @@ public class PlatformComponent implements ResourceComponent<PlatformComponent>,
                     property = property.substring(property.indexOf(".") + 1);
                     Number num = ((Number) ObjectUtil.lookupAttributeProperty(cpuPerc, property));
                     if (num != null) {
-                        report.addData(new MeasurementDataNumeric(request, num.doubleValue()));
+                        report.addData(request, num.doubleValue());
                     }
                 }
             }
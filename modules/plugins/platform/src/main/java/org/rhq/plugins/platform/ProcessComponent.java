@@ -33,7 +33,6 @@ import org.apache.commons.logging.LogFactory;
 
 import org.rhq.core.domain.configuration.Configuration;
 import org.rhq.core.domain.measurement.AvailabilityType;
-import org.rhq.core.domain.measurement.MeasurementDataNumeric;
 import org.rhq.core.domain.measurement.MeasurementReport;
 import org.rhq.core.domain.measurement.MeasurementScheduleRequest;
 import org.rhq.core.pluginapi.inventory.InvalidPluginConfigurationException;
@@ -177,7 +176,7 @@ public class ProcessComponent implements ResourceComponent, MeasurementFacet {
                     propertyName = convertPropertyName(propertyName, this.process);
                     Object val = lookupAttributeProperty(this.process, propertyName.substring("Process.".length()));
                     if (val != null && val instanceof Number) {
-                        report.addData(new MeasurementDataNumeric(request, ((Number) val).doubleValue()));
+                        report.addData(request, ((Number) val).doubleValue());
                     }
                 }
             }
@@ -24,6 +24,7 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.sql.ResultSetMetaData;
+import java.util.Map;
 import java.util.Set;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -45,6 +46,7 @@ import org.rhq.core.pluginapi.operation.OperationFacet;
 import org.rhq.core.pluginapi.operation.OperationResult;
 import org.rhq.core.util.jdbc.JDBCUtil;
 import org.rhq.plugins.database.DatabaseComponent;
+import org.rhq.plugins.database.QueryResultCache;
 
 public class PostgresDatabaseComponent implements DatabaseComponent<PostgresServerComponent<?>>, MeasurementFacet,
     CreateChildResourceFacet, OperationFacet {
@@ -56,6 +58,9 @@ public class PostgresDatabaseComponent implements DatabaseComponent<PostgresServ
 
     private String databaseName;
 
+    private final QueryResultCache tableStatistics = new QueryResultCache(
+        PostgresTableComponent.PG_STAT_ALL_USER_TABLES_QUERY, "relname");
+
     public Connection getConnection() {
         this.databaseName = resourceContext.getPluginConfiguration().getSimple("databaseName").getStringValue();
         if (this.databaseName.equals(resourceContext.getParentResourceComponent().getResourceContext()
@@ -95,6 +100,7 @@ public class PostgresDatabaseComponent implements DatabaseComponent<PostgresServ
 
     public void stop() {
         this.resourceContext = null;
+        this.tableStatistics.clear();
     }
 
     public AvailabilityType getAvailability() {
@@ -105,6 +111,21 @@ public class PostgresDatabaseComponent implements DatabaseComponent<PostgresServ
         return databaseName;
     }
 
+    /**
+     * Returns the statistics of a table of this database. The statistics of all the tables are read at once, by one
+     * query shared by all the table components, rather than each of them querying the statistics of its own table.
+     *
+     * @param  tableName the name of the table
+     * @param  maxAge    how old, in milliseconds, the statistics may be
+     *
+     * @return the statistics keyed by the (case insensitive) column names of pg_stat_user_tables and
+     *         pg_statio_user_tables, or null if there is no such table or the statistics could not be read
+     */
+    public Map<String, Double> getTableStatistics(String tableName, long maxAge) {
+        Map<String, Map<String, Double>> rows = this.tableStatistics.getRows(this, maxAge);
+        return (rows != null) ? rows.get(tableName) : null;
+    }
+
     public void getValues(MeasurementReport report, Set<MeasurementScheduleRequest> metrics) {
         PreparedStatement statement = null;
         try {
@@ -23,6 +23,7 @@ import java.sql.DatabaseMetaData;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -63,6 +64,21 @@ public class PostgresTableComponent implements DatabaseComponent<PostgresDatabas
         + "FROM pg_stat_user_tables ts LEFT JOIN pg_statio_user_tables ios on ts.relid = ios.relid \n"
         + "WHERE ts.relname = ?";
 
+    /**
+     * The statistics of all the tables, read once by the database component for all of its tables.
+     */
+    public static final String PG_STAT_ALL_USER_TABLES_QUERY = "SELECT ts.*,  pg_relation_size(ts.relid) AS table_size, pg_total_relation_size(ts.relid) AS total_size, \n"
+        + "  ios.heap_blks_read, ios.heap_blks_hit, ios.idx_blks_read, ios.idx_blks_hit, \n"
+        + "  ios.toast_blks_read, ios.toast_blks_hit, ios.tidx_blks_read, ios.tidx_blks_hit, \n"
+        + "  c.reltuples AS rows_approx \n"
+        + "FROM pg_stat_user_tables ts LEFT JOIN pg_statio_user_tables ios on ts.relid = ios.relid \n"
+        + "  LEFT JOIN pg_class c on ts.relid = c.oid";
+
+    /**
+     * How old the statistics shared by the tables may be at most; no more than half of the collection interval either.
+     */
+    private static final long MAX_STATISTICS_AGE = 60 * 1000L;
+
     // NOTE: You can't bind table names as parameters
     public static final String PG_COUNT_ROWS = "SELECT COUNT(*) FROM ";
     public static final String PG_COUNT_ROWS_APPROX = "SELECT reltuples FROM pg_class WHERE relname = ? ";
@@ -88,16 +104,19 @@ public class PostgresTableComponent implements DatabaseComponent<PostgresDatabas
     public void getValues(MeasurementReport report, Set<MeasurementScheduleRequest> requests) {
         this.resourceContext.getParentResourceComponent().getConnection();
 
-        Map<String, Double> results = DatabaseQueryUtility.getNumericQueryValues(this, PG_STAT_USER_TABLES_QUERY,
-            getTableName());
+        Map<String, Double> results = this.resourceContext.getParentResourceComponent().getTableStatistics(
+            getTableName(), getMaxStatisticsAge(requests));
+        if (results == null) {
+            results = Collections.emptyMap();
+        }
+
         for (MeasurementScheduleRequest request : requests) {
             String metricName = request.getName();
             Double value;
             if (metricName.equals("rows")) {
                 value = DatabaseQueryUtility.getSingleNumericQueryValue(this, PG_COUNT_ROWS + getTableName());
-            } else if (metricName.equals("rows_approx")) {
-                value = DatabaseQueryUtility.getSingleNumericQueryValue(this, PG_COUNT_ROWS_APPROX, getTableName());
             } else {
+                // rows_approx is read with the statistics too
                 value = results.get(metricName);
             }
 
@@ -108,6 +127,15 @@ public class PostgresTableComponent implements DatabaseComponent<PostgresDatabas
         }
     }
 
+    private static long getMaxStatisticsAge(Set<MeasurementScheduleRequest> requests) {
+        long maxAge = MAX_STATISTICS_AGE;
+        for (MeasurementScheduleRequest request : requests) {
+            maxAge = Math.min(maxAge, request.getInterval() / 2);
+        }
+
+        return maxAge;
+    }
+
     public void deleteResource() throws SQLException {
         DatabaseQueryUtility.executeUpdate(this, "DROP TABLE " + getTableName(), new Object[] {});
     }
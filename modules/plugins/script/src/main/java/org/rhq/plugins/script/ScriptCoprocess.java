@@ -0,0 +1,234 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2011 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package org.rhq.plugins.script;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.rhq.core.system.ProcessExecution;
+import org.rhq.core.system.ProcessExecutionResults;
+
+/**
+ * A long-lived instance of the executable of a script resource, used to collect the metrics of the resource without
+ * executing the executable once for each of them.
+ * <p>
+ * The executable is started once and then reads requests from its standard input, one per line, each request being
+ * the arguments it would otherwise have been executed with. It answers each request by writing the output it would
+ * otherwise have written, followed by a line with {@link #END_MARKER} and the exit code it would otherwise have exited
+ * with. For example, for a metric with the property "{--users}|exitcode":
+ *
+ * <pre>
+ * request:  --users
+ * response: 42 users logged in
+ *           .end 0
+ * </pre>
+ *
+ * If the executable exits, does not answer in time or does not follow the protocol, it is killed and started again
+ * for the next request.
+ */
+class ScriptCoprocess {
+
+    /**
+     * Ends the response to a request, followed by a space and the exit code.
+     */
+    static final String END_MARKER = ".end";
+
+    private static final String LINE_SEPARATOR = System.getProperty("line.separator");
+
+    // put in the output queue once the executable closes its output
+    private static final String END_OF_OUTPUT = new String("<end of output>");
+
+    private final Log log = LogFactory.getLog(ScriptCoprocess.class);
+
+    private final ProcessBuilder processBuilder;
+
+    private Process process;
+    private BufferedWriter processInput;
+    private BlockingQueue<String> processOutput;
+
+    /**
+     * @param processExecution the executable, working directory and environment variables to start the executable
+     *                         with, as well as its arguments
+     */
+    ScriptCoprocess(ProcessExecution processExecution) {
+        List<String> command = new ArrayList<String>();
+        command.add(processExecution.getExecutable());
+        if (processExecution.getArguments() != null) {
+            command.addAll(processExecution.getArguments());
+        }
+
+        this.processBuilder = new ProcessBuilder(command);
+        this.processBuilder.redirectErrorStream(true); // the output is stdout plus stderr, like with forked executions
+
+        if (processExecution.getWorkingDirectory() != null) {
+            this.processBuilder.directory(new File(processExecution.getWorkingDirectory()));
+        }
+
+        Map<String, String> environmentVariables = processExecution.getEnvironmentVariables();
+        if (environmentVariables != null) {
+            this.processBuilder.environment().clear();
+            this.processBuilder.environment().putAll(environmentVariables);
+        }
+    }
+
+    /**
+     * Sends a request to the executable, starting it first if it is not running.
+     *
+     * @param  arguments     the arguments to send (may be <code>null</code>)
+     * @param  wait          the maximum time in milliseconds to wait for the response
+     * @param  captureOutput if <code>true</code>, the output is returned along with the exit code
+     *
+     * @return the results of the request; failures to communicate with the executable are reported as their error
+     */
+    synchronized ProcessExecutionResults execute(String arguments, long wait, boolean captureOutput) {
+        try {
+            if (this.process == null) {
+                start();
+            }
+
+            this.processInput.write((arguments != null) ? arguments : "");
+            this.processInput.newLine();
+            this.processInput.flush();
+
+            StringBuilder output = new StringBuilder();
+            long timeout = System.currentTimeMillis() + wait;
+            while (true) {
+                long remaining = timeout - System.currentTimeMillis();
+                String line = (remaining > 0) ? this.processOutput.poll(remaining, TimeUnit.MILLISECONDS) : null;
+                if (line == null) {
+                    throw new IOException("No response to [" + arguments + "] within " + wait + "ms");
+                } else if (line == END_OF_OUTPUT) {
+                    throw new IOException("The executable exited while answering [" + arguments + "]");
+                } else if (line.startsWith(END_MARKER + " ")) {
+                    Integer exitCode;
+                    try {
+                        exitCode = Integer.valueOf(line.substring(END_MARKER.length() + 1).trim());
+                    } catch (NumberFormatException e) {
+                        throw new IOException("Invalid exit code in response to [" + arguments + "]: " + line);
+                    }
+
+                    return new CoprocessResults(exitCode, captureOutput ? output.toString() : null, null);
+                }
+
+                output.append(line).append(LINE_SEPARATOR);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            stop();
+            return new CoprocessResults(null, null, e);
+        } catch (Exception e) {
+            stop();
+            return new CoprocessResults(null, null, e);
+        }
+    }
+
+    /**
+     * Kills the executable if it is running.
+     */
+    synchronized void stop() {
+        if (this.process != null) {
+            this.process.destroy();
+            try {
+                this.processInput.close();
+            } catch (IOException e) {
+                // the executable is gone anyway
+            }
+
+            this.process = null;
+            this.processInput = null;
+            this.processOutput = null;
+        }
+    }
+
+    private void start() throws IOException {
+        if (log.isDebugEnabled()) {
+            log.debug("Starting co-process " + this.processBuilder.command());
+        }
+
+        final Process newProcess = this.processBuilder.start();
+        final BlockingQueue<String> output = new LinkedBlockingQueue<String>();
+
+        Thread reader = new Thread("ScriptCoprocess " + this.processBuilder.command().get(0)) {
+            @Override
+            public void run() {
+                BufferedReader reader = new BufferedReader(new InputStreamReader(newProcess.getInputStream()));
+                try {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        output.add(line);
+                    }
+                } catch (IOException e) {
+                    // the executable has been killed or has exited
+                } finally {
+                    output.add(END_OF_OUTPUT);
+                    try {
+                        reader.close();
+                    } catch (IOException e) {
+                    }
+                }
+            }
+        };
+        reader.setDaemon(true);
+        reader.start();
+
+        this.process = newProcess;
+        this.processInput = new BufferedWriter(new OutputStreamWriter(newProcess.getOutputStream()));
+        this.processOutput = output;
+    }
+
+    private static class CoprocessResults extends ProcessExecutionResults {
+        private final Integer exitCode;
+        private final String output;
+        private final Throwable error;
+
+        private CoprocessResults(Integer exitCode, String output, Throwable error) {
+            this.exitCode = exitCode;
+            this.output = output;
+            this.error = error;
+        }
+
+        @Override
+        public Integer getExitCode() {
+            return this.exitCode;
+        }
+
+        @Override
+        public Throwable getError() {
+            return this.error;
+        }
+
+        @Override
+        public String getCapturedOutput() {
+            return this.output;
+        }
+    }
+}
@@ -23,6 +23,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -78,6 +79,9 @@ public class ScriptServerComponent implements ResourceComponent, MeasurementFace
     protected static final String PLUGINCONFIG_DESC_ARGS = "descriptionArguments";
     protected static final String PLUGINCONFIG_DESC_REGEX = "descriptionRegex";
     protected static final String PLUGINCONFIG_FIXED_DESC = "fixedDescription";
+    protected static final String PLUGINCONFIG_RESULTS_CACHE_TIME = "metricResultsCacheTime";
+    protected static final String PLUGINCONFIG_COPROCESS = "coprocess";
+    protected static final String PLUGINCONFIG_COPROCESS_ARGS = "coprocessArguments";
 
     protected static final String OPERATION_PARAM_ARGUMENTS = "arguments";
     protected static final String OPERATION_RESULT_EXITCODE = "exitCode";
@@ -90,6 +94,14 @@ public class ScriptServerComponent implements ResourceComponent, MeasurementFace
     private Configuration resourceConfiguration;
     private ResourceContext resourceContext;
 
+    /**
+     * The results of the executions for the metrics, keyed by the arguments, so that metrics on different schedules
+     * can share an execution. See {@link #PLUGINCONFIG_RESULTS_CACHE_TIME}.
+     */
+    private final Map<String, CachedResults> metricResultsCache = new ConcurrentHashMap<String, CachedResults>();
+
+    private ScriptCoprocess coprocess;
+
     public void start(ResourceContext context) {
         if (log.isDebugEnabled()) {
             log.debug("Script Server started: " + context.getPluginConfiguration());
@@ -102,6 +114,14 @@ public class ScriptServerComponent implements ResourceComponent, MeasurementFace
         if (log.isDebugEnabled()) {
             log.debug("Script Server stopped: " + this.resourceContext.getPluginConfiguration());
         }
+
+        this.metricResultsCache.clear();
+        synchronized (this) {
+            if (this.coprocess != null) {
+                this.coprocess.stop();
+                this.coprocess = null;
+            }
+        }
     }
 
     public AvailabilityType getAvailability() {
@@ -123,11 +143,17 @@ public class ScriptServerComponent implements ResourceComponent, MeasurementFace
      * <li>"{}|[ABC]+" - no arguments are passed and the value is the output of the CLI assuming it matches the regex</li>
      * <li>"{--foobar}|foobar (.*) blah" - passes "--foobar" as the argument and the metric value is the string that matches the regex group</li>
      * </ul>
+     *
+     * The CLI is executed once per set of arguments, the results are shared by the metrics collected at the same time
+     * and, if the {@link #PLUGINCONFIG_RESULTS_CACHE_TIME} is set, by those collected later on until the results are
+     * older than that. If the CLI runs as a {@link #PLUGINCONFIG_COPROCESS co-process}, it is asked for the results
+     * rather than executed.
      * 
      * @see MeasurementFacet#getValues(MeasurementReport, Set)
      */
     public void getValues(MeasurementReport report, Set<MeasurementScheduleRequest> requests) {
-        Map<String, ProcessExecutionResults> exeResultsCache = new HashMap<String, ProcessExecutionResults>();
+        long collectionTime = System.currentTimeMillis();
+        long resultsCacheTime = getMetricResultsCacheTime();
 
         for (MeasurementScheduleRequest request : requests) {
             String metricPropertyName = request.getName();
@@ -158,12 +184,17 @@ public class ScriptServerComponent implements ResourceComponent, MeasurementFace
                 boolean valueIsExitCode = METRIC_PROPERTY_EXITCODE.equals(regex);
 
                 // if we already executed it with the same arguments, don't bother doing it again
-                ProcessExecutionResults exeResults = exeResultsCache.get((arguments == null) ? "" : arguments);
-                if (exeResults == null) {
-                    boolean captureOutput = !valueIsExitCode; // don't need output if we need to just check exit code
-                    exeResults = executeExecutable(arguments, MAX_WAIT_TIME, captureOutput);
-                    exeResultsCache.put((arguments == null) ? "" : arguments, exeResults);
+                String key = (arguments == null) ? "" : arguments;
+                boolean captureOutput = !valueIsExitCode; // don't need output if we need to just check exit code
+                CachedResults cachedResults = this.metricResultsCache.get(key);
+                // failures are only shared by the metrics collected at the same time, the next collection retries
+                if (cachedResults == null || cachedResults.timestamp < collectionTime - resultsCacheTime
+                    || (captureOutput && !cachedResults.captureOutput)
+                    || (cachedResults.results.getError() != null && cachedResults.timestamp < collectionTime)) {
+                    cachedResults = new CachedResults(executeForMetric(arguments, captureOutput), captureOutput);
+                    this.metricResultsCache.put(key, cachedResults);
                 }
+                ProcessExecutionResults exeResults = cachedResults.results;
 
                 // don't report a metric value if the CLI failed to execute
                 if (exeResults.getError() != null) {
@@ -222,12 +253,44 @@ public class ScriptServerComponent implements ResourceComponent, MeasurementFace
             }
         }
 
-        exeResultsCache.clear(); // help out the garbage collector, since this could be alot of data
-        exeResultsCache = null;
+        // forget the results too old to be reused, since this could be alot of data
+        for (Map.Entry<String, CachedResults> entry : this.metricResultsCache.entrySet()) {
+            if (entry.getValue().timestamp < System.currentTimeMillis() - resultsCacheTime) {
+                this.metricResultsCache.remove(entry.getKey());
+            }
+        }
 
         return;
     }
 
+    /**
+     * Executes the CLI for a metric, or asks the co-process for the results if the CLI runs as a co-process.
+     *
+     * @param args the arguments to send to the executable (may be <code>null</code>)
+     * @param captureOutput if <code>true</code>, the executables output will be captured and returned
+     *
+     * @return the results of the execution
+     *
+     * @throws InvalidPluginConfigurationException
+     */
+    protected ProcessExecutionResults executeForMetric(String args, boolean captureOutput)
+        throws InvalidPluginConfigurationException {
+
+        ScriptCoprocess coprocess = getCoprocess();
+        if (coprocess == null) {
+            return executeExecutable(args, MAX_WAIT_TIME, captureOutput);
+        }
+
+        ProcessExecutionResults results = coprocess.execute(args, MAX_WAIT_TIME, captureOutput);
+
+        if (log.isDebugEnabled()) {
+            logDebug("CLI co-process results: exitcode=[" + results.getExitCode() + "]; error=[" + results.getError()
+                + "]; output=" + truncateString(results.getCapturedOutput()));
+        }
+
+        return results;
+    }
+
     /**
      * Given a metric property name, this parses it into its different pieces and returns a
      * map of the different tokens. The format of the metric property one of the following:
@@ -360,6 +423,36 @@ public class ScriptServerComponent implements ResourceComponent, MeasurementFace
         return results;
     }
 
+    private synchronized ScriptCoprocess getCoprocess() throws InvalidPluginConfigurationException {
+        Configuration pluginConfig = this.resourceContext.getPluginConfiguration();
+        PropertySimple coprocessProp = pluginConfig.getSimple(PLUGINCONFIG_COPROCESS);
+        if (coprocessProp == null || coprocessProp.getBooleanValue() == null
+            || !coprocessProp.getBooleanValue().booleanValue()) {
+            return null;
+        }
+
+        if (this.coprocess == null) {
+            ProcessExecution processExecution = getProcessExecutionInfo(pluginConfig);
+            String args = pluginConfig.getSimpleValue(PLUGINCONFIG_COPROCESS_ARGS, null);
+            if (args != null && args.length() > 0) {
+                processExecution.setArguments(args.split(" "));
+            }
+            this.coprocess = new ScriptCoprocess(processExecution);
+        }
+
+        return this.coprocess;
+    }
+
+    private long getMetricResultsCacheTime() {
+        PropertySimple cacheTimeProp = this.resourceContext.getPluginConfiguration().getSimple(
+            PLUGINCONFIG_RESULTS_CACHE_TIME);
+        if (cacheTimeProp == null || cacheTimeProp.getLongValue() == null) {
+            return 0L;
+        }
+
+        return cacheTimeProp.getLongValue().longValue() * 1000L;
+    }
+
     private boolean checkAvailability() throws InvalidPluginConfigurationException {
 
         String executable;
@@ -543,4 +636,15 @@ public class ScriptServerComponent implements ResourceComponent, MeasurementFace
     private void logDebug(String msg) {
         log.debug("[" + this.resourceContext.getResourceKey() + "]: " + msg);
     }
+
+    private static class CachedResults {
+        private final ProcessExecutionResults results;
+        private final boolean captureOutput;
+        private final long timestamp = System.currentTimeMillis();
+
+        private CachedResults(ProcessExecutionResults results, boolean captureOutput) {
+            this.results = results;
+            this.captureOutput = captureOutput;
+        }
+    }
 }
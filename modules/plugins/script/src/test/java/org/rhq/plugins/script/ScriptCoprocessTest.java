@@ -0,0 +1,134 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2011 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package org.rhq.plugins.script;
+
+import java.io.File;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import org.rhq.core.system.ProcessExecution;
+import org.rhq.core.system.ProcessExecutionResults;
+
+/**
+ * Tests the line protocol of {@link ScriptCoprocess} against the coprocess.sh test script.
+ */
+@Test
+public class ScriptCoprocessTest {
+
+    private static final long WAIT = 10000L;
+    private static final String LINE_SEPARATOR = System.getProperty("line.separator");
+
+    private ScriptCoprocess coprocess;
+
+    @BeforeMethod
+    public void startCoprocess() throws Exception {
+        coprocess = new ScriptCoprocess(createProcessExecution());
+    }
+
+    @AfterMethod(alwaysRun = true)
+    public void stopCoprocess() {
+        coprocess.stop();
+    }
+
+    public void testResponses() throws Exception {
+        ProcessExecutionResults results = coprocess.execute("--users", WAIT, true);
+        assert results.getError() == null : results.getError();
+        assert results.getExitCode() == 0 : results.getExitCode();
+        assert results.getCapturedOutput().equals("42 users logged in" + LINE_SEPARATOR) : results.getCapturedOutput();
+
+        results = coprocess.execute("--version", WAIT, true);
+        assert results.getCapturedOutput().equals("Test Server" + LINE_SEPARATOR + "Version 1.2" + LINE_SEPARATOR)
+            : "Everything up to the end marker is the output: " + results.getCapturedOutput();
+
+        results = coprocess.execute("--users", WAIT, false);
+        assert results.getExitCode() == 0;
+        assert results.getCapturedOutput() == null : "The output was not asked for";
+
+        // a non-zero exit code is an answer like any other
+        results = coprocess.execute("--missing", WAIT, true);
+        assert results.getError() == null : results.getError();
+        assert results.getExitCode() == 3 : results.getExitCode();
+        assert results.getCapturedOutput().startsWith("no such thing");
+
+        results = coprocess.execute(null, WAIT, true);
+        assert results.getExitCode() == 1;
+        assert results.getCapturedOutput().startsWith("unknown request []") : results.getCapturedOutput();
+
+        assert getPid().equals(getPid()) :"The executable should have been started only once";
+    }
+
+    public void testRestartedAfterTimeout() throws Exception {
+        String pid = getPid();
+
+        long start = System.currentTimeMillis();
+        ProcessExecutionResults results = coprocess.execute("--hang", 500L, true);
+        assert System.currentTimeMillis() - start < 5000L : "The request should have timed out";
+        assert results.getError() != null : "A request not answered in time should fail";
+        assert results.getExitCode() == null;
+
+        assert !getPid().equals(pid) : "The executable should have been restarted";
+        results = coprocess.execute("--users", WAIT, true);
+        assert results.getCapturedOutput().equals("42 users logged in" + LINE_SEPARATOR) : results.getCapturedOutput();
+    }
+
+    public void testRestartedAfterExit() throws Exception {
+        String pid = getPid();
+
+        ProcessExecutionResults results = coprocess.execute("--exit", WAIT, true);
+        assert results.getError() != null : "A request the executable exits on should fail";
+        assert results.getError().getMessage().contains("exited") : results.getError();
+        assert results.getExitCode() == null;
+
+        assert !getPid().equals(pid) : "The executable should have been restarted";
+    }
+
+    public void testRestartedAfterInvalidResponse() throws Exception {
+        String pid = getPid();
+
+        ProcessExecutionResults results = coprocess.execute("--garbage", WAIT, true);
+        assert results.getError() != null : "An end marker without an exit code should fail";
+        assert results.getExitCode() == null;
+
+        assert !getPid().equals(pid) : "The executable should have been restarted";
+    }
+
+    public void testRestartedAfterStop() throws Exception {
+        String pid = getPid();
+        coprocess.stop();
+        assert !getPid().equals(pid);
+    }
+
+    private String getPid() {
+        ProcessExecutionResults results = coprocess.execute("--pid", WAIT, true);
+        assert results.getError() == null : results.getError();
+        return results.getCapturedOutput().trim();
+    }
+
+    /**
+     * Runs the coprocess.sh test script with the shell, so it doesn't matter whether it was copied as executable.
+     */
+    static ProcessExecution createProcessExecution() throws Exception {
+        File script = new File(ScriptCoprocessTest.class.getClassLoader().getResource("coprocess.sh").toURI());
+        ProcessExecution processExecution = new ProcessExecution("/bin/sh");
+        processExecution.setArguments(new String[] { script.getAbsolutePath() });
+        return processExecution;
+    }
+}
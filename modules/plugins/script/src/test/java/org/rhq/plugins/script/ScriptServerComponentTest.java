@@ -0,0 +1,205 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2011 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package org.rhq.plugins.script;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+import org.rhq.core.domain.configuration.Configuration;
+import org.rhq.core.domain.configuration.PropertySimple;
+import org.rhq.core.domain.measurement.DataType;
+import org.rhq.core.domain.measurement.MeasurementDataNumeric;
+import org.rhq.core.domain.measurement.MeasurementDataTrait;
+import org.rhq.core.domain.measurement.MeasurementReport;
+import org.rhq.core.domain.measurement.MeasurementScheduleRequest;
+import org.rhq.core.domain.resource.Resource;
+import org.rhq.core.domain.resource.ResourceType;
+import org.rhq.core.pluginapi.inventory.ResourceComponent;
+import org.rhq.core.pluginapi.inventory.ResourceContext;
+import org.rhq.core.system.ProcessExecution;
+import org.rhq.core.system.ProcessExecutionResults;
+
+/**
+ * Tests when {@link ScriptServerComponent#getValues(MeasurementReport, Set)} reuses the results of an execution,
+ * collecting the metrics from the coprocess.sh test script run as a co-process.
+ */
+@Test
+public class ScriptServerComponentTest {
+
+    private static final String USERS = "{--users}|([0-9]+) users";
+    private static final String USERS_EXITCODE = "{--users}|exitcode";
+    private static final String VERSION = "{--version}|Version (.*)";
+    private static final String MISSING_EXITCODE = "{--missing}|exitcode";
+    private static final String EXIT = "{--exit}|exitcode";
+    private static final String EXIT_OUTPUT = "{--exit}|";
+
+    private CountingComponent component;
+
+    @AfterMethod(alwaysRun = true)
+    public void stopComponent() {
+        if (component != null) {
+            component.stop();
+            component = null;
+        }
+    }
+
+    public void testResultsSharedWithinCollection() throws Exception {
+        startComponent(0);
+
+        MeasurementReport report = collect(USERS, USERS_EXITCODE, VERSION);
+        assert getNumericValue(report, USERS) == 42.0;
+        assert getNumericValue(report, USERS_EXITCODE) == 0.0;
+        assert getTraitValue(report, VERSION).equals("1.2") : getTraitValue(report, VERSION);
+        assert component.executions.equals(list("--users", "--version")) : component.executions;
+
+        // without a cache time, the next collection executes again
+        Thread.sleep(10L);
+        collect(USERS, VERSION);
+        assert component.executions.equals(list("--users", "--version", "--users", "--version"))
+            : component.executions;
+    }
+
+    public void testResultsReusedWithinCacheTime() throws Exception {
+        startComponent(60);
+
+        collect(USERS_EXITCODE);
+        assert component.executions.equals(list("--users")) : component.executions;
+
+        // the exit code alone is reused, but a metric needing the output executes again
+        MeasurementReport report = collect(USERS_EXITCODE, USERS);
+        assert getNumericValue(report, USERS_EXITCODE) == 0.0;
+        assert getNumericValue(report, USERS) == 42.0;
+        assert component.executions.equals(list("--users", "--users")) : component.executions;
+
+        // from then on, both are reused
+        report = collect(USERS, USERS_EXITCODE);
+        assert getNumericValue(report, USERS) == 42.0;
+        assert getNumericValue(report, USERS_EXITCODE) == 0.0;
+        assert component.executions.equals(list("--users", "--users")) : component.executions;
+    }
+
+    public void testResultsExpire() throws Exception {
+        startComponent(1);
+
+        collect(USERS);
+        collect(USERS);
+        assert component.executions.equals(list("--users")) : component.executions;
+
+        Thread.sleep(1100L);
+        MeasurementReport report = collect(USERS);
+        assert getNumericValue(report, USERS) == 42.0;
+        assert component.executions.equals(list("--users", "--users")) : component.executions;
+    }
+
+    public void testFailuresRetriedNextCollection() throws Exception {
+        startComponent(60);
+
+        // a failure is shared by the metrics collected at the same time...
+        MeasurementReport report = collect(EXIT_OUTPUT, EXIT);
+        assert report.getNumericData().isEmpty() && report.getTraitData().isEmpty() : "Nothing should be collected";
+        assert component.executions.equals(list("--exit")) : component.executions;
+
+        // ...but not reused by the next collection, which runs the restarted co-process
+        Thread.sleep(10L);
+        collect(EXIT);
+        assert component.executions.equals(list("--exit", "--exit")) : component.executions;
+
+        // a non-zero exit code is not a failure
+        report = collect(MISSING_EXITCODE);
+        assert getNumericValue(report, MISSING_EXITCODE) == 3.0;
+        Thread.sleep(10L);
+        report = collect(MISSING_EXITCODE);
+        assert getNumericValue(report, MISSING_EXITCODE) == 3.0;
+        assert component.executions.equals(list("--exit", "--exit", "--missing")) : component.executions;
+    }
+
+    private void startComponent(int resultsCacheTime) throws Exception {
+        ProcessExecution coprocess = ScriptCoprocessTest.createProcessExecution();
+        Configuration pluginConfig = new Configuration();
+        pluginConfig.put(new PropertySimple(ScriptServerComponent.PLUGINCONFIG_EXECUTABLE,
+            coprocess.getExecutable()));
+        pluginConfig.put(new PropertySimple(ScriptServerComponent.PLUGINCONFIG_COPROCESS, true));
+        pluginConfig.put(new PropertySimple(ScriptServerComponent.PLUGINCONFIG_COPROCESS_ARGS,
+            coprocess.getArguments().get(0)));
+        pluginConfig.put(new PropertySimple(ScriptServerComponent.PLUGINCONFIG_RESULTS_CACHE_TIME, resultsCacheTime));
+
+        Resource resource = new Resource("test", "test", new ResourceType());
+        resource.setPluginConfiguration(pluginConfig);
+
+        component = new CountingComponent();
+        component.start(new ResourceContext<ResourceComponent<?>>(resource, null, null, null, null, null, null,
+            null, null, null, null, null));
+    }
+
+    private MeasurementReport collect(String... metricProperties) {
+        Set<MeasurementScheduleRequest> requests = new LinkedHashSet<MeasurementScheduleRequest>();
+        for (int i = 0; i < metricProperties.length; i++) {
+            DataType dataType = metricProperties[i].equals(VERSION) ? DataType.TRAIT : DataType.MEASUREMENT;
+            requests.add(new MeasurementScheduleRequest(i + 1, metricProperties[i], 60000L, true, dataType));
+        }
+
+        MeasurementReport report = new MeasurementReport();
+        component.getValues(report, requests);
+        return report;
+    }
+
+    private Double getNumericValue(MeasurementReport report, String metricProperty) {
+        for (MeasurementDataNumeric data : report.getNumericData()) {
+            if (data.getName().equals(metricProperty)) {
+                return data.getValue();
+            }
+        }
+        return null;
+    }
+
+    private String getTraitValue(MeasurementReport report, String metricProperty) {
+        for (MeasurementDataTrait data : report.getTraitData()) {
+            if (data.getName().equals(metricProperty)) {
+                return data.getValue();
+            }
+        }
+        return null;
+    }
+
+    private static List<String> list(String... arguments) {
+        List<String> list = new ArrayList<String>();
+        for (String argument : arguments) {
+            list.add(argument);
+        }
+        return list;
+    }
+
+    /**
+     * Records the arguments of every execution for a metric.
+     */
+    private static class CountingComponent extends ScriptServerComponent {
+        final List<String> executions = new ArrayList<String>();
+
+        @Override
+        protected ProcessExecutionResults executeForMetric(String args, boolean captureOutput) {
+            executions.add(args);
+            return super.executeForMetric(args, captureOutput);
+        }
+    }
+}
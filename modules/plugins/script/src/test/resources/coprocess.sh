@@ -0,0 +1,39 @@
+#!/bin/sh
+#
+# A co-process for the script plugin tests. It reads one request per line and answers each with its output, followed
+# by ".end <exitcode>", except for the requests that break the protocol on purpose.
+
+while read request; do
+   case "$request" in
+      --users)
+         echo "42 users logged in"
+         echo ".end 0"
+         ;;
+      --version)
+         echo "Test Server"
+         echo "Version 1.2"
+         echo ".end 0"
+         ;;
+      --pid)
+         echo $$
+         echo ".end 0"
+         ;;
+      --missing)
+         echo "no such thing"
+         echo ".end 3"
+         ;;
+      --garbage)
+         echo ".end zero"
+         ;;
+      --hang)
+         sleep 10
+         ;;
+      --exit)
+         exit 1
+         ;;
+      *)
+         echo "unknown request [$request]"
+         echo ".end 1"
+         ;;
+   esac
+done